@@ -0,0 +1,253 @@
+package oops.evaluation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Limiter of the number of requests in flight to an OOPS! WS endpoint, which adapts the limit to the capacity of
+ * the service with additive increase and multiplicative decrease (AIMD). Every successful request that was sent
+ * with the limit fully used raises the limit by 1/limit, so the limit grows by about one request per round while
+ * the latency stays within twice its moving average. A request dropped because the service is overloaded (a
+ * timeout or a 429, 503 or 504 response) halves the limit, once for all the requests sent with the same limit.
+ */
+public class AdaptiveConcurrencyLimiter implements AdaptiveConcurrencyLimiterMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+	public static final int DEFAULT_INITIAL_LIMIT = 4;
+
+	public static final int DEFAULT_MIN_LIMIT = 1;
+
+	public static final int DEFAULT_MAX_LIMIT = 16;
+
+	private static final double DECREASE_FACTOR = 0.5; // multiplier of the limit when a request is dropped
+
+	private static final double LATENCY_TOLERANCE = 2.0; // max latency to average latency ratio to increase
+
+	private static final double LATENCY_SMOOTHING = 0.2; // weight of the latest request in the average latency
+
+	/**
+	 * The outcomes of a request for the limiter
+	 */
+	public enum Outcome {
+		/**
+		 * The request has succeeded, its latency is a sample of the service latency
+		 */
+		SUCCESS,
+
+		/**
+		 * The request has been dropped because the service is overloaded
+		 */
+		DROPPED,
+
+		/**
+		 * The request says nothing about the service capacity (e.g. it has been cancelled or rejected)
+		 */
+		IGNORED
+	}
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition permitReleased = lock.newCondition();
+
+	// guarded by lock
+	private double limit;
+	private int inFlight;
+	private int queueDepth;
+	private double averageLatency = -1;
+	private long decreasesCount;
+
+	public AdaptiveConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * @param initialLimit
+	 *            the initial max number of requests in flight
+	 * @param minLimit
+	 *            the min limit
+	 * @param maxLimit
+	 *            the max limit
+	 * @throws IllegalArgumentException
+	 *             if the limits are not 1 &lt;= minLimit &lt;= initialLimit &lt;= maxLimit
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+			throw new IllegalArgumentException(String.format("Invalid concurrency limits: %d initial, %d min, %d max",
+					initialLimit, minLimit, maxLimit));
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * Waits until a request can be sent within the limit and returns its permit, which must be released with the
+	 * outcome of the request
+	 *
+	 * @param cancellation
+	 *            the cancellation token of the evaluation, which stops the wait
+	 * @return the permit of the request
+	 * @throws InterruptedException
+	 * @throws java.util.concurrent.CancellationException
+	 *             if the evaluation is cancelled while waiting
+	 */
+	public Permit acquire(CancellationToken cancellation) throws InterruptedException {
+		CancellationToken.Registration wakeUp = cancellation.onCancel(this::wakeUpAll);
+		try {
+			lock.lockInterruptibly();
+			try {
+				queueDepth++;
+				try {
+					while (inFlight >= (int) limit) {
+						cancellation.throwIfCancelled();
+						permitReleased.await();
+					}
+				} finally {
+					queueDepth--;
+				}
+				cancellation.throwIfCancelled();
+
+				inFlight++;
+				return new Permit(System.nanoTime(), decreasesCount, inFlight >= (int) limit);
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			wakeUp.close();
+		}
+	}
+
+	/**
+	 * Releases the permit of a finished request and adapts the limit to its outcome. Releasing a permit again does
+	 * nothing.
+	 *
+	 * @param permit
+	 *            the permit of the request
+	 * @param outcome
+	 *            the outcome of the request
+	 */
+	public void release(Permit permit, Outcome outcome) {
+		lock.lock();
+		try {
+			if (permit.released) {
+				return;
+			}
+			permit.released = true;
+			inFlight--;
+
+			double latency = System.nanoTime() - permit.startNanos;
+
+			if (outcome == Outcome.SUCCESS) {
+				boolean stable = averageLatency < 0 || latency <= averageLatency * LATENCY_TOLERANCE;
+				averageLatency = averageLatency < 0 ? latency
+						: averageLatency + LATENCY_SMOOTHING * (latency - averageLatency);
+
+				if (stable && permit.limitUsed && limit < maxLimit) {
+					limit = Math.min(maxLimit, limit + 1 / limit);
+				}
+			} else if (outcome == Outcome.DROPPED && permit.decreasesCount == decreasesCount) {
+				// only the first drop of the requests sent with the same limit cuts it
+				limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+				decreasesCount++;
+
+				logger.warn(String.format("The OOPS! web service is overloaded, the concurrent requests are limited "
+						+ "to %d", (int) limit));
+			}
+
+			permitReleased.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void wakeUpAll() {
+		lock.lock();
+		try {
+			permitReleased.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return queueDepth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getAverageLatency() {
+		lock.lock();
+		try {
+			return averageLatency < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis((long) averageLatency);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getDecreasesCount() {
+		lock.lock();
+		try {
+			return decreasesCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The permit of a request in flight
+	 */
+	public static final class Permit {
+
+		private final long startNanos;
+
+		private final long decreasesCount; // number of decreases of the limit when the request was sent
+
+		private final boolean limitUsed; // true if the request used the last free slot of the limit
+
+		private boolean released; // guarded by the lock of the limiter
+
+		private Permit(long startNanos, long decreasesCount, boolean limitUsed) {
+			this.startNanos = startNanos;
+			this.decreasesCount = decreasesCount;
+			this.limitUsed = limitUsed;
+		}
+	}
+}
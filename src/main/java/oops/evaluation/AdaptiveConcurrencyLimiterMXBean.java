@@ -0,0 +1,36 @@
+package oops.evaluation;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Monitoring interface of the concurrency limiter of the requests to an OOPS! WS endpoint, registered in the
+ * platform MBean server.
+ */
+public interface AdaptiveConcurrencyLimiterMXBean {
+
+	/**
+	 * @return the current max number of requests in flight
+	 */
+	public int getLimit();
+
+	/**
+	 * @return the number of requests in flight
+	 */
+	public int getInFlight();
+
+	/**
+	 * @return the number of requests waiting to be sent
+	 */
+	public int getQueueDepth();
+
+	/**
+	 * @return the moving average of the latency of the successful requests in milliseconds, -1 if there is none yet
+	 */
+	public long getAverageLatency();
+
+	/**
+	 * @return the number of times the limit has been cut because the service was overloaded
+	 */
+	public long getDecreasesCount();
+}
@@ -0,0 +1,93 @@
+package oops.evaluation;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Pool of fixed size byte buffers reused by all the requests, so the steady-state evaluations do not allocate a
+ * new buffer for every request body and response. The direct pool holds the bodies and responses kept between
+ * the stages of a request, off the heap, and the heap pool holds the buffers for encoding the text written to
+ * streams, which need a backing array. A pool keeps up to its max number of released buffers, the rest are left
+ * to the garbage collector.
+ */
+public final class BufferPool {
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Pool of direct buffers, up to 16 MB kept
+	 */
+	public static final BufferPool DIRECT = new BufferPool(true, 256);
+
+	/**
+	 * Pool of heap buffers, up to 1 MB kept
+	 */
+	public static final BufferPool HEAP = new BufferPool(false, 16);
+
+	private final boolean direct;
+
+	private final int maxPooled;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	private final AtomicInteger pooledCount = new AtomicInteger();
+
+	private final AtomicLong allocatedCount = new AtomicLong();
+
+	private BufferPool(boolean direct, int maxPooled) {
+		this.direct = direct;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * @return a cleared buffer of {@link #BUFFER_SIZE} bytes, which should be released when it is not needed anymore
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer != null) {
+			pooledCount.decrementAndGet();
+			return buffer;
+		}
+
+		allocatedCount.incrementAndGet();
+		return direct ? ByteBuffer.allocateDirect(BUFFER_SIZE) : ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns the given buffer to the pool. The buffer must not be used anymore by the caller.
+	 *
+	 * @param buffer
+	 *            a buffer acquired from this pool
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer.isDirect() != direct || buffer.capacity() != BUFFER_SIZE) {
+			return; // not from this pool
+		}
+
+		if (pooledCount.incrementAndGet() <= maxPooled) {
+			buffer.clear();
+			buffers.offer(buffer);
+		} else {
+			pooledCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the number of buffers allocated by this pool so far
+	 */
+	public long getAllocatedCount() {
+		return allocatedCount.get();
+	}
+
+	/**
+	 * @return the number of released buffers kept in this pool
+	 */
+	public int getPooledCount() {
+		return pooledCount.get();
+	}
+}
@@ -0,0 +1,139 @@
+package oops.evaluation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * A sequence of bytes held in buffers of the direct buffer pool, which grows by whole buffers without copying the
+ * bytes already written. It is written once and then read any number of times, and its buffers are returned to
+ * the pool when it is released.
+ */
+final class ByteBufferChain {
+
+	private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+	private long size;
+
+	private boolean released;
+
+	/**
+	 * Appends the given bytes to the chain
+	 */
+	void write(byte[] b, int off, int len) {
+		checkNotReleased();
+
+		while (len > 0) {
+			ByteBuffer last = buffers.isEmpty() ? null : buffers.get(buffers.size() - 1);
+			if (last == null || !last.hasRemaining()) {
+				last = BufferPool.DIRECT.acquire();
+				buffers.add(last);
+			}
+
+			int count = Math.min(len, last.remaining());
+			last.put(b, off, count);
+			off += count;
+			len -= count;
+			size += count;
+		}
+	}
+
+	/**
+	 * Writes all the bytes of the chain to the given stream, without closing it
+	 *
+	 * @param out
+	 *            the stream where the bytes are written
+	 * @throws IOException
+	 */
+	void writeTo(OutputStream out) throws IOException {
+		ByteBuffer transfer = BufferPool.HEAP.acquire();
+		try (InputStream in = newInputStream()) {
+			byte[] bytes = transfer.array();
+			int read;
+			while ((read = in.read(bytes)) != -1) {
+				out.write(bytes, 0, read);
+			}
+		} finally {
+			BufferPool.HEAP.release(transfer);
+		}
+	}
+
+	/**
+	 * @return a new stream that reads the bytes of the chain from the start
+	 */
+	InputStream newInputStream() {
+		checkNotReleased();
+		return new ChainInputStream();
+	}
+
+	/**
+	 * @return the number of bytes of the chain
+	 */
+	long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the buffers of the chain to the pool. The chain cannot be used anymore.
+	 */
+	void release() {
+		if (!released) {
+			released = true;
+			buffers.forEach(BufferPool.DIRECT::release);
+			buffers.clear();
+		}
+	}
+
+	private void checkNotReleased() {
+		if (released) {
+			throw new IllegalStateException("The buffer chain has been released");
+		}
+	}
+
+	/**
+	 * A stream that reads the written bytes of each buffer in turn
+	 */
+	private class ChainInputStream extends InputStream {
+
+		private int index = -1;
+
+		private ByteBuffer current;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (current == null || !current.hasRemaining()) {
+				if (released) {
+					throw new IOException("The buffer chain has been released");
+				}
+				if (++index >= buffers.size()) {
+					return -1;
+				}
+				current = (ByteBuffer) buffers.get(index).duplicate().flip(); // the written bytes of the buffer
+			}
+
+			int count = Math.min(len, current.remaining());
+			current.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return current == null ? 0 : current.remaining();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Cancellation signal shared by all the stages of an evaluation. The stages check it between units of work and
+ * register callbacks to release the resources they block on (e.g. to close a connection) as soon as it is
+ * cancelled.
+ */
+public class CancellationToken {
+
+	private static final Logger logger = LoggerFactory.getLogger(CancellationToken.class);
+
+	private final List<Runnable> callbacks = new ArrayList<Runnable>();
+
+	private volatile boolean cancelled;
+
+	/**
+	 * Cancels this token and runs all its registered callbacks. Cancelling an already cancelled token does nothing.
+	 */
+	public void cancel() {
+		List<Runnable> callbacksToRun;
+
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			callbacksToRun = new ArrayList<Runnable>(callbacks);
+			callbacks.clear();
+		}
+
+		for (Runnable callback : callbacksToRun) {
+			try {
+				callback.run();
+			} catch (RuntimeException e) {
+				logger.debug("A cancellation callback has failed: " + e.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return true if this token has been cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Throws a CancellationException if this token has been cancelled
+	 *
+	 * @throws CancellationException
+	 *             if this token has been cancelled
+	 */
+	public void throwIfCancelled() {
+		if (cancelled) {
+			throw new CancellationException("The evaluation has been cancelled");
+		}
+	}
+
+	/**
+	 * Registers a callback to run when this token is cancelled. If it is already cancelled, the callback runs
+	 * immediately.
+	 *
+	 * @param callback
+	 *            the callback to run on cancellation
+	 * @return the registration, which unregisters the callback when it is closed
+	 */
+	public Registration onCancel(Runnable callback) {
+		synchronized (this) {
+			if (!cancelled) {
+				callbacks.add(callback);
+				return () -> {
+					synchronized (CancellationToken.this) {
+						callbacks.remove(callback);
+					}
+				};
+			}
+		}
+
+		callback.run();
+		return () -> {};
+	}
+
+	/**
+	 * A registered cancellation callback that can be unregistered by closing it
+	 */
+	public interface Registration extends AutoCloseable {
+		@Override
+		public void close();
+	}
+}
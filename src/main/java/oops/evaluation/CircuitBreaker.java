@@ -0,0 +1,154 @@
+package oops.evaluation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Circuit breaker of the requests to an OOPS! WS endpoint. After a number of consecutive failed requests it opens,
+ * and the requests fail right away without tying up a thread until the service times out. Once its open time has
+ * passed, a single trial request is let through: the breaker closes again if it succeeds and opens again if it
+ * fails.
+ */
+public class CircuitBreaker {
+
+	private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	public static final long DEFAULT_OPEN_TIME = 30 * 1000; // 30s before letting a trial request through
+
+	/**
+	 * The states of a circuit breaker
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+
+	private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+	private volatile long openTime = DEFAULT_OPEN_TIME;
+
+	// guarded by this
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean trialRunning;
+
+	public CircuitBreaker(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Checks whether a request can be sent. Every allowed request must then be reported to
+	 * {@link #recordSuccess()}, {@link #recordFailure()} or {@link #releasePermission()}.
+	 *
+	 * @throws CircuitOpenException
+	 *             if the breaker is open, or if it is half open and its trial request is still running
+	 */
+	public synchronized void acquirePermission() throws CircuitOpenException {
+		if (state == State.OPEN) {
+			long remaining = openedAt + openTime - System.currentTimeMillis();
+			if (remaining > 0) {
+				throw new CircuitOpenException(remaining);
+			}
+			state = State.HALF_OPEN;
+			trialRunning = false;
+		}
+
+		if (state == State.HALF_OPEN) {
+			if (trialRunning) {
+				throw new CircuitOpenException(openTime);
+			}
+			trialRunning = true;
+		}
+	}
+
+	/**
+	 * Releases the permission of a request that has not been sent or whose outcome is unknown (e.g. it has been
+	 * cancelled), without changing the state of the breaker
+	 */
+	public synchronized void releasePermission() {
+		trialRunning = false;
+	}
+
+	/**
+	 * Records a request that has reached the service, which closes the breaker
+	 */
+	public synchronized void recordSuccess() {
+		if (state != State.CLOSED) {
+			logger.info(String.format("recordSuccess[CircuitBreaker] %s closed", name));
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		trialRunning = false;
+	}
+
+	/**
+	 * Records a request that has failed with a retryable failure, which opens the breaker if it is the trial
+	 * request or if there have been too many consecutive failures
+	 */
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+			if (state != State.OPEN) {
+				logger.warn(String.format("%s circuit breaker opened after %d consecutive failures, the requests "
+						+ "are paused for %d ms", name, consecutiveFailures, openTime));
+			}
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			trialRunning = false;
+		}
+	}
+
+	/**
+	 * @return the current state of the breaker
+	 */
+	public synchronized State getState() {
+		if (state == State.OPEN && System.currentTimeMillis() >= openedAt + openTime) {
+			return State.HALF_OPEN; // the next request will be the trial one
+		}
+		return state;
+	}
+
+	/**
+	 * @return the number of consecutive failed requests
+	 */
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * @return the number of consecutive failed requests that opens the breaker
+	 */
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * @param failureThreshold
+	 *            the number of consecutive failed requests that opens the breaker
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+	}
+
+	/**
+	 * @return the time in milliseconds the breaker stays open before letting a trial request through
+	 */
+	public long getOpenTime() {
+		return openTime;
+	}
+
+	/**
+	 * @param openTime
+	 *            the time in milliseconds the breaker stays open before letting a trial request through
+	 */
+	public void setOpenTime(long openTime) {
+		this.openTime = openTime;
+	}
+}
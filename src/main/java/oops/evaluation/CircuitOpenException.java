@@ -0,0 +1,19 @@
+package oops.evaluation;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Failure of a request to the OOPS! WS that has not been sent because the circuit breaker of its endpoint is open
+ * after too many consecutive failures. It is not retryable, the request can be sent again once the breaker lets
+ * the requests through after its retry delay.
+ */
+public class CircuitOpenException extends OOPSServiceException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(long retryAfter) {
+		super(String.format("The OOPS! web service has failed repeatedly, the requests are paused for %d seconds",
+				Math.max(1, (retryAfter + 999) / 1000)), NO_STATUS_CODE, false, retryAfter);
+	}
+}
@@ -0,0 +1,99 @@
+package oops.evaluation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Enumeration of the HTTP content codings supported for the OOPS! WS request and response bodies.
+ */
+public enum ContentCoding {
+	IDENTITY("identity"), GZIP("gzip"), DEFLATE("deflate");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String headerValue;
+
+	private ContentCoding(String headerValue) {
+		this.headerValue = headerValue;
+	}
+
+	/**
+	 * @return the value of this coding in the Content-Encoding and Accept-Encoding headers
+	 */
+	public String getHeaderValue() {
+		return headerValue;
+	}
+
+	/**
+	 * Wraps the given stream so that everything written to it is encoded with this coding. Closing the returned
+	 * stream finishes the encoding and closes the given stream.
+	 *
+	 * @param out
+	 *            the stream to wrap
+	 * @return the encoding stream
+	 * @throws IOException
+	 */
+	public OutputStream encode(OutputStream out) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPOutputStream(out, BUFFER_SIZE);
+		case DEFLATE:
+			return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE);
+		default:
+			return out;
+		}
+	}
+
+	/**
+	 * Wraps the given stream so that everything read from it is decoded with this coding
+	 *
+	 * @param in
+	 *            the stream to wrap
+	 * @return the decoding stream
+	 * @throws IOException
+	 */
+	public InputStream decode(InputStream in) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		case DEFLATE:
+			return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+		default:
+			return in;
+		}
+	}
+
+	/**
+	 * Returns the coding for the given Content-Encoding header value. A missing or unknown value is treated as
+	 * the identity coding.
+	 *
+	 * @param headerValue
+	 *            the Content-Encoding header value
+	 * @return the coding for the given header value
+	 */
+	public static ContentCoding fromHeader(String headerValue) {
+		if (headerValue != null) {
+			String value = headerValue.trim();
+			for (ContentCoding coding : values()) {
+				if (coding.headerValue.equalsIgnoreCase(value)) {
+					return coding;
+				}
+			}
+			if (value.equalsIgnoreCase("x-gzip")) {
+				return GZIP;
+			}
+		}
+
+		return IDENTITY;
+	}
+}
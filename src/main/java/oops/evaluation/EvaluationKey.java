@@ -0,0 +1,63 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Identity of an evaluation: the fingerprint of the evaluated ontology content and the sorted set of the checked
+ * pitfalls. Two evaluations with equal keys get the same results from the OOPS! WS.
+ */
+public final class EvaluationKey {
+
+	private final OntologyFingerprint fingerprint;
+
+	private final List<String> pitfalls;
+
+	/**
+	 * @param fingerprint
+	 *            the fingerprint of the evaluated ontology
+	 * @param pitfallsSubset
+	 *            the checked pitfalls in any order, all of them if it is empty
+	 */
+	public EvaluationKey(OntologyFingerprint fingerprint, List<String> pitfallsSubset) {
+		this.fingerprint = fingerprint;
+		this.pitfalls = Collections.unmodifiableList(new ArrayList<String>(new TreeSet<String>(pitfallsSubset)));
+	}
+
+	/**
+	 * @return the fingerprint of the evaluated ontology
+	 */
+	public OntologyFingerprint getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return the sorted checked pitfalls, empty if all of them are checked
+	 */
+	public List<String> getPitfalls() {
+		return pitfalls;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) return true;
+		if (!(other instanceof EvaluationKey)) return false;
+		EvaluationKey otherKey = (EvaluationKey) other;
+		return fingerprint.equals(otherKey.fingerprint) && pitfalls.equals(otherKey.pitfalls);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * fingerprint.hashCode() + pitfalls.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return fingerprint + pitfalls.toString();
+	}
+}
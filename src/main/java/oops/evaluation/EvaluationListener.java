@@ -14,4 +14,14 @@ public interface EvaluationListener {
 	public void onEvaluationDone(EvaluationResult result);
 	
 	public void OnEvaluationException(Throwable exception);
+	
+	/**
+	 * Receives the progress of the requests of the evaluation in progress, at most once per progress interval and
+	 * from a background thread. It does nothing by default.
+	 * 
+	 * @param event
+	 *            the progress of the requests so far
+	 */
+	public default void onEvaluationProgress(EvaluationProgressEvent event) {
+	}
 }
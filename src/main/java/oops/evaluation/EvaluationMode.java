@@ -0,0 +1,26 @@
+package oops.evaluation;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * The ways an ontology can be sent to the OOPS! WS to be evaluated.
+ */
+public enum EvaluationMode {
+	/**
+	 * The whole ontology is evaluated with a single request
+	 */
+	SINGLE_REQUEST,
+
+	/**
+	 * The ontology is split into locality-based modules that are evaluated with concurrent requests, and their
+	 * results are merged. The pitfalls about the ontology in general are checked once on the whole ontology.
+	 */
+	MODULES,
+
+	/**
+	 * The selected pitfalls are split into groups with similar estimated latencies that are checked with
+	 * concurrent requests, and their results are merged as they arrive
+	 */
+	PITFALL_SHARDS
+}
@@ -0,0 +1,21 @@
+package oops.evaluation;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * The priorities of the evaluation jobs, in order of precedence.
+ */
+public enum EvaluationPriority {
+	/**
+	 * The evaluation has been requested by the user, who is waiting for its results. It is run before any waiting
+	 * background job, and the parts of the background evaluations wait while it runs.
+	 */
+	INTERACTIVE,
+
+	/**
+	 * The evaluation is background work nobody is waiting for (e.g. a pre-evaluation, a batch run or the warming
+	 * of the caches), run when no interactive job is waiting
+	 */
+	BACKGROUND
+}
@@ -0,0 +1,147 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import oops.model.EvaluationResult;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Results gathered so far by an evaluation in progress, to deliver a partial result before it finishes. The stages
+ * of the evaluation add the results of the parts they finish (e.g. the shards or the modules of an ontology), and
+ * the stages that evaluate several ontologies start a nested progress for each one, whose results are tagged with
+ * their source ontology.
+ * <p>
+ * The progress of the requests of the evaluation is tracked by its transfer progress, shared by the nested ones.
+ * <p>
+ * Once the evaluation is finished no partial result is delivered anymore. The delivery of a partial result holds
+ * the lock of the progress, so the complete result is always delivered after it.
+ */
+final class EvaluationProgress {
+
+	private final TransferProgress transfers;
+
+	private final List<FinishedPart> finishedParts = new ArrayList<FinishedPart>(); // guarded by this
+
+	// nested progresses of the parts in progress and their source ontologies
+	private final Map<EvaluationProgress, String> runningParts = new LinkedHashMap<EvaluationProgress, String>();
+
+	private boolean finished; // guarded by this
+
+	private boolean partialResultDelivered; // guarded by this
+
+	EvaluationProgress() {
+		this(new TransferProgress());
+	}
+
+	/**
+	 * @param transfers
+	 *            the progress of the requests of the evaluation
+	 */
+	EvaluationProgress(TransferProgress transfers) {
+		this.transfers = transfers;
+	}
+
+	/**
+	 * @return the progress of the requests of the evaluation
+	 */
+	TransferProgress getTransfers() {
+		return transfers;
+	}
+
+	/**
+	 * Adds the result of a finished part of the evaluation
+	 *
+	 * @param result
+	 *            the result of the part
+	 */
+	synchronized void add(EvaluationResult result) {
+		finishedParts.add(new FinishedPart(result, null));
+	}
+
+	/**
+	 * Starts a nested progress for the evaluation of an ontology, which is part of this one until it is finished
+	 *
+	 * @param sourceOntology
+	 *            the IRI of the evaluated ontology, which tags its pitfalls
+	 * @return the progress of the evaluation of the ontology
+	 */
+	synchronized EvaluationProgress startPart(String sourceOntology) {
+		EvaluationProgress part = new EvaluationProgress(transfers);
+		runningParts.put(part, sourceOntology);
+		return part;
+	}
+
+	/**
+	 * Replaces a nested progress with the complete result of its ontology
+	 *
+	 * @param part
+	 *            the nested progress started with {@link #startPart(String)}
+	 * @param result
+	 *            the result of the ontology
+	 */
+	synchronized void finishPart(EvaluationProgress part, EvaluationResult result) {
+		String sourceOntology = runningParts.remove(part);
+		finishedParts.add(new FinishedPart(result, sourceOntology));
+	}
+
+	/**
+	 * @return the merged results of the finished parts and of the nested progresses, without the incomplete flag
+	 */
+	synchronized EvaluationResult getPartialResult() {
+		EvaluationResultMerger merger = new EvaluationResultMerger();
+		for (FinishedPart part : finishedParts) {
+			merger.add(part.result, part.sourceOntology);
+		}
+		runningParts.forEach((part, sourceOntology) -> merger.add(part.getPartialResult(), sourceOntology));
+
+		return merger.getResult();
+	}
+
+	/**
+	 * Marks the evaluation as finished, waiting for the delivery of a partial result in progress
+	 */
+	synchronized void finish() {
+		finished = true;
+	}
+
+	/**
+	 * @return true if the evaluation is finished
+	 */
+	synchronized boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Records that a partial result has been delivered to the listeners
+	 */
+	synchronized void partialResultDelivered() {
+		partialResultDelivered = true;
+	}
+
+	/**
+	 * @return true if a partial result has been delivered to the listeners
+	 */
+	synchronized boolean isPartialResultDelivered() {
+		return partialResultDelivered;
+	}
+
+	/**
+	 * The result of a finished part and the ontology it is about, null if it is the evaluated one
+	 */
+	private static class FinishedPart {
+
+		private final EvaluationResult result;
+
+		private final String sourceOntology;
+
+		FinishedPart(EvaluationResult result, String sourceOntology) {
+			this.result = result;
+			this.sourceOntology = sourceOntology;
+		}
+	}
+}
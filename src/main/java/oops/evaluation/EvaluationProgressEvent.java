@@ -0,0 +1,160 @@
+package oops.evaluation;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Snapshot of the progress of the requests of an evaluation to the OOPS! WS, delivered periodically to the
+ * evaluation listeners while the evaluation runs. The byte counts add up all the requests of the evaluation.
+ */
+public final class EvaluationProgressEvent {
+
+	/**
+	 * The stages of a request to the OOPS! WS, in order
+	 */
+	public enum Stage {
+		/**
+		 * The ontology is being projected or serialized before it is sent
+		 */
+		SERIALIZING,
+
+		/**
+		 * The ontology is being uploaded, and serialized on the way unless it is sent again
+		 */
+		UPLOADING,
+
+		/**
+		 * The whole request has been uploaded and the OOPS! WS is evaluating it
+		 */
+		WAITING,
+
+		/**
+		 * The response is being downloaded, and parsed while it is received
+		 */
+		DOWNLOADING
+	}
+
+	private final Stage stage;
+
+	private final long serializedBytes;
+
+	private final long expectedBytes;
+
+	private final long uploadedBytes;
+
+	private final long downloadedBytes;
+
+	private final long parsedElements;
+
+	private final int requestsCount;
+
+	private final int finishedRequestsCount;
+
+	private final long elapsedMillis;
+
+	private final long remainingMillis;
+
+	EvaluationProgressEvent(Stage stage, long serializedBytes, long expectedBytes, long uploadedBytes,
+			long downloadedBytes, long parsedElements, int requestsCount, int finishedRequestsCount,
+			long elapsedMillis, long remainingMillis) {
+		this.stage = stage;
+		this.serializedBytes = serializedBytes;
+		this.expectedBytes = expectedBytes;
+		this.uploadedBytes = uploadedBytes;
+		this.downloadedBytes = downloadedBytes;
+		this.parsedElements = parsedElements;
+		this.requestsCount = requestsCount;
+		this.finishedRequestsCount = finishedRequestsCount;
+		this.elapsedMillis = elapsedMillis;
+		this.remainingMillis = remainingMillis;
+	}
+
+	/**
+	 * @return the earliest stage of the requests in progress, or null if there is none
+	 */
+	public Stage getStage() {
+		return stage;
+	}
+
+	/**
+	 * @return the number of bytes of the requests serialized so far, before their coding
+	 */
+	public long getSerializedBytes() {
+		return serializedBytes;
+	}
+
+	/**
+	 * @return the estimated number of bytes of the serialized requests started so far
+	 */
+	public long getExpectedBytes() {
+		return expectedBytes;
+	}
+
+	/**
+	 * @return the number of bytes uploaded so far, as they were sent
+	 */
+	public long getUploadedBytes() {
+		return uploadedBytes;
+	}
+
+	/**
+	 * @return the number of bytes of the responses downloaded so far, as they were received
+	 */
+	public long getDownloadedBytes() {
+		return downloadedBytes;
+	}
+
+	/**
+	 * @return the number of elements of the responses parsed so far
+	 */
+	public long getParsedElements() {
+		return parsedElements;
+	}
+
+	/**
+	 * @return the number of requests started so far
+	 */
+	public int getRequestsCount() {
+		return requestsCount;
+	}
+
+	/**
+	 * @return the number of requests finished so far
+	 */
+	public int getFinishedRequestsCount() {
+		return finishedRequestsCount;
+	}
+
+	/**
+	 * @return the time since the first request started in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return the estimated time until the requests in progress finish in milliseconds, -1 if it is unknown (e.g.
+	 *         a request is taking longer than expected)
+	 */
+	public long getRemainingMillis() {
+		return remainingMillis;
+	}
+
+	/**
+	 * @return the estimated completed fraction of the requests in progress, between 0 and 1, or -1 if it is unknown
+	 */
+	public double getCompletion() {
+		if (remainingMillis < 0) {
+			return -1;
+		}
+		return elapsedMillis + remainingMillis == 0 ? 1 : (double) elapsedMillis / (elapsedMillis + remainingMillis);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d of %d bytes serialized, %d uploaded, %d downloaded, %d elements parsed, "
+				+ "%d of %d requests finished, %d ms elapsed, %d ms remaining", stage, serializedBytes, expectedBytes,
+				uploadedBytes, downloadedBytes, parsedElements, finishedRequestsCount, requestsCount, elapsedMillis,
+				remainingMillis);
+	}
+}
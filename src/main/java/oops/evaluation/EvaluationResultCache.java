@@ -0,0 +1,273 @@
+package oops.evaluation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oops.model.ElementPair;
+import oops.model.EvaluationResult;
+import oops.model.InfoElement;
+import oops.model.InfoElementWithAffectedElems;
+import oops.model.Pitfall;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * In-memory cache of evaluation results by evaluation key. It is bounded both by the number of entries and by
+ * the estimated memory of the cached results, evicting the least recently used entries first. The cached results
+ * are shared with the listeners, so they must not be modified.
+ */
+public class EvaluationResultCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(EvaluationResultCache.class);
+
+	private static final int DEFAULT_MAX_ENTRIES = 32;
+
+	private static final long DEFAULT_MAX_MEMORY = 64L * 1024 * 1024; // 64 MB of estimated results size
+
+	// rough sizes in bytes of the objects of a result, used to estimate its memory footprint
+	private static final int OBJECT_SIZE = 16;
+	private static final int REFERENCE_SIZE = 8;
+	private static final int STRING_SIZE = 40;
+	private static final int LIST_SIZE = 40;
+	private static final int MAP_ENTRY_SIZE = 48;
+
+	private final LinkedHashMap<EvaluationKey, CachedResult> entries =
+			new LinkedHashMap<EvaluationKey, CachedResult>(16, 0.75f, true); // access order for the LRU eviction
+
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	private long maxMemory = DEFAULT_MAX_MEMORY;
+
+	private long memory;
+
+	private long hits;
+
+	private long misses;
+
+	/**
+	 * Returns the cached result for the given key and marks it as the most recently used one
+	 *
+	 * @param key
+	 *            the evaluation key
+	 * @return the cached result, or null if there is none
+	 */
+	public synchronized EvaluationResult get(EvaluationKey key) {
+		CachedResult cachedResult = entries.get(key);
+
+		if (cachedResult == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return cachedResult.result;
+	}
+
+	/**
+	 * Caches the given result, evicting the least recently used results if the cache exceeds its bounds. A result
+	 * bigger than the whole memory bound is not cached.
+	 *
+	 * @param key
+	 *            the evaluation key
+	 * @param result
+	 *            the evaluation result
+	 */
+	public synchronized void put(EvaluationKey key, EvaluationResult result) {
+		long size = estimateSize(result);
+
+		if (size > maxMemory) {
+			logger.info(String.format("put[EvaluationResultCache] result of %d bytes is too big to be cached", size));
+			return;
+		}
+
+		CachedResult previous = entries.put(key, new CachedResult(result, size));
+		if (previous != null) {
+			memory -= previous.size;
+		}
+		memory += size;
+
+		evict();
+	}
+
+	/**
+	 * Removes all the cached results
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		memory = 0;
+	}
+
+	/**
+	 * Evicts the least recently used results until the cache is within its bounds
+	 */
+	private void evict() {
+		Iterator<Map.Entry<EvaluationKey, CachedResult>> iterator = entries.entrySet().iterator();
+
+		while ((entries.size() > maxEntries || memory > maxMemory) && iterator.hasNext()) {
+			Map.Entry<EvaluationKey, CachedResult> eldest = iterator.next();
+			memory -= eldest.getValue().size;
+			iterator.remove();
+
+			logger.debug(String.format("evict[EvaluationResultCache] evicted the result for %s", eldest.getKey()));
+		}
+	}
+
+	/**
+	 * Estimates the memory footprint of the given result in bytes
+	 *
+	 * @param result
+	 *            the evaluation result
+	 * @return the estimated size of the given result
+	 */
+	static long estimateSize(EvaluationResult result) {
+		long size = OBJECT_SIZE + 10 * REFERENCE_SIZE;
+
+		if (result.getDetectedPitfalls() != null) {
+			for (Map.Entry<String, ? extends List<Pitfall>> entry : result.getDetectedPitfalls().entrySet()) {
+				size += MAP_ENTRY_SIZE + estimateSize(entry.getKey()) + LIST_SIZE;
+				for (Pitfall pitfall : entry.getValue()) {
+					size += REFERENCE_SIZE + estimateSize(pitfall) + estimateSize(pitfall.getPitfallID());
+				}
+			}
+		}
+
+		size += estimatePairsSize(result.getElementsWithSameLabel());
+		size += estimatePairsSize(result.getEquivalentClasses());
+		size += estimatePairsSize(result.getEquivalentRelations());
+		size += estimatePairsSize(result.getEquivalentAttributes());
+		size += estimatePairsSize(result.getWrongInverseRelations());
+		size += estimatePairsSize(result.getMightBeInverseRelations());
+		size += estimateStringsSize(result.getRelationsWithoutInverse());
+		size += estimateInfoElementsSize(result.getSuggestions());
+		size += estimateInfoElementsSize(result.getWarnings());
+
+		return size;
+	}
+
+	private static long estimatePairsSize(List<ElementPair> pairs) {
+		if (pairs == null) {
+			return 0;
+		}
+
+		long size = LIST_SIZE;
+		for (ElementPair pair : pairs) {
+			size += REFERENCE_SIZE + OBJECT_SIZE + 2 * REFERENCE_SIZE
+					+ estimateSize(pair.getElementA()) + estimateSize(pair.getElementB());
+		}
+		return size;
+	}
+
+	private static long estimateStringsSize(List<String> strings) {
+		if (strings == null) {
+			return 0;
+		}
+
+		long size = LIST_SIZE;
+		for (String string : strings) {
+			size += REFERENCE_SIZE + estimateSize(string);
+		}
+		return size;
+	}
+
+	private static long estimateInfoElementsSize(List<InfoElementWithAffectedElems> elements) {
+		if (elements == null) {
+			return 0;
+		}
+
+		long size = LIST_SIZE;
+		for (InfoElementWithAffectedElems element : elements) {
+			size += REFERENCE_SIZE + estimateSize(element) + estimateStringsSize(element.getAffectedElements());
+		}
+		return size;
+	}
+
+	private static long estimateSize(InfoElement element) {
+		return OBJECT_SIZE + 4 * REFERENCE_SIZE + estimateSize(element.getName())
+				+ estimateSize(element.getDescription());
+	}
+
+	private static long estimateSize(String string) {
+		return string == null ? 0 : STRING_SIZE + 2L * string.length();
+	}
+
+	/**
+	 * @return the number of cached results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the estimated memory of the cached results in bytes
+	 */
+	public synchronized long getMemory() {
+		return memory;
+	}
+
+	/**
+	 * @return the number of lookups that found a cached result
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that did not find a cached result
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the maximum number of cached results
+	 */
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of cached results to set
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		evict();
+	}
+
+	/**
+	 * @return the maximum estimated memory of the cached results in bytes
+	 */
+	public synchronized long getMaxMemory() {
+		return maxMemory;
+	}
+
+	/**
+	 * @param maxMemory
+	 *            the maximum estimated memory of the cached results in bytes to set
+	 */
+	public synchronized void setMaxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+		evict();
+	}
+
+	/**
+	 * A cached result with its estimated size
+	 */
+	private static class CachedResult {
+
+		private final EvaluationResult result;
+
+		private final long size;
+
+		CachedResult(EvaluationResult result, long size) {
+			this.result = result;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package oops.evaluation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import oops.model.ElementPair;
+import oops.model.EvaluationResult;
+import oops.model.InfoElementWithAffectedElems;
+import oops.model.Pitfall;
+import oops.model.PitfallImportanceLevel;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Compact binary encoding of the evaluation results. Every distinct string (IRIs, names, descriptions) and every
+ * distinct pitfall is written once in a table and referenced by its index, and all the numbers are written as
+ * variable-length integers. A null string or list is written as index or size 0, so the real ones are shifted by
+ * one.
+ */
+final class EvaluationResultCodec {
+
+	static final int VERSION = 2; // the pitfalls have their source ontology since version 2
+
+	private static final int MIN_VERSION = 1;
+
+	private EvaluationResultCodec() {
+	}
+
+	/**
+	 * Encodes the given result
+	 *
+	 * @param result
+	 *            the evaluation result to encode
+	 * @return the encoded result
+	 */
+	static byte[] encode(EvaluationResult result) {
+		Encoder encoder = new Encoder();
+
+		HashMap<String, ArrayList<Pitfall>> detectedPitfalls = result.getDetectedPitfalls();
+		if (detectedPitfalls == null) {
+			encoder.writeSize(null);
+		} else {
+			encoder.writeSize(detectedPitfalls.keySet());
+			for (Map.Entry<String, ArrayList<Pitfall>> entry : detectedPitfalls.entrySet()) {
+				encoder.writeString(entry.getKey());
+				encoder.writeVarInt(entry.getValue().size());
+				for (Pitfall pitfall : entry.getValue()) {
+					encoder.writePitfall(pitfall);
+				}
+			}
+		}
+
+		encoder.writePairs(result.getElementsWithSameLabel());
+		encoder.writePairs(result.getEquivalentClasses());
+		encoder.writePairs(result.getEquivalentRelations());
+		encoder.writePairs(result.getEquivalentAttributes());
+		encoder.writePairs(result.getWrongInverseRelations());
+		encoder.writePairs(result.getMightBeInverseRelations());
+		encoder.writeStrings(result.getRelationsWithoutInverse());
+		encoder.writeInfoElements(result.getSuggestions());
+		encoder.writeInfoElements(result.getWarnings());
+
+		return encoder.toByteArray();
+	}
+
+	/**
+	 * Decodes a result encoded with {@link #encode(EvaluationResult)}
+	 *
+	 * @param buffer
+	 *            the buffer with the encoded result
+	 * @return the decoded result
+	 * @throws IOException
+	 *             if the encoded result is malformed or has an unsupported version
+	 */
+	static EvaluationResult decode(ByteBuffer buffer) throws IOException {
+		try {
+			Decoder decoder = new Decoder(buffer);
+			EvaluationResult result = new EvaluationResult();
+
+			int detectedPitfallsSize = decoder.readSize();
+			if (detectedPitfallsSize >= 0) {
+				HashMap<String, ArrayList<Pitfall>> detectedPitfalls = new HashMap<String, ArrayList<Pitfall>>();
+				for (int i = 0; i < detectedPitfallsSize; i++) {
+					String element = decoder.readString();
+					int pitfallsCount = decoder.readVarInt();
+					ArrayList<Pitfall> pitfalls = new ArrayList<Pitfall>(pitfallsCount);
+					for (int j = 0; j < pitfallsCount; j++) {
+						pitfalls.add(decoder.readPitfall());
+					}
+					detectedPitfalls.put(element, pitfalls);
+				}
+				result.setDetectedPitfalls(detectedPitfalls);
+			}
+
+			result.setElementsWithSameLabel(decoder.readPairs());
+			result.setEquivalentClasses(decoder.readPairs());
+			result.setEquivalentRelations(decoder.readPairs());
+			result.setEquivalentAttributes(decoder.readPairs());
+			result.setWrongInverseRelations(decoder.readPairs());
+			result.setMightBeInverseRelations(decoder.readPairs());
+			result.setRelationsWithoutInverse(decoder.readStrings());
+			result.setSuggestions(decoder.readInfoElements());
+			result.setWarnings(decoder.readInfoElements());
+
+			return result;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Malformed encoded evaluation result", e);
+		}
+	}
+
+	/**
+	 * Writes the body of the encoding while collecting the strings and pitfalls tables, which are written first
+	 * when the encoding is finished
+	 */
+	private static class Encoder {
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+
+		private final HashMap<List<Object>, Integer> pitfalls = new HashMap<List<Object>, Integer>();
+
+		private final ByteArrayOutputStream pitfallsTable = new ByteArrayOutputStream();
+
+		void writeString(String string) {
+			writeVarInt(body, stringReference(string));
+		}
+
+		void writePitfall(Pitfall pitfall) {
+			List<Object> pitfallKey = Arrays.asList(pitfall.getImportanceLevel(), pitfall.getPitfallID(),
+					pitfall.getName(), pitfall.getDescription(), pitfall.getNumAffectedElements(),
+					pitfall.getSourceOntology());
+
+			Integer index = pitfalls.get(pitfallKey);
+			if (index == null) {
+				index = pitfalls.size();
+				pitfalls.put(pitfallKey, index);
+
+				writeVarInt(pitfallsTable, pitfall.getImportanceLevel().ordinal());
+				writeVarInt(pitfallsTable, stringReference(pitfall.getPitfallID()));
+				writeVarInt(pitfallsTable, stringReference(pitfall.getName()));
+				writeVarInt(pitfallsTable, stringReference(pitfall.getDescription()));
+				writeVarInt(pitfallsTable, pitfall.getNumAffectedElements());
+				writeVarInt(pitfallsTable, stringReference(pitfall.getSourceOntology()));
+			}
+
+			writeVarInt(index);
+		}
+
+		void writePairs(List<ElementPair> pairs) {
+			writeSize(pairs);
+			if (pairs != null) {
+				for (ElementPair pair : pairs) {
+					writeString(pair.getElementA());
+					writeString(pair.getElementB());
+				}
+			}
+		}
+
+		void writeStrings(List<String> values) {
+			writeSize(values);
+			if (values != null) {
+				for (String value : values) {
+					writeString(value);
+				}
+			}
+		}
+
+		void writeInfoElements(List<InfoElementWithAffectedElems> elements) {
+			writeSize(elements);
+			if (elements != null) {
+				for (InfoElementWithAffectedElems element : elements) {
+					writeString(element.getName());
+					writeString(element.getDescription());
+					writeVarInt(element.getNumAffectedElements());
+					writeStrings(element.getAffectedElements());
+				}
+			}
+		}
+
+		void writeSize(Collection<?> collection) {
+			writeVarInt(collection == null ? 0 : collection.size() + 1);
+		}
+
+		void writeVarInt(int value) {
+			writeVarInt(body, value);
+		}
+
+		byte[] toByteArray() {
+			String[] stringsTable = new String[strings.size()];
+			strings.forEach((string, index) -> stringsTable[index] = string);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + pitfallsTable.size() + 64);
+			writeVarInt(out, VERSION);
+
+			writeVarInt(out, stringsTable.length);
+			for (String string : stringsTable) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				writeVarInt(out, bytes.length);
+				out.write(bytes, 0, bytes.length);
+			}
+
+			writeVarInt(out, pitfalls.size());
+			out.write(pitfallsTable.toByteArray(), 0, pitfallsTable.size());
+
+			out.write(body.toByteArray(), 0, body.size());
+			return out.toByteArray();
+		}
+
+		private int stringReference(String string) {
+			if (string == null) {
+				return 0;
+			}
+
+			Integer index = strings.get(string);
+			if (index == null) {
+				index = strings.size();
+				strings.put(string, index);
+			}
+			return index + 1;
+		}
+
+		private static void writeVarInt(ByteArrayOutputStream out, int value) {
+			while ((value & ~0x7F) != 0) {
+				out.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.write(value);
+		}
+	}
+
+	/**
+	 * Reads an encoded result, resolving the references to the strings and pitfalls tables
+	 */
+	private static class Decoder {
+
+		private final ByteBuffer buffer;
+
+		private final String[] strings;
+
+		private final Pitfall[] pitfalls;
+
+		Decoder(ByteBuffer buffer) throws IOException {
+			this.buffer = buffer;
+
+			int version = readVarInt();
+			if (version < MIN_VERSION || version > VERSION) {
+				throw new IOException("Unsupported encoded evaluation result version " + version);
+			}
+
+			strings = new String[readVarInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[readVarInt()];
+				buffer.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			PitfallImportanceLevel[] importanceLevels = PitfallImportanceLevel.values();
+			pitfalls = new Pitfall[readVarInt()];
+			for (int i = 0; i < pitfalls.length; i++) {
+				PitfallImportanceLevel importance = importanceLevels[readVarInt()];
+				String pitfallID = readString();
+				String name = readString();
+				String description = readString();
+				int numAffectedElements = readVarInt();
+				String sourceOntology = version >= 2 ? readString() : null;
+				pitfalls[i] = new Pitfall(importance, pitfallID, name, description, numAffectedElements,
+						sourceOntology);
+			}
+		}
+
+		String readString() {
+			int reference = readVarInt();
+			return reference == 0 ? null : strings[reference - 1];
+		}
+
+		Pitfall readPitfall() {
+			return pitfalls[readVarInt()];
+		}
+
+		List<ElementPair> readPairs() {
+			int size = readSize();
+			if (size < 0) {
+				return null;
+			}
+
+			List<ElementPair> pairs = new ArrayList<ElementPair>(size);
+			for (int i = 0; i < size; i++) {
+				pairs.add(new ElementPair(readString(), readString()));
+			}
+			return pairs;
+		}
+
+		List<String> readStrings() {
+			int size = readSize();
+			if (size < 0) {
+				return null;
+			}
+
+			List<String> values = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(readString());
+			}
+			return values;
+		}
+
+		List<InfoElementWithAffectedElems> readInfoElements() {
+			int size = readSize();
+			if (size < 0) {
+				return null;
+			}
+
+			List<InfoElementWithAffectedElems> elements = new ArrayList<InfoElementWithAffectedElems>(size);
+			for (int i = 0; i < size; i++) {
+				String name = readString();
+				String description = readString();
+				int numAffectedElements = readVarInt();
+				elements.add(new InfoElementWithAffectedElems(name, description, numAffectedElements,
+						readStrings()));
+			}
+			return elements;
+		}
+
+		/**
+		 * @return the size of a collection, or -1 if it is null
+		 */
+		int readSize() {
+			return readVarInt() - 1;
+		}
+
+		int readVarInt() {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				byte b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Malformed variable-length integer");
+		}
+	}
+}
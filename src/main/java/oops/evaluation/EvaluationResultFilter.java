@@ -0,0 +1,141 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+import oops.model.ElementPair;
+import oops.model.EvaluationResult;
+import oops.model.InfoElementWithAffectedElems;
+import oops.model.Pitfall;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Filters of the evaluation results by element, used to patch a previous result with the results of the
+ * re-evaluation of the elements that have changed since then. The filtered results are new ones, the given
+ * results are not modified.
+ */
+final class EvaluationResultFilter {
+
+	private EvaluationResultFilter() {
+	}
+
+	/**
+	 * Returns the given result without anything about the given elements (their pitfalls, the pairs they are part
+	 * of and their suggestions and warnings) nor the given general pitfalls
+	 *
+	 * @param result
+	 *            the result to filter
+	 * @param elements
+	 *            the IRIs of the elements to remove
+	 * @param generalPitfalls
+	 *            the general pitfalls to remove
+	 * @return the filtered result
+	 */
+	static EvaluationResult withoutElements(EvaluationResult result, Set<String> elements,
+			Collection<String> generalPitfalls) {
+		return filter(result,
+				(element, pitfall) -> !elements.contains(element) && !generalPitfalls.contains(pitfall),
+				pair -> !elements.contains(pair.getElementA()) && !elements.contains(pair.getElementB()),
+				element -> !elements.contains(element));
+	}
+
+	/**
+	 * Returns only the part of the given result about the given elements (their pitfalls, the pairs they are part
+	 * of and their suggestions and warnings) and the general pitfalls
+	 *
+	 * @param result
+	 *            the result to filter
+	 * @param elements
+	 *            the IRIs of the elements to keep
+	 * @return the filtered result
+	 */
+	static EvaluationResult onlyElements(EvaluationResult result, Set<String> elements) {
+		return filter(result,
+				(element, pitfall) -> elements.contains(element) || OOPSEvaluator.isGeneralPitfall(pitfall),
+				pair -> elements.contains(pair.getElementA()) || elements.contains(pair.getElementB()),
+				element -> elements.contains(element));
+	}
+
+	/**
+	 * Returns a new result with the pitfalls of the elements, the pairs and the elements affected by the
+	 * suggestions and warnings accepted by the given predicates. The suggestions and warnings left without
+	 * affected elements are removed, and the ones that never had any are kept.
+	 */
+	private static EvaluationResult filter(EvaluationResult result, BiPredicate<String, String> keepPitfall,
+			Predicate<ElementPair> keepPair, Predicate<String> keepElement) {
+		EvaluationResult filtered = new EvaluationResult();
+
+		if (result.getDetectedPitfalls() != null) {
+			HashMap<String, ArrayList<Pitfall>> detectedPitfalls = new HashMap<String, ArrayList<Pitfall>>();
+
+			result.getDetectedPitfalls().forEach((element, pitfalls) -> {
+				ArrayList<Pitfall> keptPitfalls = new ArrayList<Pitfall>();
+				for (Pitfall pitfall : pitfalls) {
+					if (keepPitfall.test(element, pitfall.getPitfallID())) {
+						keptPitfalls.add(pitfall);
+					}
+				}
+				if (!keptPitfalls.isEmpty()) {
+					detectedPitfalls.put(element, keptPitfalls);
+				}
+			});
+
+			filtered.setDetectedPitfalls(detectedPitfalls);
+		}
+
+		filtered.setElementsWithSameLabel(filterList(result.getElementsWithSameLabel(), keepPair));
+		filtered.setEquivalentClasses(filterList(result.getEquivalentClasses(), keepPair));
+		filtered.setEquivalentRelations(filterList(result.getEquivalentRelations(), keepPair));
+		filtered.setEquivalentAttributes(filterList(result.getEquivalentAttributes(), keepPair));
+		filtered.setWrongInverseRelations(filterList(result.getWrongInverseRelations(), keepPair));
+		filtered.setMightBeInverseRelations(filterList(result.getMightBeInverseRelations(), keepPair));
+		filtered.setRelationsWithoutInverse(filterList(result.getRelationsWithoutInverse(), keepElement));
+		filtered.setSuggestions(filterInfoElements(result.getSuggestions(), keepElement));
+		filtered.setWarnings(filterInfoElements(result.getWarnings(), keepElement));
+
+		return filtered;
+	}
+
+	private static <T> List<T> filterList(List<T> values, Predicate<T> keep) {
+		if (values == null) {
+			return null;
+		}
+
+		List<T> keptValues = new ArrayList<T>();
+		for (T value : values) {
+			if (keep.test(value)) {
+				keptValues.add(value);
+			}
+		}
+		return keptValues;
+	}
+
+	private static List<InfoElementWithAffectedElems> filterInfoElements(List<InfoElementWithAffectedElems> elements,
+			Predicate<String> keepElement) {
+		if (elements == null) {
+			return null;
+		}
+
+		List<InfoElementWithAffectedElems> keptElements = new ArrayList<InfoElementWithAffectedElems>();
+		for (InfoElementWithAffectedElems element : elements) {
+			if (element.getAffectedElements() == null || element.getAffectedElements().isEmpty()) {
+				keptElements.add(element); // not about any element
+				continue;
+			}
+
+			List<String> affectedElements = filterList(element.getAffectedElements(), keepElement);
+			if (!affectedElements.isEmpty()) {
+				keptElements.add(new InfoElementWithAffectedElems(element.getName(), element.getDescription(),
+						affectedElements.size(), affectedElements));
+			}
+		}
+		return keptElements;
+	}
+}
@@ -0,0 +1,249 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oops.model.ElementPair;
+import oops.model.EvaluationResult;
+import oops.model.InfoElementWithAffectedElems;
+import oops.model.Pitfall;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Merges the partial results of the evaluations of parts of an ontology (e.g. its modules), of groups of
+ * pitfalls or of the ontologies of an imports closure into a single result. The partial results are added as
+ * they arrive, so only the last one is left to merge when the last request finishes.
+ * <p>
+ * The parts can overlap, so every pitfall of an element, pair of elements, suggestion and warning is kept once.
+ * A pitfall detected in a single partial result keeps the number of affected elements reported for it, and it is
+ * counted again on the merged elements if it is detected in several of them. The pitfalls of different source
+ * ontologies are kept apart.
+ */
+public class EvaluationResultMerger {
+
+	private final Map<String, Set<Pitfall>> pitfallsByElement = new LinkedHashMap<String, Set<Pitfall>>();
+
+	// first instance of each pitfall and number of partial results it has been detected in
+	private final Map<Pitfall, Pitfall> pitfalls = new HashMap<Pitfall, Pitfall>();
+	private final Map<Pitfall, Integer> pitfallResultsCounts = new HashMap<Pitfall, Integer>();
+
+	private final MergedList<ElementPair> elementsWithSameLabel = new MergedList<ElementPair>();
+	private final MergedList<ElementPair> equivalentClasses = new MergedList<ElementPair>();
+	private final MergedList<ElementPair> equivalentRelations = new MergedList<ElementPair>();
+	private final MergedList<ElementPair> equivalentAttributes = new MergedList<ElementPair>();
+	private final MergedList<ElementPair> wrongInverseRelations = new MergedList<ElementPair>();
+	private final MergedList<ElementPair> mightBeInverseRelations = new MergedList<ElementPair>();
+	private final MergedList<String> relationsWithoutInverse = new MergedList<String>();
+	private final MergedInfoElements suggestions = new MergedInfoElements();
+	private final MergedInfoElements warnings = new MergedInfoElements();
+
+	private int resultsCount;
+
+	/**
+	 * Merges the given partial results into a new result. The partial results are not modified.
+	 *
+	 * @param results
+	 *            the partial results to merge
+	 * @return the merged result
+	 */
+	public static EvaluationResult merge(List<EvaluationResult> results) {
+		EvaluationResultMerger merger = new EvaluationResultMerger();
+		results.forEach(merger::add);
+		return merger.getResult();
+	}
+
+	/**
+	 * Adds a partial result to the merged one. The partial result is not modified.
+	 *
+	 * @param result
+	 *            the partial result to add
+	 */
+	public synchronized void add(EvaluationResult result) {
+		add(result, null);
+	}
+
+	/**
+	 * Adds the partial result of an ontology of an imports closure to the merged one, tagging its pitfalls with
+	 * their source ontology. The partial result is not modified.
+	 *
+	 * @param result
+	 *            the partial result to add
+	 * @param sourceOntology
+	 *            the IRI of the ontology the partial result is about, or null to keep the pitfalls as they are
+	 */
+	public synchronized void add(EvaluationResult result, String sourceOntology) {
+		resultsCount++;
+
+		if (result.getDetectedPitfalls() != null) {
+			Set<Pitfall> resultPitfalls = new LinkedHashSet<Pitfall>();
+			Map<Pitfall, Pitfall> taggedPitfalls = new HashMap<Pitfall, Pitfall>();
+
+			result.getDetectedPitfalls().forEach((element, elementPitfalls) -> {
+				Set<Pitfall> mergedElementPitfalls = pitfallsByElement.computeIfAbsent(element,
+						e -> new LinkedHashSet<Pitfall>());
+				for (Pitfall pitfall : elementPitfalls) {
+					Pitfall resultPitfall = sourceOntology == null ? pitfall
+							: taggedPitfalls.computeIfAbsent(pitfall, p -> new Pitfall(p.getImportanceLevel(),
+									p.getPitfallID(), p.getName(), p.getDescription(), p.getNumAffectedElements(),
+									sourceOntology));
+					mergedElementPitfalls.add(resultPitfall);
+					resultPitfalls.add(resultPitfall);
+				}
+			});
+
+			for (Pitfall pitfall : resultPitfalls) {
+				pitfalls.putIfAbsent(pitfall, pitfall);
+				pitfallResultsCounts.merge(pitfall, 1, Integer::sum);
+			}
+		}
+
+		elementsWithSameLabel.add(result.getElementsWithSameLabel());
+		equivalentClasses.add(result.getEquivalentClasses());
+		equivalentRelations.add(result.getEquivalentRelations());
+		equivalentAttributes.add(result.getEquivalentAttributes());
+		wrongInverseRelations.add(result.getWrongInverseRelations());
+		mightBeInverseRelations.add(result.getMightBeInverseRelations());
+		relationsWithoutInverse.add(result.getRelationsWithoutInverse());
+		suggestions.add(result.getSuggestions());
+		warnings.add(result.getWarnings());
+	}
+
+	/**
+	 * @return a new result with the partial results added so far merged
+	 */
+	public synchronized EvaluationResult getResult() {
+		EvaluationResult merged = new EvaluationResult();
+
+		merged.setDetectedPitfalls(getDetectedPitfalls());
+		merged.setElementsWithSameLabel(elementsWithSameLabel.toList());
+		merged.setEquivalentClasses(equivalentClasses.toList());
+		merged.setEquivalentRelations(equivalentRelations.toList());
+		merged.setEquivalentAttributes(equivalentAttributes.toList());
+		merged.setWrongInverseRelations(wrongInverseRelations.toList());
+		merged.setMightBeInverseRelations(mightBeInverseRelations.toList());
+		merged.setRelationsWithoutInverse(relationsWithoutInverse.toList());
+		merged.setSuggestions(suggestions.toList());
+		merged.setWarnings(warnings.toList());
+
+		return merged;
+	}
+
+	/**
+	 * @return the number of partial results added so far
+	 */
+	public synchronized int getResultsCount() {
+		return resultsCount;
+	}
+
+	/**
+	 * Returns the merged pitfalls of each element, counting again the elements affected by the pitfalls detected
+	 * in several partial results
+	 */
+	private HashMap<String, ArrayList<Pitfall>> getDetectedPitfalls() {
+		// the pitfalls are equal regardless of their number of affected elements
+		Map<Pitfall, Integer> affectedElementsCounts = new HashMap<Pitfall, Integer>();
+		for (Set<Pitfall> elementPitfalls : pitfallsByElement.values()) {
+			for (Pitfall pitfall : elementPitfalls) {
+				affectedElementsCounts.merge(pitfall, 1, Integer::sum);
+			}
+		}
+
+		Map<Pitfall, Pitfall> mergedPitfalls = new HashMap<Pitfall, Pitfall>();
+		HashMap<String, ArrayList<Pitfall>> detectedPitfalls = new HashMap<String, ArrayList<Pitfall>>();
+
+		pitfallsByElement.forEach((element, elementPitfalls) -> {
+			ArrayList<Pitfall> mergedElementPitfalls = new ArrayList<Pitfall>(elementPitfalls.size());
+			for (Pitfall pitfall : elementPitfalls) {
+				mergedElementPitfalls.add(mergedPitfalls.computeIfAbsent(pitfall, p -> {
+					Pitfall first = pitfalls.get(p);
+					if (pitfallResultsCounts.get(p) == 1) {
+						return first;
+					}
+					return new Pitfall(first.getImportanceLevel(), first.getPitfallID(), first.getName(),
+							first.getDescription(), affectedElementsCounts.get(p), first.getSourceOntology());
+				}));
+			}
+			detectedPitfalls.put(element, mergedElementPitfalls);
+		});
+
+		return detectedPitfalls;
+	}
+
+	/**
+	 * A list of the results merged keeping each value once, which is null while it is null in all of them
+	 */
+	private static class MergedList<T> {
+
+		private Set<T> values;
+
+		void add(List<T> resultValues) {
+			if (resultValues != null) {
+				if (values == null) {
+					values = new LinkedHashSet<T>();
+				}
+				values.addAll(resultValues);
+			}
+		}
+
+		List<T> toList() {
+			return values == null ? null : new ArrayList<T>(values);
+		}
+	}
+
+	/**
+	 * The suggestions or warnings of the results merged by name joining their affected elements, which are null
+	 * while they are null in all of them
+	 */
+	private static class MergedInfoElements {
+
+		private Map<String, InfoElementWithAffectedElems> elementsByName;
+
+		private final Map<String, Set<String>> affectedElementsByName = new HashMap<String, Set<String>>();
+
+		void add(List<InfoElementWithAffectedElems> resultElements) {
+			if (resultElements == null) {
+				return;
+			}
+			if (elementsByName == null) {
+				elementsByName = new LinkedHashMap<String, InfoElementWithAffectedElems>();
+			}
+
+			for (InfoElementWithAffectedElems element : resultElements) {
+				InfoElementWithAffectedElems mergedElement = elementsByName.computeIfAbsent(element.getName(),
+						name -> new InfoElementWithAffectedElems(name, element.getDescription(), 0, null));
+				Set<String> affectedElements = affectedElementsByName.computeIfAbsent(element.getName(),
+						name -> new LinkedHashSet<String>());
+
+				if (mergedElement.getDescription() == null) {
+					mergedElement.setDescription(element.getDescription());
+				}
+				if (element.getAffectedElements() != null) {
+					affectedElements.addAll(element.getAffectedElements());
+				}
+				mergedElement.setNumAffectedElements(Math.max(mergedElement.getNumAffectedElements(),
+						Math.max(element.getNumAffectedElements(), affectedElements.size())));
+			}
+		}
+
+		List<InfoElementWithAffectedElems> toList() {
+			if (elementsByName == null) {
+				return null;
+			}
+
+			List<InfoElementWithAffectedElems> elements = new ArrayList<InfoElementWithAffectedElems>();
+			for (InfoElementWithAffectedElems element : elementsByName.values()) {
+				elements.add(new InfoElementWithAffectedElems(element.getName(), element.getDescription(),
+						element.getNumAffectedElements(),
+						new ArrayList<String>(affectedElementsByName.get(element.getName()))));
+			}
+			return elements;
+		}
+	}
+}
@@ -0,0 +1,694 @@
+package oops.evaluation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oops.model.EvaluationResult;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Persistent store of evaluation results by evaluation key, kept in two files of a directory:
+ * <ul>
+ * <li>results.dat: append-only log of records, each with the evaluation key and the result encoded with
+ * {@link EvaluationResultCodec}.</li>
+ * <li>results.idx: memory-mapped open addressing hash table from the evaluation keys to the offset and length of
+ * their records, so a lookup only reads and decodes the record it needs.</li>
+ * </ul>
+ * The index also has a "latest" entry for each ontology fingerprint, pointing to the last result stored for it,
+ * which lets an unchanged ontology be restored without knowing the pitfalls it was evaluated with. When the data
+ * file exceeds the size limit, it is compacted keeping only the newest records. The store is locked for a single
+ * process, so a second Protégé instance runs without it.
+ */
+public class EvaluationResultStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(EvaluationResultStore.class);
+
+	private static final String DATA_FILE_NAME = "results.dat";
+
+	private static final String INDEX_FILE_NAME = "results.idx";
+
+	private static final int MAGIC = 0x4F4F5053; // "OOPS"
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int DATA_HEADER_SIZE = 8; // magic and format version, so no record is at offset 0
+
+	private static final int INDEX_HEADER_SIZE = 16; // magic, format version, capacity and entries count
+
+	private static final int SLOT_SIZE = 40; // fingerprint (16), subset hash (8), offset (8), length (4), unused (4)
+
+	private static final int INITIAL_CAPACITY = 1024; // must be a power of 2
+
+	private static final double MAX_LOAD_FACTOR = 0.6;
+
+	private static final long LATEST_SUBSET_HASH = 0; // subset hash of the "latest" entries
+
+	private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024; // 256 MB for the data file
+
+	// the I/O of all the stores, so that it never runs on an interruptible thread
+	private static final ExecutorService ioExecutor = createIOExecutor();
+
+	private final Path directory;
+
+	private final FileChannel indexChannel;
+
+	private final FileLock lock;
+
+	private FileChannel dataChannel;
+
+	private MappedByteBuffer index;
+
+	private int capacity;
+
+	private int count;
+
+	private long maxSize = DEFAULT_MAX_SIZE;
+
+	private EvaluationResultStore(Path directory, FileChannel indexChannel, FileLock lock, FileChannel dataChannel) {
+		this.directory = directory;
+		this.indexChannel = indexChannel;
+		this.lock = lock;
+		this.dataChannel = dataChannel;
+	}
+
+	/**
+	 * Opens the store in the given directory, creating it if it does not exist. A store with missing, corrupted or
+	 * incompatible files is emptied.
+	 *
+	 * @param directory
+	 *            the directory of the store
+	 * @return the opened store
+	 * @throws IOException
+	 *             if the store cannot be opened or it is in use by another process
+	 */
+	public static EvaluationResultStore open(Path directory) throws IOException {
+		return runIO(() -> openFiles(directory));
+	}
+
+	private static EvaluationResultStore openFiles(Path directory) throws IOException {
+		Files.createDirectories(directory);
+
+		FileChannel indexChannel = FileChannel.open(directory.resolve(INDEX_FILE_NAME), StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		FileLock lock;
+		try {
+			lock = indexChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			lock = null; // already open in this process
+		}
+		if (lock == null) {
+			indexChannel.close();
+			throw new IOException("The evaluation results store " + directory + " is in use by another process");
+		}
+
+		FileChannel dataChannel = FileChannel.open(directory.resolve(DATA_FILE_NAME), StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+		EvaluationResultStore store = new EvaluationResultStore(directory, indexChannel, lock, dataChannel);
+		store.load();
+
+		logger.info(String.format("open[EvaluationResultStore] opened %s with %d index entries", directory,
+				store.count));
+
+		return store;
+	}
+
+	/**
+	 * Returns the stored result for the given key
+	 *
+	 * @param key
+	 *            the evaluation key
+	 * @return the stored result, or null if there is none
+	 * @throws IOException
+	 */
+	public synchronized EvaluationResult get(EvaluationKey key) throws IOException {
+		return runIO(() -> readResult(key));
+	}
+
+	private EvaluationResult readResult(EvaluationKey key) throws IOException {
+		int slot = findSlot(key.getFingerprint(), subsetHash(key.getPitfalls()));
+		if (slot < 0) {
+			return null;
+		}
+
+		ByteBuffer record = readRecord(slot);
+		if (record == null || !key.equals(readKey(record))) {
+			return null;
+		}
+
+		return EvaluationResultCodec.decode(record);
+	}
+
+	/**
+	 * Returns the key of the last result stored for the given ontology fingerprint
+	 *
+	 * @param fingerprint
+	 *            the ontology fingerprint
+	 * @return the key of the last stored result, or null if there is none
+	 * @throws IOException
+	 */
+	public synchronized EvaluationKey getLatestKey(OntologyFingerprint fingerprint) throws IOException {
+		return runIO(() -> readLatestKey(fingerprint));
+	}
+
+	private EvaluationKey readLatestKey(OntologyFingerprint fingerprint) throws IOException {
+		int slot = findSlot(fingerprint, LATEST_SUBSET_HASH);
+		if (slot < 0) {
+			return null;
+		}
+
+		ByteBuffer record = readRecord(slot);
+		if (record == null) {
+			return null;
+		}
+
+		EvaluationKey key = readKey(record);
+		return key.getFingerprint().equals(fingerprint) ? key : null;
+	}
+
+	/**
+	 * Stores the given result, replacing any previous result for the same key
+	 *
+	 * @param key
+	 *            the evaluation key
+	 * @param result
+	 *            the evaluation result
+	 * @throws IOException
+	 */
+	public synchronized void put(EvaluationKey key, EvaluationResult result) throws IOException {
+		runIO(() -> {
+			writeResult(key, result);
+			return null;
+		});
+	}
+
+	private void writeResult(EvaluationKey key, EvaluationResult result) throws IOException {
+		byte[] record = encodeRecord(key, result);
+
+		long offset = dataChannel.size();
+		ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+		while (recordBuffer.hasRemaining()) {
+			dataChannel.write(recordBuffer, offset + recordBuffer.position());
+		}
+
+		if (count + 2 > capacity * MAX_LOAD_FACTOR) {
+			rebuildIndex(readEntries(), capacity * 2);
+		}
+
+		OntologyFingerprint fingerprint = key.getFingerprint();
+		putEntry(new IndexEntry(fingerprint.getHigh(), fingerprint.getLow(), subsetHash(key.getPitfalls()), offset,
+				record.length));
+		putEntry(new IndexEntry(fingerprint.getHigh(), fingerprint.getLow(), LATEST_SUBSET_HASH, offset,
+				record.length));
+
+		if (dataChannel.size() > maxSize) {
+			compact();
+		}
+	}
+
+	/**
+	 * Removes all the stored results
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void clear() throws IOException {
+		runIO(() -> {
+			dataChannel.truncate(0);
+			writeDataHeader();
+			rebuildIndex(new ArrayList<IndexEntry>(), capacity);
+			return null;
+		});
+	}
+
+	/**
+	 * Loads the index, emptying the store if its files are not valid
+	 *
+	 * @throws IOException
+	 */
+	private void load() throws IOException {
+		boolean valid = false;
+
+		if (dataChannel.size() >= DATA_HEADER_SIZE && indexChannel.size() >= INDEX_HEADER_SIZE) {
+			ByteBuffer dataHeader = ByteBuffer.allocate(DATA_HEADER_SIZE);
+			dataChannel.read(dataHeader, 0);
+			dataHeader.flip();
+
+			ByteBuffer indexHeader = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+			indexChannel.read(indexHeader, 0);
+			indexHeader.flip();
+
+			int indexCapacity = indexHeader.getInt(8);
+			valid = dataHeader.getInt(0) == MAGIC && dataHeader.getInt(4) == FORMAT_VERSION
+					&& indexHeader.getInt(0) == MAGIC && indexHeader.getInt(4) == FORMAT_VERSION
+					&& indexCapacity > 0 && Integer.bitCount(indexCapacity) == 1
+					&& indexChannel.size() >= INDEX_HEADER_SIZE + (long) indexCapacity * SLOT_SIZE;
+
+			if (valid) {
+				mapIndex(indexCapacity);
+				count = index.getInt(12);
+			}
+		}
+
+		if (!valid) {
+			logger.info("load[EvaluationResultStore] creating a new evaluation results store in " + directory);
+
+			dataChannel.truncate(0);
+			writeDataHeader();
+			mapIndex(INITIAL_CAPACITY);
+			rebuildIndex(new ArrayList<IndexEntry>(), INITIAL_CAPACITY);
+		}
+	}
+
+	/**
+	 * Copies the records of the newest entries, up to half of the size limit, to a new data file and rebuilds the
+	 * index with them. The older records and the replaced ones are dropped.
+	 *
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		List<IndexEntry> entries = readEntries();
+		entries.sort(Comparator.comparingLong((IndexEntry entry) -> entry.offset).reversed());
+
+		Path compactedPath = directory.resolve(DATA_FILE_NAME + ".tmp");
+		HashMap<Long, Long> newOffsets = new HashMap<Long, Long>(); // records shared by several entries
+		List<IndexEntry> keptEntries = new ArrayList<IndexEntry>();
+
+		try (FileChannel compacted = FileChannel.open(compactedPath, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = dataHeader();
+			while (header.hasRemaining()) {
+				compacted.write(header);
+			}
+
+			long keptSize = DATA_HEADER_SIZE;
+			for (IndexEntry entry : entries) {
+				Long newOffset = newOffsets.get(entry.offset);
+
+				if (newOffset == null) {
+					if (keptSize + entry.length > maxSize / 2) {
+						continue;
+					}
+
+					newOffset = keptSize;
+					long transferred = 0;
+					while (transferred < entry.length) {
+						transferred += dataChannel.transferTo(entry.offset + transferred, entry.length - transferred,
+								compacted);
+					}
+					keptSize += entry.length;
+					newOffsets.put(entry.offset, newOffset);
+				}
+
+				keptEntries.add(new IndexEntry(entry.high, entry.low, entry.subsetHash, newOffset, entry.length));
+			}
+
+			compacted.force(true);
+		}
+
+		dataChannel.close();
+		Files.move(compactedPath, directory.resolve(DATA_FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+		dataChannel = FileChannel.open(directory.resolve(DATA_FILE_NAME), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		rebuildIndex(keptEntries, capacity);
+
+		logger.info(String.format("compact[EvaluationResultStore] kept %d of %d index entries (%d bytes)",
+				keptEntries.size(), entries.size(), dataChannel.size()));
+	}
+
+	/**
+	 * Clears the index and inserts the given entries in it, resizing it to the given capacity
+	 *
+	 * @param entries
+	 *            the entries of the new index
+	 * @param newCapacity
+	 *            the capacity of the new index
+	 * @throws IOException
+	 */
+	private void rebuildIndex(List<IndexEntry> entries, int newCapacity) throws IOException {
+		if (newCapacity != capacity) {
+			mapIndex(newCapacity);
+		}
+
+		index.putInt(0, MAGIC);
+		index.putInt(4, FORMAT_VERSION);
+		index.putInt(8, capacity);
+		for (int position = INDEX_HEADER_SIZE; position < INDEX_HEADER_SIZE + capacity * SLOT_SIZE; position += 8) {
+			index.putLong(position, 0);
+		}
+
+		count = 0;
+		for (IndexEntry entry : entries) {
+			putEntry(entry);
+		}
+		index.putInt(12, count);
+	}
+
+	/**
+	 * Maps the index file with room for the given capacity
+	 *
+	 * @param newCapacity
+	 *            the number of slots of the index
+	 * @throws IOException
+	 */
+	private void mapIndex(int newCapacity) throws IOException {
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+		capacity = newCapacity;
+	}
+
+	/**
+	 * Inserts the given entry in the index, replacing the entry with the same fingerprint and subset hash
+	 *
+	 * @param entry
+	 *            the entry to insert
+	 */
+	private void putEntry(IndexEntry entry) {
+		int slot = firstSlot(entry.high, entry.low, entry.subsetHash);
+
+		while (true) {
+			int position = slotPosition(slot);
+
+			if (index.getLong(position + 24) == 0) {
+				count++;
+				index.putInt(12, count);
+				break;
+			}
+			if (index.getLong(position) == entry.high && index.getLong(position + 8) == entry.low
+					&& index.getLong(position + 16) == entry.subsetHash) {
+				break;
+			}
+
+			slot = (slot + 1) & (capacity - 1);
+		}
+
+		int position = slotPosition(slot);
+		index.putLong(position, entry.high);
+		index.putLong(position + 8, entry.low);
+		index.putLong(position + 16, entry.subsetHash);
+		index.putInt(position + 32, entry.length);
+		index.putLong(position + 24, entry.offset); // the offset is written last, it marks the slot as used
+	}
+
+	/**
+	 * Finds the slot of the entry with the given fingerprint and subset hash
+	 *
+	 * @return the slot of the entry, or -1 if there is none
+	 */
+	private int findSlot(OntologyFingerprint fingerprint, long subsetHash) {
+		int slot = firstSlot(fingerprint.getHigh(), fingerprint.getLow(), subsetHash);
+
+		for (int probes = 0; probes < capacity; probes++) {
+			int position = slotPosition(slot);
+
+			if (index.getLong(position + 24) == 0) {
+				return -1;
+			}
+			if (index.getLong(position) == fingerprint.getHigh() && index.getLong(position + 8) == fingerprint.getLow()
+					&& index.getLong(position + 16) == subsetHash) {
+				return slot;
+			}
+
+			slot = (slot + 1) & (capacity - 1);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return all the entries of the index
+	 */
+	private List<IndexEntry> readEntries() {
+		List<IndexEntry> entries = new ArrayList<IndexEntry>(count);
+
+		for (int slot = 0; slot < capacity; slot++) {
+			int position = slotPosition(slot);
+			long offset = index.getLong(position + 24);
+
+			if (offset != 0) {
+				entries.add(new IndexEntry(index.getLong(position), index.getLong(position + 8),
+						index.getLong(position + 16), offset, index.getInt(position + 32)));
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Reads the record of the entry in the given slot
+	 *
+	 * @return the record, or null if the entry points outside of the data file
+	 * @throws IOException
+	 */
+	private ByteBuffer readRecord(int slot) throws IOException {
+		int position = slotPosition(slot);
+		long offset = index.getLong(position + 24);
+		int length = index.getInt(position + 32);
+
+		if (offset < DATA_HEADER_SIZE || length <= 0 || offset + length > dataChannel.size()) {
+			logger.warn("readRecord[EvaluationResultStore] ignoring an index entry out of the data file");
+			return null;
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(length);
+		while (record.hasRemaining()) {
+			if (dataChannel.read(record, offset + record.position()) < 0) {
+				return null;
+			}
+		}
+		record.flip();
+
+		return record;
+	}
+
+	/**
+	 * Encodes a record: the evaluation key followed by the encoded result
+	 *
+	 * @throws IOException
+	 */
+	private static byte[] encodeRecord(EvaluationKey key, EvaluationResult result) throws IOException {
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(record);
+
+		out.writeLong(key.getFingerprint().getHigh());
+		out.writeLong(key.getFingerprint().getLow());
+		out.writeShort(key.getPitfalls().size());
+		for (String pitfall : key.getPitfalls()) {
+			byte[] pitfallBytes = pitfall.getBytes(StandardCharsets.UTF_8);
+			out.writeShort(pitfallBytes.length);
+			out.write(pitfallBytes);
+		}
+		out.write(EvaluationResultCodec.encode(result));
+		out.flush();
+
+		return record.toByteArray();
+	}
+
+	/**
+	 * Reads the evaluation key of a record, leaving the buffer at the start of the encoded result
+	 *
+	 * @throws IOException
+	 */
+	private static EvaluationKey readKey(ByteBuffer record) throws IOException {
+		try {
+			OntologyFingerprint fingerprint = new OntologyFingerprint(record.getLong(), record.getLong());
+
+			int pitfallsCount = record.getShort() & 0xFFFF;
+			List<String> pitfalls = new ArrayList<String>(pitfallsCount);
+			for (int i = 0; i < pitfallsCount; i++) {
+				byte[] pitfall = new byte[record.getShort() & 0xFFFF];
+				record.get(pitfall);
+				pitfalls.add(new String(pitfall, StandardCharsets.UTF_8));
+			}
+
+			return new EvaluationKey(fingerprint, pitfalls);
+		} catch (RuntimeException e) {
+			throw new IOException("Malformed evaluation results store record", e);
+		}
+	}
+
+	private void writeDataHeader() throws IOException {
+		ByteBuffer header = dataHeader();
+		while (header.hasRemaining()) {
+			dataChannel.write(header, header.position());
+		}
+	}
+
+	private static ByteBuffer dataHeader() {
+		ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE);
+		header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+		return header;
+	}
+
+	private int firstSlot(long high, long low, long subsetHash) {
+		long hash = (high ^ low ^ subsetHash) * 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 32) & (capacity - 1);
+	}
+
+	private static int slotPosition(int slot) {
+		return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	/**
+	 * @return the hash of the given sorted pitfalls subset, never equal to the hash of the "latest" entries
+	 */
+	private static long subsetHash(List<String> pitfalls) {
+		long hash = OntologyFingerprint.ofElement(String.join(",", pitfalls)).getLow();
+		return hash == LATEST_SUBSET_HASH ? 1 : hash;
+	}
+
+	/**
+	 * @return the number of entries of the index, including the "latest" entries
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * @return the size limit of the data file in bytes
+	 */
+	public synchronized long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param maxSize
+	 *            the size limit of the data file in bytes to set
+	 */
+	public synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Flushes the index and closes the store, releasing its lock. The files are closed even if the store is
+	 * already broken, e.g. because one of its channels has been closed.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		runIO(() -> {
+			try {
+				index.force();
+				if (lock.isValid()) {
+					lock.release();
+				}
+			} finally {
+				indexChannel.close();
+				dataChannel.close();
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Runs the given I/O of a store on the I/O thread of the stores and waits for it uninterruptibly. The file
+	 * channels are closed by an interrupt of the thread using them, so an interrupted caller (e.g. a cancelled
+	 * evaluation) would otherwise break the store for good, or leave a record half written. The interrupt status
+	 * of the caller is restored once the I/O is done.
+	 *
+	 * @param io
+	 *            the I/O to run
+	 * @return the result of the I/O
+	 * @throws IOException
+	 */
+	private static <T> T runIO(StoreIO<T> io) throws IOException {
+		Future<T> future = ioExecutor.submit(io::call);
+
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true; // the I/O cannot be stopped halfway, wait for it anyway
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the executor of the I/O of the stores, whose single thread is never interrupted
+	 */
+	private static ExecutorService createIOExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), runnable -> {
+					Thread thread = new Thread(runnable, "OOPS-store");
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	/**
+	 * I/O of a store run on the I/O thread of the stores
+	 */
+	private interface StoreIO<T> {
+
+		T call() throws IOException;
+	}
+
+	/**
+	 * An entry of the index
+	 */
+	private static class IndexEntry {
+
+		private final long high;
+
+		private final long low;
+
+		private final long subsetHash;
+
+		private final long offset;
+
+		private final int length;
+
+		IndexEntry(long high, long low, long subsetHash, long offset, int length) {
+			this.high = high;
+			this.low = low;
+			this.subsetHash = subsetHash;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
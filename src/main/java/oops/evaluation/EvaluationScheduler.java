@@ -0,0 +1,410 @@
+package oops.evaluation;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Bounded executor of evaluation jobs by priority. The waiting jobs are started in order of priority and then of
+ * submission, so an interactive job never waits behind background ones, and a thread is kept for the interactive
+ * jobs so the background ones never take all of them. The time every job waits for a thread is recorded by
+ * priority.
+ * <p>
+ * A scheduler can run the parts of the jobs of a parent scheduler (e.g. the requests of the shards of the
+ * evaluations). The parts follow the priority of their job, also when it is promoted, and the background parts
+ * stay queued while the parent scheduler runs any interactive job, so the background evaluations pause at their
+ * part boundaries and resume when the interactive ones finish.
+ */
+public class EvaluationScheduler implements EvaluationSchedulerMXBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(EvaluationScheduler.class);
+
+	private static final String MBEAN_NAME = "oops.evaluation:type=EvaluationScheduler,name=";
+
+	private static final ThreadLocal<Job> currentJob = new ThreadLocal<Job>();
+
+	private final String name;
+
+	private final int threads;
+
+	private final int backgroundThreads; // max number of threads running background jobs
+
+	private final int queueCapacity;
+
+	private final EvaluationScheduler parentScheduler;
+
+	private final List<EvaluationScheduler> childSchedulers = new CopyOnWriteArrayList<EvaluationScheduler>();
+
+	private final ThreadPoolExecutor workers;
+
+	private final PriorityQueue<Job> queue = new PriorityQueue<Job>(); // guarded by this
+
+	private final EnumMap<EvaluationPriority, QueueWait> queueWaits =
+			new EnumMap<EvaluationPriority, QueueWait>(EvaluationPriority.class); // guarded by this
+
+	// read without the lock by the child schedulers
+	private final AtomicInteger runningInteractive = new AtomicInteger();
+
+	// guarded by this
+	private long submittedCount;
+	private int runningBackground;
+
+	/**
+	 * @param name
+	 *            the name of the scheduler, which prefixes the names of its threads
+	 * @param threads
+	 *            the max number of jobs running at the same time
+	 * @param queueCapacity
+	 *            the max number of jobs waiting for a thread
+	 */
+	public EvaluationScheduler(String name, int threads, int queueCapacity) {
+		this(name, threads, queueCapacity, null);
+	}
+
+	/**
+	 * @param name
+	 *            the name of the scheduler, which prefixes the names of its threads
+	 * @param threads
+	 *            the max number of jobs running at the same time
+	 * @param queueCapacity
+	 *            the max number of jobs waiting for a thread
+	 * @param parentScheduler
+	 *            the scheduler of the jobs whose parts are run by this one, or null if there is none
+	 */
+	public EvaluationScheduler(String name, int threads, int queueCapacity, EvaluationScheduler parentScheduler) {
+		this.name = name;
+		this.threads = threads;
+		this.backgroundThreads = Math.max(1, threads - 1);
+		this.queueCapacity = queueCapacity;
+		this.parentScheduler = parentScheduler;
+
+		for (EvaluationPriority priority : EvaluationPriority.values()) {
+			queueWaits.put(priority, new QueueWait());
+		}
+
+		AtomicInteger threadCount = new AtomicInteger();
+		workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				runnable -> {
+					Thread thread = new Thread(runnable, "OOPS-" + name + "-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		workers.allowCoreThreadTimeOut(true);
+
+		if (parentScheduler != null) {
+			parentScheduler.childSchedulers.add(this);
+		}
+
+		registerMBean();
+	}
+
+	/**
+	 * @return the job run by the calling thread, or null if it is not running any job of a scheduler
+	 */
+	public static Job currentJob() {
+		return currentJob.get();
+	}
+
+	/**
+	 * Submits a job with the given priority
+	 *
+	 * @param task
+	 *            the task of the job
+	 * @param priority
+	 *            the priority of the job
+	 * @return the submitted job, which can be cancelled
+	 * @throws RejectedExecutionException
+	 *             if there are too many jobs waiting already
+	 */
+	public Job submit(Runnable task, EvaluationPriority priority) {
+		return submit(new Job(task, priority, null));
+	}
+
+	/**
+	 * Submits a part of a job of the parent scheduler, which has the priority of the job
+	 *
+	 * @param task
+	 *            the task of the part
+	 * @param parent
+	 *            the job the part belongs to
+	 * @return the submitted part, which can be cancelled
+	 * @throws RejectedExecutionException
+	 *             if there are too many jobs waiting already
+	 */
+	public Job submit(Runnable task, Job parent) {
+		return submit(new Job(task, parent.getPriority(), parent));
+	}
+
+	/**
+	 * @param priority
+	 *            the priority of the jobs
+	 * @return an executor that submits its tasks as jobs with the given priority
+	 */
+	public Executor executor(EvaluationPriority priority) {
+		return task -> submit(task, priority);
+	}
+
+	private synchronized Job submit(Job job) {
+		if (queue.size() >= queueCapacity) {
+			throw new RejectedExecutionException(String.format("There are %d jobs waiting already", queue.size()));
+		}
+
+		job.sequence = submittedCount++;
+		queue.add(job);
+		dispatch();
+
+		return job;
+	}
+
+	/**
+	 * Raises the given job to the interactive priority, with its parts in the child schedulers. It does nothing
+	 * if the job is already interactive or finished.
+	 *
+	 * @param job
+	 *            the job to promote, submitted to this scheduler
+	 */
+	public void promote(Job job) {
+		if (job.parent != null) {
+			throw new IllegalArgumentException("Only the jobs of a scheduler can be promoted, not their parts");
+		}
+
+		synchronized (this) {
+			if (job.priority == EvaluationPriority.INTERACTIVE || job.isDone()) {
+				return;
+			}
+			job.priority = EvaluationPriority.INTERACTIVE;
+
+			if (job.runningPriority == EvaluationPriority.BACKGROUND) {
+				job.runningPriority = EvaluationPriority.INTERACTIVE;
+				runningBackground--;
+				runningInteractive.incrementAndGet();
+			} else {
+				reorder();
+			}
+		}
+
+		logger.info(String.format("promote[EvaluationScheduler] %s job promoted to interactive", name));
+
+		childSchedulers.forEach(EvaluationScheduler::reorder);
+	}
+
+	/**
+	 * Sorts the waiting jobs again after a change of their priorities, and starts the ones that can run now
+	 */
+	private synchronized void reorder() {
+		List<Job> jobs = new ArrayList<Job>(queue);
+		queue.clear();
+		queue.addAll(jobs);
+		dispatch();
+	}
+
+	/**
+	 * Starts the waiting jobs in order while there are threads for them
+	 */
+	private synchronized void dispatch() {
+		while (getRunningCount() < threads && !queue.isEmpty()) {
+			Job job = queue.peek();
+			if (job.getPriority() == EvaluationPriority.BACKGROUND && (runningBackground >= backgroundThreads
+					|| parentScheduler != null && parentScheduler.runningInteractive.get() > 0)) {
+				return; // all the waiting jobs are background ones
+			}
+
+			queue.poll();
+			start(job);
+		}
+	}
+
+	private void start(Job job) {
+		job.runningPriority = job.getPriority();
+		if (job.runningPriority == EvaluationPriority.INTERACTIVE) {
+			runningInteractive.incrementAndGet();
+		} else {
+			runningBackground++;
+		}
+
+		long waitNanos = System.nanoTime() - job.submitNanos;
+		queueWaits.get(job.runningPriority).record(waitNanos);
+
+		logger.info(String.format("start[EvaluationScheduler] %s %s job started after waiting %d ms", name,
+				job.runningPriority, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+
+		workers.execute(() -> run(job));
+	}
+
+	private void run(Job job) {
+		currentJob.set(job);
+		try {
+			job.run();
+		} finally {
+			currentJob.remove();
+			finish(job);
+		}
+	}
+
+	private void finish(Job job) {
+		boolean interactiveIdle = false;
+
+		synchronized (this) {
+			if (job.runningPriority == EvaluationPriority.INTERACTIVE) {
+				interactiveIdle = runningInteractive.decrementAndGet() == 0;
+			} else {
+				runningBackground--;
+			}
+			dispatch();
+		}
+
+		if (interactiveIdle) {
+			childSchedulers.forEach(EvaluationScheduler::dispatch); // resume their background parts
+		}
+	}
+
+	/**
+	 * Removes a cancelled job that has not started yet
+	 */
+	private synchronized void remove(Job job) {
+		queue.remove(job);
+	}
+
+	/**
+	 * Registers this scheduler in the platform MBean server, so its queue waits can be monitored with any JMX
+	 * console. Any failure is only logged.
+	 */
+	private void registerMBean() {
+		try {
+			ObjectName objectName = new ObjectName(MBEAN_NAME + ObjectName.quote(name));
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			if (!mbeanServer.isRegistered(objectName)) {
+				mbeanServer.registerMBean(this, objectName);
+			}
+		} catch (JMException | RuntimeException e) {
+			logger.debug("The scheduler " + name + " could not be registered for monitoring: "
+					+ e.getLocalizedMessage());
+		}
+	}
+
+	@Override
+	public synchronized int getQueueDepth() {
+		return queue.size();
+	}
+
+	@Override
+	public synchronized int getRunningCount() {
+		return runningInteractive.get() + runningBackground;
+	}
+
+	@Override
+	public synchronized long getInteractiveJobsCount() {
+		return queueWaits.get(EvaluationPriority.INTERACTIVE).count;
+	}
+
+	@Override
+	public synchronized long getBackgroundJobsCount() {
+		return queueWaits.get(EvaluationPriority.BACKGROUND).count;
+	}
+
+	@Override
+	public synchronized long getAverageInteractiveQueueWait() {
+		return queueWaits.get(EvaluationPriority.INTERACTIVE).getAverage();
+	}
+
+	@Override
+	public synchronized long getAverageBackgroundQueueWait() {
+		return queueWaits.get(EvaluationPriority.BACKGROUND).getAverage();
+	}
+
+	@Override
+	public synchronized long getMaxInteractiveQueueWait() {
+		return TimeUnit.NANOSECONDS.toMillis(queueWaits.get(EvaluationPriority.INTERACTIVE).maxNanos);
+	}
+
+	@Override
+	public synchronized long getMaxBackgroundQueueWait() {
+		return TimeUnit.NANOSECONDS.toMillis(queueWaits.get(EvaluationPriority.BACKGROUND).maxNanos);
+	}
+
+	/**
+	 * A job of a scheduler. Cancelling it before it starts removes it from the queue, and cancelling it while it
+	 * runs interrupts its thread.
+	 */
+	public final class Job extends FutureTask<Void> implements Comparable<Job> {
+
+		private final Job parent;
+
+		private final long submitNanos = System.nanoTime();
+
+		private long sequence; // guarded by the scheduler
+
+		private volatile EvaluationPriority priority; // only changed by the promotions of the scheduler
+
+		// priority it is counted with while it runs, guarded by the scheduler
+		private EvaluationPriority runningPriority;
+
+		private Job(Runnable task, EvaluationPriority priority, Job parent) {
+			super(task, null);
+			this.priority = priority;
+			this.parent = parent;
+		}
+
+		/**
+		 * @return the current priority of this job, the one of its parent job if it is a part of one
+		 */
+		public EvaluationPriority getPriority() {
+			return parent != null ? parent.getPriority() : priority;
+		}
+
+		@Override
+		public int compareTo(Job other) {
+			int byPriority = getPriority().compareTo(other.getPriority());
+			return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled()) {
+				remove(this);
+			}
+		}
+	}
+
+	/**
+	 * The times the jobs of a priority have waited for a thread
+	 */
+	private static class QueueWait {
+
+		private long count;
+
+		private long totalNanos;
+
+		private long maxNanos;
+
+		void record(long waitNanos) {
+			count++;
+			totalNanos += waitNanos;
+			maxNanos = Math.max(maxNanos, waitNanos);
+		}
+
+		long getAverage() {
+			return count == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(totalNanos / count);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package oops.evaluation;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Monitoring interface of a scheduler of evaluation jobs, registered in the platform MBean server.
+ */
+public interface EvaluationSchedulerMXBean {
+
+	/**
+	 * @return the number of jobs waiting for a thread
+	 */
+	public int getQueueDepth();
+
+	/**
+	 * @return the number of jobs running
+	 */
+	public int getRunningCount();
+
+	/**
+	 * @return the number of interactive jobs started
+	 */
+	public long getInteractiveJobsCount();
+
+	/**
+	 * @return the number of background jobs started
+	 */
+	public long getBackgroundJobsCount();
+
+	/**
+	 * @return the average time the interactive jobs have waited for a thread in milliseconds, -1 if there is none
+	 */
+	public long getAverageInteractiveQueueWait();
+
+	/**
+	 * @return the average time the background jobs have waited for a thread in milliseconds, -1 if there is none
+	 */
+	public long getAverageBackgroundQueueWait();
+
+	/**
+	 * @return the longest time an interactive job has waited for a thread in milliseconds
+	 */
+	public long getMaxInteractiveQueueWait();
+
+	/**
+	 * @return the longest time a background job has waited for a thread in milliseconds
+	 */
+	public long getMaxBackgroundQueueWait();
+}
@@ -0,0 +1,147 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import oops.model.EvaluationResult;
+import oops.model.Pitfall;
+import oops.model.PitfallImportanceLevel;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Quick local checks of a few pitfalls that only need a look at the ontology, used to fill in the partial results
+ * delivered before the OOPS! WS answers. They are conservative approximations of the checks of the OOPS! WS, which
+ * always replace them in the complete results:
+ * <ul>
+ * <li>P08: classes and properties without any label nor comment.</li>
+ * <li>P11: properties without domain or range, unless they have an inverse.</li>
+ * <li>P38: ontology without IRI.</li>
+ * <li>P41: ontology without license annotation.</li>
+ * </ul>
+ */
+final class LocalPitfallChecker {
+
+	private static final String PITFALL_MISSING_ANNOTATIONS = "P08";
+	private static final String PITFALL_MISSING_DOMAIN_OR_RANGE = "P11";
+	private static final String PITFALL_NO_ONTOLOGY_DECLARATION = "P38";
+	private static final String PITFALL_NO_LICENSE = "P41";
+
+	// annotation properties commonly used to declare the license of an ontology
+	private static final Set<String> LICENSE_PROPERTIES = new HashSet<String>(Arrays.asList(
+			"http://purl.org/dc/terms/license", "http://purl.org/dc/terms/rights",
+			"http://purl.org/dc/elements/1.1/rights", "http://creativecommons.org/ns#license",
+			"http://www.w3.org/1999/xhtml/vocab#license", "http://schema.org/license"));
+
+	private static final String OWL_THING_IRI = OWLRDFVocabulary.OWL_THING.getIRI().toString();
+
+	private LocalPitfallChecker() {
+	}
+
+	/**
+	 * Checks the given pitfalls that can be checked locally on the given ontology alone
+	 *
+	 * @param ontology
+	 *            the ontology to check
+	 * @param pitfalls
+	 *            the pitfalls to check, the ones that cannot be checked locally are ignored
+	 * @return the detected pitfalls, by element as in the results of the OOPS! WS
+	 */
+	static EvaluationResult check(OWLOntology ontology, Collection<String> pitfalls) {
+		HashMap<String, ArrayList<Pitfall>> detectedPitfalls = new HashMap<String, ArrayList<Pitfall>>();
+
+		if (pitfalls.contains(PITFALL_MISSING_ANNOTATIONS)) {
+			List<OWLEntity> elements = new ArrayList<OWLEntity>();
+			elements.addAll(ontology.getClassesInSignature());
+			elements.addAll(ontology.getObjectPropertiesInSignature());
+			elements.addAll(ontology.getDataPropertiesInSignature());
+			elements.removeIf(element -> element.isBuiltIn() || hasLabelOrComment(ontology, element));
+
+			addPitfall(detectedPitfalls, elements, new Pitfall(PitfallImportanceLevel.MINOR,
+					PITFALL_MISSING_ANNOTATIONS, "Missing annotations", "Ontology elements without human readable "
+							+ "annotations (labels or comments) attached to them.", elements.size()));
+		}
+
+		if (pitfalls.contains(PITFALL_MISSING_DOMAIN_OR_RANGE)) {
+			List<OWLEntity> properties = new ArrayList<OWLEntity>();
+			for (OWLObjectProperty property : ontology.getObjectPropertiesInSignature()) {
+				if (!property.isBuiltIn() && ontology.getInverseObjectPropertyAxioms(property).isEmpty()
+						&& (ontology.getObjectPropertyDomainAxioms(property).isEmpty()
+								|| ontology.getObjectPropertyRangeAxioms(property).isEmpty())) {
+					properties.add(property);
+				}
+			}
+			for (OWLDataProperty property : ontology.getDataPropertiesInSignature()) {
+				if (!property.isBuiltIn() && (ontology.getDataPropertyDomainAxioms(property).isEmpty()
+						|| ontology.getDataPropertyRangeAxioms(property).isEmpty())) {
+					properties.add(property);
+				}
+			}
+
+			addPitfall(detectedPitfalls, properties, new Pitfall(PitfallImportanceLevel.IMPORTANT,
+					PITFALL_MISSING_DOMAIN_OR_RANGE, "Missing domain or range in properties", "Object and/or "
+							+ "datatype properties without domain or range (or none of them).", properties.size()));
+		}
+
+		if (pitfalls.contains(PITFALL_NO_ONTOLOGY_DECLARATION)
+				&& !ontology.getOntologyID().getOntologyIRI().isPresent()) {
+			addGeneralPitfall(detectedPitfalls, new Pitfall(PitfallImportanceLevel.IMPORTANT,
+					PITFALL_NO_ONTOLOGY_DECLARATION, "No OWL ontology declaration", "The ontology does not declare "
+							+ "the owl:Ontology tag, which provides the ontology metadata.", 0));
+		}
+
+		if (pitfalls.contains(PITFALL_NO_LICENSE) && !hasLicense(ontology)) {
+			addGeneralPitfall(detectedPitfalls, new Pitfall(PitfallImportanceLevel.IMPORTANT, PITFALL_NO_LICENSE,
+					"No license declared", "The ontology metadata omits the license that applies to the ontology.",
+					0));
+		}
+
+		return new EvaluationResult(detectedPitfalls);
+	}
+
+	private static boolean hasLabelOrComment(OWLOntology ontology, OWLEntity element) {
+		for (OWLAnnotationAssertionAxiom annotation : ontology.getAnnotationAssertionAxioms(element.getIRI())) {
+			if (annotation.getProperty().isLabel() || annotation.getProperty().isComment()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasLicense(OWLOntology ontology) {
+		for (OWLAnnotation annotation : ontology.getAnnotations()) {
+			if (LICENSE_PROPERTIES.contains(annotation.getProperty().getIRI().toString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void addPitfall(HashMap<String, ArrayList<Pitfall>> detectedPitfalls, List<OWLEntity> elements,
+			Pitfall pitfall) {
+		for (OWLEntity element : elements) {
+			detectedPitfalls.computeIfAbsent(element.getIRI().toString(), e -> new ArrayList<Pitfall>()).add(pitfall);
+		}
+	}
+
+	/**
+	 * Adds a pitfall about the ontology itself to the root element, as the results of the OOPS! WS do
+	 */
+	private static void addGeneralPitfall(HashMap<String, ArrayList<Pitfall>> detectedPitfalls, Pitfall pitfall) {
+		detectedPitfalls.computeIfAbsent(OWL_THING_IRI, e -> new ArrayList<Pitfall>()).add(pitfall);
+	}
+}
@@ -0,0 +1,267 @@
+package oops.evaluation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.semanticweb.owlapi.io.RDFLiteral;
+import org.semanticweb.owlapi.io.RDFNode;
+import org.semanticweb.owlapi.io.RDFTriple;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationValue;
+import org.semanticweb.owlapi.model.OWLAnonymousIndividual;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.rdf.model.RDFTranslator;
+import org.semanticweb.owlapi.util.AlwaysOutputId;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Renders an ontology as N-Triples, one line per triple. Unlike the RDF/XML renderer, it does not build the graph
+ * of the whole ontology, each axiom is translated to its triples and written right away. The blank nodes of the
+ * axioms are labelled in order of appearance, and the anonymous individuals after their ids, so the same
+ * ontology is always rendered the same way and the individuals keep their labels across renderers.
+ */
+public class NTriplesRenderer {
+
+	private static final String BLANK_NODE_PREFIX = "_:b";
+
+	private static final String INDIVIDUAL_PREFIX = "_:i";
+
+	private final OWLOntology ontology;
+
+	private final Writer writer;
+
+	private final RDFTranslator translator;
+
+	private final String blankNodePrefix;
+
+	private final Map<String, String> blankNodeLabels = new HashMap<String, String>();
+
+	private final Set<String> individualTriples = new HashSet<String>();
+
+	private final StringBuilder line = new StringBuilder(256);
+
+	public NTriplesRenderer(OWLOntology ontology, Writer writer) {
+		this(ontology, writer, BLANK_NODE_PREFIX);
+	}
+
+	/**
+	 * Creates a renderer whose blank nodes are labelled with the given prefix, so the triples of renderers with
+	 * different prefixes can be written to the same document
+	 */
+	NTriplesRenderer(OWLOntology ontology, Writer writer, String blankNodePrefix) {
+		this.ontology = ontology;
+		this.writer = writer;
+		this.blankNodePrefix = blankNodePrefix;
+		// the anonymous individuals keep their ids, as they can be shared by several axioms
+		this.translator = new RDFTranslator(ontology.getOWLOntologyManager(), ontology, false, new AlwaysOutputId());
+	}
+
+	/**
+	 * Renders the ontology header, all its axioms and the types of its undeclared entities. The writer is flushed
+	 * but not closed.
+	 *
+	 * @throws IOException
+	 */
+	public void render() throws IOException {
+		renderHeader();
+		renderAxioms(ontology.getAxioms());
+		renderMissingTypes();
+		writer.flush();
+	}
+
+	/**
+	 * Renders the ontology node with its type, version IRI, imports and annotations
+	 *
+	 * @throws IOException
+	 */
+	public void renderHeader() throws IOException {
+		OWLOntologyID ontologyID = ontology.getOntologyID();
+		String ontologyNode = ontologyID.getOntologyIRI().isPresent()
+				? iri(ontologyID.getOntologyIRI().get()) : "_:ontology";
+
+		writeTriple(ontologyNode, iri(OWLRDFVocabulary.RDF_TYPE.getIRI()),
+				iri(OWLRDFVocabulary.OWL_ONTOLOGY.getIRI()));
+		if (ontologyID.getVersionIRI().isPresent()) {
+			writeTriple(ontologyNode, iri(OWLRDFVocabulary.OWL_VERSION_IRI.getIRI()),
+					iri(ontologyID.getVersionIRI().get()));
+		}
+		for (OWLImportsDeclaration importsDeclaration : ontology.getImportsDeclarations()) {
+			writeTriple(ontologyNode, iri(OWLRDFVocabulary.OWL_IMPORTS.getIRI()), iri(importsDeclaration.getIRI()));
+		}
+		for (OWLAnnotation annotation : ontology.getAnnotations()) {
+			writeTriple(ontologyNode, iri(annotation.getProperty().getIRI()), value(annotation.getValue()));
+		}
+	}
+
+	/**
+	 * Renders the types of the entities used without a declaration, as the RDF/XML renderer does, so the OOPS! WS
+	 * can tell apart the kinds of entities
+	 *
+	 * @throws IOException
+	 */
+	public void renderMissingTypes() throws IOException {
+		OWLDataFactory dataFactory = ontology.getOWLOntologyManager().getOWLDataFactory();
+
+		List<OWLAxiom> missingDeclarations = new ArrayList<OWLAxiom>();
+		for (OWLEntity entity : ontology.getSignature()) {
+			if (!entity.isBuiltIn() && !ontology.isDeclared(entity)) {
+				missingDeclarations.add(dataFactory.getOWLDeclarationAxiom(entity));
+			}
+		}
+		missingDeclarations.sort(null);
+
+		renderAxioms(missingDeclarations);
+	}
+
+	/**
+	 * Renders the triples of the given axioms
+	 *
+	 * @param axioms
+	 *            the axioms to render
+	 * @throws IOException
+	 */
+	public void renderAxioms(Iterable<? extends OWLAxiom> axioms) throws IOException {
+		for (OWLAxiom axiom : axioms) {
+			translator.reset();
+			axiom.accept(translator);
+
+			for (RDFTriple triple : new TreeSet<RDFTriple>(translator.getGraph().getAllTriples())) {
+				String subject = node(triple.getSubject());
+				String predicate = iri(triple.getPredicate().getIRI());
+				String object = node(triple.getObject());
+
+				// the triples about an anonymous individual come with every axiom it is used in
+				if (!triple.getSubject().isIndividual() || !triple.getSubject().isAnonymous()
+						|| individualTriples.add(subject + ' ' + predicate + ' ' + object)) {
+					writeTriple(subject, predicate, object);
+				}
+			}
+		}
+	}
+
+	private void writeTriple(String subject, String predicate, String object) throws IOException {
+		line.setLength(0);
+		line.append(subject).append(' ').append(predicate).append(' ').append(object).append(" .\n");
+		writer.append(line);
+	}
+
+	private String node(RDFNode node) {
+		if (node.isLiteral()) {
+			RDFLiteral literal = (RDFLiteral) node;
+			return literal(literal.getLexicalValue(), literal.getLang(), literal.getDatatype());
+		} else if (node.isAnonymous()) {
+			return node.isIndividual() ? individual(node.getIRI().toString()) : blankNode(node.getIRI().toString());
+		}
+		return iri(node.getIRI());
+	}
+
+	private String value(OWLAnnotationValue value) {
+		if (value instanceof OWLLiteral) {
+			OWLLiteral literal = (OWLLiteral) value;
+			return literal(literal.getLiteral(), literal.getLang(), literal.getDatatype().getIRI());
+		} else if (value instanceof OWLAnonymousIndividual) {
+			return individual(((OWLAnonymousIndividual) value).getID().getID());
+		}
+		return iri((IRI) value);
+	}
+
+	private String blankNode(String id) {
+		return blankNodeLabels.computeIfAbsent(id, i -> blankNodePrefix + blankNodeLabels.size());
+	}
+
+	/**
+	 * @return the label of the anonymous individual with the given id, with the chars not allowed in labels
+	 *         escaped
+	 */
+	static String individual(String id) {
+		StringBuilder label = new StringBuilder(INDIVIDUAL_PREFIX.length() + id.length()).append(INDIVIDUAL_PREFIX);
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if (c < 0x80 && Character.isLetterOrDigit(c) && c != 'x') {
+				label.append(c);
+			} else {
+				label.append(String.format("x%04X", (int) c));
+			}
+		}
+		return label.toString();
+	}
+
+	/**
+	 * @return the N-Triples form of the given IRI, escaping the chars not allowed in IRI references
+	 */
+	static String iri(IRI iri) {
+		String value = iri.toString();
+		StringBuilder escaped = null;
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			boolean allowed = c > 0x20 && "<>\"{}|^`\\".indexOf(c) < 0;
+			if (!allowed && escaped == null) {
+				escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+			}
+			if (escaped != null) {
+				if (allowed) {
+					escaped.append(c);
+				} else {
+					escaped.append(String.format("\\u%04X", (int) c));
+				}
+			}
+		}
+
+		return "<" + (escaped == null ? value : escaped.toString()) + ">";
+	}
+
+	/**
+	 * @return the N-Triples form of the given literal
+	 */
+	static String literal(String lexicalValue, String lang, IRI datatype) {
+		StringBuilder literal = new StringBuilder(lexicalValue.length() + 8).append('"');
+
+		for (int i = 0; i < lexicalValue.length(); i++) {
+			char c = lexicalValue.charAt(i);
+			switch (c) {
+			case '"':
+				literal.append("\\\"");
+				break;
+			case '\\':
+				literal.append("\\\\");
+				break;
+			case '\n':
+				literal.append("\\n");
+				break;
+			case '\r':
+				literal.append("\\r");
+				break;
+			default:
+				literal.append(c);
+			}
+		}
+		literal.append('"');
+
+		if (lang != null && !lang.isEmpty()) {
+			literal.append('@').append(lang);
+		} else if (datatype != null && !OWL2Datatype.XSD_STRING.getIRI().equals(datatype)
+				&& !OWL2Datatype.RDF_PLAIN_LITERAL.getIRI().equals(datatype)) {
+			literal.append("^^").append(iri(datatype));
+		}
+		return literal.toString();
+	}
+}
@@ -1,37 +1,46 @@
 package oops.evaluation;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
-import java.io.InputStreamReader;
-import java.io.StringWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLOntology;
-import org.semanticweb.owlapi.rdf.rdfxml.renderer.RDFXMLRenderer;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import oops.model.ElementPair;
+import oops.evaluation.PitfallProjection.Content;
+import oops.evaluation.SerializedOntologyCache.SerializedOntology;
 import oops.model.EvaluationResult;
-import oops.model.InfoElementWithAffectedElems;
-import oops.model.Pitfall;
-import oops.model.PitfallImportanceLevel;
 
 /**
  * Author: Lukas Gedvilas<br>
@@ -44,38 +53,25 @@ public class OOPSEvaluator {
     
     private static final Logger logger = LoggerFactory.getLogger(OOPSEvaluator.class);
     
-    private static final String OOPS_WS_ENDPOINT = "http://oops.linkeddata.es/rest";
-    
-    private static final String OOPS_WS_REQUEST_TEMPLATE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
-    		+ "<OOPSRequest>"
-    		+ "    <OntologyURI></OntologyURI>"
-    		+ "    <OntologyContent><![CDATA[ %s ]]></OntologyContent>"
-    		+ "    <Pitfalls>%s</Pitfalls>"
-    		+ "    <OutputFormat>XML</OutputFormat>"
-    		+ "</OOPSRequest>";
-    
-    private static final int OOPS_WS_TIMEOUT = 30 * 1000; // set OOPS! WS timeout to 30s
-    
-	private static final String OOPS_XML_PREFIX = "oops:";
-	private static final String OOPS_TAG_RESPONSE = OOPS_XML_PREFIX + "OOPSResponse";
-	private static final String OOPS_TAG_PITFALL = OOPS_XML_PREFIX + "Pitfall";
-	private static final String OOPS_TAG_NAME = OOPS_XML_PREFIX + "Name";
-	private static final String OOPS_TAG_CODE = OOPS_XML_PREFIX + "Code";
-	private static final String OOPS_TAG_DESCRIPTION = OOPS_XML_PREFIX + "Description";
-	private static final String OOPS_TAG_IMPORTANCE = OOPS_XML_PREFIX + "Importance";
-	private static final String OOPS_TAG_NUMBER_AFFECTED_ELEMS = OOPS_XML_PREFIX + "NumberAffectedElements";
-	private static final String OOPS_TAG_AFFECTS = OOPS_XML_PREFIX + "Affects";
-	private static final String OOPS_TAG_AFFECTED_ELEM = OOPS_XML_PREFIX + "AffectedElement";
-	private static final String OOPS_TAG_WRONG_INVERSE = OOPS_XML_PREFIX + "MightNotBeInverseOf";
-	private static final String OOPS_TAG_MIGHT_BE_INVERSE = OOPS_XML_PREFIX + "MightBeInverse";
-	private static final String OOPS_TAG_EQUIVALENT_PROPERTY = OOPS_XML_PREFIX + "MightBeEquivalentProperty";
-	private static final String OOPS_TAG_EQUIVALENT_ATTRIBUTE = OOPS_XML_PREFIX + "MightBeEquivalentAttribute";
-	private static final String OOPS_TAG_EQUIVALENT_CLASSES = OOPS_XML_PREFIX + "MightBeEquivalentClass";
-	private static final String OOPS_TAG_NO_INVERSE_SUGGESTION = OOPS_XML_PREFIX + "NoInverseSuggestion";
-	private static final String OOPS_TAG_SAME_LABEL = OOPS_XML_PREFIX + "HaveSameLabel";
-	private static final String OOPS_TAG_SUGGESTION = OOPS_XML_PREFIX + "Suggestion";
-	private static final String OOPS_TAG_WARNING = OOPS_XML_PREFIX + "Warning";
-	
+    private static final String OOPS_WS_ENDPOINT_PROPERTY = "oops.ws.endpoint"; // system property to override it
+    
+    private static final String OOPS_CACHE_DIR_PROPERTY = "oops.cache.dir"; // system property to override it
+    
+    private static final int EVALUATION_THREADS = 2; // max number of evaluations running at the same time
+    
+    private static final int EVALUATION_QUEUE_CAPACITY = 8; // max number of evaluations waiting for a thread
+    
+    // max number of parts of evaluations in progress at a time, their requests in flight are limited by the transport
+    private static final int REQUEST_THREADS = AdaptiveConcurrencyLimiter.DEFAULT_MAX_LIMIT;
+    
+    private static final int DEFAULT_MAX_PITFALL_SHARDS = 4;
+    
+    private static final long PROGRESS_INTERVAL = 250; // ms between the progress events of an evaluation
+    
+    private static final int DEFAULT_STAGING_AXIOMS = 200000; // requests staged on disk from this ontology size
+    
+    private static final int DEFAULT_MAX_MODULE_AXIOMS = 5000;
+    
 	public static final String PITFALL_WRONG_INVERSE_ID = "P05";
 	public static final String PITFALL_MIGHT_BE_INVERSE_ID = "P13";
 	public static final String PITFALL_MIGHT_BE_EQUIVALENT_ID = "P12";
@@ -85,534 +81,1664 @@ public class OOPSEvaluator {
 	// pitfalls that apply to the ontology in general
 	private static final String generalPitfalls[] = { "P10", "P22", "P38", "P39", "P41" };
 	
-	private static final String OWL_THING_IRI = "http://www.w3.org/2002/07/owl#Thing";
-
-    private static OWLOntology activeOntology;
+	// pitfalls checked by the OOPS! WS when no subset is selected
+	private static final String allPitfalls[] = { "P02", "P03", "P04", "P05", "P06", "P07", "P08", "P10", "P11",
+			"P12", "P13", "P19", "P20", "P21", "P22", "P24", "P25", "P26", "P27", "P28", "P29", "P30", "P31", "P32",
+			"P33", "P34", "P35", "P38", "P39", "P40", "P41" };
+	
+    private static OOPSEvaluator instance = null;
     
-    private static List<String> pitfallsSubset;
+    private static List<EvaluationListener> listeners = new CopyOnWriteArrayList<EvaluationListener>();
     
-    private static OOPSEvaluator instance = null;
+    private static volatile EvaluationResult evaluationResults = null; // results of the last finished evaluation
     
-    private static ArrayList<EvaluationListener> listeners = new ArrayList<EvaluationListener>();
+    // runs the evaluations by priority, the interactive ones before the background ones
+    private static final EvaluationScheduler evaluationScheduler = new EvaluationScheduler("evaluation", 
+    		EVALUATION_THREADS, EVALUATION_QUEUE_CAPACITY);
     
-    private static EvaluationResult evaluationResults = null;
-
-	/**
-     * A runnable task that completes the ontology evaluation process using the OOPS! Web Service
-     */
-    private static Runnable evaluationTask = () -> {
-    	listeners.forEach(l -> l.onEvaluationStarted()); // notify all listeners about evaluation start
-    	
-    	Instant startInstant = Instant.now();
-		
-		activeOntology.getOWLOntologyManager();
-		
-		StringWriter rdfWriter = new StringWriter();
-		RDFXMLRenderer rdfRenderer = new RDFXMLRenderer(activeOntology, rdfWriter);
-		
-		try {
-			rdfRenderer.render();
-			
-			String rdfFormattedOntology = rdfWriter.toString();
-			
-			String pitfallsField = pitfallsSubset.stream().collect(Collectors.joining(","));
-			String oopsRequestBody = String.format(OOPS_WS_REQUEST_TEMPLATE, rdfFormattedOntology, pitfallsField);
-			
-			String oopsResponse = sendOOPSRequest(oopsRequestBody);
-			
-			evaluationResults = getResultsFromResponse(oopsResponse);
-	        
-	        logger.info(String.format("evaluationTask[OOPSEvaluator] finished in %d seconds", 
-					Duration.between(startInstant, Instant.now()).getSeconds()));
-	        
-	        listeners.forEach(l -> l.onEvaluationDone(evaluationResults)); // send results to each listener
-		} catch (Exception e) {
-			logger.error("An exception has ocurred while evaluating the ontology! Exception message: "
-					+ e.getLocalizedMessage());
-			listeners.forEach(l -> l.OnEvaluationException(e));
-		}
-    };
-	
-	/**
-	 * Returns an OOPSEvaluator singleton instance
-	 * 
-	 * @return OOPSEvaluator singleton instance
-	 */
-	public static OOPSEvaluator getInstance() {
-		if (instance == null) {
-			instance = new OOPSEvaluator();
-		}
+    // runs the requests of the parts of an evaluation, waited for by its evaluation thread. The parts of the 
+    // background evaluations wait while any interactive evaluation runs.
+    private static final EvaluationScheduler requestScheduler = new EvaluationScheduler("request", 
+    		REQUEST_THREADS, Integer.MAX_VALUE, evaluationScheduler);
+    
+    // delivers the partial results of the evaluations that exceed their time budget and their progress
+    private static final ScheduledExecutorService evaluationTimer = createEvaluationTimer();
+    
+    // evaluations in progress by their key, shared by all the identical evaluation requests
+    private static final ConcurrentHashMap<EvaluationKey, SharedEvaluation> inFlightEvaluations = 
+    		new ConcurrentHashMap<EvaluationKey, SharedEvaluation>();
+    
+    private static final EvaluationResultCache resultCache = new EvaluationResultCache();
+    
+    private static EvaluationResultStore resultStore = null; // opened on first use, null if it is not available
+    
+    private static boolean resultStoreOpened = false;
+    
+    private static final OntologyFingerprintTracker fingerprintTracker = new OntologyFingerprintTracker();
+    
+    // last evaluation requested for each ontology, to restore its results and to re-evaluate only its changes
+    private static final Map<OWLOntology, LastEvaluation> lastEvaluations = 
+    		new WeakHashMap<OWLOntology, LastEvaluation>();
+    
+    private static final AtomicLong requestedEvaluations = new AtomicLong();
+    
+    private static final AtomicLong coalescedEvaluations = new AtomicLong();
+    
+    private static OOPSTransport transport = OOPSTransport.forEndpoint(
+    		System.getProperty(OOPS_WS_ENDPOINT_PROPERTY, OOPSTransport.DEFAULT_ENDPOINT));
+    
+    private static volatile EvaluationMode evaluationMode = EvaluationMode.SINGLE_REQUEST;
+    
+    private static volatile int maxModuleAxioms = DEFAULT_MAX_MODULE_AXIOMS;
+    
+    private static volatile int maxPitfallShards = DEFAULT_MAX_PITFALL_SHARDS;
+    
+    private static final PitfallLatencyEstimator pitfallLatencies = new PitfallLatencyEstimator();
+    
+    private static volatile boolean incrementalEvaluation = true;
+    
+    private static volatile boolean importsClosureEvaluation = false;
+    
+    private static volatile int stagingAxiomThreshold = DEFAULT_STAGING_AXIOMS;
+    
+    private static volatile long stagingByteThreshold = RequestBody.DEFAULT_SPILL_THRESHOLD;
+    
+    private static volatile UploadSyntax uploadSyntax = UploadSyntax.RDF_XML;
+    
+    private static final UploadSyntaxSelector uploadSyntaxSelector = new UploadSyntaxSelector();
+    
+    // serialized projections of the evaluated ontologies, reused by the requests with other pitfalls
+    private static final SerializedOntologyCache serializedOntologies = new SerializedOntologyCache();
 
-		return instance;
-	}
-	
 	/**
-	 * Send the required message to OOPS! WS endpoint and returns its response
+	 * Completes the ontology evaluation process using the OOPS! Web Service, with a single request or with a
+	 * request for each module of the ontology depending on the evaluation mode.
 	 * 
-	 * @param oopsRequestBody
-	 *            the message to send
-	 * @return the response text
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param progress
+	 *            the progress of the evaluation, which gets the results of its finished parts
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the evaluation results
 	 * @throws Exception
 	 */
-	private static String sendOOPSRequest(String oopsRequestBody) throws Exception {
-		HttpURLConnection connection = (HttpURLConnection) new URL(OOPS_WS_ENDPOINT).openConnection();
-		connection.setRequestMethod("POST");
-		connection.setReadTimeout(OOPS_WS_TIMEOUT);
+	private static EvaluationResult runEvaluation(OWLOntology ontology, List<String> pitfallsSubset,
+			EvaluationProgress progress, CancellationToken cancellation) throws Exception {
+		Instant startInstant = Instant.now();
 		
-		// Send POST request
-		connection.setDoOutput(true);
-		DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-		wr.writeBytes(oopsRequestBody);
-		wr.flush();
-		wr.close();
+		EvaluationResult results;
+		switch (evaluationMode) {
+		case MODULES:
+			results = runModulesEvaluation(ontology, pitfallsSubset, progress, cancellation);
+			break;
+		case PITFALL_SHARDS:
+			results = runShardsEvaluation(ontology, pitfallsSubset, progress, cancellation);
+			break;
+		default:
+			results = runRequest(ontology, pitfallsSubset, progress.getTransfers(), cancellation);
+		}
 		
-		int responseCode = connection.getResponseCode();
+		logger.info(String.format("runEvaluation[OOPSEvaluator] finished in %d seconds", 
+				Duration.between(startInstant, Instant.now()).getSeconds()));
 		
-		if (responseCode == 200) {
-			BufferedReader in = new BufferedReader(
-			        new InputStreamReader(connection.getInputStream()));
-			String response = in.lines().collect(Collectors.joining("\n"));
-			
-			return response;
-		} else {
-			throw new Exception("The OOPS! web service request has failed with status code " + responseCode);
-		}
+		return results;
 	}
 	
 	/**
-	 * Parses the OOPS! WS response and returns the organised results
+	 * Evaluates the given ontology with a single request to the OOPS! WS. Only the projection of the ontology to
+	 * the content needed by the selected pitfalls is uploaded. The request is staged on disk before it is sent if
+	 * the projection has at least the staging axiom threshold, and any request bigger than the staging byte
+	 * threshold is kept on disk for its retries. The ontology is uploaded in the selected syntax, and in RDF/XML if
+	 * the endpoint rejects it. The latency of the request is recorded for the estimates of the pitfalls latencies.
+	 * <p>
+	 * The serialized projections of the evaluated ontologies are cached, so the next requests about the same
+	 * revision and projected content only write their pitfalls around the cached ontology.
 	 * 
-	 * @param oopsResponse
-	 *            the response from the OOPS! WebService
-	 * @return OOPS! WS results
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param transfers
+	 *            the progress of the requests of the evaluation, which tracks this request
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the evaluation results
 	 * @throws Exception
 	 */
-	private static EvaluationResult getResultsFromResponse(String oopsResponse) throws Exception {
-		DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+	private static EvaluationResult runRequest(OWLOntology ontology, List<String> pitfallsSubset, 
+			TransferProgress transfers, CancellationToken cancellation) throws Exception {
+		cancellation.throwIfCancelled();
 		
-		Document doc = dBuilder.parse(new ByteArrayInputStream(oopsResponse.getBytes()));
-		doc.getDocumentElement().normalize();
+		Instant startInstant = Instant.now();
 		
-		Element parsedResponse = (Element) doc.getElementsByTagName(OOPS_TAG_RESPONSE).item(0);
+		List<String> pitfalls = pitfallsSubset.isEmpty() ? Arrays.asList(allPitfalls) : pitfallsSubset;
+		long estimatedMillis = (long) pitfalls.stream().mapToDouble(pitfallLatencies::getEstimate).sum();
 		
-		NodeList pitfallsList = parsedResponse.getElementsByTagName(OOPS_TAG_PITFALL);
+		OOPSTransport requestTransport = transport;
 		
-		HashMap<String, ArrayList<Pitfall>> detectedPitfalls = new HashMap<String, ArrayList<Pitfall>>();
+		// only the evaluated ontologies are cached, not their modules
+		boolean cacheable = fingerprintTracker.isTracked(ontology);
+		long revision = cacheable ? fingerprintTracker.getRevision(ontology) : 0;
+		EnumSet<Content> contents = PitfallProjection.getContents(pitfallsSubset);
 		
-		evaluationResults = new EvaluationResult();
-		
-		if (pitfallsList.getLength() == 0) {
-			logger.debug("There are no pitfalls!");
-		} else {
-			logger.debug(String.format("There are %d pitfalls!  -->>", pitfallsList.getLength()));
-			for (int i = 0; i < pitfallsList.getLength(); i++) {
-				Element pitfall = (Element) pitfallsList.item(i);
-				Node pitfallDescriptionNode = pitfall.getElementsByTagName(OOPS_TAG_DESCRIPTION).item(0);
-				Node pitfallCodeNode = pitfall.getElementsByTagName(OOPS_TAG_CODE).item(0);
-				Node pitfallNameNode = pitfall.getElementsByTagName(OOPS_TAG_NAME).item(0);
-				Node pitfallImportanceNode = pitfall.getElementsByTagName(OOPS_TAG_IMPORTANCE).item(0);
-				Node pitfallNumAffectedElemsNode = pitfall.getElementsByTagName(OOPS_TAG_NUMBER_AFFECTED_ELEMS).item(0);
-				Element pitfallAffectsElement = (Element) pitfall.getElementsByTagName(OOPS_TAG_AFFECTS).item(0);
-
-				String pitfallDescription = pitfallDescriptionNode.getTextContent();
-				String pitfallCode = pitfallCodeNode.getTextContent();
-				String pitfallName = pitfallNameNode.getTextContent();
-				String pitfallImportance = pitfallImportanceNode.getTextContent();
-				
-				int pitfallNumAffectedElems = 0;
-				if (pitfallNumAffectedElemsNode != null) {
-					pitfallNumAffectedElems = Integer.parseInt(pitfallNumAffectedElemsNode.getTextContent());
-				}
-				
-				switch (pitfallCode) {
-				case PITFALL_EQUIVALENT_CLASSES_ID:
-					NodeList mightBeEquivalentClassList = pitfallAffectsElement.getElementsByTagName(OOPS_TAG_EQUIVALENT_CLASSES);
-					
-					ArrayList<ElementPair> equivalentClasses = new ArrayList<ElementPair>();
-					
-					for (int j = 0; j < mightBeEquivalentClassList.getLength(); j++) {
-						Element mightBeEquivalentNode = (Element) mightBeEquivalentClassList.item(j);
-						
-						NodeList equivalentClassesNodes = mightBeEquivalentNode.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-						String equivalent1 = equivalentClassesNodes.item(0).getFirstChild().getNodeValue();
-						String equivalent2 = equivalentClassesNodes.item(1).getFirstChild().getNodeValue();
-						
-						for (String elementIRI : new String[]{equivalent1, equivalent2}) {
-							if (!detectedPitfalls.containsKey(elementIRI)) {
-								detectedPitfalls.put(elementIRI, new ArrayList<Pitfall>());
-							}
-							
-							detectedPitfalls.get(elementIRI).add(
-									new Pitfall(
-											PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-											pitfallCode,
-											pitfallName,
-											pitfallDescription,
-											pitfallNumAffectedElems));
-						}
-						
-						equivalentClasses.add(new ElementPair(equivalent1, equivalent2));
-					}
-					
-					evaluationResults.setEquivalentClasses(equivalentClasses);
-					break;
-				case PITFALL_MIGHT_BE_EQUIVALENT_ID:
-					NodeList mightBeEquivalentPropertyList = pitfallAffectsElement.getElementsByTagName(OOPS_TAG_EQUIVALENT_PROPERTY);
-					NodeList mightBeEquivalentAttributeList = pitfallAffectsElement.getElementsByTagName(OOPS_TAG_EQUIVALENT_ATTRIBUTE);
-					
-					ArrayList<ElementPair> equivalentProperties = new ArrayList<ElementPair>();
-					ArrayList<ElementPair> equivalentAttributes = new ArrayList<ElementPair>();
-					
-					for (int j = 0; j < mightBeEquivalentPropertyList.getLength(); j++) { // eq properties loop
-						Element mightBeEquivalentPropertyNode = (Element) mightBeEquivalentPropertyList.item(j);
-						
-						NodeList equivalentPropertyNodes = mightBeEquivalentPropertyNode.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-						String equivalent1 = equivalentPropertyNodes.item(0).getFirstChild().getNodeValue();
-						String equivalent2 = equivalentPropertyNodes.item(1).getFirstChild().getNodeValue();
-						
-						for (String elementIRI : new String[]{equivalent1, equivalent2}) {
-							if (!detectedPitfalls.containsKey(elementIRI)) {
-								detectedPitfalls.put(elementIRI, new ArrayList<Pitfall>());
-							}
-							
-							detectedPitfalls.get(elementIRI).add(
-									new Pitfall(
-											PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-											pitfallCode,
-											pitfallName,
-											pitfallDescription,
-											pitfallNumAffectedElems));
-						}
-						
-						equivalentProperties.add(new ElementPair(equivalent1, equivalent2));
-					}
-					
-					for (int j = 0; j < mightBeEquivalentAttributeList.getLength(); j++) { // eq attributes loop
-						Element mightBeEquivalentAttributeNode = (Element) mightBeEquivalentAttributeList.item(j);
-						
-						NodeList equivalentAttributesNodes = mightBeEquivalentAttributeNode.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-						String equivalent1 = equivalentAttributesNodes.item(0).getFirstChild().getNodeValue();
-						String equivalent2 = equivalentAttributesNodes.item(1).getFirstChild().getNodeValue();
-						
-						for (String elementIRI : new String[]{equivalent1, equivalent2}) {
-							if (!detectedPitfalls.containsKey(elementIRI)) {
-								detectedPitfalls.put(elementIRI, new ArrayList<Pitfall>());
-							}
-							
-							detectedPitfalls.get(elementIRI).add(
-									new Pitfall(
-											PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-											pitfallCode,
-											pitfallName,
-											pitfallDescription,
-											pitfallNumAffectedElems));
-						}
-						
-						equivalentAttributes.add(new ElementPair(equivalent1, equivalent2));
-					}
-					
-					if (equivalentProperties.size() > 0) {
-						evaluationResults.setEquivalentRelations(equivalentProperties);
-					}
-					
-					if (equivalentAttributes.size() > 0) {
-						evaluationResults.setEquivalentAttributes(equivalentAttributes);
-					}
-					
-					break;
-				case PITFALL_MIGHT_BE_INVERSE_ID:
-					// MIGHT BE INVERSE
-					NodeList mightBeInverseList = pitfallAffectsElement.getElementsByTagName(OOPS_TAG_MIGHT_BE_INVERSE);
-					
-					List<ElementPair> inverseRelations = new ArrayList<ElementPair>();
-					
-					for (int j = 0; j < mightBeInverseList.getLength(); j++) {
-						Element mightBeInverseNode = (Element) mightBeInverseList.item(j);
-						
-						NodeList inverseNodes = mightBeInverseNode.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-						String equivalent1 = inverseNodes.item(0).getFirstChild().getNodeValue();
-						String equivalent2 = inverseNodes.item(1).getFirstChild().getNodeValue();
-						
-						for (String elementIRI : new String[]{equivalent1, equivalent2}) {
-							if (!detectedPitfalls.containsKey(elementIRI)) {
-								detectedPitfalls.put(elementIRI, new ArrayList<Pitfall>());
-							}
-							
-							detectedPitfalls.get(elementIRI).add(
-									new Pitfall(
-											PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-											pitfallCode,
-											pitfallName,
-											pitfallDescription,
-											pitfallNumAffectedElems));
-						}
-						
-						inverseRelations.add(new ElementPair(equivalent1, equivalent2));
-					}
-					
-					evaluationResults.setMightBeInverseRelations(inverseRelations);
-					
-					// NO INVERSE SUGGESTION
-					NodeList noInverseSuggestionNodes = pitfallAffectsElement.getElementsByTagName(OOPS_TAG_NO_INVERSE_SUGGESTION);
-					
-					List<String> noInverseSuggestions = new ArrayList<String>();
-					
-					for (int j = 0; j < noInverseSuggestionNodes.getLength(); j++) {
-						Element noInverseNode = (Element) noInverseSuggestionNodes.item(j);
-						
-						NodeList inverseNodes = noInverseNode.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-						
-						for (int nodeIndex = 0; nodeIndex < inverseNodes.getLength(); nodeIndex++) {
-							Node affectedElement = inverseNodes.item(nodeIndex);
-							String affectedElementIRI = affectedElement.getTextContent();
-							if (!detectedPitfalls.containsKey(affectedElementIRI)) {
-								detectedPitfalls.put(affectedElementIRI, new ArrayList<Pitfall>());
-							}
-							
-							detectedPitfalls.get(affectedElementIRI).add(
-									new Pitfall(
-											PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-											pitfallCode,
-											pitfallName,
-											pitfallDescription,
-											pitfallNumAffectedElems));
-							
-							noInverseSuggestions.add(affectedElementIRI);
-						}
-					}
-					
-					evaluationResults.setRelationsWithoutInverse(noInverseSuggestions);
-					
-					break;
-				case PITFALL_WRONG_INVERSE_ID:
-					NodeList wrongInverseList = pitfallAffectsElement.getElementsByTagName(OOPS_TAG_WRONG_INVERSE);
-					
-					ArrayList<ElementPair> wrongInverseRelations = new ArrayList<ElementPair>();
+		// the first attempt uploads the ontology in the selected syntax, the second one in RDF/XML if it is rejected
+		EvaluationResult results = null;
+		for (boolean fallback = false; results == null; fallback = true) {
+			TransferProgress.Request request = transfers.startRequest(estimatedMillis);
+			
+			boolean rdfXmlOnly = fallback;
+			SerializedOntology serializedOntology = !cacheable ? null : serializedOntologies.acquire(ontology, 
+					revision, contents, s -> rdfXmlOnly ? s == UploadSyntax.RDF_XML 
+							: isUploadSyntaxAccepted(requestTransport, s));
+			
+			UploadSyntax syntax = null;
+			try {
+				if (serializedOntology != null) {
+					syntax = serializedOntology.getSyntax();
 					
-					for (int j = 0; j < wrongInverseList.getLength(); j++) {
-						Element wrongInverseNode = (Element) wrongInverseList.item(j);
-						
-						NodeList wrongInverseNodes = wrongInverseNode.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-						String equivalent1 = wrongInverseNodes.item(0).getFirstChild().getNodeValue();
-						String equivalent2 = wrongInverseNodes.item(1).getFirstChild().getNodeValue();
-						
-						for (String elementIRI : new String[]{equivalent1, equivalent2}) {
-							if (!detectedPitfalls.containsKey(elementIRI)) {
-								detectedPitfalls.put(elementIRI, new ArrayList<Pitfall>());
-							}
-							
-							detectedPitfalls.get(elementIRI).add(
-									new Pitfall(
-											PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-											pitfallCode,
-											pitfallName,
-											pitfallDescription,
-											pitfallNumAffectedElems));
-						}
-						
-						wrongInverseRelations.add(new ElementPair(equivalent1, equivalent2));
-					}
+					logger.info(String.format("runRequest[OOPSEvaluator] reusing the %s serialized ontology for %s", 
+							syntax, contents));
 					
-					evaluationResults.setWrongInverseRelations(wrongInverseRelations);
+					request.expectBytes(serializedOntology.getBytes().size());
+					results = sendRequest(requestTransport, new OOPSRequestWriter(serializedOntology.getBytes(), 
+							syntax, pitfallsSubset, cancellation), serializedOntology.getAxiomCount(), request, 
+							cancellation);
+				} else {
+					// upload only the content needed to check the selected pitfalls
+					OWLOntology projectedOntology = PitfallProjection.project(ontology, pitfallsSubset);
 					
-					break;
-				case PITFALL_SAME_LABEL:
-					NodeList haveSameLabelNodeList = pitfallAffectsElement.getElementsByTagName(OOPS_TAG_SAME_LABEL);
+					cancellation.throwIfCancelled();
 					
-					ArrayList<ElementPair> elementsWithSameLabel = new ArrayList<ElementPair>();
+					syntax = fallback ? UploadSyntax.RDF_XML 
+							: resolveUploadSyntax(requestTransport, projectedOntology.getAxiomCount());
+					request.expectBytes(uploadSyntaxSelector.getEstimatedBytes(syntax, 
+							projectedOntology.getAxiomCount()));
 					
-					for (int j = 0; j < haveSameLabelNodeList.getLength(); j++) {
-						Element hasSameLabelNode = (Element) haveSameLabelNodeList.item(j);
-						
-						NodeList sameLabelNodes = hasSameLabelNode.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-						String equivalent1 = sameLabelNodes.item(0).getFirstChild().getNodeValue();
-						String equivalent2 = sameLabelNodes.item(1).getFirstChild().getNodeValue();
-						
-						for (String elementIRI : new String[]{equivalent1, equivalent2}) {
-							if (!detectedPitfalls.containsKey(elementIRI)) {
-								detectedPitfalls.put(elementIRI, new ArrayList<Pitfall>());
-							}
-							
-							detectedPitfalls.get(elementIRI).add(
-									new Pitfall(
-											PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-											pitfallCode,
-											pitfallName,
-											pitfallDescription,
-											pitfallNumAffectedElems));
-						}
-						
-						elementsWithSameLabel.add(new ElementPair(equivalent1, equivalent2));
+					OOPSRequestWriter requestWriter = new OOPSRequestWriter(projectedOntology, pitfallsSubset, syntax, 
+							cancellation);
+					if (cacheable) {
+						requestWriter.captureOntology(serializedOntologies.getMaxMemory());
 					}
 					
-					evaluationResults.setElementsWithSameLabel(elementsWithSameLabel);
-					
-					break;
-				default:
-					if (isGeneralPitfall(pitfallCode)) {
-						// add pitfall to the root element of the owl ontology
-						detectedPitfalls.put(OWL_THING_IRI, new ArrayList<Pitfall>(Arrays.asList(new Pitfall(
-								PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-								pitfallCode,
-								pitfallName,
-								pitfallDescription,
-								pitfallNumAffectedElems))));
-					} else {
-						NodeList affectedElements = pitfallAffectsElement.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-						for (int j = 0; j < affectedElements.getLength(); j++) {
-							Node affectedElement = affectedElements.item(j);
-							String affectedElementIRI = affectedElement.getTextContent();
-							
-							if (!detectedPitfalls.containsKey(affectedElementIRI)) {
-								detectedPitfalls.put(affectedElementIRI, new ArrayList<Pitfall>());
-							}
-							
-							detectedPitfalls.get(affectedElementIRI).add(
-									new Pitfall(
-											PitfallImportanceLevel.valueOf(pitfallImportance.toUpperCase()),
-											pitfallCode,
-											pitfallName,
-											pitfallDescription,
-											pitfallNumAffectedElems));
+					try {
+						results = sendRequest(requestTransport, requestWriter, projectedOntology.getAxiomCount(), 
+								request, cancellation);
+					} finally {
+						ByteBufferChain capturedOntology = requestWriter.takeCapturedOntology();
+						if (capturedOntology != null) {
+							serializedOntologies.put(ontology, revision, fingerprintTracker.getRevision(ontology), 
+									contents, syntax, projectedOntology.getAxiomCount(), capturedOntology);
 						}
 					}
 				}
+			} catch (OOPSServiceException e) {
+				if (syntax == UploadSyntax.RDF_XML || e.isRetryable() 
+						|| e.getStatusCode() == OOPSServiceException.NO_STATUS_CODE) {
+					throw e;
+				}
+				
+				logger.warn(String.format("The OOPS! web service has rejected an ontology in %s with status code "
+						+ "%d, sending it again in RDF/XML", syntax, e.getStatusCode()));
+				
+				requestTransport.setSyntaxSupported(syntax, false);
+			} finally {
+				request.finish();
+				if (serializedOntology != null) {
+					serializedOntology.release();
+				}
 			}
 		}
-        
-		evaluationResults.setDetectedPitfalls(detectedPitfalls);
 		
-		// SUGGESTIONS
-		NodeList suggestionsList = parsedResponse.getElementsByTagName(OOPS_TAG_SUGGESTION);
+		cancellation.throwIfCancelled();
 		
-		if (suggestionsList.getLength() == 0) {
-			logger.debug("There are no suggestions!");
-		} else {
-			logger.debug(String.format("There are %d suggestions!", suggestionsList.getLength()));
-			List<InfoElementWithAffectedElems> suggestions = new ArrayList<InfoElementWithAffectedElems>();
+		pitfallLatencies.record(pitfalls, Duration.between(startInstant, Instant.now()).toMillis());
+		
+		return results;
+	}
+	
+	/**
+	 * Sends a single request written by the given writer and parses its response, tracking its progress
+	 * 
+	 * @return the evaluation results
+	 * @throws Exception
+	 */
+	private static EvaluationResult sendRequest(OOPSTransport requestTransport, OOPSRequestWriter requestWriter, 
+			int axiomCount, TransferProgress.Request request, CancellationToken cancellation) throws Exception {
+		boolean staged = axiomCount >= stagingAxiomThreshold;
+		
+		try (RequestBody body = new RequestBody(requestWriter, staged, stagingByteThreshold, request)) {
+			return requestTransport.send(body, cancellation, in -> OOPSResponseParser.parse(in, request), request);
+		}
+	}
+	
+	/**
+	 * Returns the syntax to upload an ontology of the given size in. The selected syntax is used if the endpoint
+	 * supports it, and in {@link UploadSyntax#AUTO} mode the cheapest supported one is picked for the size.
+	 * 
+	 * @param requestTransport
+	 *            the transport of the request
+	 * @param axioms
+	 *            the number of axioms of the uploaded ontology
+	 * @return the upload syntax of the request
+	 */
+	private static UploadSyntax resolveUploadSyntax(OOPSTransport requestTransport, int axioms) {
+		UploadSyntax syntax = uploadSyntax;
+		if (syntax == UploadSyntax.AUTO) {
+			syntax = uploadSyntaxSelector.select(axioms, requestTransport.getEffectiveRequestCompression(), 
+					requestTransport::isSyntaxSupported);
 			
-			for (int i = 0; i < suggestionsList.getLength(); i++) {
-				Element suggestion = (Element) suggestionsList.item(i);
-				Node elemDescriptionNode = suggestion.getElementsByTagName(OOPS_TAG_DESCRIPTION).item(0);
-				Node elemNameNode = suggestion.getElementsByTagName(OOPS_TAG_NAME).item(0);
-				Node numAffectedElemsNode = suggestion.getElementsByTagName(OOPS_TAG_NUMBER_AFFECTED_ELEMS).item(0);
-				Element affectsElement = (Element) suggestion.getElementsByTagName(OOPS_TAG_AFFECTS).item(0);
-
-				String description = elemDescriptionNode.getTextContent();
-				String name = elemNameNode.getTextContent();
-				int numAffectedElems = Integer.parseInt(numAffectedElemsNode.getTextContent());
-				
-				List<String> affectedElements = new ArrayList<String>();
-				NodeList affectedElementNodes = affectsElement.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-				
-				for (int j = 0; j < affectedElementNodes.getLength(); j++) {
-					Node affectedElement = affectedElementNodes.item(j);
-					String affectedElementIRI = affectedElement.getTextContent();
-					
-					affectedElements.add(affectedElementIRI);
-				}
-				
-				suggestions.add(new InfoElementWithAffectedElems(name, description, numAffectedElems, 
-						affectedElements));
+			logger.info(String.format("resolveUploadSyntax[OOPSEvaluator] uploading %d axioms in %s", axioms, syntax));
+		}
+		
+		return requestTransport.isSyntaxSupported(syntax) ? syntax : UploadSyntax.RDF_XML;
+	}
+	
+	/**
+	 * @return true if an ontology serialized in the given syntax can be uploaded with the current settings
+	 */
+	private static boolean isUploadSyntaxAccepted(OOPSTransport requestTransport, UploadSyntax syntax) {
+		if (uploadSyntax == UploadSyntax.AUTO) {
+			return requestTransport.isSyntaxSupported(syntax);
+		}
+		return syntax == (requestTransport.isSyntaxSupported(uploadSyntax) ? uploadSyntax : UploadSyntax.RDF_XML);
+	}
+	
+	/**
+	 * Re-evaluates only the changes of the given ontology since its previous evaluation and patches its results.
+	 * The entities touched by the changes are re-evaluated with their locality-based module, and their previous
+	 * pitfalls are replaced with the new ones. The general pitfalls are checked again on the whole ontology only
+	 * if the changes can affect them. The previous results are not modified, as they may be cached.
+	 * 
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param key
+	 *            the key of the evaluation, with the pitfalls to check
+	 * @param previousEvaluation
+	 *            the previous evaluation requested for the ontology, or null if there is none
+	 * @param progress
+	 *            the progress of the evaluation, which gets the results of its finished parts
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the patched evaluation results, or null if the ontology has to be evaluated in full (e.g. the
+	 *         previous results are not available or the changes are too big)
+	 * @throws Exception
+	 */
+	private static EvaluationResult runIncrementalEvaluation(OWLOntology ontology, EvaluationKey key, 
+			LastEvaluation previousEvaluation, EvaluationProgress progress, CancellationToken cancellation) 
+			throws Exception {
+		if (!incrementalEvaluation || previousEvaluation == null 
+				|| !previousEvaluation.ontologyKey.getPitfalls().equals(key.getPitfalls())) {
+			return null;
+		}
+		
+		OntologyChanges changes = fingerprintTracker.getChangesSince(ontology, previousEvaluation.revision);
+		if (changes == null) {
+			return null;
+		}
+		
+		EvaluationResult previousResult = resultCache.get(previousEvaluation.ontologyKey);
+		if (previousResult == null) {
+			previousResult = loadStoredResult(previousEvaluation.ontologyKey);
+			if (previousResult == null) {
+				return null;
 			}
-			
-			evaluationResults.setSuggestions(suggestions);
 		}
 		
-		// WARNINGS
-		NodeList warningsList = parsedResponse.getElementsByTagName(OOPS_TAG_WARNING);
+		List<String> pitfalls = key.getPitfalls().isEmpty() ? Arrays.asList(allPitfalls) : key.getPitfalls();
 		
-		if (warningsList.getLength() == 0) {
-			logger.debug("There are no warnings!");
-		} else {
-			logger.debug(String.format("There are %d warnings!", warningsList.getLength()));
-			List<InfoElementWithAffectedElems> warnings = new ArrayList<InfoElementWithAffectedElems>();
+		List<String> refreshedPitfalls = pitfalls.stream().filter(p -> isGeneralPitfall(p) && changes.affects(p))
+				.collect(Collectors.toList());
+		List<String> entityPitfalls = pitfalls.stream().filter(p -> !isGeneralPitfall(p))
+				.collect(Collectors.toList());
+		
+		Set<OWLEntity> touchedEntities = new HashSet<OWLEntity>();
+		for (String touchedIRI : changes.getTouchedIRIs()) {
+			touchedEntities.addAll(ontology.getEntitiesInSignature(IRI.create(touchedIRI)));
+		}
+		
+		List<EvaluationPart> parts = new ArrayList<EvaluationPart>();
+		
+		if (!entityPitfalls.isEmpty() && !touchedEntities.isEmpty()) {
+			OWLOntology module = OntologyModularizer.extractModule(ontology, touchedEntities);
 			
-			for (int i = 0; i < warningsList.getLength(); i++) {
-				Element warning = (Element) warningsList.item(i);
-				Node elemNameNode = warning.getElementsByTagName(OOPS_TAG_NAME).item(0);
-				Node numAffectedElemsNode = warning.getElementsByTagName(OOPS_TAG_NUMBER_AFFECTED_ELEMS).item(0);
-				Element affectsElement = (Element) warning.getElementsByTagName(OOPS_TAG_AFFECTS).item(0);
-
-				String name = elemNameNode.getTextContent();
-				int numAffectedElems = Integer.parseInt(numAffectedElemsNode.getTextContent());
-				
-				List<String> affectedElements = new ArrayList<String>();
-				NodeList affectedElementNodes = affectsElement.getElementsByTagName(OOPS_TAG_AFFECTED_ELEM);
-				
-				for (int j = 0; j < affectedElementNodes.getLength(); j++) {
-					Node affectedElement = affectedElementNodes.item(j);
-					String affectedElementIRI = affectedElement.getTextContent();
-					
-					affectedElements.add(affectedElementIRI);
-				}
-				
-				warnings.add(new InfoElementWithAffectedElems(name, null, numAffectedElems, affectedElements));
+			if (module.getAxiomCount() > ontology.getAxiomCount() / 2) {
+				logger.info(String.format("runIncrementalEvaluation[OOPSEvaluator] the module of the %d changes has "
+						+ "%d of %d axioms, evaluating the whole ontology", changes.getChangesCount(), 
+						module.getAxiomCount(), ontology.getAxiomCount()));
+				return null;
 			}
 			
-			evaluationResults.setWarnings(warnings);
+			parts.add(new EvaluationPart(module, entityPitfalls));
+		}
+		if (!refreshedPitfalls.isEmpty()) {
+			parts.add(new EvaluationPart(ontology, refreshedPitfalls));
+		}
+		
+		logger.info(String.format("runIncrementalEvaluation[OOPSEvaluator] re-evaluating %d touched entities "
+				+ "of %d changes, refreshing the general pitfalls %s", changes.getTouchedIRIs().size(), 
+				changes.getChangesCount(), refreshedPitfalls));
+		
+		EvaluationResult unchangedResult = EvaluationResultFilter.withoutElements(previousResult, 
+				changes.getTouchedIRIs(), refreshedPitfalls);
+		progress.add(unchangedResult);
+		
+		EvaluationResultMerger merger = new EvaluationResultMerger();
+		merger.add(unchangedResult);
+		if (!parts.isEmpty()) {
+			// the results of the parts are only partial results once they are filtered
+			EvaluationResult partsResult = runParts(parts, new EvaluationProgress(progress.getTransfers()), 
+					cancellation);
+			merger.add(EvaluationResultFilter.onlyElements(partsResult, changes.getTouchedIRIs()));
 		}
-        
-        return evaluationResults;
+		
+		return merger.getResult();
 	}
 	
 	/**
-	 * Returns true if the specified pitfall affects the ontology itself
+	 * Evaluates the given ontology alone, re-evaluating only its changes since its previous evaluation if it is
+	 * possible
 	 * 
-	 * @param pitfallCode
-	 *            the specified pitfall code
-	 * @return true if the specified pitfall affects the ontology itself
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param key
+	 *            the key of the ontology alone, with the pitfalls to check
+	 * @param previousEvaluation
+	 *            the previous evaluation requested for the ontology, or null if there is none
+	 * @param progress
+	 *            the progress of the evaluation, which gets the results of its finished parts
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the evaluation results
+	 * @throws Exception
 	 */
-	public static boolean isGeneralPitfall(String pitfallCode) {
-		return Stream.of(generalPitfalls).anyMatch(p -> p.equals(pitfallCode));
+	private static EvaluationResult evaluateOntology(OWLOntology ontology, EvaluationKey key, 
+			LastEvaluation previousEvaluation, EvaluationProgress progress, CancellationToken cancellation) 
+			throws Exception {
+		EvaluationResult incrementalResult = runIncrementalEvaluation(ontology, key, previousEvaluation, progress, 
+				cancellation);
+		return incrementalResult != null ? incrementalResult 
+				: runEvaluation(ontology, key.getPitfalls(), progress, cancellation);
 	}
 	
-    /**
-	 * @return the evaluationResults
+	/**
+	 * Evaluates each ontology of the imports closure of the given ontology on its own and merges their results,
+	 * tagging every pitfall with the ontology it was detected in. The results of every ontology are cached and
+	 * stored by themselves, the imported ones by their document IRI and content, so the imported ontologies that
+	 * have not changed (e.g. shared upper ontologies) are not uploaded again.
+	 * 
+	 * @param ontology
+	 *            the ontology to evaluate with its imports closure
+	 * @param ontologyKey
+	 *            the key of the ontology alone, with the pitfalls to check
+	 * @param previousEvaluation
+	 *            the previous evaluation requested for the ontology, or null if there is none
+	 * @param progress
+	 *            the progress of the evaluation, with a nested progress for each ontology
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the merged evaluation results
+	 * @throws Exception
 	 */
-	public static EvaluationResult getEvaluationResults() {
-		return evaluationResults;
+	private static EvaluationResult runImportsClosureEvaluation(OWLOntology ontology, EvaluationKey ontologyKey, 
+			LastEvaluation previousEvaluation, EvaluationProgress progress, CancellationToken cancellation) 
+			throws Exception {
+		List<OWLOntology> importedOntologies = getImportedOntologies(ontology);
+		
+		logger.info(String.format("runImportsClosureEvaluation[OOPSEvaluator] evaluating the ontology and its %d "
+				+ "imported ontologies", importedOntologies.size()));
+		
+		EvaluationResultMerger merger = new EvaluationResultMerger();
+		merger.add(evaluateClosureOntology(ontology, ontologyKey, previousEvaluation, progress, cancellation), 
+				getSourceOntology(ontology));
+		
+		for (OWLOntology importedOntology : importedOntologies) {
+			cancellation.throwIfCancelled();
+			
+			EvaluationKey importedKey = new EvaluationKey(getImportedFingerprint(importedOntology), 
+					ontologyKey.getPitfalls());
+			merger.add(evaluateClosureOntology(importedOntology, importedKey, null, progress, cancellation), 
+					getSourceOntology(importedOntology));
+		}
+		
+		return merger.getResult();
 	}
 	
 	/**
-	 * Add a listener for evaluation events
+	 * Returns the cached or stored results of an ontology of an imports closure, or evaluates it and caches and
+	 * stores its results if there are none. The results are added to the progress of the closure evaluation.
 	 * 
-	 * @param listener
-	 *            the evaluation events listener to add
+	 * @return the results of the ontology alone
+	 * @throws Exception
 	 */
-	public void addListener(EvaluationListener listener) {
-		if (!listeners.contains(listener)) {
-			listeners.add(listener);
+	private static EvaluationResult evaluateClosureOntology(OWLOntology ontology, EvaluationKey key, 
+			LastEvaluation previousEvaluation, EvaluationProgress closureProgress, CancellationToken cancellation) 
+			throws Exception {
+		EvaluationProgress progress = closureProgress.startPart(getSourceOntology(ontology));
+		
+		EvaluationResult result = resultCache.get(key);
+		if (result == null) {
+			result = loadStoredResult(key);
+			if (result != null) {
+				resultCache.put(key, result);
+			}
+		}
+		
+		if (result != null) {
+			logger.info(String.format("runImportsClosureEvaluation[OOPSEvaluator] reusing the results of %s for %s", 
+					getSourceOntology(ontology), key));
+		} else {
+			result = evaluateOntology(ontology, key, previousEvaluation, progress, cancellation);
+			resultCache.put(key, result);
+			saveStoredResult(key, result);
 		}
+		
+		closureProgress.finishPart(progress, result);
+		return result;
 	}
-
+	
 	/**
-	 * Remove a listener for evaluation events
+	 * Returns the fingerprint of the evaluated content of the given ontology: the ontology alone, or its whole
+	 * imports closure in the imports closure evaluation
 	 * 
-	 * @param listener
-	 *            the evaluation events listener to remove
+	 * @param ontology
+	 *            the evaluated ontology
+	 * @return the fingerprint of the evaluated content
 	 */
-	public void removeListener(EvaluationListener listener) {
-		listeners.remove(listener);
+	private static OntologyFingerprint getEvaluatedFingerprint(OWLOntology ontology) {
+		OntologyFingerprint fingerprint = fingerprintTracker.getFingerprint(ontology);
+		if (importsClosureEvaluation) {
+			for (OWLOntology importedOntology : getImportedOntologies(ontology)) {
+				fingerprint = fingerprint.plus(getImportedFingerprint(importedOntology));
+			}
+		}
+		return fingerprint;
 	}
-
+	
+	/**
+	 * Returns the fingerprint of the results of an imported ontology: its content and its document IRI, so the
+	 * results of the same content loaded from another document are kept apart
+	 */
+	private static OntologyFingerprint getImportedFingerprint(OWLOntology importedOntology) {
+		IRI documentIRI = importedOntology.getOWLOntologyManager().getOntologyDocumentIRI(importedOntology);
+		return fingerprintTracker.getFingerprint(importedOntology)
+				.plus(OntologyFingerprint.ofElement("ImportedOntologyDocument(" + documentIRI + ")"));
+	}
+	
+	/**
+	 * @return the ontologies imported by the given ontology directly or indirectly, sorted by their document IRI
+	 */
+	private static List<OWLOntology> getImportedOntologies(OWLOntology ontology) {
+		OWLOntologyManager manager = ontology.getOWLOntologyManager();
+		
+		return ontology.getImportsClosure().stream().filter(o -> !o.equals(ontology))
+				.sorted(Comparator.comparing(o -> manager.getOntologyDocumentIRI(o).toString()))
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * @return the IRI of the given ontology, or its document IRI if it is anonymous
+	 */
+	private static String getSourceOntology(OWLOntology ontology) {
+		OWLOntologyID ontologyID = ontology.getOntologyID();
+		if (ontologyID.getOntologyIRI().isPresent()) {
+			return ontologyID.getOntologyIRI().get().toString();
+		}
+		return ontology.getOWLOntologyManager().getOntologyDocumentIRI(ontology).toString();
+	}
+	
+	/**
+	 * Evaluates the locality-based modules of the given ontology with concurrent requests and merges their
+	 * results. The general pitfalls are checked with another request on the whole ontology, as they are about the
+	 * ontology itself.
+	 * 
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param progress
+	 *            the progress of the evaluation, which gets the results of its finished parts
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the merged evaluation results
+	 * @throws Exception
+	 */
+	private static EvaluationResult runModulesEvaluation(OWLOntology ontology, List<String> pitfallsSubset,
+			EvaluationProgress progress, CancellationToken cancellation) throws Exception {
+		List<String> pitfalls = pitfallsSubset.isEmpty() ? Arrays.asList(allPitfalls) : pitfallsSubset;
+		
+		List<String> ontologyPitfalls = pitfalls.stream().filter(OOPSEvaluator::isGeneralPitfall)
+				.collect(Collectors.toList());
+		List<String> modulePitfalls = pitfalls.stream().filter(p -> !isGeneralPitfall(p))
+				.collect(Collectors.toList());
+		
+		List<OWLOntology> modules = modulePitfalls.isEmpty() ? Collections.<OWLOntology>emptyList() 
+				: OntologyModularizer.partition(ontology, maxModuleAxioms);
+		
+		if (modules.size() <= 1) {
+			return runRequest(ontology, pitfallsSubset, progress.getTransfers(), cancellation); // nothing to split
+		}
+		
+		List<EvaluationPart> parts = new ArrayList<EvaluationPart>();
+		if (!ontologyPitfalls.isEmpty()) {
+			parts.add(new EvaluationPart(ontology, ontologyPitfalls));
+		}
+		for (OWLOntology module : modules) {
+			parts.add(new EvaluationPart(module, modulePitfalls));
+		}
+		
+		return runParts(parts, progress, cancellation);
+	}
+	
 	/**
-	 * This method is synchronized, only lets one thread to execute it and
-	 * checks if the evaluation is already done. If there are results already
-	 * available, it returns them directly. Otherwise, it evaluates the
-	 * ontology, saves the results and returns them.
+	 * Evaluates the given ontology with concurrent requests for groups of the selected pitfalls with similar
+	 * estimated latencies, so the evaluation takes about as long as the slowest group instead of all of them
 	 * 
 	 * @param ontology
 	 *            the ontology to evaluate
-	 * @return the results after evaluating the given ontology
-	 * @throws InterruptedException
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param progress
+	 *            the progress of the evaluation, which gets the results of its finished parts
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the merged evaluation results
+	 * @throws Exception
 	 */
-	public void evaluate(OWLOntology ontology, List<String> pitfallsSubset) throws InterruptedException {
-		OOPSEvaluator.activeOntology = ontology;
-		OOPSEvaluator.pitfallsSubset = pitfallsSubset;
+	private static EvaluationResult runShardsEvaluation(OWLOntology ontology, List<String> pitfallsSubset,
+			EvaluationProgress progress, CancellationToken cancellation) throws Exception {
+		List<String> pitfalls = pitfallsSubset.isEmpty() ? Arrays.asList(allPitfalls) : pitfallsSubset;
+		
+		List<List<String>> shards = pitfallLatencies.balance(pitfalls, maxPitfallShards);
+		
+		if (shards.size() <= 1) {
+			return runRequest(ontology, pitfallsSubset, progress.getTransfers(), cancellation); // nothing to split
+		}
+		
+		logger.info(String.format("runShardsEvaluation[OOPSEvaluator] pitfalls split into %s", shards));
+		
+		List<EvaluationPart> parts = new ArrayList<EvaluationPart>();
+		for (List<String> shard : shards) {
+			parts.add(new EvaluationPart(ontology, shard));
+		}
 		
-		Thread thread = new Thread(evaluationTask);
-		thread.start();
+		return runParts(parts, progress, cancellation);
+	}
+	
+	/**
+	 * Evaluates the given parts of an evaluation with concurrent requests through the requests scheduler, merging
+	 * their results as they arrive. The parts have the priority of the evaluation, so the parts of a background 
+	 * evaluation that have not started wait while an interactive evaluation runs. If any request fails, the 
+	 * others are aborted.
+	 * 
+	 * @param parts
+	 *            the parts of the evaluation
+	 * @param progress
+	 *            the progress of the evaluation, which gets the results of its finished parts
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the merged evaluation results
+	 * @throws Exception
+	 */
+	private static EvaluationResult runParts(List<EvaluationPart> parts, EvaluationProgress progress, 
+			CancellationToken cancellation) throws Exception {
+		cancellation.throwIfCancelled();
+		
+		CancellationToken partsCancellation = new CancellationToken(); // cancelled too when any request fails
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		EvaluationResultMerger merger = new EvaluationResultMerger();
+		EvaluationScheduler.Job evaluationJob = EvaluationScheduler.currentJob();
+		
+		CancellationToken.Registration abort = cancellation.onCancel(partsCancellation::cancel);
+		try {
+			List<CompletableFuture<Void>> requests = new ArrayList<CompletableFuture<Void>>();
+			
+			for (EvaluationPart part : parts) {
+				requests.add(CompletableFuture.runAsync(() -> {
+					try {
+						EvaluationResult partResult = runRequest(part.ontology, part.pitfalls, 
+								progress.getTransfers(), partsCancellation);
+						merger.add(partResult);
+						progress.add(partResult);
+					} catch (Exception e) {
+						if (failure.compareAndSet(null, e)) {
+							partsCancellation.cancel();
+						}
+						throw new CompletionException(e);
+					}
+				}, task -> requestScheduler.submit(task, evaluationJob)));
+			}
+			
+			try {
+				CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[requests.size()])).join();
+			} catch (CompletionException e) {
+				throw failure.get() instanceof Exception ? (Exception) failure.get() : e;
+			}
+			
+			logger.info(String.format("runParts[OOPSEvaluator] merged the results of %d requests", 
+					merger.getResultsCount()));
+			
+			return merger.getResult();
+		} finally {
+			abort.close();
+		}
+	}
+	
+	/**
+	 * @return the scheduler of the time budgets and the progress events of the evaluations
+	 */
+	private static ScheduledExecutorService createEvaluationTimer() {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "OOPS-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
+		
+		return scheduler;
+	}
+	
+	/**
+	 * Returns an OOPSEvaluator singleton instance
+	 * 
+	 * @return OOPSEvaluator singleton instance
+	 */
+	public static synchronized OOPSEvaluator getInstance() {
+		if (instance == null) {
+			instance = new OOPSEvaluator();
+		}
+
+		return instance;
+	}
+	
+	/**
+	 * Returns true if the specified pitfall affects the ontology itself
+	 * 
+	 * @param pitfallCode
+	 *            the specified pitfall code
+	 * @return true if the specified pitfall affects the ontology itself
+	 */
+	public static boolean isGeneralPitfall(String pitfallCode) {
+		return Stream.of(generalPitfalls).anyMatch(p -> p.equals(pitfallCode));
+	}
+	
+    /**
+	 * @return the evaluationResults
+	 */
+	public static EvaluationResult getEvaluationResults() {
+		return evaluationResults;
+	}
+	
+	/**
+	 * Sets the compression used for the body of the requests to the OOPS! WS. The responses are always accepted
+	 * compressed with any of the supported codings.
+	 * 
+	 * @param coding
+	 *            the request body coding, {@link ContentCoding#IDENTITY} to disable the compression
+	 */
+	public void setRequestCompression(ContentCoding coding) {
+		transport.setRequestCompression(coding);
+	}
+	
+	/**
+	 * @return the compression used for the body of the requests to the OOPS! WS
+	 */
+	public ContentCoding getRequestCompression() {
+		return transport.getRequestCompression();
+	}
+	
+	/**
+	 * Sets the URL of the OOPS! WS endpoint used for the evaluations, e.g. a local mirror of the service. It can
+	 * also be set with the "oops.ws.endpoint" system property.
+	 * 
+	 * @param endpointURL
+	 *            the URL of the OOPS! WS endpoint
+	 */
+	public void setEndpoint(String endpointURL) {
+		transport = OOPSTransport.forEndpoint(endpointURL);
+	}
+	
+	/**
+	 * Sets how the ontologies are sent to the OOPS! WS. In {@link EvaluationMode#MODULES} mode, the ontologies
+	 * bigger than a module are split into locality-based modules evaluated concurrently.
+	 * 
+	 * @param mode
+	 *            the evaluation mode
+	 */
+	public void setEvaluationMode(EvaluationMode mode) {
+		evaluationMode = mode;
+	}
+	
+	/**
+	 * @return how the ontologies are sent to the OOPS! WS
+	 */
+	public EvaluationMode getEvaluationMode() {
+		return evaluationMode;
+	}
+	
+	/**
+	 * Sets the size of the modules the ontologies are split into in {@link EvaluationMode#MODULES} mode
+	 * 
+	 * @param maxAxioms
+	 *            the number of axioms about the entities of each module
+	 */
+	public void setMaxModuleAxioms(int maxAxioms) {
+		maxModuleAxioms = maxAxioms;
+	}
+	
+	/**
+	 * @return the size of the modules the ontologies are split into in {@link EvaluationMode#MODULES} mode
+	 */
+	public int getMaxModuleAxioms() {
+		return maxModuleAxioms;
+	}
+	
+	/**
+	 * Sets whether only the changes of an ontology since its previous evaluation are re-evaluated, patching the
+	 * previous results, instead of the whole ontology
+	 * 
+	 * @param incremental
+	 *            true to re-evaluate only the changes when it is possible
+	 */
+	public void setIncrementalEvaluation(boolean incremental) {
+		incrementalEvaluation = incremental;
+	}
+	
+	/**
+	 * @return true if only the changes of an ontology since its previous evaluation are re-evaluated
+	 */
+	public boolean isIncrementalEvaluation() {
+		return incrementalEvaluation;
+	}
+	
+	/**
+	 * Sets whether the ontologies imported by the evaluated ontology are evaluated too. Each ontology of the
+	 * imports closure is evaluated on its own, and their results are merged with each pitfall tagged with its
+	 * source ontology. The results of the imported ontologies are reused while their content does not change.
+	 * 
+	 * @param importsClosure
+	 *            true to evaluate the whole imports closure, false to evaluate the ontology alone
+	 */
+	public void setImportsClosureEvaluation(boolean importsClosure) {
+		importsClosureEvaluation = importsClosure;
+	}
+	
+	/**
+	 * @return true if the whole imports closure of the evaluated ontology is evaluated
+	 */
+	public boolean isImportsClosureEvaluation() {
+		return importsClosureEvaluation;
+	}
+	
+	/**
+	 * Sets the min number of axioms of the uploaded ontology for rendering its request to a temporary file before
+	 * sending it, so the request is never held in memory and it is sent with a known length
+	 * 
+	 * @param axioms
+	 *            the min number of axioms of the staged requests, Integer.MAX_VALUE to disable the staging
+	 */
+	public void setStagingAxiomThreshold(int axioms) {
+		stagingAxiomThreshold = axioms;
+	}
+	
+	/**
+	 * @return the min number of axioms of the uploaded ontology for staging its request on disk
+	 */
+	public int getStagingAxiomThreshold() {
+		return stagingAxiomThreshold;
+	}
+	
+	/**
+	 * Sets the max number of bytes of a request kept in memory to send it again if it fails. The bigger requests
+	 * are spilled to a temporary file while they are sent.
+	 * 
+	 * @param bytes
+	 *            the max number of bytes of a request kept in memory
+	 */
+	public void setStagingByteThreshold(long bytes) {
+		stagingByteThreshold = bytes;
+	}
+	
+	/**
+	 * @return the max number of bytes of a request kept in memory to send it again if it fails
+	 */
+	public long getStagingByteThreshold() {
+		return stagingByteThreshold;
+	}
+	
+	/**
+	 * Sets the syntax the ontologies are uploaded in to the OOPS! WS. The syntaxes other than RDF/XML are used only
+	 * while the endpoint accepts them, and {@link UploadSyntax#AUTO} picks the cheapest one for each request.
+	 * 
+	 * @param syntax
+	 *            the upload syntax
+	 */
+	public void setUploadSyntax(UploadSyntax syntax) {
+		uploadSyntax = syntax;
+	}
+	
+	/**
+	 * @return the syntax the ontologies are uploaded in to the OOPS! WS
+	 */
+	public UploadSyntax getUploadSyntax() {
+		return uploadSyntax;
+	}
+	
+	/**
+	 * @return the cache of the serialized ontologies uploaded to the OOPS! WS, to monitor or configure it
+	 */
+	public SerializedOntologyCache getSerializedOntologyCache() {
+		return serializedOntologies;
+	}
+	
+	/**
+	 * @return the selector of the cheapest upload syntax in {@link UploadSyntax#AUTO} mode, e.g. to calibrate it
+	 */
+	public UploadSyntaxSelector getUploadSyntaxSelector() {
+		return uploadSyntaxSelector;
+	}
+	
+	/**
+	 * Sets the max number of groups the selected pitfalls are split into in {@link EvaluationMode#PITFALL_SHARDS}
+	 * mode
+	 * 
+	 * @param maxShards
+	 *            the max number of concurrent requests of an evaluation
+	 */
+	public void setMaxPitfallShards(int maxShards) {
+		maxPitfallShards = maxShards;
+	}
+	
+	/**
+	 * @return the max number of groups the selected pitfalls are split into in {@link EvaluationMode#PITFALL_SHARDS}
+	 *         mode
+	 */
+	public int getMaxPitfallShards() {
+		return maxPitfallShards;
+	}
+	
+	/**
+	 * @return the estimator of the latencies of the pitfalls, learned from the requests to the OOPS! WS
+	 */
+	public PitfallLatencyEstimator getPitfallLatencies() {
+		return pitfallLatencies;
+	}
+	
+	/**
+	 * @return the transport to the OOPS! WS endpoint used for the evaluations
+	 */
+	public OOPSTransport getTransport() {
+		return transport;
+	}
+	
+	/**
+	 * @return the scheduler of the evaluations, to monitor their queue waits by priority
+	 */
+	public EvaluationScheduler getEvaluationScheduler() {
+		return evaluationScheduler;
+	}
+	
+	/**
+	 * @return the scheduler of the requests of the parts of the evaluations, to monitor their queue waits by 
+	 *         priority
+	 */
+	public EvaluationScheduler getRequestScheduler() {
+		return requestScheduler;
+	}
+	
+	/**
+	 * Add a listener for evaluation events
+	 * 
+	 * @param listener
+	 *            the evaluation events listener to add
+	 */
+	public void addListener(EvaluationListener listener) {
+		if (!listeners.contains(listener)) {
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * Remove a listener for evaluation events
+	 * 
+	 * @param listener
+	 *            the evaluation events listener to remove
+	 */
+	public void removeListener(EvaluationListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Evaluates the given ontology as background work, waiting for the whole evaluation. See
+	 * {@link #evaluate(OWLOntology, List, Duration, EvaluationPriority)}.
+	 * 
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @return the future results after evaluating the given ontology
+	 */
+	public CompletableFuture<EvaluationResult> evaluate(OWLOntology ontology, List<String> pitfallsSubset) {
+		return evaluate(ontology, pitfallsSubset, null, EvaluationPriority.BACKGROUND);
+	}
+	
+	/**
+	 * Evaluates the given ontology as background work. See
+	 * {@link #evaluate(OWLOntology, List, Duration, EvaluationPriority)}.
+	 * 
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param timeBudget
+	 *            the time to wait for the results before delivering a partial result, or null to wait for the
+	 *            whole evaluation
+	 * @return the future results after evaluating the given ontology
+	 */
+	public CompletableFuture<EvaluationResult> evaluate(OWLOntology ontology, List<String> pitfallsSubset, 
+			Duration timeBudget) {
+		return evaluate(ontology, pitfallsSubset, timeBudget, EvaluationPriority.BACKGROUND);
+	}
+	
+	/**
+	 * Evaluates the given ontology in the background with the bounded evaluations scheduler. The listeners are
+	 * notified about the evaluation events from the evaluation thread. The fingerprint of the ontology content,
+	 * which keys the evaluation, is computed there too, so the calling thread never waits for it. If the results
+	 * for the same ontology content and pitfalls are cached, the listeners are notified about them as soon as the
+	 * key is known. If an evaluation of the same ontology content and pitfalls is already in progress, the
+	 * returned future is attached to it instead of starting a new one. Cancelling the returned future detaches it
+	 * from the evaluation, which is aborted at whatever stage it is (rendering, upload or parsing) once none of its
+	 * requests is waiting for it anymore.
+	 * <p>
+	 * With a time budget, if the evaluation does not finish within it, the returned future completes with a
+	 * partial result flagged as incomplete, which the listeners are notified about too. The evaluation keeps
+	 * running in the background and the listeners are notified about its complete results when it finishes.
+	 * <p>
+	 * The interactive evaluations are started before any waiting background one, and the background evaluations
+	 * in progress do not start any more requests for their parts until they finish. A background evaluation in 
+	 * progress that an interactive request is attached to becomes interactive.
+	 * 
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param timeBudget
+	 *            the time to wait for the results before delivering a partial result, or null to wait for the
+	 *            whole evaluation
+	 * @param priority
+	 *            the priority of the evaluation, interactive if the user is waiting for its results
+	 * @return the future results after evaluating the given ontology. It completes exceptionally with a
+	 *         RejectedExecutionException if there are too many evaluations waiting already.
+	 */
+	public CompletableFuture<EvaluationResult> evaluate(OWLOntology ontology, List<String> pitfallsSubset, 
+			Duration timeBudget, EvaluationPriority priority) {
+		requestedEvaluations.incrementAndGet();
+		Instant requestInstant = Instant.now();
+		
+		CompletableFuture<EvaluationResult> result = new CompletableFuture<EvaluationResult>();
+		CompletableFuture<CompletableFuture<EvaluationResult>> keyedEvaluation;
+		try {
+			keyedEvaluation = CompletableFuture.supplyAsync(() -> {
+				if (result.isDone()) {
+					return null; // cancelled while waiting for a thread
+				}
+				
+				Duration remainingBudget = timeBudget == null ? null 
+						: timeBudget.minus(Duration.between(requestInstant, Instant.now()));
+				return startOrAttach(ontology, pitfallsSubset, remainingBudget, priority);
+			}, evaluationScheduler.executor(priority));
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+			return result;
+		}
+		
+		keyedEvaluation.whenComplete((evaluation, exception) -> {
+			if (exception != null) {
+				result.completeExceptionally(exception instanceof CompletionException ? exception.getCause() 
+						: exception);
+			} else if (evaluation != null) {
+				evaluation.whenComplete((evaluationResult, evaluationException) -> {
+					if (evaluationException != null) {
+						result.completeExceptionally(evaluationException);
+					} else {
+						result.complete(evaluationResult);
+					}
+				});
+				result.whenComplete((evaluationResult, evaluationException) -> {
+					if (result.isCancelled()) {
+						evaluation.cancel(true);
+					}
+				});
+			}
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Computes the key of an evaluation of the given ontology and returns its cached results, the evaluation in
+	 * progress with the same key, or a new evaluation. It runs with the evaluations scheduler, as fingerprinting
+	 * the evaluated content may read the whole ontology and its imports closure.
+	 * 
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param timeBudget
+	 *            the time left to wait for the results before delivering a partial result, or null to wait for
+	 *            the whole evaluation
+	 * @param priority
+	 *            the priority of the evaluation
+	 * @return the future results after evaluating the given ontology
+	 */
+	private static CompletableFuture<EvaluationResult> startOrAttach(OWLOntology ontology, 
+			List<String> pitfallsSubset, Duration timeBudget, EvaluationPriority priority) {
+		long revision = fingerprintTracker.getRevision(ontology); // before the fingerprint, it may change meanwhile
+		EvaluationKey ontologyKey = new EvaluationKey(fingerprintTracker.getFingerprint(ontology), pitfallsSubset);
+		EvaluationKey key = new EvaluationKey(getEvaluatedFingerprint(ontology), pitfallsSubset);
+		
+		LastEvaluation previousEvaluation;
+		synchronized (lastEvaluations) {
+			previousEvaluation = lastEvaluations.put(ontology, new LastEvaluation(key, ontologyKey, revision));
+		}
+		
+		EvaluationResult cachedResult = resultCache.get(key);
+		if (cachedResult != null) {
+			logger.info(String.format("evaluate[OOPSEvaluator] using the cached results for %s", key));
+			
+			evaluationResults = cachedResult;
+			listeners.forEach(l -> l.onEvaluationDone(cachedResult));
+			return CompletableFuture.completedFuture(cachedResult);
+		}
+		
+		SharedEvaluation sharedEvaluation;
+		
+		synchronized (inFlightEvaluations) {
+			sharedEvaluation = inFlightEvaluations.get(key);
+			
+			if (sharedEvaluation != null && !sharedEvaluation.result.isDone()) {
+				coalescedEvaluations.incrementAndGet();
+				logger.info(String.format("evaluate[OOPSEvaluator] attached to the evaluation in progress %s", key));
+				
+				if (priority == EvaluationPriority.INTERACTIVE && sharedEvaluation.job != null) {
+					evaluationScheduler.promote(sharedEvaluation.job);
+				}
+			} else {
+				SharedEvaluation newEvaluation = startEvaluation(ontology, key, ontologyKey, previousEvaluation, 
+						priority);
+				inFlightEvaluations.put(key, newEvaluation);
+				newEvaluation.result.whenComplete((r, e) -> inFlightEvaluations.remove(key, newEvaluation));
+				sharedEvaluation = newEvaluation;
+			}
+			
+			sharedEvaluation.subscribers++;
+		}
+		
+		CompletableFuture<EvaluationResult> subscription = subscribe(key, sharedEvaluation);
+		if (timeBudget == null) {
+			return subscription;
+		}
+		
+		String sourceOntology = key.equals(ontologyKey) ? null : getSourceOntology(ontology);
+		return withTimeBudget(subscription, sharedEvaluation.progress, ontology, sourceOntology, pitfallsSubset, 
+				timeBudget.isNegative() ? Duration.ZERO : timeBudget);
+	}
+	
+	/**
+	 * Returns a future that completes with the given subscription if it completes within the time budget, or with
+	 * a partial result of the evaluation otherwise, which is delivered to the listeners too. Cancelling it before
+	 * the partial result is delivered cancels the subscription.
+	 * 
+	 * @param subscription
+	 *            the future results of the evaluation
+	 * @param progress
+	 *            the progress of the evaluation
+	 * @param ontology
+	 *            the evaluated ontology
+	 * @param sourceOntology
+	 *            the source ontology of the local checks, null unless its imports closure is evaluated
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param timeBudget
+	 *            the time to wait for the results before delivering a partial result
+	 * @return the future complete or partial results
+	 */
+	private static CompletableFuture<EvaluationResult> withTimeBudget(CompletableFuture<EvaluationResult> subscription, 
+			EvaluationProgress progress, OWLOntology ontology, String sourceOntology, List<String> pitfallsSubset, 
+			Duration timeBudget) {
+		CompletableFuture<EvaluationResult> budgetedResult = new CompletableFuture<EvaluationResult>();
+		
+		subscription.whenComplete((evaluationResult, exception) -> {
+			if (exception != null) {
+				budgetedResult.completeExceptionally(exception);
+			} else {
+				budgetedResult.complete(evaluationResult);
+			}
+		});
+		
+		ScheduledFuture<?> deadline = evaluationTimer.schedule(() -> {
+			EvaluationResult partialResult;
+			
+			synchronized (progress) { // the complete results are delivered after the partial ones
+				if (progress.isFinished() || budgetedResult.isDone()) {
+					return;
+				}
+				
+				partialResult = getPartialResult(progress, ontology, sourceOntology, pitfallsSubset);
+				progress.partialResultDelivered();
+				
+				logger.info(String.format("evaluate[OOPSEvaluator] delivering partial results after %d ms", 
+						timeBudget.toMillis()));
+				
+				evaluationResults = partialResult;
+				listeners.forEach(l -> l.onEvaluationDone(partialResult));
+			}
+			
+			budgetedResult.complete(partialResult);
+		}, timeBudget.toMillis(), TimeUnit.MILLISECONDS);
+		
+		budgetedResult.whenComplete((evaluationResult, exception) -> {
+			deadline.cancel(false);
+			if (budgetedResult.isCancelled()) {
+				subscription.cancel(true);
+			}
+		});
+		
+		return budgetedResult;
+	}
+	
+	/**
+	 * Returns the partial result of an evaluation in progress: the results of its finished parts, plus the local
+	 * checks of the pitfalls that none of them has reported yet
+	 * 
+	 * @return the partial result flagged as incomplete
+	 */
+	private static EvaluationResult getPartialResult(EvaluationProgress progress, OWLOntology ontology, 
+			String sourceOntology, List<String> pitfallsSubset) {
+		EvaluationResult finishedResult = progress.getPartialResult();
+		
+		Set<String> reportedPitfalls = new HashSet<String>();
+		finishedResult.getDetectedPitfalls().values()
+				.forEach(pitfalls -> pitfalls.forEach(pitfall -> reportedPitfalls.add(pitfall.getPitfallID())));
+		
+		List<String> pitfalls = pitfallsSubset.isEmpty() ? Arrays.asList(allPitfalls) : pitfallsSubset;
+		List<String> locallyCheckedPitfalls = pitfalls.stream().filter(p -> !reportedPitfalls.contains(p))
+				.collect(Collectors.toList());
+		
+		EvaluationResultMerger merger = new EvaluationResultMerger();
+		merger.add(finishedResult);
+		merger.add(LocalPitfallChecker.check(ontology, locallyCheckedPitfalls), sourceOntology);
+		
+		EvaluationResult partialResult = merger.getResult();
+		partialResult.setIncomplete(true);
+		return partialResult;
+	}
+	
+	/**
+	 * Returns a new future that completes with the given shared evaluation. Cancelling it detaches it from the
+	 * shared evaluation, which is cancelled when it has no subscribers left.
+	 * 
+	 * @param key
+	 *            the key of the shared evaluation
+	 * @param sharedEvaluation
+	 *            the shared evaluation to subscribe to
+	 * @return the future results of the shared evaluation for a single request
+	 */
+	private static CompletableFuture<EvaluationResult> subscribe(EvaluationKey key, SharedEvaluation sharedEvaluation) {
+		CompletableFuture<EvaluationResult> subscription = new CompletableFuture<EvaluationResult>();
+		
+		sharedEvaluation.result.whenComplete((evaluationResult, exception) -> {
+			if (exception != null) {
+				subscription.completeExceptionally(exception);
+			} else {
+				subscription.complete(evaluationResult);
+			}
+		});
+		
+		subscription.whenComplete((evaluationResult, exception) -> {
+			if (subscription.isCancelled() && !sharedEvaluation.result.isDone()) {
+				boolean abandoned;
+				
+				synchronized (inFlightEvaluations) {
+					abandoned = --sharedEvaluation.subscribers == 0;
+					if (abandoned) {
+						inFlightEvaluations.remove(key, sharedEvaluation);
+					}
+				}
+				
+				if (abandoned) {
+					sharedEvaluation.result.cancel(true);
+				}
+			}
+		});
+		
+		return subscription;
+	}
+	
+	/**
+	 * Starts a new evaluation of the given ontology with the evaluations scheduler and caches its results. Only
+	 * the changes since the previous evaluation are re-evaluated if it is possible. Cancelling the returned
+	 * future aborts the evaluation at whatever stage it is and closes its connection right away.
+	 * 
+	 * @param ontology
+	 *            the ontology to evaluate
+	 * @param key
+	 *            the key of the evaluation, with the pitfalls to check
+	 * @param ontologyKey
+	 *            the key of the ontology alone, which differs from the key of the evaluation if its imports closure
+	 *            is evaluated
+	 * @param previousEvaluation
+	 *            the previous evaluation requested for the ontology, or null if there is none
+	 * @param priority
+	 *            the priority of the evaluation
+	 * @return the evaluation in progress, with its future results
+	 */
+	private static SharedEvaluation startEvaluation(OWLOntology ontology, EvaluationKey key,
+			EvaluationKey ontologyKey, LastEvaluation previousEvaluation, EvaluationPriority priority) {
+		CancellationToken cancellation = new CancellationToken();
+		CompletableFuture<EvaluationResult> result = new CompletableFuture<EvaluationResult>();
+		EvaluationProgress progress = new EvaluationProgress(); // finished before the listeners get the results
+		EvaluationScheduler.Job execution = null;
+		
+		try {
+			execution = evaluationScheduler.submit(() -> {
+				if (result.isDone()) {
+					return; // cancelled while waiting for a thread
+				}
+				
+				EvaluationResult storedResult = loadStoredResult(key);
+				if (storedResult != null) {
+					logger.info(String.format("evaluate[OOPSEvaluator] using the stored results for %s", key));
+					
+					progress.finish();
+					resultCache.put(key, storedResult);
+					evaluationResults = storedResult;
+					listeners.forEach(l -> l.onEvaluationDone(storedResult));
+					result.complete(storedResult);
+					return;
+				}
+				
+				synchronized (progress) {
+					if (!progress.isPartialResultDelivered()) { // not if its time budget has run out already
+						listeners.forEach(l -> l.onEvaluationStarted()); // notify all listeners about evaluation start
+					}
+				}
+				
+				ScheduledFuture<?> progressReports = scheduleProgressReports(progress);
+				try {
+					EvaluationResult evaluationResult = key.equals(ontologyKey) 
+							? evaluateOntology(ontology, key, previousEvaluation, progress, cancellation)
+							: runImportsClosureEvaluation(ontology, ontologyKey, previousEvaluation, progress, 
+									cancellation);
+					
+					progress.finish();
+					resultCache.put(key, evaluationResult);
+					evaluationResults = evaluationResult;
+					listeners.forEach(l -> l.onEvaluationDone(evaluationResult)); // send results to each listener
+					saveStoredResult(key, evaluationResult);
+					result.complete(evaluationResult);
+				} catch (Exception e) {
+					progress.finish();
+					
+					if (cancellation.isCancelled()) {
+						logger.info("The evaluation of the ontology has been cancelled");
+						CancellationException cancellationException = new CancellationException(
+								"The evaluation has been cancelled");
+						listeners.forEach(l -> l.OnEvaluationException(cancellationException));
+					} else {
+						logger.error("An exception has ocurred while evaluating the ontology! Exception message: "
+								+ e.getLocalizedMessage());
+						listeners.forEach(l -> l.OnEvaluationException(e));
+						result.completeExceptionally(e);
+					}
+				} finally {
+					progressReports.cancel(false);
+				}
+			}, priority);
+			
+			EvaluationScheduler.Job job = execution;
+			result.whenComplete((evaluationResult, exception) -> {
+				if (result.isCancelled()) {
+					cancellation.cancel();
+					job.cancel(true);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.error("The evaluation has been rejected, there are too many evaluations waiting already");
+			result.completeExceptionally(e);
+		}
+		
+		return new SharedEvaluation(result, progress, execution);
+	}
+	
+	/**
+	 * Schedules the delivery of the progress of the requests of an evaluation to the listeners, throttled to an 
+	 * event per progress interval so they do not flood the event dispatch thread. No progress is delivered once 
+	 * the evaluation is finished.
+	 * 
+	 * @param progress
+	 *            the progress of the evaluation
+	 * @return the scheduled deliveries, to cancel them when the evaluation is done
+	 */
+	private static ScheduledFuture<?> scheduleProgressReports(EvaluationProgress progress) {
+		return evaluationTimer.scheduleWithFixedDelay(() -> {
+			synchronized (progress) { // the results are delivered after the progress
+				EvaluationProgressEvent event = progress.getTransfers().snapshot();
+				if (!progress.isFinished() && event.getRequestsCount() > 0) {
+					listeners.forEach(l -> l.onEvaluationProgress(event));
+				}
+			}
+		}, PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Notifies the listeners in the background about the cached or stored results of the given ontology, if its
+	 * content has not changed since it was evaluated. The results of the last evaluation requested for it in this
+	 * session are restored, or the last results stored for its content if it has not been evaluated yet (e.g. it
+	 * has just been opened). It is meant to restore the results of an ontology when it becomes the active one, so 
+	 * it is run as an interactive job.
+	 * 
+	 * @param ontology
+	 *            the ontology whose results are restored
+	 * @return the future outcome, true if the results have been restored
+	 */
+	public CompletableFuture<Boolean> restore(OWLOntology ontology) {
+		try {
+			return CompletableFuture.supplyAsync(() -> restoreResults(ontology), 
+					evaluationScheduler.executor(EvaluationPriority.INTERACTIVE));
+		} catch (RejectedExecutionException e) {
+			logger.warn("The restore of the evaluation results has been rejected, there are too many evaluations "
+					+ "waiting already");
+			return CompletableFuture.completedFuture(false);
+		}
+	}
+	
+	/**
+	 * Restores the cached or stored results of the given ontology
+	 * 
+	 * @param ontology
+	 *            the ontology whose results are restored
+	 * @return true if the results have been restored
+	 */
+	private static boolean restoreResults(OWLOntology ontology) {
+		long revision = fingerprintTracker.getRevision(ontology);
+		OntologyFingerprint fingerprint = getEvaluatedFingerprint(ontology);
+		
+		LastEvaluation lastEvaluation;
+		synchronized (lastEvaluations) {
+			lastEvaluation = lastEvaluations.get(ontology);
+		}
+		
+		EvaluationKey key = null;
+		if (lastEvaluation != null) {
+			key = new EvaluationKey(fingerprint, lastEvaluation.key.getPitfalls());
+		} else {
+			key = loadLatestStoredKey(fingerprint);
+		}
+		
+		if (key == null) {
+			return false;
+		}
+		
+		EvaluationResult restoredResult = resultCache.get(key);
+		if (restoredResult == null) {
+			restoredResult = loadStoredResult(key);
+			if (restoredResult == null) {
+				return false;
+			}
+			resultCache.put(key, restoredResult);
+		}
+		
+		EvaluationKey ontologyKey = new EvaluationKey(fingerprintTracker.getFingerprint(ontology), key.getPitfalls());
+		synchronized (lastEvaluations) {
+			lastEvaluations.put(ontology, new LastEvaluation(key, ontologyKey, revision));
+		}
+		
+		logger.info(String.format("restore[OOPSEvaluator] restored the results for %s", key));
+		
+		EvaluationResult result = restoredResult;
+		evaluationResults = result;
+		listeners.forEach(l -> l.onEvaluationDone(result));
+		return true;
+	}
+	
+	/**
+	 * Checks whether the content of the given ontology has changed since its last evaluation was requested. It
+	 * takes constant time once the evaluated content has been fingerprinted, and it waits for the fingerprints
+	 * until then, so it is not meant to be called from the event dispatch thread.
+	 * 
+	 * @param ontology
+	 *            the ontology to check
+	 * @return true if the ontology has changed or it has not been evaluated yet
+	 */
+	public boolean hasChangedSinceLastEvaluation(OWLOntology ontology) {
+		LastEvaluation lastEvaluation;
+		synchronized (lastEvaluations) {
+			lastEvaluation = lastEvaluations.get(ontology);
+		}
+		
+		return lastEvaluation == null 
+				|| !lastEvaluation.key.getFingerprint().equals(getEvaluatedFingerprint(ontology));
+	}
+	
+	/**
+	 * @return the tracker of the fingerprints of the evaluated ontologies
+	 */
+	public OntologyFingerprintTracker getFingerprintTracker() {
+		return fingerprintTracker;
+	}
+	
+	/**
+	 * Returns the persistent store of the evaluation results, opening it on first use in the "oops-cache"
+	 * directory of the Protégé user directory. The directory can also be set with the "oops.cache.dir" system
+	 * property.
+	 * 
+	 * @return the evaluation results store, or null if it could not be opened
+	 */
+	public static synchronized EvaluationResultStore getResultStore() {
+		if (!resultStoreOpened) {
+			resultStoreOpened = true;
+			
+			String defaultDirectory = Paths.get(System.getProperty("user.home"), ".Protege", "oops-cache").toString();
+			try {
+				resultStore = EvaluationResultStore.open(Paths.get(
+						System.getProperty(OOPS_CACHE_DIR_PROPERTY, defaultDirectory)));
+			} catch (IOException e) {
+				logger.warn("The evaluation results store is not available: " + e.getLocalizedMessage());
+			}
+		}
+		
+		return resultStore;
+	}
+	
+	/**
+	 * Closes the persistent store of the evaluation results, which flushes its index and releases its lock for
+	 * other Protégé instances. It is opened again on its next use. Any failure is only logged.
+	 */
+	public static synchronized void closeResultStore() {
+		if (resultStore != null) {
+			try {
+				resultStore.close();
+			} catch (IOException e) {
+				logger.warn("Could not close the evaluation results store: " + e.getLocalizedMessage());
+			}
+		}
+		
+		resultStore = null;
+		resultStoreOpened = false;
+	}
+	
+	/**
+	 * Reads the stored results for the given key. Any failure is only logged.
+	 * 
+	 * @param key
+	 *            the evaluation key
+	 * @return the stored results, or null if there are none
+	 */
+	private static EvaluationResult loadStoredResult(EvaluationKey key) {
+		EvaluationResultStore store = getResultStore();
+		if (store == null) {
+			return null;
+		}
+		
+		try {
+			try {
+				return store.get(key);
+			} catch (ClosedChannelException e) {
+				store = reopenResultStore(e);
+				return store != null ? store.get(key) : null;
+			}
+		} catch (IOException e) {
+			logger.warn("Could not read the evaluation results store: " + e.getLocalizedMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Reads the key of the latest stored results of the given ontology. Any failure is only logged.
+	 * 
+	 * @param fingerprint
+	 *            the fingerprint of the ontology
+	 * @return the key of its latest stored results, or null if there are none
+	 */
+	private static EvaluationKey loadLatestStoredKey(OntologyFingerprint fingerprint) {
+		EvaluationResultStore store = getResultStore();
+		if (store == null) {
+			return null;
+		}
+		
+		try {
+			try {
+				return store.getLatestKey(fingerprint);
+			} catch (ClosedChannelException e) {
+				store = reopenResultStore(e);
+				return store != null ? store.getLatestKey(fingerprint) : null;
+			}
+		} catch (IOException e) {
+			logger.warn("Could not read the evaluation results store: " + e.getLocalizedMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes the given results to the store. Any failure is only logged.
+	 * 
+	 * @param key
+	 *            the evaluation key
+	 * @param result
+	 *            the evaluation results
+	 */
+	private static void saveStoredResult(EvaluationKey key, EvaluationResult result) {
+		EvaluationResultStore store = getResultStore();
+		if (store == null) {
+			return;
+		}
+		
+		try {
+			try {
+				store.put(key, result);
+			} catch (ClosedChannelException e) {
+				store = reopenResultStore(e);
+				if (store != null) {
+					store.put(key, result);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Could not write to the evaluation results store: " + e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * Closes the results store whose files have been closed under it and opens it again
+	 * 
+	 * @param cause
+	 *            the failure of the closed store
+	 * @return the reopened store, or null if it could not be opened
+	 */
+	private static synchronized EvaluationResultStore reopenResultStore(ClosedChannelException cause) {
+		logger.warn("The evaluation results store was closed, reopening it: " + cause);
+		closeResultStore();
+		
+		return getResultStore();
+	}
+	
+	/**
+	 * @return the in-memory cache of the evaluation results
+	 */
+	public EvaluationResultCache getResultCache() {
+		return resultCache;
+	}
+	
+	/**
+	 * @return the number of evaluations requested since the plugin was loaded
+	 */
+	public static long getRequestedEvaluationsCount() {
+		return requestedEvaluations.get();
+	}
+	
+	/**
+	 * @return the number of requested evaluations that were attached to an identical evaluation in progress
+	 *         instead of starting a new one
+	 */
+	public static long getCoalescedEvaluationsCount() {
+		return coalescedEvaluations.get();
+	}
+	
+	/**
+	 * The key of the last evaluation requested for an ontology, the key of the ontology alone (the same one unless
+	 * its imports closure was evaluated) and the revision of the ontology at that moment
+	 */
+	private static class LastEvaluation {
+		
+		private final EvaluationKey key;
+		
+		private final EvaluationKey ontologyKey;
+		
+		private final long revision;
+		
+		LastEvaluation(EvaluationKey key, EvaluationKey ontologyKey, long revision) {
+			this.key = key;
+			this.ontologyKey = ontologyKey;
+			this.revision = revision;
+		}
+	}
+	
+	/**
+	 * A part of an evaluation sent with its own request: an ontology or a part of it, and the pitfalls to check
+	 */
+	private static class EvaluationPart {
+		
+		private final OWLOntology ontology;
+		
+		private final List<String> pitfalls;
+		
+		EvaluationPart(OWLOntology ontology, List<String> pitfalls) {
+			this.ontology = ontology;
+			this.pitfalls = pitfalls;
+		}
+	}
+	
+	/**
+	 * An evaluation in progress, its progress, its job and the number of requests waiting for it
+	 */
+	private static class SharedEvaluation {
+		
+		private final CompletableFuture<EvaluationResult> result;
+		
+		private final EvaluationProgress progress;
+		
+		private final EvaluationScheduler.Job job; // null if it has been rejected
+		
+		private int subscribers; // guarded by the in-flight evaluations map
+		
+		SharedEvaluation(CompletableFuture<EvaluationResult> result, EvaluationProgress progress, 
+				EvaluationScheduler.Job job) {
+			this.result = result;
+			this.progress = progress;
+			this.job = job;
+		}
 	}
 
 }
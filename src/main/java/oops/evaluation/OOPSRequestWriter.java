@@ -0,0 +1,408 @@
+package oops.evaluation;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Writes the OOPS! WS request envelope for an ontology directly to an output stream. The ontology is rendered
+ * straight into the CDATA section of the request, so the request body is never held in memory as a whole. The
+ * text is encoded into a pooled buffer, so writing a request does not allocate any buffer in the steady state.
+ * The ontology is rendered in RDF/XML unless another {@link UploadSyntax} is given.
+ * <p>
+ * The encoded CDATA section with the ontology can be captured while it is written, to be reused by the next
+ * requests about the same ontology, which then only write their own pitfalls around it.
+ */
+public class OOPSRequestWriter {
+
+	private static final String OOPS_WS_REQUEST_HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<OOPSRequest>"
+			+ "    <OntologyURI></OntologyURI>"
+			+ "    <OntologyContent><![CDATA[ ";
+
+	private static final String OOPS_WS_REQUEST_PITFALLS = " ]]></OntologyContent>"
+			+ "    <Pitfalls>";
+
+	private static final String OOPS_WS_REQUEST_TAIL = "</Pitfalls>"
+			+ "    <OutputFormat>XML</OutputFormat>"
+			+ "</OOPSRequest>";
+
+	private OWLOntology ontology;
+
+	private List<String> pitfallsSubset;
+
+	private UploadSyntax syntax;
+
+	private CancellationToken cancellation;
+
+	private ByteBufferChain serializedOntology; // written instead of rendering the ontology, if not null
+
+	private long captureLimit = -1; // max bytes of the captured ontology, -1 if it is not captured
+
+	private ByteBufferChain capturedOntology;
+
+	public OOPSRequestWriter(OWLOntology ontology, List<String> pitfallsSubset) {
+		this(ontology, pitfallsSubset, new CancellationToken());
+	}
+
+	public OOPSRequestWriter(OWLOntology ontology, List<String> pitfallsSubset, CancellationToken cancellation) {
+		this(ontology, pitfallsSubset, UploadSyntax.RDF_XML, cancellation);
+	}
+
+	public OOPSRequestWriter(OWLOntology ontology, List<String> pitfallsSubset, UploadSyntax syntax,
+			CancellationToken cancellation) {
+		if (syntax == UploadSyntax.AUTO) {
+			throw new IllegalArgumentException("The automatic upload syntax must be resolved for each request");
+		}
+		this.ontology = ontology;
+		this.pitfallsSubset = pitfallsSubset;
+		this.syntax = syntax;
+		this.cancellation = cancellation;
+	}
+
+	/**
+	 * Creates a writer of a request with an already serialized ontology
+	 *
+	 * @param serializedOntology
+	 *            the UTF-8 bytes of the CDATA section with the ontology, which are not released by the writer
+	 * @param syntax
+	 *            the syntax the ontology is serialized in
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 */
+	OOPSRequestWriter(ByteBufferChain serializedOntology, UploadSyntax syntax, List<String> pitfallsSubset,
+			CancellationToken cancellation) {
+		this.serializedOntology = serializedOntology;
+		this.pitfallsSubset = pitfallsSubset;
+		this.syntax = syntax;
+		this.cancellation = cancellation;
+	}
+
+	/**
+	 * Writes the whole UTF-8 encoded request to the given stream. The stream is flushed but not closed. The
+	 * rendering stops with an InterruptedIOException as soon as the evaluation is cancelled.
+	 *
+	 * @param out
+	 *            the stream where the request is written
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		CapturingOutputStream capturingOut = serializedOntology == null && captureLimit >= 0
+				&& capturedOntology == null ? new CapturingOutputStream(out, captureLimit) : null;
+		EncodingWriter writer = new EncodingWriter(capturingOut != null ? capturingOut : out);
+		try {
+			writer.write(OOPS_WS_REQUEST_HEAD);
+			writer.drain();
+
+			if (serializedOntology != null) {
+				if (cancellation.isCancelled()) {
+					throw new InterruptedIOException("The request writing has been cancelled");
+				}
+				serializedOntology.writeTo(out);
+			} else {
+				if (capturingOut != null) {
+					capturingOut.startCapture();
+				}
+
+				syntax.render(ontology, new CDataWriter(writer, cancellation));
+				writer.drain();
+
+				if (capturingOut != null) {
+					capturedOntology = capturingOut.stopCapture();
+				}
+			}
+
+			writer.write(OOPS_WS_REQUEST_PITFALLS);
+			writer.write(getPitfallsField());
+			writer.write(OOPS_WS_REQUEST_TAIL);
+
+			writer.close(); // flushes without closing the stream
+		} finally {
+			writer.release();
+			if (capturingOut != null) {
+				capturingOut.discard();
+			}
+		}
+	}
+
+	/**
+	 * Captures the encoded ontology the next time it is rendered, unless it exceeds the given number of bytes
+	 *
+	 * @param maxBytes
+	 *            the max number of bytes of the captured ontology
+	 */
+	void captureOntology(long maxBytes) {
+		this.captureLimit = maxBytes;
+	}
+
+	/**
+	 * Returns the encoded CDATA section with the ontology captured while the request was written. The caller
+	 * takes over the returned bytes, which must be released.
+	 *
+	 * @return the captured ontology, or null if it has not been captured (e.g. it exceeded the max bytes)
+	 */
+	ByteBufferChain takeCapturedOntology() {
+		ByteBufferChain captured = capturedOntology;
+		capturedOntology = null;
+		captureLimit = -1;
+		return captured;
+	}
+
+	/**
+	 * @return the syntax the ontology is rendered in
+	 */
+	public UploadSyntax getSyntax() {
+		return syntax;
+	}
+
+	/**
+	 * @return the comma separated list of pitfalls for the request
+	 */
+	public String getPitfallsField() {
+		return pitfallsSubset.stream().collect(Collectors.joining(","));
+	}
+
+	/**
+	 * A writer that keeps the written text valid inside a CDATA section by splitting any "]]>" sequence in two
+	 * consecutive sections. The wrapped writer is never closed by this one.
+	 */
+	static class CDataWriter extends Writer {
+
+		private static final String CDATA_SPLIT = "]]><![CDATA[>";
+
+		private Writer out;
+
+		private CancellationToken cancellation;
+
+		private int trailingBrackets; // number of consecutive ']' chars written just before
+
+		private char[] stringChars = new char[256]; // reused for the written strings
+
+		CDataWriter(Writer out, CancellationToken cancellation) {
+			this.out = out;
+			this.cancellation = cancellation;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			if (cancellation.isCancelled()) {
+				throw new InterruptedIOException("The ontology rendering has been cancelled");
+			}
+
+			int runStart = off;
+			int end = off + len;
+
+			for (int i = off; i < end; i++) {
+				char c = cbuf[i];
+
+				if (c == ']') {
+					trailingBrackets++;
+				} else {
+					if (c == '>' && trailingBrackets >= 2) {
+						out.write(cbuf, runStart, i - runStart);
+						out.write(CDATA_SPLIT);
+						runStart = i + 1;
+					}
+					trailingBrackets = 0;
+				}
+			}
+
+			out.write(cbuf, runStart, end - runStart);
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			if (stringChars.length < len) {
+				stringChars = new char[Math.max(len, stringChars.length * 2)];
+			}
+			str.getChars(off, off + len, stringChars, 0);
+			write(stringChars, 0, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	/**
+	 * A stream that copies the bytes written to the wrapped one into a buffer chain while it is capturing, up to a
+	 * max number of bytes. The wrapped stream is never closed by this one.
+	 */
+	private static class CapturingOutputStream extends FilterOutputStream {
+
+		private final long maxBytes;
+
+		private ByteBufferChain captured;
+
+		private boolean capturing;
+
+		CapturingOutputStream(OutputStream out, long maxBytes) {
+			super(out);
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+
+			if (capturing) {
+				if (captured.size() + len > maxBytes) {
+					discard(); // too big to be kept
+				} else {
+					captured.write(b, off, len);
+				}
+			}
+		}
+
+		void startCapture() {
+			captured = new ByteBufferChain();
+			capturing = true;
+		}
+
+		/**
+		 * @return the captured bytes, or null if they exceeded the max bytes
+		 */
+		ByteBufferChain stopCapture() {
+			ByteBufferChain result = capturing ? captured : null;
+			captured = null;
+			capturing = false;
+			return result;
+		}
+
+		/**
+		 * Releases the bytes captured so far, if any, and stops capturing
+		 */
+		void discard() {
+			if (captured != null) {
+				captured.release();
+				captured = null;
+			}
+			capturing = false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	/**
+	 * A writer that encodes the text in UTF-8 into a buffer of the heap buffer pool, and writes the buffer to the
+	 * wrapped stream whenever it is full and when it is flushed. It replaces a buffered stream writer without
+	 * allocating its buffers. The wrapped stream is never closed by this one, and the buffer must be released.
+	 */
+	static class EncodingWriter extends Writer {
+
+		private final OutputStream out;
+
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		private ByteBuffer buffer = BufferPool.HEAP.acquire();
+
+		private final char[] pair = new char[2];
+
+		private boolean leftover; // true if a high surrogate is waiting for the next write, in pair[0]
+
+		EncodingWriter(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			if (len > 0 && leftover) {
+				leftover = false;
+				pair[1] = cbuf[off];
+				encode(CharBuffer.wrap(pair), false);
+				off++;
+				len--;
+			}
+			encode(CharBuffer.wrap(cbuf, off, len), false);
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			if (leftover) {
+				super.write(str, off, len); // goes through the chars, joining the surrogate pair
+			} else {
+				encode(CharBuffer.wrap(str, off, off + len), false);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			drain();
+			out.flush();
+		}
+
+		/**
+		 * Flushes the pending text, including any unpaired surrogate, without closing the wrapped stream
+		 */
+		@Override
+		public void close() throws IOException {
+			if (leftover) {
+				leftover = false;
+				encode(CharBuffer.wrap(pair, 0, 1), true);
+			}
+			flush();
+		}
+
+		/**
+		 * Returns the buffer of this writer to the pool. The writer cannot be used anymore.
+		 */
+		void release() {
+			if (buffer != null) {
+				BufferPool.HEAP.release(buffer);
+				buffer = null;
+			}
+		}
+
+		private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+			while (encoder.encode(chars, buffer, endOfInput).isOverflow()) {
+				drain();
+			}
+			if (chars.hasRemaining()) { // only a high surrogate can be left, waiting for its pair
+				pair[0] = chars.get();
+				leftover = true;
+			}
+		}
+
+		/**
+		 * Writes the encoded text to the wrapped stream without flushing it
+		 */
+		void drain() throws IOException {
+			if (buffer.position() > 0) {
+				out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+				buffer.clear();
+			}
+		}
+	}
+}
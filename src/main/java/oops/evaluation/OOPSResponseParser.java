@@ -0,0 +1,511 @@
+package oops.evaluation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oops.model.ElementPair;
+import oops.model.EvaluationResult;
+import oops.model.InfoElementWithAffectedElems;
+import oops.model.Pitfall;
+import oops.model.PitfallImportanceLevel;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Pull parser of the responses of the OOPS! WS. The response is parsed straight from the connection while it is
+ * received, in a single forward pass, and only the affected elements of the pitfall being read are kept apart from
+ * the results, so the memory needed to parse a response is bounded by the size of its results instead of the size
+ * of its XML.
+ */
+final class OOPSResponseParser {
+
+	private static final Logger logger = LoggerFactory.getLogger(OOPSResponseParser.class);
+
+	// local names of the elements of the response, whatever the prefix of their namespace
+	private static final String OOPS_TAG_RESPONSE = "OOPSResponse";
+	private static final String OOPS_TAG_PITFALL = "Pitfall";
+	private static final String OOPS_TAG_NAME = "Name";
+	private static final String OOPS_TAG_CODE = "Code";
+	private static final String OOPS_TAG_DESCRIPTION = "Description";
+	private static final String OOPS_TAG_IMPORTANCE = "Importance";
+	private static final String OOPS_TAG_NUMBER_AFFECTED_ELEMS = "NumberAffectedElements";
+	private static final String OOPS_TAG_AFFECTS = "Affects";
+	private static final String OOPS_TAG_AFFECTED_ELEM = "AffectedElement";
+	private static final String OOPS_TAG_WRONG_INVERSE = "MightNotBeInverseOf";
+	private static final String OOPS_TAG_MIGHT_BE_INVERSE = "MightBeInverse";
+	private static final String OOPS_TAG_EQUIVALENT_PROPERTY = "MightBeEquivalentProperty";
+	private static final String OOPS_TAG_EQUIVALENT_ATTRIBUTE = "MightBeEquivalentAttribute";
+	private static final String OOPS_TAG_EQUIVALENT_CLASSES = "MightBeEquivalentClass";
+	private static final String OOPS_TAG_NO_INVERSE_SUGGESTION = "NoInverseSuggestion";
+	private static final String OOPS_TAG_SAME_LABEL = "HaveSameLabel";
+	private static final String OOPS_TAG_SUGGESTION = "Suggestion";
+	private static final String OOPS_TAG_WARNING = "Warning";
+
+	private static final String OWL_THING_IRI = "http://www.w3.org/2002/07/owl#Thing";
+
+	// the pitfall affects the ontology itself, so it is added to the root element along with the other general ones
+	private static final PitfallShape GENERAL_PITFALL = (parser, affects) -> parser.addPitfall(OWL_THING_IRI);
+
+	// the pitfall affects a list of elements, wherever they are under the affects element
+	private static final PitfallShape ELEMENT_LIST = (parser, affects) -> {
+		for (AffectedElements elements : affects) {
+			for (String elementIRI : elements.iris) {
+				parser.addPitfall(elementIRI);
+			}
+		}
+	};
+
+	// shapes of the pitfalls with their own lists in the results by code, the rest are general pitfalls or lists
+	private static final Map<String, PitfallShape> PITFALL_SHAPES = new HashMap<String, PitfallShape>();
+
+	static {
+		PITFALL_SHAPES.put(OOPSEvaluator.PITFALL_EQUIVALENT_CLASSES_ID, new GroupedShape()
+				.pairs(OOPS_TAG_EQUIVALENT_CLASSES, EvaluationResult::setEquivalentClasses, true));
+		PITFALL_SHAPES.put(OOPSEvaluator.PITFALL_MIGHT_BE_EQUIVALENT_ID, new GroupedShape()
+				.pairs(OOPS_TAG_EQUIVALENT_PROPERTY, EvaluationResult::setEquivalentRelations, false)
+				.pairs(OOPS_TAG_EQUIVALENT_ATTRIBUTE, EvaluationResult::setEquivalentAttributes, false));
+		PITFALL_SHAPES.put(OOPSEvaluator.PITFALL_MIGHT_BE_INVERSE_ID, new GroupedShape()
+				.pairs(OOPS_TAG_MIGHT_BE_INVERSE, EvaluationResult::setMightBeInverseRelations, true)
+				.elements(OOPS_TAG_NO_INVERSE_SUGGESTION, EvaluationResult::setRelationsWithoutInverse));
+		PITFALL_SHAPES.put(OOPSEvaluator.PITFALL_WRONG_INVERSE_ID, new GroupedShape()
+				.pairs(OOPS_TAG_WRONG_INVERSE, EvaluationResult::setWrongInverseRelations, true));
+		PITFALL_SHAPES.put(OOPSEvaluator.PITFALL_SAME_LABEL, new GroupedShape()
+				.pairs(OOPS_TAG_SAME_LABEL, EvaluationResult::setElementsWithSameLabel, true));
+	}
+
+	// configured once and only used to create readers afterwards, which is safe from several threads
+	private static final XMLInputFactory inputFactory = createInputFactory();
+
+	private final XMLStreamReader reader;
+
+	private final TransferProgress.Request request;
+
+	private final HashMap<String, ArrayList<Pitfall>> detectedPitfalls = new HashMap<String, ArrayList<Pitfall>>();
+
+	private final EvaluationResult results = new EvaluationResult();
+
+	private final List<InfoElementWithAffectedElems> suggestions = new ArrayList<InfoElementWithAffectedElems>();
+
+	private final List<InfoElementWithAffectedElems> warnings = new ArrayList<InfoElementWithAffectedElems>();
+
+	private int pitfallsCount;
+
+	// the pitfall being read
+	private String pitfallCode;
+	private String pitfallName;
+	private String pitfallDescription;
+	private PitfallImportanceLevel pitfallImportance;
+	private int pitfallNumAffectedElems;
+
+	private OOPSResponseParser(XMLStreamReader reader, TransferProgress.Request request) {
+		this.reader = reader;
+		this.request = request;
+	}
+
+	/**
+	 * Parses the OOPS! WS response and returns the organised results
+	 *
+	 * @param oopsResponse
+	 *            the response body from the OOPS! WebService, which is not closed
+	 * @param request
+	 *            the progress of the request, which counts the parsed pitfalls, suggestions, warnings and affected
+	 *            elements
+	 * @return OOPS! WS results
+	 * @throws XMLStreamException
+	 *             if the response is not a well-formed OOPS! WS response
+	 * @throws IOException
+	 *             if the response could not be received
+	 */
+	static EvaluationResult parse(InputStream oopsResponse, TransferProgress.Request request)
+			throws XMLStreamException, IOException {
+		try {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(oopsResponse);
+			try {
+				return new OOPSResponseParser(reader, request).readResponse();
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			// the reader wraps the failures to receive the response, which are not parsing failures
+			Throwable nested = e.getNestedException() != null ? e.getNestedException() : e.getCause();
+			if (nested instanceof IOException) {
+				throw (IOException) nested;
+			}
+			throw e;
+		}
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
+	private EvaluationResult readResponse() throws XMLStreamException {
+		// the response element may be wrapped, e.g. in an rdf:RDF element
+		boolean responseFound = false;
+		while (!responseFound && reader.hasNext()) {
+			responseFound = reader.next() == XMLStreamConstants.START_ELEMENT
+					&& OOPS_TAG_RESPONSE.equals(reader.getLocalName());
+		}
+		if (!responseFound) {
+			throw new XMLStreamException("No OOPSResponse element in the OOPS! WS response");
+		}
+
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				switch (reader.getLocalName()) {
+				case OOPS_TAG_PITFALL:
+					readPitfall();
+					break;
+				case OOPS_TAG_SUGGESTION:
+					suggestions.add(readInfoElement(true));
+					break;
+				case OOPS_TAG_WARNING:
+					warnings.add(readInfoElement(false));
+					break;
+				default:
+					depth++;
+				}
+			}
+		}
+
+		if (pitfallsCount == 0) {
+			logger.debug("There are no pitfalls!");
+		} else {
+			logger.debug(String.format("There are %d pitfalls!", pitfallsCount));
+		}
+		results.setDetectedPitfalls(detectedPitfalls);
+
+		if (suggestions.isEmpty()) {
+			logger.debug("There are no suggestions!");
+		} else {
+			logger.debug(String.format("There are %d suggestions!", suggestions.size()));
+			results.setSuggestions(suggestions);
+		}
+
+		if (warnings.isEmpty()) {
+			logger.debug("There are no warnings!");
+		} else {
+			logger.debug(String.format("There are %d warnings!", warnings.size()));
+			results.setWarnings(warnings);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Reads the pitfall that starts at the current element and adds it to its affected elements
+	 */
+	private void readPitfall() throws XMLStreamException {
+		request.addParsedElements(1);
+		pitfallsCount++;
+
+		pitfallCode = null;
+		pitfallName = null;
+		pitfallDescription = null;
+		pitfallImportance = null;
+		pitfallNumAffectedElems = 0;
+		List<AffectedElements> affects = new ArrayList<AffectedElements>();
+
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.START_ELEMENT && depth > 1) {
+				depth++;
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				switch (reader.getLocalName()) {
+				case OOPS_TAG_CODE:
+					pitfallCode = reader.getElementText();
+					break;
+				case OOPS_TAG_NAME:
+					pitfallName = reader.getElementText();
+					break;
+				case OOPS_TAG_DESCRIPTION:
+					pitfallDescription = reader.getElementText();
+					break;
+				case OOPS_TAG_IMPORTANCE:
+					pitfallImportance = PitfallImportanceLevel.valueOf(reader.getElementText().toUpperCase());
+					break;
+				case OOPS_TAG_NUMBER_AFFECTED_ELEMS:
+					pitfallNumAffectedElems = Integer.parseInt(reader.getElementText().trim());
+					break;
+				case OOPS_TAG_AFFECTS:
+					readAffects(affects);
+					break;
+				default:
+					depth++;
+				}
+			}
+		}
+
+		if (pitfallCode == null || pitfallImportance == null) {
+			throw new XMLStreamException("Pitfall without code or importance in the OOPS! WS response",
+					reader.getLocation());
+		}
+		if (pitfallName == null || pitfallDescription == null) {
+			throw new XMLStreamException(String.format("Pitfall %s without name or description in the OOPS! WS "
+					+ "response", pitfallCode), reader.getLocation());
+		}
+
+		PitfallShape shape = PITFALL_SHAPES.get(pitfallCode);
+		if (shape == null) {
+			shape = OOPSEvaluator.isGeneralPitfall(pitfallCode) ? GENERAL_PITFALL : ELEMENT_LIST;
+		}
+		shape.decode(this, affects);
+	}
+
+	/**
+	 * Reads the affected elements of the pitfall that start at the current element, grouped by the child of the
+	 * affects element they belong to. The affected elements right under the affects element are grouped together.
+	 */
+	private void readAffects(List<AffectedElements> affects) throws XMLStreamException {
+		AffectedElements group = null; // group of the child of the affects element being read
+
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+				if (depth == 1) {
+					group = null;
+				}
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				String tag = reader.getLocalName();
+				if (OOPS_TAG_AFFECTED_ELEM.equals(tag)) {
+					request.addParsedElements(1);
+					if (group == null) {
+						if (affects.isEmpty() || affects.get(affects.size() - 1).tag != null) {
+							affects.add(new AffectedElements(null));
+						}
+						affects.get(affects.size() - 1).iris.add(reader.getElementText());
+					} else {
+						group.iris.add(reader.getElementText());
+					}
+				} else {
+					if (depth == 1) {
+						group = new AffectedElements(tag);
+						affects.add(group);
+					}
+					depth++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the suggestion or warning that starts at the current element
+	 *
+	 * @param withDescription
+	 *            whether to read its description, which only the suggestions have
+	 */
+	private InfoElementWithAffectedElems readInfoElement(boolean withDescription) throws XMLStreamException {
+		request.addParsedElements(1);
+
+		String name = null;
+		String description = null;
+		int numAffectedElems = 0;
+		List<String> affectedElements = new ArrayList<String>();
+
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				switch (reader.getLocalName()) {
+				case OOPS_TAG_NAME:
+					if (name == null) {
+						name = reader.getElementText();
+					} else {
+						depth++;
+					}
+					break;
+				case OOPS_TAG_DESCRIPTION:
+					if (withDescription && description == null) {
+						description = reader.getElementText();
+					} else {
+						depth++;
+					}
+					break;
+				case OOPS_TAG_NUMBER_AFFECTED_ELEMS:
+					numAffectedElems = Integer.parseInt(reader.getElementText().trim());
+					break;
+				case OOPS_TAG_AFFECTED_ELEM:
+					request.addParsedElements(1);
+					affectedElements.add(reader.getElementText());
+					break;
+				default:
+					depth++;
+				}
+			}
+		}
+
+		return new InfoElementWithAffectedElems(name, description, numAffectedElems, affectedElements);
+	}
+
+	/**
+	 * Adds the pitfall being read to the elements of a pair
+	 *
+	 * @param tag
+	 *            the local name of the element of the pair
+	 * @param iris
+	 *            the elements of the pair, only the first two are taken
+	 * @return the pair of elements
+	 */
+	private ElementPair addPair(String tag, List<String> iris) throws XMLStreamException {
+		if (iris.size() < 2) {
+			throw new XMLStreamException(String.format("Incomplete %s pair of the pitfall %s in the OOPS! WS "
+					+ "response", tag, pitfallCode));
+		}
+
+		String element1 = iris.get(0);
+		String element2 = iris.get(1);
+		addPitfall(element1);
+		addPitfall(element2);
+		return new ElementPair(element1, element2);
+	}
+
+	private void addPitfall(String elementIRI) {
+		detectedPitfalls.computeIfAbsent(elementIRI, e -> new ArrayList<Pitfall>()).add(new Pitfall(
+				pitfallImportance, pitfallCode, pitfallName, pitfallDescription, pitfallNumAffectedElems));
+	}
+
+	/**
+	 * The affected elements under a child of the affects element of a pitfall
+	 */
+	private static final class AffectedElements {
+
+		private final String tag; // local name of the child, null for the elements right under the affects element
+
+		private final List<String> iris = new ArrayList<String>(2);
+
+		private AffectedElements(String tag) {
+			this.tag = tag;
+		}
+	}
+
+	/**
+	 * Decodes the affected elements of the pitfall being read into the results
+	 */
+	private interface PitfallShape {
+
+		void decode(OOPSResponseParser parser, List<AffectedElements> affects) throws XMLStreamException;
+	}
+
+	/**
+	 * Shape of the pitfalls whose affected elements are grouped under the children of the affects element, each
+	 * kind of group decoded into its own list of the results. The groups of other kinds are ignored.
+	 */
+	private static final class GroupedShape implements PitfallShape {
+
+		private final Map<String, GroupDecoder<?>> decoders = new LinkedHashMap<String, GroupDecoder<?>>(); // by tag
+
+		/**
+		 * Decodes each group with the given tag into a pair of elements
+		 *
+		 * @param setIfEmpty
+		 *            whether to set the pairs in the results even if there are none
+		 */
+		private GroupedShape pairs(String tag, BiConsumer<EvaluationResult, List<ElementPair>> setter,
+				boolean setIfEmpty) {
+			decoders.put(tag, new GroupDecoder<ElementPair>(setter, setIfEmpty,
+					(parser, iris, pairs) -> pairs.add(parser.addPair(tag, iris))));
+			return this;
+		}
+
+		/**
+		 * Decodes each group with the given tag into the list of its elements
+		 */
+		private GroupedShape elements(String tag, BiConsumer<EvaluationResult, List<String>> setter) {
+			decoders.put(tag, new GroupDecoder<String>(setter, true, (parser, iris, elements) -> {
+				for (String elementIRI : iris) {
+					parser.addPitfall(elementIRI);
+					elements.add(elementIRI);
+				}
+			}));
+			return this;
+		}
+
+		@Override
+		public void decode(OOPSResponseParser parser, List<AffectedElements> affects) throws XMLStreamException {
+			Map<String, GroupDecoder<?>.Decoding> decodings = new LinkedHashMap<String, GroupDecoder<?>.Decoding>();
+			decoders.forEach((tag, decoder) -> decodings.put(tag, decoder.new Decoding()));
+
+			for (AffectedElements elements : affects) {
+				GroupDecoder<?>.Decoding decoding = decodings.get(elements.tag);
+				if (decoding != null) {
+					decoding.add(parser, elements.iris);
+				}
+			}
+
+			for (GroupDecoder<?>.Decoding decoding : decodings.values()) {
+				decoding.finish(parser.results);
+			}
+		}
+	}
+
+	/**
+	 * Decoder of a kind of group of affected elements into a list of items of the results
+	 */
+	private static final class GroupDecoder<T> {
+
+		private final BiConsumer<EvaluationResult, List<T>> setter;
+
+		private final boolean setIfEmpty;
+
+		private final GroupReader<T> reader;
+
+		private GroupDecoder(BiConsumer<EvaluationResult, List<T>> setter, boolean setIfEmpty, GroupReader<T> reader) {
+			this.setter = setter;
+			this.setIfEmpty = setIfEmpty;
+			this.reader = reader;
+		}
+
+		/**
+		 * The items decoded from the groups of a pitfall
+		 */
+		private final class Decoding {
+
+			private final List<T> items = new ArrayList<T>();
+
+			private void add(OOPSResponseParser parser, List<String> iris) throws XMLStreamException {
+				reader.read(parser, iris, items);
+			}
+
+			private void finish(EvaluationResult results) {
+				if (setIfEmpty || !items.isEmpty()) {
+					setter.accept(results, items);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the pitfall being read to the elements of a group and adds the items decoded from it to the given list
+	 */
+	private interface GroupReader<T> {
+
+		void read(OOPSResponseParser parser, List<String> iris, List<T> items) throws XMLStreamException;
+	}
+}
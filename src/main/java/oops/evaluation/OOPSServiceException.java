@@ -0,0 +1,91 @@
+package oops.evaluation;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Failure of a request to the OOPS! WS. A retryable failure is a transient one of the service or of the network
+ * (e.g. an I/O error, a timeout or a 502, 503 or 504 status code), so the same request may succeed later. Any other
+ * failure is fatal, and sending the same request again would fail the same way.
+ */
+public class OOPSServiceException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int NO_STATUS_CODE = -1;
+
+	static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+	private final int statusCode;
+
+	private final boolean retryable;
+
+	private final long retryAfter;
+
+	public OOPSServiceException(String message, int statusCode, boolean retryable, long retryAfter) {
+		super(message);
+		this.statusCode = statusCode;
+		this.retryable = retryable;
+		this.retryAfter = retryAfter;
+	}
+
+	public OOPSServiceException(String message, Throwable cause, boolean retryable) {
+		super(message, cause);
+		this.statusCode = NO_STATUS_CODE;
+		this.retryable = retryable;
+		this.retryAfter = 0;
+	}
+
+	/**
+	 * Creates the exception for a response with an unexpected status code
+	 *
+	 * @param statusCode
+	 *            the response status code
+	 * @param retryAfter
+	 *            the delay in milliseconds requested by the service before sending the request again, 0 if none
+	 * @return the exception for the status code, retryable if the status code is a transient one
+	 */
+	public static OOPSServiceException forStatusCode(int statusCode, long retryAfter) {
+		return new OOPSServiceException("The OOPS! web service request has failed with status code " + statusCode,
+				statusCode, isRetryableStatusCode(statusCode), retryAfter);
+	}
+
+	/**
+	 * @return true if a response with the given status code is a transient failure
+	 */
+	public static boolean isRetryableStatusCode(int statusCode) {
+		switch (statusCode) {
+		case HttpURLConnection.HTTP_CLIENT_TIMEOUT:
+		case HTTP_TOO_MANY_REQUESTS:
+		case HttpURLConnection.HTTP_BAD_GATEWAY:
+		case HttpURLConnection.HTTP_UNAVAILABLE:
+		case HttpURLConnection.HTTP_GATEWAY_TIMEOUT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return the status code of the failed response, or {@link #NO_STATUS_CODE} if there was no response
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return true if the same request may succeed if it is sent again
+	 */
+	public boolean isRetryable() {
+		return retryable;
+	}
+
+	/**
+	 * @return the delay in milliseconds to wait before sending the request again, 0 if it is not known
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,842 @@
+package oops.evaluation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oops.evaluation.EvaluationProgressEvent.Stage;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * HTTP transport for the requests to an OOPS! WS endpoint. There is a single transport per endpoint URL, so all
+ * the evaluations against the same endpoint share its settings and its keep-alive connections. The connections
+ * are kept alive by fully consuming and closing every response, which lets the JVM return the socket to its
+ * keep-alive cache and reuse it for the next request to the same endpoint.
+ * <p>
+ * The transient failures of the requests are retried with backoff, and a circuit breaker per endpoint makes the
+ * requests fail right away while the service keeps failing. The number of requests in flight to the endpoint is
+ * limited by an {@link AdaptiveConcurrencyLimiter}, which follows the capacity of the service.
+ */
+public class OOPSTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(OOPSTransport.class);
+
+	public static final String DEFAULT_ENDPOINT = "http://oops.linkeddata.es/rest";
+
+	private static final int DEFAULT_CONNECT_TIMEOUT = 10 * 1000; // 10s to open the connection
+
+	private static final int DEFAULT_READ_TIMEOUT = 30 * 1000; // 30s without receiving any data
+
+	private static final int DEFAULT_TOTAL_TIMEOUT = 0; // no limit for the whole request by default
+
+	private static final int CHUNK_SIZE = 64 * 1024; // chunk size for the streamed request body
+
+	private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+	private static final String LIMITER_MBEAN_NAME = "oops.evaluation:type=AdaptiveConcurrencyLimiter,endpoint=";
+
+	private static final ConcurrentHashMap<String, OOPSTransport> transports = new ConcurrentHashMap<>();
+
+	private static final ScheduledExecutorService deadlineScheduler = createDeadlineScheduler();
+
+	private final URL endpoint;
+
+	private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+	private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+	private volatile int totalTimeout = DEFAULT_TOTAL_TIMEOUT;
+
+	private volatile ContentCoding requestCompression = ContentCoding.IDENTITY;
+
+	private volatile boolean requestCompressionSupported = true; // false once the endpoint rejects compressed bodies
+
+	private final Set<UploadSyntax> rejectedSyntaxes = ConcurrentHashMap.newKeySet(); // upload syntaxes not supported
+
+	private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+
+	private final CircuitBreaker circuitBreaker;
+
+	private final AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter();
+
+	private OOPSTransport(URL endpoint) {
+		this.endpoint = endpoint;
+		this.circuitBreaker = new CircuitBreaker("OOPS! WS " + endpoint);
+
+		registerLimiterMBean();
+	}
+
+	/**
+	 * Returns the transport for the given endpoint, creating it if it does not exist yet
+	 *
+	 * @param endpointURL
+	 *            the URL of the OOPS! WS endpoint
+	 * @return the transport for the given endpoint
+	 * @throws IllegalArgumentException
+	 *             if the given URL is malformed
+	 */
+	public static OOPSTransport forEndpoint(String endpointURL) {
+		return transports.computeIfAbsent(endpointURL, url -> {
+			try {
+				return new OOPSTransport(new URL(url));
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Malformed OOPS! endpoint URL: " + url, e);
+			}
+		});
+	}
+
+	/**
+	 * Sends the request to the endpoint and returns its response. The request body is streamed to the connection
+	 * in chunks while it is being rendered, compressed with the configured request compression. If the endpoint
+	 * rejects the compressed body, the request is sent again uncompressed, and the compression is not used anymore
+	 * for this endpoint once it is known to be the cause. Cancelling the given token closes the connection right
+	 * away, which releases the thread blocked on it.
+	 * <p>
+	 * The retryable failures are retried with the retry policy of the transport, sending again the body rendered
+	 * by the first attempt. The requests fail right away while the circuit breaker of the endpoint is open.
+	 *
+	 * @param requestWriter
+	 *            the writer of the request to send
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the response text
+	 * @throws OOPSServiceException
+	 *             if the request has failed, after all its attempts if the failure is retryable
+	 * @throws Exception
+	 */
+	public String send(OOPSRequestWriter requestWriter, CancellationToken cancellation) throws Exception {
+		try (RequestBody body = new RequestBody(requestWriter)) {
+			return send(body, cancellation);
+		}
+	}
+
+	/**
+	 * Sends the request with the given body to the endpoint and returns its response, like
+	 * {@link #send(OOPSRequestWriter, CancellationToken)}. A staged body is rendered to its temporary file before
+	 * the first attempt, and a rendered body is sent with a known length straight from its kept bytes. The body is
+	 * not closed.
+	 *
+	 * @param body
+	 *            the body of the request to send
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the response text
+	 * @throws OOPSServiceException
+	 *             if the request has failed, after all its attempts if the failure is retryable
+	 * @throws Exception
+	 */
+	public String send(RequestBody body, CancellationToken cancellation) throws Exception {
+		return send(body, cancellation, OOPSTransport::readText);
+	}
+
+	/**
+	 * Sends the request with the given body to the endpoint and parses its response with the given parser, like
+	 * {@link #send(RequestBody, CancellationToken)}. The response is parsed straight from the connection while it is
+	 * received, so it is never held in memory as a whole, and the rest of it is consumed once it has been parsed, so
+	 * the connection can be kept alive.
+	 *
+	 * @param body
+	 *            the body of the request to send
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @param parser
+	 *            the parser of the response
+	 * @return the parsed response
+	 * @throws OOPSServiceException
+	 *             if the request has failed, after all its attempts if the failure is retryable
+	 * @throws Exception
+	 */
+	public <T> T send(RequestBody body, CancellationToken cancellation, ResponseParser<T> parser) throws Exception {
+		return send(body, cancellation, parser, TransferProgress.untracked());
+	}
+
+	/**
+	 * Sends the request with the given body to the endpoint and parses its response with the given parser, like
+	 * {@link #send(RequestBody, CancellationToken, ResponseParser)}, tracking the progress of the request through
+	 * its stages. The uploaded bytes are counted as they are sent and the downloaded ones as they are received and
+	 * parsed.
+	 *
+	 * @param body
+	 *            the body of the request to send
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @param parser
+	 *            the parser of the response
+	 * @param progress
+	 *            the progress of the request
+	 * @return the parsed response
+	 * @throws OOPSServiceException
+	 *             if the request has failed, after all its attempts if the failure is retryable
+	 * @throws Exception
+	 */
+	public <T> T send(RequestBody body, CancellationToken cancellation, ResponseParser<T> parser,
+			TransferProgress.Request progress) throws Exception {
+		RetryPolicy policy = retryPolicy;
+
+		if (body.isStaged() && !body.isRendered()) {
+			progress.moveTo(Stage.SERIALIZING);
+			stage(body, cancellation);
+		}
+
+		boolean compressionRejected = false; // true once the compressed body of this request has been rejected
+		for (int attempt = 1;; attempt++) {
+			try {
+				ContentCoding coding = compressionRejected ? ContentCoding.IDENTITY : getEffectiveRequestCompression();
+				ParsedResponse<T> response = sendLimitedAttempt(body, coding, parser, progress, cancellation);
+				if (response == null) {
+					compressionRejected = true;
+					attempt--; // the compressed body has been rejected, send it again uncompressed
+					continue;
+				}
+
+				if (compressionRejected && requestCompressionSupported) {
+					logger.warn("The OOPS! web service has accepted the request only without compression, it is not "
+							+ "compressed anymore");
+					requestCompressionSupported = false;
+				}
+				return response.value;
+			} catch (OOPSServiceException e) {
+				if (!e.isRetryable() || attempt >= policy.getMaxAttempts()) {
+					throw e;
+				}
+
+				long delay = policy.getDelay(attempt, e.getRetryAfter());
+				logger.warn(String.format("%s, retrying it in %d ms (attempt %d of %d)", e.getMessage(), delay,
+						attempt + 1, policy.getMaxAttempts()));
+
+				waitForRetry(delay, cancellation);
+			}
+		}
+	}
+
+	/**
+	 * Sends the request body once through the circuit breaker and the concurrency limiter, recording its outcome
+	 * in both of them. The permit of the limiter is held until the response has been parsed, as the connection is
+	 * in use until then. A response that cannot be parsed is not recorded in any of them.
+	 *
+	 * @param body
+	 *            the request body to send
+	 * @param coding
+	 *            the coding of the request body
+	 * @param parser
+	 *            the parser of the response
+	 * @param progress
+	 *            the progress of the request
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the parsed response, or null if the endpoint has rejected the compressed body and it must be sent
+	 *         again uncompressed
+	 * @throws OOPSServiceException
+	 *             if the request has failed or the circuit breaker is open
+	 * @throws Exception
+	 */
+	private <T> ParsedResponse<T> sendLimitedAttempt(RequestBody body, ContentCoding coding, ResponseParser<T> parser,
+			TransferProgress.Request progress, CancellationToken cancellation) throws Exception {
+		circuitBreaker.acquirePermission();
+
+		boolean recorded = false;
+		try {
+			AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire(cancellation);
+			AdaptiveConcurrencyLimiter.Outcome outcome = AdaptiveConcurrencyLimiter.Outcome.IGNORED;
+			try {
+				ParsedResponse<T> response = sendAttempt(body, coding, parser, progress, cancellation);
+
+				circuitBreaker.recordSuccess();
+				recorded = true;
+				if (response != null) {
+					outcome = AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+				}
+
+				return response;
+			} catch (OOPSServiceException e) {
+				if (e.isRetryable() || e.getStatusCode() == OOPSServiceException.NO_STATUS_CODE) {
+					circuitBreaker.recordFailure();
+				} else {
+					circuitBreaker.recordSuccess(); // the service is up, but it has rejected the request
+				}
+				recorded = true;
+				if (isOverloadFailure(e)) {
+					outcome = AdaptiveConcurrencyLimiter.Outcome.DROPPED;
+				}
+
+				throw e;
+			} finally {
+				concurrencyLimiter.release(permit, outcome);
+			}
+		} finally {
+			if (!recorded) {
+				circuitBreaker.releasePermission(); // e.g. cancelled before reaching the service
+			}
+		}
+	}
+
+	/**
+	 * Sends the request body once and parses its response, moving its progress to the uploading, waiting and
+	 * downloading stages
+	 *
+	 * @param body
+	 *            the request body to send
+	 * @param coding
+	 *            the coding of the request body
+	 * @param parser
+	 *            the parser of the response
+	 * @param progress
+	 *            the progress of the request
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @return the parsed response, or null if the endpoint has rejected the compressed body and it must be sent
+	 *         again uncompressed
+	 * @throws OOPSServiceException
+	 *             if the request has failed, also while its response was being received
+	 * @throws Exception
+	 *             if the response cannot be parsed
+	 */
+	private <T> ParsedResponse<T> sendAttempt(RequestBody body, ContentCoding coding, ResponseParser<T> parser,
+			TransferProgress.Request progress, CancellationToken cancellation) throws Exception {
+		boolean replay = body.isRendered() && body.getRenderedCoding() == coding; // the kept bytes can be sent as-is
+
+		HttpURLConnection connection = openConnection();
+		connection.setRequestMethod("POST");
+		if (coding != ContentCoding.IDENTITY) {
+			connection.setRequestProperty("Content-Encoding", coding.getHeaderValue());
+		}
+		connection.setDoOutput(true);
+		if (replay) {
+			connection.setFixedLengthStreamingMode(body.getRenderedLength());
+		} else {
+			connection.setChunkedStreamingMode(CHUNK_SIZE);
+		}
+
+		AtomicBoolean deadlineExceeded = new AtomicBoolean();
+		ScheduledFuture<?> deadline = scheduleDeadline(connection, deadlineExceeded);
+
+		CancellationToken.Registration abort = cancellation.onCancel(connection::disconnect);
+		try {
+			Instant uploadStartInstant = Instant.now();
+			progress.moveTo(Stage.UPLOADING);
+
+			if (replay) {
+				try (OutputStream out = progress.countUploaded(connection.getOutputStream())) {
+					body.transferTo(out);
+				}
+
+				logger.info(String.format("send[OOPSTransport] sent %d %s coded bytes kept %s in %d ms",
+						body.getRenderedLength(), coding.getHeaderValue(), body.isOnDisk() ? "on disk" : "in memory",
+						Duration.between(uploadStartInstant, Instant.now()).toMillis()));
+			} else {
+				boolean rendered = body.isRendered();
+
+				CountingOutputStream sentBytes = new CountingOutputStream(
+						progress.countUploaded(connection.getOutputStream()));
+				long bodyBytes = body.writeTo(sentBytes, coding);
+
+				logger.info(String.format("send[OOPSTransport] sent %d bytes (%d bytes before %s coding, %s) in %d ms",
+						sentBytes.getCount(), bodyBytes, coding.getHeaderValue(), rendered ? "recoded" : "rendered",
+						Duration.between(uploadStartInstant, Instant.now()).toMillis()));
+			}
+
+			progress.moveTo(Stage.WAITING);
+			int responseCode = connection.getResponseCode();
+
+			if (responseCode == HttpURLConnection.HTTP_OK) {
+				progress.moveTo(Stage.DOWNLOADING);
+				return new ParsedResponse<T>(readResponse(connection, parser, progress));
+			}
+
+			long retryAfter = getRetryAfter(connection);
+			discardErrorResponse(connection);
+
+			if (coding != ContentCoding.IDENTITY && isUnsupportedCodingStatus(responseCode)) {
+				logger.warn(String.format("The OOPS! web service has rejected a %s coded request with status code "
+						+ "%d, sending it again without compression", coding.getHeaderValue(), responseCode));
+
+				if (responseCode == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+					requestCompressionSupported = false; // a 400 may be about the request itself, see send
+				}
+				return null;
+			}
+
+			throw OOPSServiceException.forStatusCode(responseCode, retryAfter);
+		} catch (IOException e) {
+			if (cancellation.isCancelled()) {
+				throw new CancellationException("The OOPS! web service request has been cancelled");
+			} else if (deadlineExceeded.get()) {
+				throw new OOPSServiceException(String.format(
+						"The OOPS! web service request has exceeded its total deadline of %d ms", totalTimeout),
+						new SocketTimeoutException(e.getMessage()), false);
+			}
+			throw new OOPSServiceException("The OOPS! web service could not be reached: " + e.getLocalizedMessage(),
+					e, true);
+		} finally {
+			abort.close();
+			if (deadline != null) {
+				deadline.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Renders a staged body to its temporary file with the current request compression. If it cannot be staged,
+	 * it is streamed while it is rendered instead.
+	 *
+	 * @param body
+	 *            the staged body
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @throws CancellationException
+	 *             if the evaluation is cancelled
+	 */
+	private void stage(RequestBody body, CancellationToken cancellation) {
+		Instant stageStartInstant = Instant.now();
+		ContentCoding coding = getEffectiveRequestCompression();
+		try {
+			body.stage(coding);
+
+			logger.info(String.format("stage[OOPSTransport] staged %d %s coded bytes in %d ms",
+					body.getRenderedLength(), coding.getHeaderValue(),
+					Duration.between(stageStartInstant, Instant.now()).toMillis()));
+		} catch (IOException e) {
+			cancellation.throwIfCancelled();
+
+			logger.warn("The request body could not be staged, it is streamed instead: " + e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * @return the coding for the request bodies, which is identity if the endpoint has rejected compressed ones
+	 */
+	ContentCoding getEffectiveRequestCompression() {
+		return requestCompressionSupported ? requestCompression : ContentCoding.IDENTITY;
+	}
+
+	/**
+	 * Waits the given delay before retrying a request, returning as soon as the evaluation is cancelled
+	 *
+	 * @param delay
+	 *            the delay in milliseconds
+	 * @param cancellation
+	 *            the cancellation token of the evaluation
+	 * @throws InterruptedException
+	 * @throws CancellationException
+	 *             if the evaluation is cancelled
+	 */
+	private static void waitForRetry(long delay, CancellationToken cancellation) throws InterruptedException {
+		CountDownLatch cancelled = new CountDownLatch(1);
+		CancellationToken.Registration wakeUp = cancellation.onCancel(cancelled::countDown);
+		try {
+			cancelled.await(delay, TimeUnit.MILLISECONDS);
+		} finally {
+			wakeUp.close();
+		}
+		cancellation.throwIfCancelled();
+	}
+
+	/**
+	 * Opens a connection to the endpoint in the background and leaves it in the keep-alive cache, so the next
+	 * evaluation does not have to pay the connection setup cost. Any failure is only logged.
+	 */
+	public void prewarm() {
+		Thread prewarmThread = new Thread(() -> {
+			try {
+				HttpURLConnection connection = openConnection();
+				connection.setRequestMethod("HEAD");
+
+				int responseCode = connection.getResponseCode();
+				if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+					discardErrorResponse(connection);
+				} else {
+					connection.getInputStream().close();
+				}
+
+				logger.debug(String.format("prewarm[OOPSTransport] connection to %s ready (status code %d)",
+						endpoint, responseCode));
+			} catch (IOException e) {
+				logger.debug("The pre-warming of the connection to " + endpoint + " has failed: "
+						+ e.getLocalizedMessage());
+			}
+		}, "OOPS-transport-prewarm");
+		prewarmThread.setDaemon(true);
+		prewarmThread.start();
+	}
+
+	/**
+	 * Registers the concurrency limiter in the platform MBean server, so its limit and queue depth can be monitored
+	 * with any JMX console. Any failure is only logged.
+	 */
+	private void registerLimiterMBean() {
+		try {
+			ObjectName name = new ObjectName(LIMITER_MBEAN_NAME + ObjectName.quote(endpoint.toString()));
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			if (!mbeanServer.isRegistered(name)) {
+				mbeanServer.registerMBean(concurrencyLimiter, name);
+			}
+		} catch (JMException | RuntimeException e) {
+			logger.debug("The concurrency limiter of " + endpoint + " could not be registered for monitoring: "
+					+ e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Creates a connection to the endpoint with the configured timeouts
+	 *
+	 * @return a new connection to the endpoint
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConnection() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setRequestProperty("Accept-Encoding", ACCEPTED_ENCODINGS);
+
+		return connection;
+	}
+
+	/**
+	 * Schedules the abort of the given connection when the total timeout is exceeded
+	 *
+	 * @param connection
+	 *            the connection to abort
+	 * @param deadlineExceeded
+	 *            flag that is set when the connection is aborted
+	 * @return the scheduled abort, or null if there is no total timeout
+	 */
+	private ScheduledFuture<?> scheduleDeadline(HttpURLConnection connection, AtomicBoolean deadlineExceeded) {
+		if (totalTimeout <= 0) {
+			return null;
+		}
+
+		return deadlineScheduler.schedule(() -> {
+			deadlineExceeded.set(true);
+			connection.disconnect();
+		}, totalTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Parses the response body straight from the connection while it is received, decoding its content coding.
+	 * Then it consumes the rest of the body and closes it, so the connection can be kept alive.
+	 *
+	 * @param connection
+	 *            the connection with a successful response
+	 * @param parser
+	 *            the parser of the response
+	 * @param progress
+	 *            the progress of the request, which counts the received bytes
+	 * @return the parsed response
+	 * @throws IOException
+	 *             if the response could not be received
+	 * @throws Exception
+	 *             if the response cannot be parsed
+	 */
+	private static <T> T readResponse(HttpURLConnection connection, ResponseParser<T> parser,
+			TransferProgress.Request progress) throws Exception {
+		try (InputStream responseStream = ContentCoding.fromHeader(connection.getContentEncoding())
+				.decode(progress.countDownloaded(connection.getInputStream()))) {
+			T response = parser.parse(responseStream);
+			discard(responseStream);
+			return response;
+		}
+	}
+
+	/**
+	 * Reads the whole UTF-8 response text from the given stream, which is left open to be consumed and closed by
+	 * the transport
+	 *
+	 * @param responseStream
+	 *            the response body
+	 * @return the response text
+	 * @throws IOException
+	 */
+	private static String readText(InputStream responseStream) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(responseStream, StandardCharsets.UTF_8));
+		try {
+			return in.lines().collect(Collectors.joining("\n"));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Returns true if the given failure means that the service is overloaded: a timeout or a 429, 503 or 504
+	 * response
+	 *
+	 * @param failure
+	 *            the failure of a request
+	 * @return true if the concurrency limit should be cut
+	 */
+	private static boolean isOverloadFailure(OOPSServiceException failure) {
+		switch (failure.getStatusCode()) {
+		case OOPSServiceException.HTTP_TOO_MANY_REQUESTS:
+		case HttpURLConnection.HTTP_UNAVAILABLE:
+		case HttpURLConnection.HTTP_GATEWAY_TIMEOUT:
+			return true;
+		case OOPSServiceException.NO_STATUS_CODE:
+			return failure.getCause() instanceof SocketTimeoutException;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the delay requested by the Retry-After header of an error response, only supported in seconds
+	 *
+	 * @param connection
+	 *            the connection with an error response
+	 * @return the delay in milliseconds, 0 if there is none
+	 */
+	private static long getRetryAfter(HttpURLConnection connection) {
+		String retryAfter = connection.getHeaderField("Retry-After");
+		if (retryAfter != null) {
+			try {
+				return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+			} catch (NumberFormatException e) {
+				logger.debug("Unsupported Retry-After header: " + retryAfter); // e.g. an HTTP date
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Consumes and closes the body of an error response, so its connection can be kept alive
+	 *
+	 * @param connection
+	 *            the connection with an error response
+	 */
+	private static void discardErrorResponse(HttpURLConnection connection) {
+		try (InputStream errorStream = connection.getErrorStream()) {
+			if (errorStream != null) {
+				discard(errorStream);
+			}
+		} catch (IOException e) {
+			logger.debug("Could not consume the error response: " + e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Consumes the rest of the given stream, without closing it
+	 *
+	 * @param in
+	 *            the stream to consume
+	 * @throws IOException
+	 */
+	private static void discard(InputStream in) throws IOException {
+		byte[] buffer = new byte[8 * 1024];
+		while (in.read(buffer) != -1) {
+			// discard the rest of the body
+		}
+	}
+
+	/**
+	 * Returns true if the given response status code may mean that the endpoint does not support the content
+	 * coding of the request body. A 415 says so, while a 400 may also be about the request itself, so the
+	 * compression is only turned off for the endpoint if the request is then accepted uncompressed.
+	 *
+	 * @param responseCode
+	 *            the response status code
+	 * @return true if the request should be sent again without compression
+	 */
+	private static boolean isUnsupportedCodingStatus(int responseCode) {
+		return responseCode == HttpURLConnection.HTTP_UNSUPPORTED_TYPE
+				|| responseCode == HttpURLConnection.HTTP_BAD_REQUEST;
+	}
+
+	/**
+	 * @return the scheduler used for the request deadlines
+	 */
+	private static ScheduledExecutorService createDeadlineScheduler() {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "OOPS-transport");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
+
+		return scheduler;
+	}
+
+	/**
+	 * @return the endpoint URL of this transport
+	 */
+	public String getEndpoint() {
+		return endpoint.toString();
+	}
+
+	/**
+	 * @return the connect timeout in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout
+	 *            the connect timeout in milliseconds to set, 0 for no timeout
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return the read timeout in milliseconds
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * @param readTimeout
+	 *            the read timeout in milliseconds to set, 0 for no timeout
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * @return the timeout in milliseconds for the whole request, from the connection to the end of the response
+	 */
+	public int getTotalTimeout() {
+		return totalTimeout;
+	}
+
+	/**
+	 * @param totalTimeout
+	 *            the timeout in milliseconds for the whole request to set, 0 for no timeout
+	 */
+	public void setTotalTimeout(int totalTimeout) {
+		this.totalTimeout = totalTimeout;
+	}
+
+	/**
+	 * @return the compression used for the request bodies
+	 */
+	public ContentCoding getRequestCompression() {
+		return requestCompression;
+	}
+
+	/**
+	 * Sets the compression used for the request bodies. The responses are always accepted compressed with any of
+	 * the supported codings.
+	 *
+	 * @param coding
+	 *            the request body coding, {@link ContentCoding#IDENTITY} to disable the compression
+	 */
+	public void setRequestCompression(ContentCoding coding) {
+		this.requestCompression = coding;
+		this.requestCompressionSupported = true;
+	}
+
+	/**
+	 * Returns whether the endpoint is assumed to support the given upload syntax, which is true until it rejects
+	 * an ontology in that syntax. RDF/XML is always supported.
+	 *
+	 * @param syntax
+	 *            the upload syntax
+	 * @return false if the endpoint has rejected an ontology in the given syntax
+	 */
+	public boolean isSyntaxSupported(UploadSyntax syntax) {
+		return syntax == UploadSyntax.RDF_XML || !rejectedSyntaxes.contains(syntax);
+	}
+
+	/**
+	 * Sets whether the endpoint supports the given upload syntax, e.g. to try again a syntax it has rejected
+	 *
+	 * @param syntax
+	 *            the upload syntax
+	 * @param supported
+	 *            whether the endpoint supports the syntax
+	 */
+	public void setSyntaxSupported(UploadSyntax syntax, boolean supported) {
+		if (supported) {
+			rejectedSyntaxes.remove(syntax);
+		} else if (syntax != UploadSyntax.RDF_XML) {
+			rejectedSyntaxes.add(syntax);
+		}
+	}
+
+	/**
+	 * @return the policy for retrying the failed requests
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * @param retryPolicy
+	 *            the policy for retrying the failed requests, {@link RetryPolicy#NO_RETRIES} to disable the retries
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * @return the circuit breaker of the requests to the endpoint, to monitor or configure it
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * @return the limiter of the number of requests in flight to the endpoint, to monitor it
+	 */
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * The parsed response of an attempt, which tells it apart from an attempt whose body has been rejected
+	 */
+	private static final class ParsedResponse<T> {
+
+		private final T value;
+
+		private ParsedResponse(T value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Parser of the response bodies of the OOPS! WS
+	 */
+	@FunctionalInterface
+	public interface ResponseParser<T> {
+
+		/**
+		 * Parses a response body while it is received. The failures to receive it must be thrown as
+		 * {@link IOException}s, so they are handled like the other failures of the request.
+		 *
+		 * @param responseStream
+		 *            the response body, which is closed after parsing it
+		 * @return the parsed response
+		 * @throws Exception
+		 */
+		public T parse(InputStream responseStream) throws Exception;
+	}
+}
@@ -0,0 +1,55 @@
+package oops.evaluation;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import oops.evaluation.PitfallProjection.Content;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Summary of the changes applied to an ontology since a revision: the IRIs of the entities they touched and the
+ * kinds of content they changed.
+ */
+final class OntologyChanges {
+
+	private final Set<String> touchedIRIs;
+
+	private final EnumSet<Content> contents;
+
+	private final int changesCount;
+
+	OntologyChanges(Set<String> touchedIRIs, EnumSet<Content> contents, int changesCount) {
+		this.touchedIRIs = Collections.unmodifiableSet(touchedIRIs);
+		this.contents = contents;
+		this.changesCount = changesCount;
+	}
+
+	/**
+	 * @return the IRIs of the entities touched by the changes, without the built-in ones
+	 */
+	Set<String> getTouchedIRIs() {
+		return touchedIRIs;
+	}
+
+	/**
+	 * @return true if the changes may change the result of checking the given pitfall on the whole ontology
+	 */
+	boolean affects(String pitfall) {
+		if (contents.contains(Content.ALL)) {
+			return true;
+		}
+
+		EnumSet<Content> pitfallContents = PitfallProjection.getContents(Collections.singleton(pitfall));
+		return pitfallContents.contains(Content.ALL) || !Collections.disjoint(pitfallContents, contents);
+	}
+
+	/**
+	 * @return the number of changes
+	 */
+	int getChangesCount() {
+		return changesCount;
+	}
+}
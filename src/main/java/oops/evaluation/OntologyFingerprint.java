@@ -0,0 +1,225 @@
+package oops.evaluation;
+
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * A 128-bit fingerprint of the content of an ontology. It is the sum (modulo 2^128) of the hashes of the axioms
+ * and the header elements (ontology ID, ontology annotations and imports) of the ontology, so it does not depend
+ * on the order of the elements. The per-element hash is the 128-bit MurmurHash3 of the element's OWL API string
+ * rendering, which stays the same across sessions.
+ */
+public final class OntologyFingerprint {
+
+	public static final OntologyFingerprint EMPTY = new OntologyFingerprint(0, 0);
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private final long high;
+
+	private final long low;
+
+	public OntologyFingerprint(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	/**
+	 * Computes the fingerprint of the given ontology, hashing its axioms in parallel
+	 *
+	 * @param ontology
+	 *            the ontology to fingerprint
+	 * @return the fingerprint of the given ontology
+	 */
+	public static OntologyFingerprint of(OWLOntology ontology) {
+		OntologyFingerprint fingerprint = ontology.getAxioms().parallelStream()
+				.map(OntologyFingerprint::ofElement)
+				.reduce(EMPTY, OntologyFingerprint::plus);
+
+		return fingerprint.plus(ofHeader(ontology));
+	}
+
+	/**
+	 * Computes the fingerprint of the header of the given ontology: its ID, annotations and imports declarations
+	 *
+	 * @param ontology
+	 *            the ontology whose header is fingerprinted
+	 * @return the fingerprint of the header of the given ontology
+	 */
+	public static OntologyFingerprint ofHeader(OWLOntology ontology) {
+		OntologyFingerprint fingerprint = ofElement(ontology.getOntologyID());
+
+		for (OWLAnnotation annotation : ontology.getAnnotations()) {
+			fingerprint = fingerprint.plus(ofElement(annotation));
+		}
+		for (OWLImportsDeclaration importsDeclaration : ontology.getImportsDeclarations()) {
+			fingerprint = fingerprint.plus(ofElement(importsDeclaration));
+		}
+
+		return fingerprint;
+	}
+
+	/**
+	 * Computes the hash of a single ontology element (an axiom, annotation, etc.)
+	 *
+	 * @param element
+	 *            the element to hash
+	 * @return the hash of the given element
+	 */
+	public static OntologyFingerprint ofElement(Object element) {
+		return hash(element.toString());
+	}
+
+	/**
+	 * Returns the fingerprint of a content with all the elements of this one and the given one
+	 *
+	 * @param other
+	 *            the fingerprint to add
+	 * @return the sum of both fingerprints
+	 */
+	public OntologyFingerprint plus(OntologyFingerprint other) {
+		long sumLow = low + other.low;
+		long carry = Long.compareUnsigned(sumLow, low) < 0 ? 1 : 0;
+
+		return new OntologyFingerprint(high + other.high + carry, sumLow);
+	}
+
+	/**
+	 * Returns the fingerprint of this content without the elements of the given one
+	 *
+	 * @param other
+	 *            the fingerprint to subtract
+	 * @return the difference of both fingerprints
+	 */
+	public OntologyFingerprint minus(OntologyFingerprint other) {
+		long differenceLow = low - other.low;
+		long borrow = Long.compareUnsigned(low, other.low) < 0 ? 1 : 0;
+
+		return new OntologyFingerprint(high - other.high - borrow, differenceLow);
+	}
+
+	/**
+	 * @return the high 64 bits of the fingerprint
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return the low 64 bits of the fingerprint
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) return true;
+		if (!(other instanceof OntologyFingerprint)) return false;
+		OntologyFingerprint otherFingerprint = (OntologyFingerprint) other;
+		return high == otherFingerprint.high && low == otherFingerprint.low;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(high ^ low);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", high, low);
+	}
+
+	/**
+	 * Computes the 128-bit MurmurHash3 (x64 variant) of the UTF-16 code units of the given text
+	 *
+	 * @param text
+	 *            the text to hash
+	 * @return the hash of the given text
+	 */
+	private static OntologyFingerprint hash(CharSequence text) {
+		int length = text.length();
+		int blocks = length / 8; // 8 chars = 16 bytes per block
+		long h1 = 0;
+		long h2 = 0;
+
+		for (int block = 0; block < blocks; block++) {
+			int offset = block * 8;
+			long k1 = chars(text, offset, 4);
+			long k2 = chars(text, offset + 4, 4);
+
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		int tailOffset = blocks * 8;
+		int tailLength = length - tailOffset;
+		if (tailLength > 4) {
+			h2 ^= mixK2(chars(text, tailOffset + 4, tailLength - 4));
+		}
+		if (tailLength > 0) {
+			h1 ^= mixK1(chars(text, tailOffset, Math.min(tailLength, 4)));
+		}
+
+		long byteLength = 2L * length;
+		h1 ^= byteLength;
+		h2 ^= byteLength;
+
+		h1 += h2;
+		h2 += h1;
+
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+
+		h1 += h2;
+		h2 += h1;
+
+		return new OntologyFingerprint(h1, h2);
+	}
+
+	/**
+	 * Packs up to 4 chars of the text in a little-endian long
+	 */
+	private static long chars(CharSequence text, int offset, int count) {
+		long value = 0;
+		for (int i = 0; i < count; i++) {
+			value |= ((long) text.charAt(offset + i)) << (16 * i);
+		}
+		return value;
+	}
+
+	private static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		return k1;
+	}
+
+	private static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		return k2;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -0,0 +1,343 @@
+package oops.evaluation;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.RemoveImport;
+import org.semanticweb.owlapi.model.RemoveOntologyAnnotation;
+import org.semanticweb.owlapi.model.SetOntologyID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oops.evaluation.PitfallProjection.Content;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Keeps the fingerprints of the evaluated ontologies up to date. The fingerprint of an ontology is computed once,
+ * hashing its axioms in parallel, and from then on it is updated with the hashes of the changed elements only, as
+ * it is a sum of the hashes of its elements. Each tracked ontology also has a revision number that increases with
+ * every change applied to it, and a journal of its latest changes to know what has changed since a revision.
+ * <p>
+ * The ontologies are tracked by identity and weakly referenced, so closing an ontology releases its fingerprint.
+ */
+public class OntologyFingerprintTracker implements OWLOntologyChangeListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(OntologyFingerprintTracker.class);
+
+	private static final int MAX_JOURNAL_CHANGES = 10000; // latest changes kept for each ontology
+
+	private final List<TrackedOntology> trackedOntologies = new ArrayList<TrackedOntology>(); // guarded by this
+
+	private final List<WeakReference<OWLOntologyManager>> listenedManagers =
+			new ArrayList<WeakReference<OWLOntologyManager>>(); // guarded by this
+
+	/**
+	 * Returns the current fingerprint of the given ontology. The first call for an ontology computes it, and the
+	 * concurrent calls wait for it, while the next ones take constant time. It is not meant to be called from the
+	 * event dispatch thread, where {@link #track(OWLOntology)} computes it in the background instead.
+	 *
+	 * @param ontology
+	 *            the ontology to fingerprint
+	 * @return the fingerprint of the given ontology
+	 */
+	public OntologyFingerprint getFingerprint(OWLOntology ontology) {
+		TrackedOntology trackedOntology;
+
+		synchronized (this) {
+			trackedOntology = getTrackedOntology(ontology, true);
+			if (trackedOntology.fingerprint != null) {
+				return trackedOntology.fingerprint;
+			}
+		}
+
+		return computeFingerprint(ontology, trackedOntology);
+	}
+
+	/**
+	 * Starts tracking the given ontology, computing its fingerprint in the background
+	 *
+	 * @param ontology
+	 *            the ontology to track, nothing is done if it is null
+	 */
+	public void track(OWLOntology ontology) {
+		if (ontology != null) {
+			CompletableFuture.runAsync(() -> getFingerprint(ontology));
+		}
+	}
+
+	/**
+	 * Returns the revision of the given ontology, which increases with every change applied to it since it is
+	 * tracked. The ontology is tracked from now on if it is not tracked yet.
+	 *
+	 * @param ontology
+	 *            the ontology
+	 * @return the revision of the given ontology
+	 */
+	public synchronized long getRevision(OWLOntology ontology) {
+		return getTrackedOntology(ontology, true).revision;
+	}
+
+	/**
+	 * @return true if the given ontology is tracked, i.e. it has been evaluated or its fingerprint computed
+	 */
+	synchronized boolean isTracked(OWLOntology ontology) {
+		return getTrackedOntology(ontology, false) != null;
+	}
+
+	/**
+	 * Returns the summary of the changes applied to the given ontology since the given revision
+	 *
+	 * @param ontology
+	 *            the ontology
+	 * @param revision
+	 *            the revision of the ontology to compare with
+	 * @return the changes since the given revision, or null if the ontology is not tracked or the changes since
+	 *         that revision are not in its journal anymore
+	 */
+	synchronized OntologyChanges getChangesSince(OWLOntology ontology, long revision) {
+		TrackedOntology trackedOntology = getTrackedOntology(ontology, false);
+		if (trackedOntology == null || revision < trackedOntology.forgottenRevision
+				|| revision > trackedOntology.revision) {
+			return null;
+		}
+
+		Set<String> touchedIRIs = new HashSet<String>();
+		EnumSet<Content> contents = EnumSet.noneOf(Content.class);
+		int changesCount = 0;
+
+		Iterator<JournalEntry> iterator = trackedOntology.journal.descendingIterator();
+		while (iterator.hasNext()) {
+			JournalEntry entry = iterator.next();
+			if (entry.revision <= revision) {
+				break;
+			}
+			touchedIRIs.addAll(entry.touchedIRIs);
+			contents.add(entry.content);
+			changesCount++;
+		}
+
+		return new OntologyChanges(touchedIRIs, contents, changesCount);
+	}
+
+	@Override
+	public synchronized void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+		TrackedOntology trackedOntology = null;
+
+		for (OWLOntologyChange change : changes) {
+			if (trackedOntology == null || trackedOntology.ontology.get() != change.getOntology()) {
+				trackedOntology = getTrackedOntology(change.getOntology(), false);
+			}
+			if (trackedOntology == null) {
+				continue;
+			}
+
+			trackedOntology.revision++;
+			trackedOntology.journal.add(new JournalEntry(trackedOntology.revision, change));
+			if (trackedOntology.journal.size() > MAX_JOURNAL_CHANGES) {
+				trackedOntology.forgottenRevision = trackedOntology.journal.remove().revision;
+			}
+
+			if (trackedOntology.fingerprint == null) {
+				trackedOntology.stale = true; // being computed, the computation has to start over
+			} else {
+				trackedOntology.fingerprint = trackedOntology.fingerprint
+						.plus(getAddedFingerprint(change))
+						.minus(getRemovedFingerprint(change));
+			}
+		}
+	}
+
+	/**
+	 * Computes the fingerprint of a tracked ontology, starting over if it changes during the computation
+	 *
+	 * @return the fingerprint of the given ontology
+	 */
+	private OntologyFingerprint computeFingerprint(OWLOntology ontology, TrackedOntology trackedOntology) {
+		synchronized (trackedOntology) { // a single computation for each ontology
+			while (true) {
+				synchronized (this) {
+					if (trackedOntology.fingerprint != null) {
+						return trackedOntology.fingerprint;
+					}
+					trackedOntology.stale = false;
+				}
+
+				Instant startInstant = Instant.now();
+				OntologyFingerprint fingerprint = OntologyFingerprint.of(ontology);
+
+				synchronized (this) {
+					if (!trackedOntology.stale) {
+						trackedOntology.fingerprint = fingerprint;
+
+						logger.info(String.format("computeFingerprint[OntologyFingerprintTracker] %d axioms in %d ms",
+								ontology.getAxiomCount(), Duration.between(startInstant, Instant.now()).toMillis()));
+						return fingerprint;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the tracked ontology for the given one, removing the ontologies that are not referenced anymore
+	 *
+	 * @param ontology
+	 *            the ontology
+	 * @param create
+	 *            true to start tracking the ontology if it is not tracked yet
+	 * @return the tracked ontology, or null if it is not tracked and it has not been created
+	 */
+	private TrackedOntology getTrackedOntology(OWLOntology ontology, boolean create) {
+		Iterator<TrackedOntology> iterator = trackedOntologies.iterator();
+		while (iterator.hasNext()) {
+			TrackedOntology trackedOntology = iterator.next();
+			OWLOntology referent = trackedOntology.ontology.get();
+
+			if (referent == ontology) {
+				return trackedOntology;
+			} else if (referent == null) {
+				iterator.remove();
+			}
+		}
+
+		if (!create) {
+			return null;
+		}
+
+		listenTo(ontology.getOWLOntologyManager());
+
+		TrackedOntology trackedOntology = new TrackedOntology(ontology);
+		trackedOntologies.add(trackedOntology);
+		return trackedOntology;
+	}
+
+	/**
+	 * Registers this tracker as a changes listener of the given manager, if it is not registered yet
+	 *
+	 * @param manager
+	 *            the manager of a tracked ontology
+	 */
+	private void listenTo(OWLOntologyManager manager) {
+		Iterator<WeakReference<OWLOntologyManager>> iterator = listenedManagers.iterator();
+		while (iterator.hasNext()) {
+			OWLOntologyManager listenedManager = iterator.next().get();
+
+			if (listenedManager == manager) {
+				return;
+			} else if (listenedManager == null) {
+				iterator.remove();
+			}
+		}
+
+		manager.addOntologyChangeListener(this);
+		listenedManagers.add(new WeakReference<OWLOntologyManager>(manager));
+	}
+
+	/**
+	 * @return the fingerprint of the element added by the given change, or an empty one if it does not add any
+	 */
+	private static OntologyFingerprint getAddedFingerprint(OWLOntologyChange change) {
+		if (change.isAxiomChange() && change.isAddAxiom()) {
+			return OntologyFingerprint.ofElement(change.getAxiom());
+		} else if (change instanceof SetOntologyID) {
+			return OntologyFingerprint.ofElement(((SetOntologyID) change).getNewOntologyID());
+		} else if (change instanceof AddOntologyAnnotation) {
+			return OntologyFingerprint.ofElement(((AddOntologyAnnotation) change).getAnnotation());
+		} else if (change instanceof AddImport) {
+			return OntologyFingerprint.ofElement(((AddImport) change).getImportDeclaration());
+		}
+		return OntologyFingerprint.EMPTY;
+	}
+
+	/**
+	 * @return the fingerprint of the element removed by the given change, or an empty one if it does not remove
+	 *         any
+	 */
+	private static OntologyFingerprint getRemovedFingerprint(OWLOntologyChange change) {
+		if (change.isAxiomChange() && change.isRemoveAxiom()) {
+			return OntologyFingerprint.ofElement(change.getAxiom());
+		} else if (change instanceof SetOntologyID) {
+			return OntologyFingerprint.ofElement(((SetOntologyID) change).getOriginalOntologyID());
+		} else if (change instanceof RemoveOntologyAnnotation) {
+			return OntologyFingerprint.ofElement(((RemoveOntologyAnnotation) change).getAnnotation());
+		} else if (change instanceof RemoveImport) {
+			return OntologyFingerprint.ofElement(((RemoveImport) change).getImportDeclaration());
+		}
+		return OntologyFingerprint.EMPTY;
+	}
+
+	/**
+	 * A change of the journal of an ontology: the IRIs of the entities it touches and the kind of content it changes
+	 */
+	private static class JournalEntry {
+
+		private final long revision;
+
+		private final Set<String> touchedIRIs = new HashSet<String>();
+
+		private final Content content;
+
+		JournalEntry(long revision, OWLOntologyChange change) {
+			this.revision = revision;
+
+			if (change.isAxiomChange()) {
+				OWLAxiom axiom = change.getAxiom();
+				for (OWLEntity entity : axiom.getSignature()) {
+					if (!entity.isBuiltIn()) {
+						touchedIRIs.add(entity.getIRI().toString());
+					}
+				}
+				if (axiom instanceof OWLAnnotationAssertionAxiom
+						&& ((OWLAnnotationAssertionAxiom) axiom).getSubject() instanceof IRI) {
+					touchedIRIs.add(((OWLAnnotationAssertionAxiom) axiom).getSubject().toString());
+				}
+				content = PitfallProjection.getContent(axiom);
+			} else {
+				content = Content.HEADER; // ontology ID, annotations or imports
+			}
+		}
+	}
+
+	/**
+	 * A tracked ontology with its fingerprint, revision and journal, guarded by the tracker
+	 */
+	private static class TrackedOntology {
+
+		private final WeakReference<OWLOntology> ontology;
+
+		private OntologyFingerprint fingerprint; // null until it is computed
+
+		private boolean stale; // true if the ontology has changed while its fingerprint was being computed
+
+		private long revision;
+
+		private final ArrayDeque<JournalEntry> journal = new ArrayDeque<JournalEntry>();
+
+		private long forgottenRevision; // revision of the latest change removed from the journal
+
+		TrackedOntology(OWLOntology ontology) {
+			this.ontology = new WeakReference<OWLOntology>(ontology);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDocumentFormat;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Splits an ontology into locality-based modules that can be evaluated separately. The entities of the ontology
+ * are sorted by IRI, so that the entities of the same namespace tend to end up together, and grouped in chunks of
+ * about the given number of referencing axioms. The module of each chunk is its STAR module, which holds all the
+ * axioms relevant to its entities, plus the other logical axioms of its entities, so that every logical axiom of
+ * the ontology is in some module, and the declarations and annotations of the entities of the module.
+ * <p>
+ * The modules overlap, so the same pitfall can be detected in several of them, and the pitfalls that relate
+ * entities of different modules (e.g. equivalent classes or elements with the same label) can be missed.
+ */
+public final class OntologyModularizer {
+
+	private static final Logger logger = LoggerFactory.getLogger(OntologyModularizer.class);
+
+	private OntologyModularizer() {
+	}
+
+	/**
+	 * Splits the given ontology into modules of about the given number of axioms. A module can be bigger if the
+	 * axioms relevant to its entities are more.
+	 *
+	 * @param ontology
+	 *            the ontology to split
+	 * @param maxModuleAxioms
+	 *            the number of referencing axioms of the entities of each module
+	 * @return the modules, each one a new ontology with the same ID and document format in a new manager, or the
+	 *         given ontology itself if it is not bigger than a module
+	 * @throws OWLOntologyCreationException
+	 */
+	public static List<OWLOntology> partition(OWLOntology ontology, int maxModuleAxioms)
+			throws OWLOntologyCreationException {
+		if (ontology.getAxiomCount() <= maxModuleAxioms) {
+			return Collections.singletonList(ontology);
+		}
+
+		List<Set<OWLEntity>> chunks = new ArrayList<Set<OWLEntity>>();
+		Set<OWLEntity> chunk = new HashSet<OWLEntity>();
+		int chunkAxioms = 0;
+
+		for (OWLEntity entity : new TreeSet<OWLEntity>(ontology.getSignature())) {
+			if (entity.isBuiltIn() || entity.isOWLDatatype() || entity.isOWLAnnotationProperty()) {
+				continue; // they are only a module of their own when they are referenced by the others
+			}
+
+			chunk.add(entity);
+			chunkAxioms += ontology.getReferencingAxioms(entity).size();
+
+			if (chunkAxioms >= maxModuleAxioms) {
+				chunks.add(chunk);
+				chunk = new HashSet<OWLEntity>();
+				chunkAxioms = 0;
+			}
+		}
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
+		}
+
+		if (chunks.size() <= 1) {
+			return Collections.singletonList(ontology);
+		}
+
+		SyntacticLocalityModuleExtractor extractor = new SyntacticLocalityModuleExtractor(
+				ontology.getOWLOntologyManager(), ontology, ModuleType.STAR);
+
+		List<OWLOntology> modules = new ArrayList<OWLOntology>();
+		Set<Set<OWLAxiom>> extractedModules = new HashSet<Set<OWLAxiom>>();
+
+		for (Set<OWLEntity> signature : chunks) {
+			Set<OWLAxiom> axioms = extractModuleAxioms(ontology, extractor, signature);
+
+			if (extractedModules.add(axioms)) { // not the same module as the one of a previous chunk
+				modules.add(createModule(ontology, axioms));
+			}
+		}
+
+		int modulesAxioms = modules.stream().mapToInt(OWLOntology::getAxiomCount).sum();
+		logger.info(String.format("partition[OntologyModularizer] %d axioms split into %d modules with %d axioms",
+				ontology.getAxiomCount(), modules.size(), modulesAxioms));
+
+		return modules;
+	}
+
+	/**
+	 * Extracts the module of the given entities of an ontology
+	 *
+	 * @param ontology
+	 *            the ontology
+	 * @param signature
+	 *            the entities of the ontology the module is about
+	 * @return the module, a new ontology with the same ID and document format in a new manager
+	 * @throws OWLOntologyCreationException
+	 */
+	public static OWLOntology extractModule(OWLOntology ontology, Set<OWLEntity> signature)
+			throws OWLOntologyCreationException {
+		SyntacticLocalityModuleExtractor extractor = new SyntacticLocalityModuleExtractor(
+				ontology.getOWLOntologyManager(), ontology, ModuleType.STAR);
+
+		return createModule(ontology, extractModuleAxioms(ontology, extractor, signature));
+	}
+
+	/**
+	 * @return the axioms of the STAR module of the given entities and the other logical axioms that reference
+	 *         them, plus the declarations and annotations of the entities of the module
+	 */
+	private static Set<OWLAxiom> extractModuleAxioms(OWLOntology ontology, SyntacticLocalityModuleExtractor extractor,
+			Set<OWLEntity> signature) {
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>(extractor.extract(signature));
+		for (OWLEntity entity : signature) {
+			for (OWLAxiom axiom : ontology.getReferencingAxioms(entity)) {
+				if (axiom.isLogicalAxiom()) {
+					axioms.add(axiom); // e.g. A SubClassOf B, which is not in the module if B is not in the signature
+				}
+			}
+		}
+
+		Set<OWLEntity> moduleSignature = new HashSet<OWLEntity>(signature);
+		for (OWLAxiom axiom : axioms) {
+			moduleSignature.addAll(axiom.getSignature());
+		}
+		for (OWLEntity entity : moduleSignature) {
+			axioms.addAll(ontology.getDeclarationAxioms(entity));
+			axioms.addAll(ontology.getAnnotationAssertionAxioms(entity.getIRI()));
+		}
+
+		return axioms;
+	}
+
+	/**
+	 * @return a new ontology with the given axioms and the same ID and document format as the given one
+	 */
+	private static OWLOntology createModule(OWLOntology ontology, Set<OWLAxiom> axioms)
+			throws OWLOntologyCreationException {
+		OWLOntologyManager moduleManager = OWLManager.createOWLOntologyManager();
+		OWLOntology module = moduleManager.createOntology(ontology.getOntologyID());
+		moduleManager.addAxioms(module, axioms);
+
+		OWLDocumentFormat format = ontology.getOWLOntologyManager().getOntologyFormat(ontology);
+		if (format != null) {
+			moduleManager.setOntologyFormat(module, format); // keep the prefixes of the ontology
+		}
+
+		return module;
+	}
+}
@@ -0,0 +1,146 @@
+package oops.evaluation;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Renders an ontology as N-Triples using all the cores. The axioms are split into chunks rendered in parallel on a
+ * fork/join pool, and the rendered chunks are written in order while the next ones are being rendered. Only a few
+ * chunks per core are rendered ahead of the writer, so the memory used does not depend on the ontology size.
+ * <p>
+ * Each chunk labels the blank nodes of its axioms with its own prefix, and the anonymous individuals are labelled
+ * after their ids, so the chunks can be rendered independently. The triples about an anonymous individual used by
+ * axioms of several chunks are written once per chunk, which is harmless as an RDF graph is a set of triples.
+ */
+public class ParallelNTriplesRenderer {
+
+	public static final int DEFAULT_CHUNK_AXIOMS = 2048;
+
+	private static final int CHUNKS_AHEAD_PER_THREAD = 2; // rendered chunks waiting for the writer per thread
+
+	// shared by all the renderings, its threads are started on demand and stopped when they are idle
+	private static final ForkJoinPool renderPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+			pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("OOPS-render-" + thread.getPoolIndex());
+				return thread;
+			}, null, false);
+
+	private final OWLOntology ontology;
+
+	private final Writer writer;
+
+	private final ForkJoinPool pool;
+
+	private final int chunkAxioms;
+
+	public ParallelNTriplesRenderer(OWLOntology ontology, Writer writer) {
+		this(ontology, writer, renderPool, DEFAULT_CHUNK_AXIOMS);
+	}
+
+	/**
+	 * @param ontology
+	 *            the ontology to render
+	 * @param writer
+	 *            the writer where the ontology is rendered
+	 * @param pool
+	 *            the pool where the chunks are rendered
+	 * @param chunkAxioms
+	 *            the number of axioms of each chunk
+	 */
+	public ParallelNTriplesRenderer(OWLOntology ontology, Writer writer, ForkJoinPool pool, int chunkAxioms) {
+		this.ontology = ontology;
+		this.writer = writer;
+		this.pool = pool;
+		this.chunkAxioms = Math.max(1, chunkAxioms);
+	}
+
+	/**
+	 * Renders the ontology header, all its axioms and the types of its undeclared entities. The ontologies with a
+	 * single chunk, or without several threads to render them, are rendered sequentially. The writer is flushed but
+	 * not closed.
+	 *
+	 * @throws IOException
+	 */
+	public void render() throws IOException {
+		NTriplesRenderer renderer = new NTriplesRenderer(ontology, writer);
+		if (ontology.getAxiomCount() <= chunkAxioms || pool.getParallelism() < 2) {
+			renderer.render();
+			return;
+		}
+
+		renderer.renderHeader();
+		renderChunks(new ArrayList<OWLAxiom>(ontology.getAxioms()));
+		renderer.renderMissingTypes();
+		writer.flush();
+	}
+
+	/**
+	 * Renders the chunks of the given axioms in parallel and writes them in order
+	 *
+	 * @param axioms
+	 *            the axioms to render
+	 * @throws IOException
+	 */
+	private void renderChunks(List<OWLAxiom> axioms) throws IOException {
+		int chunksCount = (axioms.size() + chunkAxioms - 1) / chunkAxioms;
+		int maxChunksAhead = pool.getParallelism() * CHUNKS_AHEAD_PER_THREAD;
+
+		Deque<ForkJoinTask<String>> renderedChunks = new ArrayDeque<ForkJoinTask<String>>(maxChunksAhead);
+		int nextChunk = 0;
+		try {
+			while (nextChunk < chunksCount || !renderedChunks.isEmpty()) {
+				while (nextChunk < chunksCount && renderedChunks.size() < maxChunksAhead) {
+					int from = nextChunk * chunkAxioms;
+					List<OWLAxiom> chunk = axioms.subList(from, Math.min(axioms.size(), from + chunkAxioms));
+					String blankNodePrefix = "_:c" + nextChunk + "b";
+					renderedChunks.add(pool.submit(() -> renderChunk(chunk, blankNodePrefix)));
+					nextChunk++;
+				}
+
+				writer.write(join(renderedChunks.poll()));
+			}
+		} finally {
+			renderedChunks.forEach(chunk -> chunk.cancel(false)); // e.g. the rendering has been cancelled
+		}
+	}
+
+	/**
+	 * @return the triples of the given axioms
+	 */
+	private String renderChunk(List<OWLAxiom> chunk, String blankNodePrefix) {
+		StringWriter chunkWriter = new StringWriter(chunk.size() * 128);
+		try {
+			new NTriplesRenderer(ontology, chunkWriter, blankNodePrefix).renderAxioms(chunk);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return chunkWriter.toString();
+	}
+
+	/**
+	 * Waits for a rendered chunk, rethrowing the failure of its rendering
+	 */
+	private static String join(ForkJoinTask<String> renderedChunk) throws IOException {
+		try {
+			return renderedChunk.join();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+}
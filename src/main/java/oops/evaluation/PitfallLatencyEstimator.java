@@ -0,0 +1,124 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Estimates how long the OOPS! WS takes to check each pitfall from the latencies of the requests, and splits the
+ * pitfalls into groups with similar estimated latencies. The latency of a request is shared among its pitfalls in
+ * proportion to their current estimates, and each estimate is an exponentially weighted moving average of its
+ * shares, so it follows the changes of the service while smoothing out the noise of single requests.
+ */
+public class PitfallLatencyEstimator {
+
+	private static final double SMOOTHING = 0.3; // weight of the latest request in the moving averages
+
+	private static final double DEFAULT_LATENCY = 1000; // estimate in ms when no pitfall has been observed yet
+
+	private final Map<String, Double> latencies = new HashMap<String, Double>(); // guarded by this
+
+	/**
+	 * Returns the estimated latency of the given pitfall, or the average of the estimated ones if it has not been
+	 * observed yet
+	 *
+	 * @param pitfall
+	 *            the pitfall code
+	 * @return the estimated latency in milliseconds
+	 */
+	public synchronized double getEstimate(String pitfall) {
+		Double latency = latencies.get(pitfall);
+		if (latency != null) {
+			return latency;
+		}
+
+		return latencies.isEmpty() ? DEFAULT_LATENCY
+				: latencies.values().stream().mapToDouble(Double::doubleValue).average().getAsDouble();
+	}
+
+	/**
+	 * Updates the estimates of the pitfalls of a finished request with its latency
+	 *
+	 * @param pitfalls
+	 *            the pitfalls checked by the request
+	 * @param millis
+	 *            the latency of the request in milliseconds
+	 */
+	public synchronized void record(Collection<String> pitfalls, long millis) {
+		Map<String, Double> estimates = new HashMap<String, Double>();
+		double estimatedTotal = 0;
+		for (String pitfall : pitfalls) {
+			double estimate = getEstimate(pitfall);
+			estimates.put(pitfall, estimate);
+			estimatedTotal += estimate;
+		}
+
+		for (Map.Entry<String, Double> estimate : estimates.entrySet()) {
+			double share = estimatedTotal > 0 ? estimate.getValue() / estimatedTotal : 1.0 / estimates.size();
+			double observed = millis * share;
+			latencies.merge(estimate.getKey(), observed, (old, latest) -> old + SMOOTHING * (latest - old));
+		}
+	}
+
+	/**
+	 * Splits the given pitfalls into groups with similar total estimated latencies, assigning the slowest
+	 * pitfalls first, each one to the fastest group so far
+	 *
+	 * @param pitfalls
+	 *            the pitfalls to split
+	 * @param maxGroups
+	 *            the max number of groups
+	 * @return the non-empty groups of pitfalls, each one sorted
+	 */
+	public synchronized List<List<String>> balance(Collection<String> pitfalls, int maxGroups) {
+		List<String> sortedPitfalls = new ArrayList<String>(new TreeSet<String>(pitfalls));
+		sortedPitfalls.sort(Comparator.comparingDouble(this::getEstimate).reversed()); // stable for equal ones
+
+		int groupsCount = Math.max(1, Math.min(maxGroups, sortedPitfalls.size()));
+		PriorityQueue<Group> groups = new PriorityQueue<Group>(groupsCount,
+				Comparator.comparingDouble((Group g) -> g.latency).thenComparingInt(g -> g.index));
+		for (int i = 0; i < groupsCount; i++) {
+			groups.add(new Group(i));
+		}
+
+		for (String pitfall : sortedPitfalls) {
+			Group fastest = groups.poll();
+			fastest.pitfalls.add(pitfall);
+			fastest.latency += getEstimate(pitfall);
+			groups.add(fastest);
+		}
+
+		List<List<String>> balancedGroups = new ArrayList<List<String>>();
+		for (Group group : groups) {
+			if (!group.pitfalls.isEmpty()) {
+				group.pitfalls.sort(null);
+				balancedGroups.add(group.pitfalls);
+			}
+		}
+		return balancedGroups;
+	}
+
+	/**
+	 * A group of pitfalls being balanced with its total estimated latency
+	 */
+	private static class Group {
+
+		private final int index;
+
+		private final List<String> pitfalls = new ArrayList<String>();
+
+		private double latency;
+
+		Group(int index) {
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package oops.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLDocumentFormat;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Projection of an ontology to the content needed to check a subset of pitfalls. Each pitfall is mapped to the
+ * kinds of content it is checked on (the ontology header, the entity declarations, the class axioms, etc.) and
+ * only those kinds of content are uploaded. The header (ontology IRI, ontology annotations and imports) is always
+ * kept, and the declarations of the entities of each kind of axioms are kept with them. The pitfalls that look at
+ * the whole ontology (e.g. unconnected elements or untyped entities), the unknown ones and the empty subset (all
+ * the pitfalls) need the whole ontology, which is not projected at all.
+ */
+public final class PitfallProjection {
+
+	private static final Logger logger = LoggerFactory.getLogger(PitfallProjection.class);
+
+	/**
+	 * The kinds of ontology content the pitfalls are checked on
+	 */
+	enum Content {
+		HEADER, DECLARATIONS, CLASS_AXIOMS, OBJECT_PROPERTY_AXIOMS, DATA_PROPERTY_AXIOMS, ANNOTATIONS, ALL
+	}
+
+	private static final Map<String, EnumSet<Content>> pitfallContents = new HashMap<String, EnumSet<Content>>() {{
+		put("P02", EnumSet.of(Content.CLASS_AXIOMS, Content.ANNOTATIONS));
+		put("P03", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS));
+		put("P04", EnumSet.of(Content.ALL));
+		put("P05", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS));
+		put("P06", EnumSet.of(Content.CLASS_AXIOMS));
+		put("P07", EnumSet.of(Content.DECLARATIONS));
+		put("P08", EnumSet.of(Content.DECLARATIONS, Content.ANNOTATIONS));
+		put("P09", EnumSet.of(Content.ALL));
+		put("P10", EnumSet.of(Content.CLASS_AXIOMS));
+		put("P11", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS, Content.DATA_PROPERTY_AXIOMS));
+		put("P12", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS, Content.DATA_PROPERTY_AXIOMS, Content.ANNOTATIONS));
+		put("P13", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS, Content.ANNOTATIONS));
+		put("P19", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS, Content.DATA_PROPERTY_AXIOMS));
+		put("P20", EnumSet.of(Content.DECLARATIONS, Content.ANNOTATIONS));
+		put("P21", EnumSet.of(Content.CLASS_AXIOMS, Content.ANNOTATIONS));
+		put("P22", EnumSet.of(Content.DECLARATIONS));
+		put("P24", EnumSet.of(Content.CLASS_AXIOMS, Content.OBJECT_PROPERTY_AXIOMS));
+		put("P25", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS));
+		put("P26", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS));
+		put("P27", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS, Content.DATA_PROPERTY_AXIOMS));
+		put("P28", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS));
+		put("P29", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS));
+		put("P30", EnumSet.of(Content.CLASS_AXIOMS, Content.ANNOTATIONS));
+		put("P31", EnumSet.of(Content.CLASS_AXIOMS, Content.ANNOTATIONS));
+		put("P32", EnumSet.of(Content.DECLARATIONS, Content.ANNOTATIONS));
+		put("P33", EnumSet.of(Content.OBJECT_PROPERTY_AXIOMS));
+		put("P34", EnumSet.of(Content.ALL));
+		put("P35", EnumSet.of(Content.ALL));
+		put("P36", EnumSet.of(Content.HEADER));
+		put("P37", EnumSet.of(Content.HEADER));
+		put("P38", EnumSet.of(Content.HEADER));
+		put("P39", EnumSet.of(Content.DECLARATIONS));
+		put("P40", EnumSet.of(Content.ALL));
+		put("P41", EnumSet.of(Content.HEADER));
+	}};
+
+	private static final List<AxiomType<?>> CLASS_AXIOM_TYPES = Arrays.<AxiomType<?>>asList(
+			AxiomType.SUBCLASS_OF, AxiomType.EQUIVALENT_CLASSES, AxiomType.DISJOINT_CLASSES, AxiomType.DISJOINT_UNION);
+
+	private static final List<AxiomType<?>> OBJECT_PROPERTY_AXIOM_TYPES = Arrays.<AxiomType<?>>asList(
+			AxiomType.SUB_OBJECT_PROPERTY, AxiomType.EQUIVALENT_OBJECT_PROPERTIES,
+			AxiomType.DISJOINT_OBJECT_PROPERTIES, AxiomType.INVERSE_OBJECT_PROPERTIES,
+			AxiomType.OBJECT_PROPERTY_DOMAIN, AxiomType.OBJECT_PROPERTY_RANGE, AxiomType.FUNCTIONAL_OBJECT_PROPERTY,
+			AxiomType.INVERSE_FUNCTIONAL_OBJECT_PROPERTY, AxiomType.SYMMETRIC_OBJECT_PROPERTY,
+			AxiomType.ASYMMETRIC_OBJECT_PROPERTY, AxiomType.REFLEXIVE_OBJECT_PROPERTY,
+			AxiomType.IRREFLEXIVE_OBJECT_PROPERTY, AxiomType.TRANSITIVE_OBJECT_PROPERTY,
+			AxiomType.SUB_PROPERTY_CHAIN_OF);
+
+	private static final List<AxiomType<?>> DATA_PROPERTY_AXIOM_TYPES = Arrays.<AxiomType<?>>asList(
+			AxiomType.SUB_DATA_PROPERTY, AxiomType.EQUIVALENT_DATA_PROPERTIES, AxiomType.DISJOINT_DATA_PROPERTIES,
+			AxiomType.DATA_PROPERTY_DOMAIN, AxiomType.DATA_PROPERTY_RANGE, AxiomType.FUNCTIONAL_DATA_PROPERTY);
+
+	private static final List<AxiomType<?>> ANNOTATION_AXIOM_TYPES = Arrays.<AxiomType<?>>asList(
+			AxiomType.ANNOTATION_ASSERTION, AxiomType.SUB_ANNOTATION_PROPERTY_OF, AxiomType.ANNOTATION_PROPERTY_DOMAIN,
+			AxiomType.ANNOTATION_PROPERTY_RANGE);
+
+	private PitfallProjection() {
+	}
+
+	/**
+	 * Returns the projection of the given ontology to the content needed to check the given pitfalls. The
+	 * projection is a new ontology with the same ID and document format in a new manager, or the given ontology
+	 * itself if the pitfalls need all of it.
+	 *
+	 * @param ontology
+	 *            the ontology to project
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @return the projected ontology
+	 * @throws OWLOntologyCreationException
+	 */
+	public static OWLOntology project(OWLOntology ontology, List<String> pitfallsSubset)
+			throws OWLOntologyCreationException {
+		EnumSet<Content> contents = getContents(pitfallsSubset);
+
+		if (contents.contains(Content.ALL)) {
+			return ontology;
+		}
+
+		Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		Set<EntityType<?>> declaredTypes = new HashSet<EntityType<?>>(); // declarations kept with their axioms
+
+		if (contents.contains(Content.CLASS_AXIOMS)) {
+			addAxioms(ontology, CLASS_AXIOM_TYPES, axioms);
+			declaredTypes.add(EntityType.CLASS);
+		}
+		if (contents.contains(Content.OBJECT_PROPERTY_AXIOMS)) {
+			addAxioms(ontology, OBJECT_PROPERTY_AXIOM_TYPES, axioms);
+			declaredTypes.add(EntityType.OBJECT_PROPERTY);
+		}
+		if (contents.contains(Content.DATA_PROPERTY_AXIOMS)) {
+			addAxioms(ontology, DATA_PROPERTY_AXIOM_TYPES, axioms);
+			declaredTypes.add(EntityType.DATA_PROPERTY);
+		}
+		if (contents.contains(Content.ANNOTATIONS)) {
+			addAxioms(ontology, ANNOTATION_AXIOM_TYPES, axioms);
+			declaredTypes.add(EntityType.ANNOTATION_PROPERTY);
+		}
+
+		for (OWLDeclarationAxiom declaration : ontology.getAxioms(AxiomType.DECLARATION)) {
+			if (contents.contains(Content.DECLARATIONS)
+					|| declaredTypes.contains(declaration.getEntity().getEntityType())) {
+				axioms.add(declaration);
+			}
+		}
+
+		OWLOntologyManager projectionManager = OWLManager.createOWLOntologyManager();
+		OWLOntology projection = projectionManager.createOntology(ontology.getOntologyID());
+
+		List<OWLOntologyChange> headerChanges = new ArrayList<OWLOntologyChange>();
+		for (OWLImportsDeclaration importsDeclaration : ontology.getImportsDeclarations()) {
+			headerChanges.add(new AddImport(projection, importsDeclaration));
+		}
+		for (OWLAnnotation annotation : ontology.getAnnotations()) {
+			headerChanges.add(new AddOntologyAnnotation(projection, annotation));
+		}
+		projectionManager.applyChanges(headerChanges);
+		projectionManager.addAxioms(projection, axioms);
+
+		OWLDocumentFormat format = ontology.getOWLOntologyManager().getOntologyFormat(ontology);
+		if (format != null) {
+			projectionManager.setOntologyFormat(projection, format); // keep the prefixes of the ontology
+		}
+
+		logger.info(String.format("project[PitfallProjection] projected %d of %d axioms for %s", axioms.size(),
+				ontology.getAxiomCount(), contents));
+
+		return projection;
+	}
+
+	/**
+	 * Adds the axioms of the given types of the ontology to the given set
+	 */
+	private static void addAxioms(OWLOntology ontology, List<AxiomType<?>> axiomTypes, Set<OWLAxiom> axioms) {
+		for (AxiomType<?> axiomType : axiomTypes) {
+			axioms.addAll(ontology.getAxioms(axiomType));
+		}
+	}
+
+	/**
+	 * Returns the kind of content of the given axiom
+	 *
+	 * @param axiom
+	 *            the axiom
+	 * @return the kind of content of the axiom, {@link Content#ALL} if it is not any of the projected ones
+	 */
+	static Content getContent(OWLAxiom axiom) {
+		AxiomType<?> axiomType = axiom.getAxiomType();
+
+		if (axiomType == AxiomType.DECLARATION) {
+			return Content.DECLARATIONS;
+		} else if (CLASS_AXIOM_TYPES.contains(axiomType)) {
+			return Content.CLASS_AXIOMS;
+		} else if (OBJECT_PROPERTY_AXIOM_TYPES.contains(axiomType)) {
+			return Content.OBJECT_PROPERTY_AXIOMS;
+		} else if (DATA_PROPERTY_AXIOM_TYPES.contains(axiomType)) {
+			return Content.DATA_PROPERTY_AXIOMS;
+		} else if (ANNOTATION_AXIOM_TYPES.contains(axiomType)) {
+			return Content.ANNOTATIONS;
+		}
+		return Content.ALL;
+	}
+
+	/**
+	 * Returns the kinds of content needed to check the given pitfalls
+	 *
+	 * @param pitfallsSubset
+	 *            the pitfalls to check, all of them if it is empty
+	 * @return the needed kinds of content
+	 */
+	static EnumSet<Content> getContents(Collection<String> pitfallsSubset) {
+		EnumSet<Content> contents = EnumSet.of(Content.HEADER);
+
+		if (pitfallsSubset.isEmpty()) {
+			contents.add(Content.ALL);
+		}
+
+		for (String pitfall : pitfallsSubset) {
+			EnumSet<Content> pitfallContent = pitfallContents.get(pitfall);
+			contents.addAll(pitfallContent != null ? pitfallContent : EnumSet.of(Content.ALL));
+		}
+
+		return contents;
+	}
+}
@@ -0,0 +1,374 @@
+package oops.evaluation;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Body of a request to the OOPS! WS that can be written several times, so it can be sent again when the request
+ * fails. The first time it is rendered by its request writer while it is being sent, and the encoded bytes are
+ * kept on the way, so sending it again does not render the ontology again and its length is known. The kept bytes
+ * are held in pooled direct buffers up to the spill threshold, and beyond it they are spilled to a temporary file.
+ * <p>
+ * The bytes rendered by the request writer are counted by the progress of the request.
+ * <p>
+ * A staged body is rendered to a temporary file before it is sent, so it is sent with a known length straight
+ * from the file and it is never held in memory. Closing the body returns its buffers to the pool and deletes its
+ * temporary file.
+ */
+public class RequestBody implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RequestBody.class);
+
+	public static final long DEFAULT_SPILL_THRESHOLD = 32 * 1024 * 1024; // 32 MB kept in memory for the retries
+
+	private final OOPSRequestWriter requestWriter;
+
+	private final boolean staged;
+
+	private final long spillThreshold;
+
+	private final TransferProgress.Request progress;
+
+	// the kept body, null until it has been fully rendered
+	private volatile ContentCoding renderedCoding;
+	private volatile ByteBufferChain renderedBuffers; // null if it has been spilled to the rendered file
+	private volatile Path renderedFile;
+	private volatile long renderedLength;
+
+	public RequestBody(OOPSRequestWriter requestWriter) {
+		this(requestWriter, false, DEFAULT_SPILL_THRESHOLD);
+	}
+
+	/**
+	 * @param requestWriter
+	 *            the writer of the request
+	 * @param staged
+	 *            true if the body must be rendered to a temporary file before it is sent
+	 * @param spillThreshold
+	 *            the max number of bytes of the body kept in memory for the retries
+	 */
+	public RequestBody(OOPSRequestWriter requestWriter, boolean staged, long spillThreshold) {
+		this(requestWriter, staged, spillThreshold, TransferProgress.untracked());
+	}
+
+	/**
+	 * @param requestWriter
+	 *            the writer of the request
+	 * @param staged
+	 *            true if the body must be rendered to a temporary file before it is sent
+	 * @param spillThreshold
+	 *            the max number of bytes of the body kept in memory for the retries
+	 * @param progress
+	 *            the progress of the request, which counts the rendered bytes
+	 */
+	public RequestBody(OOPSRequestWriter requestWriter, boolean staged, long spillThreshold,
+			TransferProgress.Request progress) {
+		this.requestWriter = requestWriter;
+		this.staged = staged;
+		this.spillThreshold = spillThreshold;
+		this.progress = progress;
+	}
+
+	/**
+	 * Renders the whole body to a temporary file encoded with the given coding, if it has not been rendered yet.
+	 * The rendering stops with an InterruptedIOException as soon as the evaluation is cancelled.
+	 *
+	 * @param coding
+	 *            the coding of the staged body
+	 * @throws IOException
+	 */
+	public synchronized void stage(ContentCoding coding) throws IOException {
+		if (isRendered()) {
+			return;
+		}
+
+		Path file = createTempFile();
+		try {
+			CountingOutputStream fileBytes = new CountingOutputStream(
+					Files.newOutputStream(file, StandardOpenOption.WRITE));
+			try (OutputStream out = coding.encode(fileBytes)) {
+				requestWriter.writeTo(progress.countSerialized(out));
+			}
+
+			keep(coding, null, file, fileBytes.getCount());
+		} catch (IOException | RuntimeException e) {
+			deleteFile(file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the whole body encoded with the given coding to the given stream and closes it. If the body has not
+	 * been rendered yet, it is rendered and its encoded bytes are kept. Otherwise, the kept body is written again,
+	 * decoding and encoding it if it was kept with another coding.
+	 *
+	 * @param out
+	 *            the stream where the body is written
+	 * @param coding
+	 *            the coding of the body
+	 * @return the number of bytes of the body before the coding
+	 * @throws IOException
+	 */
+	public long writeTo(OutputStream out, ContentCoding coding) throws IOException {
+		if (isRendered()) {
+			CountingOutputStream decodedBytes = new CountingOutputStream(coding.encode(out));
+			try (InputStream in = renderedCoding.decode(openRendered())) {
+				copy(in, decodedBytes);
+			} finally {
+				decodedBytes.close();
+			}
+			return decodedBytes.getCount();
+		}
+
+		ReplayBuffer replayBuffer = new ReplayBuffer(out);
+		CountingOutputStream renderedBytes = new CountingOutputStream(coding.encode(replayBuffer));
+		try {
+			try {
+				requestWriter.writeTo(progress.countSerialized(renderedBytes));
+			} finally {
+				renderedBytes.close();
+			}
+
+			replayBuffer.keep(coding);
+		} finally {
+			replayBuffer.discard(); // nothing left to discard once it is kept
+		}
+		return renderedBytes.getCount();
+	}
+
+	/**
+	 * Writes the kept body as it was encoded to the given stream, straight from the kept file channel if it has
+	 * been spilled or staged. The stream is not closed.
+	 *
+	 * @param out
+	 *            the stream where the body is written
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if the body has not been rendered yet
+	 */
+	public void transferTo(OutputStream out) throws IOException {
+		if (!isRendered()) {
+			throw new IllegalStateException("The request body has not been rendered yet");
+		}
+
+		ByteBufferChain buffers = renderedBuffers;
+		if (buffers != null) {
+			buffers.writeTo(out);
+			return;
+		}
+
+		WritableByteChannel target = Channels.newChannel(out);
+		try (FileChannel source = FileChannel.open(renderedFile, StandardOpenOption.READ)) {
+			long position = 0;
+			long size = source.size();
+			while (position < size) {
+				position += source.transferTo(position, size - position, target);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the body is rendered to a temporary file before it is sent
+	 */
+	public boolean isStaged() {
+		return staged;
+	}
+
+	/**
+	 * @return true if the body has been kept and writing it again does not render it
+	 */
+	public boolean isRendered() {
+		return renderedCoding != null;
+	}
+
+	/**
+	 * @return the coding of the kept body, null if it has not been rendered yet
+	 */
+	public ContentCoding getRenderedCoding() {
+		return renderedCoding;
+	}
+
+	/**
+	 * @return the number of bytes of the kept body, as it was encoded
+	 */
+	public long getRenderedLength() {
+		return renderedLength;
+	}
+
+	/**
+	 * @return true if the kept body is held in a temporary file
+	 */
+	public boolean isOnDisk() {
+		return renderedFile != null;
+	}
+
+	/**
+	 * Returns the kept buffers of the body to the pool and deletes its temporary file, if any
+	 */
+	@Override
+	public synchronized void close() {
+		ByteBufferChain buffers = renderedBuffers;
+		Path file = renderedFile;
+		renderedCoding = null;
+		renderedBuffers = null;
+		renderedFile = null;
+
+		if (buffers != null) {
+			buffers.release();
+		}
+		if (file != null) {
+			deleteFile(file);
+		}
+	}
+
+	private synchronized void keep(ContentCoding coding, ByteBufferChain buffers, Path file, long length) {
+		renderedBuffers = buffers;
+		renderedFile = file;
+		renderedLength = length;
+		renderedCoding = coding; // set last, it marks the body as rendered
+	}
+
+	private InputStream openRendered() throws IOException {
+		ByteBufferChain buffers = renderedBuffers;
+		return buffers != null ? buffers.newInputStream() : Files.newInputStream(renderedFile);
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		ByteBuffer transfer = BufferPool.HEAP.acquire();
+		try {
+			byte[] buffer = transfer.array();
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			BufferPool.HEAP.release(transfer);
+		}
+	}
+
+	private static Path createTempFile() throws IOException {
+		return Files.createTempFile("oops-request-", ".body");
+	}
+
+	private static void deleteFile(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			logger.warn("The temporary request body " + file + " could not be deleted: " + e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * A stream that keeps a copy of the bytes written through it, in memory up to the spill threshold and in a
+	 * temporary file beyond it
+	 */
+	private class ReplayBuffer extends OutputStream {
+
+		private final OutputStream out;
+
+		private ByteBufferChain memoryCopy = new ByteBufferChain();
+
+		private Path file;
+
+		private OutputStream fileCopy;
+
+		private long length;
+
+		ReplayBuffer(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+
+			if (fileCopy == null && length + len > spillThreshold) {
+				spill();
+			}
+			if (fileCopy != null) {
+				fileCopy.write(b, off, len);
+			} else {
+				memoryCopy.write(b, off, len);
+			}
+			length += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+		/**
+		 * Keeps the copy of the whole body written with the given coding
+		 */
+		void keep(ContentCoding coding) throws IOException {
+			if (fileCopy != null) {
+				fileCopy.close();
+				fileCopy = null;
+				RequestBody.this.keep(coding, null, file, length);
+				file = null; // owned by the body now
+			} else {
+				RequestBody.this.keep(coding, memoryCopy, null, length);
+			}
+			memoryCopy = null; // owned by the body now
+		}
+
+		/**
+		 * Discards the copy of a body that has not been fully written
+		 */
+		void discard() {
+			if (fileCopy != null) {
+				try {
+					fileCopy.close();
+				} catch (IOException e) {
+					logger.debug("Could not close the spilled request body: " + e.getLocalizedMessage());
+				}
+				fileCopy = null;
+			}
+			if (file != null) {
+				deleteFile(file);
+				file = null;
+			}
+			if (memoryCopy != null) {
+				memoryCopy.release();
+				memoryCopy = null;
+			}
+		}
+
+		private void spill() throws IOException {
+			file = createTempFile();
+			fileCopy = new FileOutputStream(file.toFile());
+			memoryCopy.writeTo(fileCopy);
+			memoryCopy.release();
+			memoryCopy = null;
+
+			logger.debug(String.format("The request body exceeds %d bytes, it is spilled to %s", spillThreshold, file));
+		}
+	}
+}
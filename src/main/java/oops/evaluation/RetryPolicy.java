@@ -0,0 +1,94 @@
+package oops.evaluation;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Policy for sending again the requests to the OOPS! WS that fail with a retryable failure. The delay before each
+ * retry grows exponentially from the base delay up to the max delay, and a random delay between zero and that
+ * bound is used (full jitter), so the clients failed at the same time do not retry all at once.
+ */
+public final class RetryPolicy {
+
+	/**
+	 * Up to 3 attempts, with retries after up to 0.5 and 1 seconds
+	 */
+	public static final RetryPolicy DEFAULT = new RetryPolicy(3, 500, 8 * 1000);
+
+	/**
+	 * A single attempt without retries
+	 */
+	public static final RetryPolicy NO_RETRIES = new RetryPolicy(1, 0, 0);
+
+	private final int maxAttempts;
+
+	private final long baseDelay;
+
+	private final long maxDelay;
+
+	/**
+	 * @param maxAttempts
+	 *            the max number of attempts of a request, including the first one
+	 * @param baseDelay
+	 *            the bound in milliseconds of the delay before the first retry
+	 * @param maxDelay
+	 *            the max bound in milliseconds of the delay before any retry
+	 * @throws IllegalArgumentException
+	 *             if there is not at least one attempt or any delay is negative
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+		if (maxAttempts < 1 || baseDelay < 0 || maxDelay < 0) {
+			throw new IllegalArgumentException(String.format(
+					"Invalid retry policy: %d attempts, %d ms base delay, %d ms max delay",
+					maxAttempts, baseDelay, maxDelay));
+		}
+		this.maxAttempts = maxAttempts;
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Returns the random delay to wait before the given retry
+	 *
+	 * @param retry
+	 *            the number of the retry, starting from 1
+	 * @param retryAfter
+	 *            the delay in milliseconds requested by the service, 0 if none. It is used as the min delay, but
+	 *            never beyond the max delay.
+	 * @return the delay in milliseconds
+	 */
+	public long getDelay(int retry, long retryAfter) {
+		long bound = Math.min(maxDelay, baseDelay << Math.min(retry - 1, 30));
+		long delay = bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+
+		return Math.max(delay, Math.min(retryAfter, maxDelay));
+	}
+
+	/**
+	 * @return the max number of attempts of a request, including the first one
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @return the bound in milliseconds of the delay before the first retry
+	 */
+	public long getBaseDelay() {
+		return baseDelay;
+	}
+
+	/**
+	 * @return the max bound in milliseconds of the delay before any retry
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RetryPolicy(%d attempts, %d-%d ms)", maxAttempts, baseDelay, maxDelay);
+	}
+}
@@ -0,0 +1,357 @@
+package oops.evaluation;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oops.evaluation.PitfallProjection.Content;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * In-memory cache of the serialized ontologies uploaded to the OOPS! WS, so the evaluations of an unchanged
+ * ontology with different pitfalls do not render it again, only their pitfalls field. A serialized ontology is
+ * kept by the ontology, its revision, the projected content and the upload syntax, as the UTF-8 bytes of the CDATA
+ * section of the request held in pooled direct buffers. The entries of an ontology are dropped as soon as it
+ * changes, and the cache is bounded both by the number of entries and by their bytes, evicting the least recently
+ * used entries first. The ontologies are weakly referenced, so closing an ontology releases its entries.
+ */
+public class SerializedOntologyCache implements OWLOntologyChangeListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(SerializedOntologyCache.class);
+
+	private static final int DEFAULT_MAX_ENTRIES = 16;
+
+	private static final long DEFAULT_MAX_MEMORY = 64L * 1024 * 1024; // 64 MB of serialized ontologies
+
+	private final LinkedHashMap<Key, SerializedOntology> entries =
+			new LinkedHashMap<Key, SerializedOntology>(16, 0.75f, true); // access order for the LRU eviction
+
+	private final List<WeakReference<OWLOntologyManager>> listenedManagers =
+			new ArrayList<WeakReference<OWLOntologyManager>>(); // guarded by this
+
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	private long maxMemory = DEFAULT_MAX_MEMORY;
+
+	private long memory;
+
+	private long hits;
+
+	private long misses;
+
+	/**
+	 * Returns the serialized ontology for the given ontology revision and projected content in the first of the
+	 * accepted syntaxes, marking it as the most recently used one. The returned ontology must be released when it
+	 * is not needed anymore.
+	 *
+	 * @param ontology
+	 *            the evaluated ontology
+	 * @param revision
+	 *            the revision of the ontology
+	 * @param contents
+	 *            the content of the ontology uploaded for the pitfalls
+	 * @param acceptedSyntax
+	 *            whether a serialized ontology in each syntax can be used
+	 * @return the acquired serialized ontology, or null if there is none
+	 */
+	synchronized SerializedOntology acquire(OWLOntology ontology, long revision, EnumSet<Content> contents,
+			Predicate<UploadSyntax> acceptedSyntax) {
+		for (UploadSyntax syntax : UploadSyntax.values()) {
+			if (syntax != UploadSyntax.AUTO && acceptedSyntax.test(syntax)) {
+				SerializedOntology serializedOntology = entries.get(new Key(ontology, revision, contents, syntax));
+				if (serializedOntology != null) {
+					hits++;
+					serializedOntology.references++;
+					return serializedOntology;
+				}
+			}
+		}
+
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Caches a serialized ontology, evicting the least recently used ones if the cache exceeds its bounds. The
+	 * cache takes over the given bytes, which are released right away if they are not cached (e.g. the ontology
+	 * has changed since the given revision or the bytes exceed the whole memory bound).
+	 *
+	 * @param ontology
+	 *            the evaluated ontology
+	 * @param revision
+	 *            the revision of the ontology that was serialized
+	 * @param currentRevision
+	 *            the revision of the ontology now
+	 * @param contents
+	 *            the content of the ontology uploaded for the pitfalls
+	 * @param syntax
+	 *            the syntax the ontology was serialized in
+	 * @param axiomCount
+	 *            the number of axioms of the serialized ontology
+	 * @param bytes
+	 *            the serialized ontology
+	 */
+	synchronized void put(OWLOntology ontology, long revision, long currentRevision, EnumSet<Content> contents,
+			UploadSyntax syntax, int axiomCount, ByteBufferChain bytes) {
+		if (revision != currentRevision || bytes.size() > maxMemory) {
+			bytes.release();
+			return;
+		}
+
+		listenTo(ontology.getOWLOntologyManager());
+
+		SerializedOntology serializedOntology = new SerializedOntology(syntax, axiomCount, bytes);
+		SerializedOntology previous = entries.put(new Key(ontology, revision, contents, syntax), serializedOntology);
+		if (previous != null) {
+			remove(previous);
+		}
+		memory += bytes.size();
+
+		logger.info(String.format("put[SerializedOntologyCache] cached %d bytes of %s for %s", bytes.size(), syntax,
+				contents));
+
+		evict();
+	}
+
+	@Override
+	public synchronized void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+		Set<OWLOntology> changedOntologies = new HashSet<OWLOntology>();
+		for (OWLOntologyChange change : changes) {
+			changedOntologies.add(change.getOntology());
+		}
+
+		Iterator<Map.Entry<Key, SerializedOntology>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key, SerializedOntology> entry = iterator.next();
+			OWLOntology ontology = entry.getKey().ontology.get();
+			if (ontology == null || changedOntologies.contains(ontology)) {
+				iterator.remove();
+				remove(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Removes all the serialized ontologies. The ones in use are released when they are not used anymore.
+	 */
+	public synchronized void clear() {
+		entries.values().forEach(this::remove);
+		entries.clear();
+	}
+
+	/**
+	 * Evicts the least recently used serialized ontologies until the cache is within its bounds
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, SerializedOntology>> iterator = entries.entrySet().iterator();
+
+		while ((entries.size() > maxEntries || memory > maxMemory) && iterator.hasNext()) {
+			SerializedOntology eldest = iterator.next().getValue();
+			iterator.remove();
+			remove(eldest);
+		}
+	}
+
+	/**
+	 * Accounts for a serialized ontology removed from the entries, releasing its bytes if it is not in use
+	 */
+	private void remove(SerializedOntology serializedOntology) {
+		memory -= serializedOntology.bytes.size();
+		serializedOntology.removed = true;
+		if (serializedOntology.references == 0) {
+			serializedOntology.bytes.release();
+		}
+	}
+
+	/**
+	 * Adds this cache as a listener of the given manager if it is not listened to yet
+	 */
+	private void listenTo(OWLOntologyManager manager) {
+		Iterator<WeakReference<OWLOntologyManager>> iterator = listenedManagers.iterator();
+		while (iterator.hasNext()) {
+			OWLOntologyManager listenedManager = iterator.next().get();
+			if (listenedManager == null) {
+				iterator.remove();
+			} else if (listenedManager == manager) {
+				return;
+			}
+		}
+
+		manager.addOntologyChangeListener(this);
+		listenedManagers.add(new WeakReference<OWLOntologyManager>(manager));
+	}
+
+	/**
+	 * @return the number of cached serialized ontologies
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the bytes of the cached serialized ontologies
+	 */
+	public synchronized long getMemory() {
+		return memory;
+	}
+
+	/**
+	 * @return the number of lookups that found a serialized ontology
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that did not find a serialized ontology
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the maximum bytes of the cached serialized ontologies
+	 */
+	public synchronized long getMaxMemory() {
+		return maxMemory;
+	}
+
+	/**
+	 * @param maxMemory
+	 *            the maximum bytes of the cached serialized ontologies to set, 0 to disable the cache
+	 */
+	public synchronized void setMaxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+		evict();
+	}
+
+	/**
+	 * @return the maximum number of cached serialized ontologies
+	 */
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of cached serialized ontologies to set
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		evict();
+	}
+
+	/**
+	 * An ontology serialized in an upload syntax, shared by the requests that use it
+	 */
+	class SerializedOntology {
+
+		private final UploadSyntax syntax;
+
+		private final int axiomCount;
+
+		private final ByteBufferChain bytes;
+
+		private int references; // guarded by the cache
+
+		private boolean removed; // guarded by the cache
+
+		SerializedOntology(UploadSyntax syntax, int axiomCount, ByteBufferChain bytes) {
+			this.syntax = syntax;
+			this.axiomCount = axiomCount;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return the syntax the ontology is serialized in
+		 */
+		UploadSyntax getSyntax() {
+			return syntax;
+		}
+
+		/**
+		 * @return the number of axioms of the serialized ontology
+		 */
+		int getAxiomCount() {
+			return axiomCount;
+		}
+
+		/**
+		 * @return the UTF-8 bytes of the CDATA section of the request with the ontology
+		 */
+		ByteBufferChain getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Releases this serialized ontology, which must not be used anymore by the caller
+		 */
+		void release() {
+			synchronized (SerializedOntologyCache.this) {
+				if (--references == 0 && removed) {
+					bytes.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The key of a serialized ontology, which refers to the ontology by identity
+	 */
+	private static class Key {
+
+		private final WeakReference<OWLOntology> ontology;
+
+		private final int ontologyHash;
+
+		private final long revision;
+
+		private final EnumSet<Content> contents;
+
+		private final UploadSyntax syntax;
+
+		Key(OWLOntology ontology, long revision, EnumSet<Content> contents, UploadSyntax syntax) {
+			this.ontology = new WeakReference<OWLOntology>(ontology);
+			this.ontologyHash = System.identityHashCode(ontology);
+			this.revision = revision;
+			this.contents = contents.contains(Content.ALL) ? EnumSet.of(Content.ALL) : EnumSet.copyOf(contents);
+			this.syntax = syntax;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			OWLOntology ontology = this.ontology.get();
+			return ontology != null && ontology == other.ontology.get() && revision == other.revision
+					&& contents.equals(other.contents) && syntax == other.syntax;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(ontologyHash, revision, contents, syntax);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package oops.evaluation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Measures the upload syntaxes on an ontology: the render time and the payload size, raw and gzip coded, of each
+ * syntax. The {@link UploadSyntaxSelector} fits its costs to these measures on generated ontologies.
+ */
+final class SyntaxMeasurements {
+
+	private static final int WARMUP_RUNS = 2;
+
+	private static final int MEASURED_RUNS = 5;
+
+	private static final String NAMESPACE = "http://oops.linkeddata.es/measurements#";
+
+	/**
+	 * The measures of a syntax on an ontology
+	 */
+	static final class Measure {
+
+		private final long renderNanos;
+
+		private final long bytes;
+
+		private final long codedBytes;
+
+		Measure(long renderNanos, long bytes, long codedBytes) {
+			this.renderNanos = renderNanos;
+			this.bytes = bytes;
+			this.codedBytes = codedBytes;
+		}
+
+		/**
+		 * @return the median render time in nanoseconds
+		 */
+		public long getRenderNanos() {
+			return renderNanos;
+		}
+
+		/**
+		 * @return the payload size in bytes
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return the gzip coded payload size in bytes
+		 */
+		public long getCodedBytes() {
+			return codedBytes;
+		}
+	}
+
+	/**
+	 * Measures every upload syntax on the given ontology
+	 *
+	 * @param ontology
+	 *            the ontology to render
+	 * @return the measures of each syntax
+	 * @throws IOException
+	 */
+	static Map<UploadSyntax, Measure> measure(OWLOntology ontology) throws IOException {
+		Map<UploadSyntax, Measure> measures = new EnumMap<UploadSyntax, Measure>(UploadSyntax.class);
+
+		for (UploadSyntax syntax : UploadSyntax.values()) {
+			if (syntax == UploadSyntax.AUTO) {
+				continue;
+			}
+
+			for (int i = 0; i < WARMUP_RUNS; i++) {
+				render(syntax, ontology, ContentCoding.IDENTITY);
+			}
+
+			List<Long> renderNanos = new ArrayList<Long>();
+			long bytes = 0;
+			for (int i = 0; i < MEASURED_RUNS; i++) {
+				long start = System.nanoTime();
+				bytes = render(syntax, ontology, ContentCoding.IDENTITY);
+				renderNanos.add(System.nanoTime() - start);
+			}
+			Collections.sort(renderNanos);
+
+			long codedBytes = render(syntax, ontology, ContentCoding.GZIP);
+			measures.put(syntax, new Measure(renderNanos.get(MEASURED_RUNS / 2), bytes, codedBytes));
+		}
+
+		return measures;
+	}
+
+	/**
+	 * Renders the ontology in the given syntax and coding, discarding the output
+	 *
+	 * @return the number of bytes rendered
+	 */
+	private static long render(UploadSyntax syntax, OWLOntology ontology, ContentCoding coding) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(new NullOutputStream());
+		try (Writer writer = new OutputStreamWriter(coding.encode(counter), StandardCharsets.UTF_8)) {
+			syntax.render(ontology, writer);
+		}
+		return counter.getCount();
+	}
+
+	/**
+	 * Generates an ontology with about the given number of axioms, with a mix of class hierarchy, restrictions,
+	 * property axioms, individuals and labels similar to the ones of the evaluated ontologies
+	 *
+	 * @param axioms
+	 *            the approximate number of axioms
+	 * @param random
+	 *            the source of the random structure
+	 * @return the generated ontology
+	 * @throws OWLOntologyCreationException
+	 */
+	static OWLOntology generateOntology(int axioms, Random random) throws OWLOntologyCreationException {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory dataFactory = manager.getOWLDataFactory();
+		OWLOntology ontology = manager.createOntology(IRI.create(NAMESPACE.substring(0, NAMESPACE.length() - 1)));
+
+		int classesCount = Math.max(2, axioms / 4);
+		int propertiesCount = Math.max(2, axioms / 60);
+		int individualsCount = Math.max(2, axioms / 30);
+
+		List<OWLClass> classes = new ArrayList<OWLClass>();
+		List<OWLObjectProperty> properties = new ArrayList<OWLObjectProperty>();
+		List<OWLAxiom> generated = new ArrayList<OWLAxiom>();
+
+		for (int i = 0; i < classesCount; i++) {
+			OWLClass owlClass = dataFactory.getOWLClass(IRI.create(NAMESPACE + "Class" + i));
+			classes.add(owlClass);
+			generated.add(dataFactory.getOWLDeclarationAxiom(owlClass));
+			generated.add(dataFactory.getOWLAnnotationAssertionAxiom(owlClass.getIRI(),
+					dataFactory.getOWLAnnotation(dataFactory.getRDFSLabel(),
+							dataFactory.getOWLLiteral("class " + i, "en"))));
+			if (i > 0) {
+				generated.add(dataFactory.getOWLSubClassOfAxiom(owlClass, classes.get(random.nextInt(i))));
+			}
+		}
+		for (int i = 0; i < propertiesCount; i++) {
+			OWLObjectProperty property = dataFactory.getOWLObjectProperty(IRI.create(NAMESPACE + "property" + i));
+			properties.add(property);
+			generated.add(dataFactory.getOWLDeclarationAxiom(property));
+			generated.add(dataFactory.getOWLObjectPropertyDomainAxiom(property, pick(classes, random)));
+			generated.add(dataFactory.getOWLObjectPropertyRangeAxiom(property, pick(classes, random)));
+		}
+		for (OWLClass owlClass : classes) {
+			if (random.nextInt(3) == 0) {
+				generated.add(dataFactory.getOWLSubClassOfAxiom(owlClass,
+						dataFactory.getOWLObjectSomeValuesFrom(pick(properties, random), pick(classes, random))));
+			}
+			if (random.nextInt(10) == 0) {
+				generated.add(dataFactory.getOWLDisjointClassesAxiom(owlClass, pick(classes, random)));
+			}
+		}
+		for (int i = 0; i < individualsCount; i++) {
+			OWLNamedIndividual individual = dataFactory.getOWLNamedIndividual(IRI.create(NAMESPACE + "individual" + i));
+			generated.add(dataFactory.getOWLClassAssertionAxiom(pick(classes, random), individual));
+			OWLObjectProperty property = pick(properties, random);
+			generated.add(dataFactory.getOWLObjectPropertyAssertionAxiom(property, individual, dataFactory
+					.getOWLNamedIndividual(IRI.create(NAMESPACE + "individual" + random.nextInt(individualsCount)))));
+		}
+
+		manager.addAxioms(ontology, new HashSet<OWLAxiom>(generated));
+		return ontology;
+	}
+
+	private SyntaxMeasurements() {
+	}
+
+	private static <T> T pick(List<T> values, Random random) {
+		return values.get(random.nextInt(values.size()));
+	}
+
+	/**
+	 * A stream that discards everything written to it
+	 */
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
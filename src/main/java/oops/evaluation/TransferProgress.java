@@ -0,0 +1,240 @@
+package oops.evaluation;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import oops.evaluation.EvaluationProgressEvent.Stage;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Progress of the requests of an evaluation to the OOPS! WS, shared by all its parts. Each request counts the
+ * bytes it serializes, uploads and downloads and the response elements it parses, and moves through the stages of
+ * {@link EvaluationProgressEvent.Stage}. The snapshots estimate the remaining time of each request in progress
+ * from its estimated latency and from the pace of its serialization, and the remaining time of the evaluation is
+ * the one of its slowest request.
+ */
+public final class TransferProgress {
+
+	// fraction (1 / n) of the expected bytes to serialize before extrapolating the pace of the serialization
+	private static final long MIN_PACE_FRACTION = 100;
+
+	private final List<Request> requests = new ArrayList<Request>(); // guarded by this
+
+	private long startNanos; // start of the first request, guarded by this
+
+	/**
+	 * @return the progress of a request whose progress is not tracked by any evaluation
+	 */
+	static Request untracked() {
+		return new TransferProgress().startRequest(0);
+	}
+
+	/**
+	 * Starts tracking the progress of a new request, in the serializing stage
+	 *
+	 * @param estimatedMillis
+	 *            the estimated latency of the request in milliseconds
+	 * @return the progress of the request, which must be finished when the request is done
+	 */
+	synchronized Request startRequest(long estimatedMillis) {
+		Request request = new Request(TimeUnit.MILLISECONDS.toNanos(estimatedMillis));
+		if (requests.isEmpty()) {
+			startNanos = request.startNanos;
+		}
+		requests.add(request);
+		return request;
+	}
+
+	/**
+	 * @return a snapshot of the progress of all the requests so far
+	 */
+	synchronized EvaluationProgressEvent snapshot() {
+		long now = System.nanoTime();
+
+		Stage stage = null;
+		long serializedBytes = 0, expectedBytes = 0, uploadedBytes = 0, downloadedBytes = 0, parsedElements = 0;
+		int finishedRequestsCount = 0;
+		long remainingNanos = 0;
+
+		for (Request request : requests) {
+			serializedBytes += request.serializedBytes;
+			expectedBytes += Math.max(request.expectedBytes, request.serializedBytes);
+			uploadedBytes += request.uploadedBytes;
+			downloadedBytes += request.downloadedBytes;
+			parsedElements += request.parsedElements;
+
+			if (request.finished) {
+				finishedRequestsCount++;
+				continue;
+			}
+
+			if (stage == null || request.stage.compareTo(stage) < 0) {
+				stage = request.stage;
+			}
+			if (remainingNanos >= 0) {
+				long requestRemainingNanos = request.getRemainingNanos(now);
+				remainingNanos = requestRemainingNanos < 0 ? -1 : Math.max(remainingNanos, requestRemainingNanos);
+			}
+		}
+
+		long elapsedMillis = requests.isEmpty() ? 0 : TimeUnit.NANOSECONDS.toMillis(now - startNanos);
+		long remainingMillis = remainingNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+
+		return new EvaluationProgressEvent(stage, serializedBytes, expectedBytes, uploadedBytes, downloadedBytes,
+				parsedElements, requests.size(), finishedRequestsCount, elapsedMillis, remainingMillis);
+	}
+
+	/**
+	 * The progress of a single request. Its counts are only updated by the thread of the request.
+	 */
+	public final class Request {
+
+		private final long startNanos = System.nanoTime();
+
+		private final long estimatedNanos;
+
+		private volatile long expectedBytes;
+
+		private volatile long serializedBytes;
+
+		private volatile long uploadedBytes;
+
+		private volatile long downloadedBytes;
+
+		private volatile long parsedElements;
+
+		private Stage stage = Stage.SERIALIZING; // guarded by the progress
+
+		private boolean finished; // guarded by the progress
+
+		private Request(long estimatedNanos) {
+			this.estimatedNanos = estimatedNanos;
+		}
+
+		/**
+		 * @param bytes
+		 *            the estimated number of bytes of the serialized request
+		 */
+		void expectBytes(long bytes) {
+			expectedBytes = bytes;
+		}
+
+		/**
+		 * @param stage
+		 *            the stage the request has reached
+		 */
+		void moveTo(Stage stage) {
+			synchronized (TransferProgress.this) {
+				this.stage = stage;
+			}
+		}
+
+		/**
+		 * Marks the request as done, whatever its outcome
+		 */
+		void finish() {
+			synchronized (TransferProgress.this) {
+				finished = true;
+			}
+		}
+
+		/**
+		 * @param count
+		 *            the number of response elements just parsed
+		 */
+		void addParsedElements(long count) {
+			parsedElements += count;
+		}
+
+		/**
+		 * @return a stream that counts the serialized bytes written through it
+		 */
+		OutputStream countSerialized(OutputStream out) {
+			return new FilterOutputStream(out) {
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					serializedBytes++;
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					serializedBytes += len;
+				}
+			};
+		}
+
+		/**
+		 * @return a stream that counts the uploaded bytes written through it
+		 */
+		OutputStream countUploaded(OutputStream out) {
+			return new FilterOutputStream(out) {
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					uploadedBytes++;
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					uploadedBytes += len;
+				}
+			};
+		}
+
+		/**
+		 * @return a stream that counts the downloaded bytes read through it
+		 */
+		InputStream countDownloaded(InputStream in) {
+			return new FilterInputStream(in) {
+				@Override
+				public int read() throws IOException {
+					int b = in.read();
+					if (b != -1) {
+						downloadedBytes++;
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int read = in.read(b, off, len);
+					if (read > 0) {
+						downloadedBytes += read;
+					}
+					return read;
+				}
+			};
+		}
+
+		/**
+		 * Estimates the remaining time of the request as the longest of the rest of its estimated latency and the
+		 * rest of its serialization at its current pace, once enough of it has been serialized to tell its pace
+		 *
+		 * @return the estimated remaining time in nanoseconds, or -1 if the request has exceeded its estimates
+		 */
+		private long getRemainingNanos(long now) {
+			long elapsedNanos = now - startNanos;
+			long remainingNanos = estimatedNanos - elapsedNanos;
+
+			long serialized = serializedBytes;
+			if (stage.compareTo(Stage.UPLOADING) <= 0 && serialized > 0 && expectedBytes > serialized
+					&& serialized >= expectedBytes / MIN_PACE_FRACTION) {
+				remainingNanos = Math.max(remainingNanos,
+						(long) (elapsedNanos * ((double) (expectedBytes - serialized) / serialized)));
+			}
+
+			return remainingNanos < 0 ? -1 : remainingNanos;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package oops.evaluation;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.rdf.rdfxml.renderer.RDFXMLRenderer;
+import org.semanticweb.owlapi.rdf.turtle.renderer.TurtleRenderer;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * The RDF syntaxes the ontology can be uploaded in to the OOPS! WS. {@link #AUTO} is not a syntax itself, it picks
+ * for each request the syntax with the lowest estimated cost for the size of its ontology.
+ */
+public enum UploadSyntax {
+	/**
+	 * RDF/XML, the syntax supported by every OOPS! WS endpoint
+	 */
+	RDF_XML {
+		@Override
+		public void render(OWLOntology ontology, Writer writer) throws IOException {
+			new RDFXMLRenderer(ontology, writer).render();
+		}
+	},
+
+	/**
+	 * Turtle, the most compact one, but it builds the graph of the whole ontology before writing it
+	 */
+	TURTLE {
+		@Override
+		public void render(OWLOntology ontology, Writer writer) throws IOException {
+			new TurtleRenderer(ontology, writer, new TurtleDocumentFormat()).render();
+		}
+	},
+
+	/**
+	 * N-Triples, written axiom by axiom without building the graph of the ontology, with the chunks of the big
+	 * ontologies rendered in parallel
+	 */
+	NTRIPLES {
+		@Override
+		public void render(OWLOntology ontology, Writer writer) throws IOException {
+			new ParallelNTriplesRenderer(ontology, writer).render();
+		}
+	},
+
+	/**
+	 * The syntax with the lowest estimated cost for each ontology
+	 */
+	AUTO {
+		@Override
+		public void render(OWLOntology ontology, Writer writer) throws IOException {
+			throw new UnsupportedOperationException("The automatic upload syntax must be resolved before rendering");
+		}
+	};
+
+	/**
+	 * Renders the whole ontology in this syntax. The writer is not closed.
+	 *
+	 * @param ontology
+	 *            the ontology to render
+	 * @param writer
+	 *            the writer where the ontology is rendered
+	 * @throws IOException
+	 */
+	public abstract void render(OWLOntology ontology, Writer writer) throws IOException;
+}
@@ -0,0 +1,192 @@
+package oops.evaluation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Picks the upload syntax of the {@link UploadSyntax#AUTO} mode. The cost of a syntax is the estimated time to
+ * render the ontology plus the time to upload its payload, both linear in the number of axioms. The default costs
+ * were measured on generated ontologies of 1000 to 100000 axioms, and they can be measured again on the running
+ * machine with {@link #calibrate(int, int)}.
+ */
+public class UploadSyntaxSelector {
+
+	private static final Logger logger = LoggerFactory.getLogger(UploadSyntaxSelector.class);
+
+	public static final long DEFAULT_UPLOAD_BYTES_PER_SECOND = 1024 * 1024;
+
+	// guarded by this
+	private final Map<UploadSyntax, Cost> costs = new EnumMap<UploadSyntax, Cost>(UploadSyntax.class);
+
+	private volatile long uploadBytesPerSecond = DEFAULT_UPLOAD_BYTES_PER_SECOND;
+
+	public UploadSyntaxSelector() {
+		costs.put(UploadSyntax.RDF_XML, new Cost(32e6, 13400, 127, 5.4));
+		costs.put(UploadSyntax.TURTLE, new Cost(26e6, 6700, 71, 5.3));
+		costs.put(UploadSyntax.NTRIPLES, new Cost(19e6, 6600, 166, 10.0));
+	}
+
+	/**
+	 * Picks the supported syntax with the lowest estimated cost for an ontology of the given size
+	 *
+	 * @param axioms
+	 *            the number of axioms of the uploaded ontology
+	 * @param coding
+	 *            the coding of the request body
+	 * @param supported
+	 *            whether the endpoint supports each syntax
+	 * @return the cheapest syntax, {@link UploadSyntax#RDF_XML} if no other one is supported
+	 */
+	public synchronized UploadSyntax select(int axioms, ContentCoding coding, Predicate<UploadSyntax> supported) {
+		UploadSyntax cheapest = UploadSyntax.RDF_XML;
+		double cheapestCost = Double.MAX_VALUE;
+
+		for (Map.Entry<UploadSyntax, Cost> cost : costs.entrySet()) {
+			if (cost.getKey() == UploadSyntax.RDF_XML || supported.test(cost.getKey())) {
+				double estimate = getEstimate(cost.getValue(), axioms, coding);
+				if (estimate < cheapestCost) {
+					cheapest = cost.getKey();
+					cheapestCost = estimate;
+				}
+			}
+		}
+		return cheapest;
+	}
+
+	/**
+	 * Returns the estimated time to render and upload an ontology of the given size in the given syntax
+	 *
+	 * @param syntax
+	 *            a concrete upload syntax
+	 * @param axioms
+	 *            the number of axioms of the uploaded ontology
+	 * @param coding
+	 *            the coding of the request body
+	 * @return the estimated time in milliseconds
+	 */
+	public synchronized double getEstimate(UploadSyntax syntax, int axioms, ContentCoding coding) {
+		Cost cost = costs.get(syntax);
+		if (cost == null) {
+			throw new IllegalArgumentException("There is no cost for the upload syntax " + syntax);
+		}
+		return getEstimate(cost, axioms, coding);
+	}
+
+	/**
+	 * Returns the estimated size of an ontology of the given size serialized in the given syntax
+	 *
+	 * @param syntax
+	 *            a concrete upload syntax
+	 * @param axioms
+	 *            the number of axioms of the uploaded ontology
+	 * @return the estimated number of bytes before the coding
+	 */
+	public synchronized long getEstimatedBytes(UploadSyntax syntax, int axioms) {
+		Cost cost = costs.get(syntax);
+		if (cost == null) {
+			throw new IllegalArgumentException("There is no cost for the upload syntax " + syntax);
+		}
+		return (long) (axioms * cost.bytesPerAxiom);
+	}
+
+	private double getEstimate(Cost cost, int axioms, ContentCoding coding) {
+		double bytesPerAxiom = coding == ContentCoding.IDENTITY ? cost.bytesPerAxiom : cost.codedBytesPerAxiom;
+		double uploadNanos = axioms * bytesPerAxiom * 1e9 / uploadBytesPerSecond;
+
+		return (cost.fixedNanos + axioms * cost.nanosPerAxiom + uploadNanos) / 1e6;
+	}
+
+	/**
+	 * Measures the costs of the syntaxes on this machine by benchmarking them on two generated ontologies, and
+	 * replaces the current ones with them
+	 *
+	 * @param smallAxioms
+	 *            the size of the small ontology, which gives the fixed cost of each syntax
+	 * @param largeAxioms
+	 *            the size of the large ontology, which gives the cost per axiom of each syntax
+	 * @throws Exception
+	 */
+	public void calibrate(int smallAxioms, int largeAxioms) throws Exception {
+		OWLOntology small = SyntaxMeasurements.generateOntology(smallAxioms, new Random(smallAxioms));
+		OWLOntology large = SyntaxMeasurements.generateOntology(largeAxioms, new Random(largeAxioms));
+
+		calibrate(small.getAxiomCount(), SyntaxMeasurements.measure(small), large.getAxiomCount(),
+				SyntaxMeasurements.measure(large));
+	}
+
+	/**
+	 * Replaces the current costs of the syntaxes with the ones fitted to their measures on a small and a large
+	 * ontology
+	 */
+	synchronized void calibrate(int smallAxioms, Map<UploadSyntax, SyntaxMeasurements.Measure> smallMeasures,
+			int largeAxioms, Map<UploadSyntax, SyntaxMeasurements.Measure> largeMeasures) {
+		for (UploadSyntax syntax : smallMeasures.keySet()) {
+			Cost cost = Cost.fit(smallAxioms, smallMeasures.get(syntax), largeAxioms, largeMeasures.get(syntax));
+			costs.put(syntax, cost);
+
+			logger.info(String.format("calibrate[UploadSyntaxSelector] %s costs %.1f ms + %.1f us, %.1f bytes "
+					+ "(%.1f coded) per axiom", syntax, cost.fixedNanos / 1e6, cost.nanosPerAxiom / 1e3,
+					cost.bytesPerAxiom, cost.codedBytesPerAxiom));
+		}
+	}
+
+	/**
+	 * Sets the expected upload throughput to the OOPS! WS, which weighs the payload size against the render time
+	 *
+	 * @param bytesPerSecond
+	 *            the upload throughput in bytes per second
+	 */
+	public void setUploadBytesPerSecond(long bytesPerSecond) {
+		this.uploadBytesPerSecond = Math.max(1, bytesPerSecond);
+	}
+
+	/**
+	 * @return the expected upload throughput to the OOPS! WS in bytes per second
+	 */
+	public long getUploadBytesPerSecond() {
+		return uploadBytesPerSecond;
+	}
+
+	/**
+	 * The linear cost model of a syntax
+	 */
+	private static class Cost {
+
+		private final double fixedNanos;
+
+		private final double nanosPerAxiom;
+
+		private final double bytesPerAxiom;
+
+		private final double codedBytesPerAxiom;
+
+		Cost(double fixedNanos, double nanosPerAxiom, double bytesPerAxiom, double codedBytesPerAxiom) {
+			this.fixedNanos = fixedNanos;
+			this.nanosPerAxiom = nanosPerAxiom;
+			this.bytesPerAxiom = bytesPerAxiom;
+			this.codedBytesPerAxiom = codedBytesPerAxiom;
+		}
+
+		/**
+		 * Fits the cost model to the measures of the syntax on a small and a large ontology
+		 */
+		static Cost fit(int smallAxioms, SyntaxMeasurements.Measure small, int largeAxioms,
+				SyntaxMeasurements.Measure large) {
+			double axiomsDelta = Math.max(1, largeAxioms - smallAxioms);
+			double nanosPerAxiom = Math.max(0, (large.getRenderNanos() - small.getRenderNanos()) / axiomsDelta);
+			double fixedNanos = Math.max(0, small.getRenderNanos() - nanosPerAxiom * smallAxioms);
+
+			return new Cost(fixedNanos, nanosPerAxiom, (double) large.getBytes() / Math.max(1, largeAxioms),
+					(double) large.getCodedBytes() / Math.max(1, largeAxioms));
+		}
+	}
+}
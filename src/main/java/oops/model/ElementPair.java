@@ -1,10 +1,13 @@
 package oops.model;
 
+import java.util.Objects;
+
 /**
  * Author: Lukas Gedvilas<br>
  * Universidad Politécnica de Madrid<br><br>
  *
- * Data Model to represent pairs of OWL Elements.
+ * Data Model to represent pairs of OWL Elements. The pairs are unordered, so two pairs with the same elements
+ * in any order are equal.
  */
 public class ElementPair {
 	private String elementA;
@@ -44,4 +47,24 @@ public class ElementPair {
 	public void setElementB(String elementB) {
 		this.elementB = elementB;
 	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == null) return false;
+	    if (other == this) return true;
+	    if (!(other instanceof ElementPair)) return false;
+	    ElementPair otherPair = (ElementPair)other;
+		return (Objects.equals(elementA, otherPair.elementA) && Objects.equals(elementB, otherPair.elementB)) ||
+				(Objects.equals(elementA, otherPair.elementB) && Objects.equals(elementB, otherPair.elementA));
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(elementA) + Objects.hashCode(elementB);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("(%s, %s)", elementA, elementB);
+	}
 }
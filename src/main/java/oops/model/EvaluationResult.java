@@ -25,6 +25,7 @@ public class EvaluationResult {
     private List<String> relationsWithoutInverse;
     private List<InfoElementWithAffectedElems> suggestions;
     private List<InfoElementWithAffectedElems> warnings;
+    private boolean incomplete; // partial result delivered while the evaluation is still running
     
     public EvaluationResult() {}
     
@@ -241,4 +242,19 @@ public class EvaluationResult {
 	public void setWarnings(List<InfoElementWithAffectedElems> warnings) {
 		this.warnings = warnings;
 	}
+
+	/**
+	 * @return true if this is a partial result of an evaluation that was still running when it was delivered,
+	 *         which is followed by the complete one
+	 */
+	public boolean isIncomplete() {
+		return incomplete;
+	}
+
+	/**
+	 * @param incomplete whether this is a partial result
+	 */
+	public void setIncomplete(boolean incomplete) {
+		this.incomplete = incomplete;
+	}
 }
@@ -1,5 +1,7 @@
 package oops.model;
 
+import java.util.Objects;
+
 /**
  * Author: Lukas Gedvilas<br>
  * Universidad Politécnica de Madrid<br><br>
@@ -9,13 +11,20 @@ package oops.model;
 public class Pitfall extends InfoElement implements Comparable<Pitfall> {
 	private PitfallImportanceLevel importanceLevel;
 	private String pitfallID;
+	private String sourceOntology; // null for the pitfalls of the evaluated ontology alone
 
 	public Pitfall(PitfallImportanceLevel importanceLevel, String pitfallID, String name, String description,
 			int numAffectedElements) {
+		this(importanceLevel, pitfallID, name, description, numAffectedElements, null);
+	}
+
+	public Pitfall(PitfallImportanceLevel importanceLevel, String pitfallID, String name, String description,
+			int numAffectedElements, String sourceOntology) {
 		super(name, description, numAffectedElements);
 		
 		this.importanceLevel = importanceLevel;
 		this.pitfallID = pitfallID;
+		this.sourceOntology = sourceOntology;
 	}
 
 	/**
@@ -48,6 +57,22 @@ public class Pitfall extends InfoElement implements Comparable<Pitfall> {
 		this.pitfallID = pitfallID;
 	}
 
+	/**
+	 * @return the IRI of the ontology of the imports closure where the pitfall was detected, or null if only the
+	 *         evaluated ontology was checked
+	 */
+	public String getSourceOntology() {
+		return sourceOntology;
+	}
+
+	/**
+	 * @param sourceOntology
+	 *            the sourceOntology to set
+	 */
+	public void setSourceOntology(String sourceOntology) {
+		this.sourceOntology = sourceOntology;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%s[%s] - %s", pitfallID, importanceLevel, super.getDescription());
@@ -62,7 +87,8 @@ public class Pitfall extends InfoElement implements Comparable<Pitfall> {
 		return this.importanceLevel == otherPitfall.importanceLevel && 
 				super.getDescription().equals(otherPitfall.getDescription()) &&
 				super.getName().equals(otherPitfall.getName()) &&
-				this.pitfallID.equals(otherPitfall.pitfallID);
+				this.pitfallID.equals(otherPitfall.pitfallID) &&
+				Objects.equals(this.sourceOntology, otherPitfall.sourceOntology);
 	}
 	
 	@Override
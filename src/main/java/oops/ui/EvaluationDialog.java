@@ -2,22 +2,43 @@ package oops.ui;
 
 import java.awt.*;
 import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.*;
 
+import oops.evaluation.EvaluationProgressEvent;
+
 /**
  * Author: Lukas Gedvilas<br>
  * Universidad Politécnica de Madrid<br><br>
  *
- * A custom popup window to show while evaluating the ontology
+ * A custom popup window to show while evaluating the ontology, with the progress of its requests and the
+ * estimated time left
  */
 public class EvaluationDialog extends JPanel {
 
 	private static final String EVALUATING_LABEL_TEXT = "OOPS! is scanning ...";
+	
+	private static final String CANCEL_BTN_LABEL = "Cancel";
+	
+	private static final String PREPARING_PROGRESS_TEXT = "Preparing the evaluation ...";
     
     private final JDialog dlg = new JDialog((JFrame) null, "", true);
+    
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    
+    private final JLabel progressLabel = new JLabel(PREPARING_PROGRESS_TEXT);
+    
+    // latest progress not shown yet, so the event dispatch thread only shows the latest one
+    private final AtomicReference<EvaluationProgressEvent> pendingProgress = 
+    		new AtomicReference<EvaluationProgressEvent>();
 
-    public EvaluationDialog() {
+    /**
+     * @param cancelAction
+     *            the action to run when the user cancels the evaluation
+     */
+    public EvaluationDialog(Runnable cancelAction) {
         setLayout(new BorderLayout());
         setBorder(BorderFactory.createEmptyBorder(30, 50, 30, 50));
         
@@ -34,7 +55,29 @@ public class EvaluationDialog extends JPanel {
         evaluatingAnimation.setPreferredSize(new Dimension(128, 15));
         URL url = this.getClass().getResource("/evaluating.gif");
         evaluatingAnimation.setIcon(new ImageIcon(url));
-        holder.add(evaluatingAnimation, BorderLayout.SOUTH);
+        
+        progressBar.setIndeterminate(true);
+        progressLabel.setFont(progressLabel.getFont().deriveFont(Font.PLAIN));
+        progressLabel.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0)); // add a top space
+        JPanel progressHolder = new JPanel(new BorderLayout());
+        progressHolder.setBorder(BorderFactory.createEmptyBorder(15, 0, 0, 0)); // add a top space
+        progressHolder.add(progressBar, BorderLayout.NORTH);
+        progressHolder.add(progressLabel, BorderLayout.SOUTH);
+        
+        JPanel centerHolder = new JPanel(new BorderLayout());
+        centerHolder.add(evaluatingAnimation, BorderLayout.NORTH);
+        centerHolder.add(progressHolder, BorderLayout.SOUTH);
+        holder.add(centerHolder, BorderLayout.CENTER);
+        
+        JButton cancelButton = new JButton(CANCEL_BTN_LABEL);
+        cancelButton.addActionListener(event -> {
+        	cancelAction.run();
+        	setVisible(false);
+        });
+        JPanel buttonHolder = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        buttonHolder.setBorder(BorderFactory.createEmptyBorder(15, 0, 0, 0)); // add a top space
+        buttonHolder.add(cancelButton);
+        holder.add(buttonHolder, BorderLayout.SOUTH);
         
         dlg.setUndecorated(true);
         JPanel contentPane = new JPanel();
@@ -64,6 +107,10 @@ public class EvaluationDialog extends JPanel {
     public void setVisible(boolean visible) {
         Runnable r = () -> {
             if (visible) {
+                pendingProgress.set(null);
+                progressBar.setIndeterminate(true);
+                progressLabel.setText(PREPARING_PROGRESS_TEXT);
+                
                 dlg.pack();
                 Dimension prefSize = dlg.getPreferredSize();
                 Toolkit toolkit = Toolkit.getDefaultToolkit();
@@ -82,4 +129,69 @@ public class EvaluationDialog extends JPanel {
             SwingUtilities.invokeLater(r);
         }
     }
+    
+    /**
+     * Shows the given progress of the evaluation. It may be called from any thread, and only the latest progress
+     * is shown if several ones arrive before the event dispatch thread shows them.
+     * 
+     * @param progress
+     *            the progress of the requests of the evaluation
+     */
+    public void setProgress(EvaluationProgressEvent progress) {
+        if (pendingProgress.getAndSet(progress) == null) {
+            SwingUtilities.invokeLater(() -> {
+                EvaluationProgressEvent latestProgress = pendingProgress.getAndSet(null);
+                if (latestProgress != null) { // not if the dialog has been shown again meanwhile
+                    showProgress(latestProgress);
+                }
+            });
+        }
+    }
+    
+    private void showProgress(EvaluationProgressEvent progress) {
+        double completion = progress.getCompletion();
+        progressBar.setIndeterminate(completion < 0);
+        if (completion >= 0) {
+            progressBar.setValue((int) (completion * 100));
+        }
+        
+        String text = getStageText(progress);
+        if (progress.getRemainingMillis() >= 0) {
+            text += ", " + getRemainingText(progress.getRemainingMillis());
+        }
+        progressLabel.setText(text);
+    }
+    
+    private static String getStageText(EvaluationProgressEvent progress) {
+        if (progress.getStage() == null) {
+            return String.format("Merging the results of %d requests", progress.getFinishedRequestsCount());
+        }
+        
+        switch (progress.getStage()) {
+        case SERIALIZING:
+            return "Preparing the ontology";
+        case UPLOADING:
+            return String.format("Uploading %s of about %s", formatBytes(progress.getSerializedBytes()), 
+                    formatBytes(progress.getExpectedBytes()));
+        case WAITING:
+            return String.format("Waiting for OOPS! (%d of %d requests done)", progress.getFinishedRequestsCount(), 
+                    progress.getRequestsCount());
+        default: // downloading
+            return String.format("Reading the results (%s downloaded, %d elements read)", 
+                    formatBytes(progress.getDownloadedBytes()), progress.getParsedElements());
+        }
+    }
+    
+    private static String getRemainingText(long remainingMillis) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(remainingMillis);
+        return seconds < 60 ? String.format("about %d s left", Math.max(1, seconds)) 
+                : String.format("about %d min left", (seconds + 30) / 60);
+    }
+    
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
 }
@@ -66,6 +66,8 @@ public class IndividualPitfallsListComponent extends AbstractOWLViewComponent
     private static final String PITFALLS_PANEL_ID = "Pitfalls";
     
     private static final String TEXT_SELECT_PITFALL = "Please select a pitfall to see its details";
+    
+    private static final String INCOMPLETE_RESULTS_SUFFIX = " - incomplete, the evaluation is still running";
 
     private static final Logger logger = LoggerFactory.getLogger(IndividualPitfallsListComponent.class);
 
@@ -399,7 +401,8 @@ public class IndividualPitfallsListComponent extends AbstractOWLViewComponent
 				selectionChanged(); // update view with the selected element
 				
 				pitfallsListLabel.setText(String.format("Detected pitfalls (total %d critical, %d important, %d minor)",
-	            		criticalPitfalls, importantPitfalls, minorPitfalls));
+	            		criticalPitfalls, importantPitfalls, minorPitfalls)
+	            		+ (result.isIncomplete() ? INCOMPLETE_RESULTS_SUFFIX : ""));
 			});
 		} catch (InvocationTargetException | InterruptedException e) {
 			logger.error(e.getLocalizedMessage());
@@ -19,11 +19,14 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -50,8 +53,13 @@ import org.protege.editor.owl.ui.view.AbstractOWLViewComponent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import oops.evaluation.CircuitOpenException;
 import oops.evaluation.EvaluationListener;
+import oops.evaluation.EvaluationMode;
+import oops.evaluation.EvaluationPriority;
+import oops.evaluation.EvaluationProgressEvent;
 import oops.evaluation.OOPSEvaluator;
+import oops.evaluation.OOPSServiceException;
 import oops.model.ElementPair;
 import oops.model.EvaluationResult;
 import oops.model.InfoElementWithAffectedElems;
@@ -75,9 +83,22 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 	private static final String CONFIG_OPTIONS_BTN_LABEL = "Configure";
 	private static final String CONFIG_OPTIONS_BTN_TOOLTIP = "Configure the options for the evaluation";
 	
+	// time to wait for an evaluation split into parts before showing the results of the finished ones, the rest
+	// of them are shown when ready. A single request has no partial results to show.
+	private static final Duration EVALUATION_TIME_BUDGET = Duration.ofSeconds(5);
+	
+	private static final String INCOMPLETE_RESULTS_TEXT = "<html><b>These results are incomplete.</b> The "
+			+ "evaluation is still running, and the complete results will replace them when it finishes.</html>";
+	
 	private static final String EVALUATION_ERROR_MSG = "There has been an error while contacting OOPS! Web Service" +
 			"\n\nThe error may be caused by your internet connectivity or the OOPS! service is unavailable.";
 	private static final String EVALUATION_ERROR_TITLE = "Ontology evaluation error";
+	private static final String SERVICE_UNAVAILABLE_MSG = "OOPS! Web Service is temporarily unavailable" +
+			"\n\n%s.\nThe request has been retried without success, please try again in a few minutes.";
+	private static final String SERVICE_PAUSED_MSG = "OOPS! Web Service is failing repeatedly" +
+			"\n\n%s.\nPlease try again later.";
+	private static final String SERVICE_REJECTED_MSG = "OOPS! Web Service has rejected the evaluation request" +
+			"\n\n%s.";
 	
 	private static final String OOPS_RESULTS_REFERENCES_TEXT = "<ul><li>[1]	Aguado-De Cea, G., Montiel-Ponsoda, "
 			+ "E., Poveda-Villalón, M., and Giraldo-Pasmin, O.X. (2015). Lexicalizing Ontologies: The issues behind "
@@ -240,6 +261,8 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 	private EvaluationDialog evaluatingDialog;
 	
 	private EvaluationResult evaluationResult;
+	
+	private CompletableFuture<EvaluationResult> runningEvaluation;
 
 	@Override
 	protected void initialiseOWLView() throws Exception {
@@ -247,7 +270,7 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 		
 		evaluator = OOPSEvaluator.getInstance();
 		
-		evaluatingDialog = new EvaluationDialog();
+		evaluatingDialog = new EvaluationDialog(this::cancelEvaluation);
 		
 		btnEvaluate = new JButton(EVALUATE_BTN_LABEL);
 		btnEvaluate.setToolTipText(EVALUATE_BTN_TOOLTIP);
@@ -265,34 +288,42 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 		
 		evaluator.addListener(this); // listen to evaluation events to change the UI
 		
+		// fingerprint the active ontology in the background, so its evaluations do not have to wait for it
+		evaluator.getFingerprintTracker().track(getOWLModelManager().getActiveOntology());
+		
 		owlModelManagerListener = event -> {
 			if (event.isType(EventType.ACTIVE_ONTOLOGY_CHANGED)) {
             	reset();
+            	
+            	// restore the cached results once all the views have been reset for the new active ontology
+            	SwingUtilities.invokeLater(() -> evaluator.restore(getOWLModelManager().getActiveOntology()));
             }
 		};
 		getOWLModelManager().addListener(owlModelManagerListener);
 		
+		// restore the results of the ontology that is already active, once the other views have been initialised
+		SwingUtilities.invokeLater(() -> evaluator.restore(getOWLModelManager().getActiveOntology()));
+		
 		btnEvaluate.addActionListener(event -> {
-			try {
-				List<String> pitfallsSubset = null;
-				if (configurationDone) {
-					if (selectedFilter.equals(SELECT_PITFALLS_BTN_TEXT)) {
-						pitfallsSubset = pitfallCheckBoxes.stream()
-								.filter(JCheckBox::isSelected)
-								.map(JCheckBox::getText)
-								.collect(Collectors.toList());
-					} else if (selectedFilter.equals(SELECT_CATEGORY_BTN_TEXT)) {
-						pitfallsSubset = new ArrayList<String>(Arrays.asList(pitfallCategories.get(selectedCategory)));
-					}
-					
-				} else {
-					pitfallsSubset = new ArrayList<String>();
+			List<String> pitfallsSubset = null;
+			if (configurationDone) {
+				if (selectedFilter.equals(SELECT_PITFALLS_BTN_TEXT)) {
+					pitfallsSubset = pitfallCheckBoxes.stream()
+							.filter(JCheckBox::isSelected)
+							.map(JCheckBox::getText)
+							.collect(Collectors.toList());
+				} else if (selectedFilter.equals(SELECT_CATEGORY_BTN_TEXT)) {
+					pitfallsSubset = new ArrayList<String>(Arrays.asList(pitfallCategories.get(selectedCategory)));
 				}
 				
-				evaluator.evaluate(getOWLEditorKit().getOWLModelManager().getActiveOntology(), pitfallsSubset);
-			} catch (InterruptedException ie) {
-				logger.error(ie.getLocalizedMessage());
+			} else {
+				pitfallsSubset = new ArrayList<String>();
 			}
+			
+			Duration timeBudget = evaluator.getEvaluationMode() == EvaluationMode.SINGLE_REQUEST ? null
+					: EVALUATION_TIME_BUDGET;
+			runningEvaluation = evaluator.evaluate(getOWLEditorKit().getOWLModelManager().getActiveOntology(),
+					pitfallsSubset, timeBudget, EvaluationPriority.INTERACTIVE);
 		});
 		
 		btnConfigEval.addActionListener(event -> {
@@ -362,6 +393,15 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 					LIST_PITFALLS_BORDER_MARGIN, LIST_PITFALLS_BORDER_MARGIN));
 			contentPane.setBackground(COLOR_PITFALL_BACKGROUND);
 			
+			if (evaluationResult.isIncomplete()) {
+				JLabel incompleteLabel = new JLabel(INCOMPLETE_RESULTS_TEXT);
+				incompleteLabel.setAlignmentX(LEFT_ALIGNMENT);
+				incompleteLabel.setMaximumSize(new Dimension(
+						(int) pitfallsListDialog.getSize().getWidth() - LIST_PITFALLS_BORDER_MARGIN * 3, 1000));
+				incompleteLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
+				contentPane.add(incompleteLabel);
+			}
+			
 			TreeMap<Pitfall, ArrayList<String>> pitfalls = evaluationResult.pitfallsWithAffectedElements();
 			
 			List<InfoElementWithAffectedElems> allInfoElems;
@@ -928,6 +968,16 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 		return formattedText;
 	}
 	
+	/**
+	 * Cancels the running evaluation, if any
+	 */
+	private void cancelEvaluation() {
+		if (runningEvaluation != null) {
+			runningEvaluation.cancel(true);
+			runningEvaluation = null;
+		}
+	}
+	
 	public void reset() {
 		evaluationResult = null;
 		btnListAllPitfalls.setEnabled(false);
@@ -938,6 +988,7 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 	
 	@Override
 	protected void disposeOWLView() {
+		cancelEvaluation();
 		evaluator.removeListener(this);
 		evaluationResult = null;
 		btnListAllPitfalls.setEnabled(false);
@@ -945,6 +996,7 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 		selectedFilter = null;
 		selectedCategory = null;
 		getOWLModelManager().removeListener(owlModelManagerListener);
+		OOPSEvaluator.closeResultStore(); // flushed on shutdown, it is opened again if another view uses it
 	}
 
 	@Override
@@ -952,6 +1004,11 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 		evaluatingDialog.setVisible(true);
 	}
 
+	@Override
+	public void onEvaluationProgress(EvaluationProgressEvent event) {
+		evaluatingDialog.setProgress(event);
+	}
+
 	@Override
 	public void onEvaluationDone(EvaluationResult result) {
 		this.evaluationResult = result;
@@ -963,14 +1020,46 @@ public class OOPSControlViewComponent extends AbstractOWLViewComponent implement
 	public void OnEvaluationException(Throwable exception) {
 		evaluatingDialog.setVisible(false);
 		
+		if (exception instanceof CancellationException) {
+			return; // the user has cancelled the evaluation
+		}
+		
+		String errorMessage = getEvaluationErrorMessage(exception);
+		
 		SwingUtilities.invokeLater(() -> {
 			JOptionPane.showMessageDialog(null,
-					EVALUATION_ERROR_MSG,
+					errorMessage,
 				    EVALUATION_ERROR_TITLE,
 				    JOptionPane.ERROR_MESSAGE);
 		});
 	}
 	
+	/**
+	 * Returns the message for the user about an evaluation failure, which tells apart the failures of the OOPS!
+	 * Web Service that may be transient from the ones that are not
+	 * 
+	 * @param exception
+	 *            the evaluation failure
+	 * @return the error message
+	 */
+	private static String getEvaluationErrorMessage(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+			if (cause instanceof CircuitOpenException) {
+				return String.format(SERVICE_PAUSED_MSG, cause.getMessage());
+			} else if (cause instanceof OOPSServiceException) {
+				OOPSServiceException serviceException = (OOPSServiceException) cause;
+				if (serviceException.isRetryable()) {
+					return String.format(SERVICE_UNAVAILABLE_MSG, serviceException.getMessage());
+				} else if (serviceException.getStatusCode() != OOPSServiceException.NO_STATUS_CODE) {
+					return String.format(SERVICE_REJECTED_MSG, serviceException.getMessage());
+				}
+				break;
+			}
+		}
+		
+		return EVALUATION_ERROR_MSG;
+	}
+	
 	/**
 	 * Custom CardLayout implementation that adapts the layout to each card's preferred size
 	 */
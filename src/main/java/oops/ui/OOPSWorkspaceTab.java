@@ -14,6 +14,9 @@ import org.protege.editor.owl.model.selection.SelectionPlane;
 import org.protege.editor.owl.model.selection.SelectionPlaneImpl;
 import org.protege.editor.owl.ui.view.AbstractOWLSelectionViewComponent;
 import org.semanticweb.owlapi.model.*;
+
+import oops.evaluation.OOPSEvaluator;
+
 import javax.swing.*;
 import java.util.Optional;
 
@@ -77,6 +80,9 @@ public class OOPSWorkspaceTab extends WorkspaceViewsTab implements SelectionPlan
         super.initialise();
         selectionPlaneDelegate = new SelectionPlaneImpl(getOWLEditorKit().getOWLWorkspace().getOWLSelectionModel());
         getOWLEditorKit().getWorkspace().registerOWLEntityDisplayProvider(provider);
+        
+        // open the connection to OOPS! in advance, so the first evaluation does not wait for it
+        OOPSEvaluator.getInstance().getTransport().prewarm();
     }
 
 
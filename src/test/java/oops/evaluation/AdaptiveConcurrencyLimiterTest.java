@@ -0,0 +1,159 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import oops.evaluation.AdaptiveConcurrencyLimiter.Outcome;
+import oops.evaluation.AdaptiveConcurrencyLimiter.Permit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the adaptive concurrency limiter: the requests over the limit wait for a released permit, the limit
+ * grows with the successful requests that used it, and it is halved once for the requests dropped together
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+	private static final long WAIT_MILLIS = 200;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void requestsOverTheLimitWaitForAReleasedPermit() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2);
+		CancellationToken cancellation = new CancellationToken();
+		Permit first = limiter.acquire(cancellation);
+		limiter.acquire(cancellation);
+
+		Future<Permit> waiting = executor.submit(() -> limiter.acquire(cancellation));
+
+		assertNotDone(waiting);
+		assertEquals(2, limiter.getInFlight());
+		assertEquals(1, limiter.getQueueDepth());
+
+		limiter.release(first, Outcome.IGNORED);
+
+		waiting.get(1, TimeUnit.SECONDS);
+		assertEquals(2, limiter.getInFlight());
+		assertEquals(0, limiter.getQueueDepth());
+	}
+
+	@Test
+	public void cancellationStopsTheWait() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+		limiter.acquire(new CancellationToken());
+
+		CancellationToken cancellation = new CancellationToken();
+		Future<Permit> waiting = executor.submit(() -> limiter.acquire(cancellation));
+		assertNotDone(waiting);
+
+		cancellation.cancel();
+
+		try {
+			waiting.get(1, TimeUnit.SECONDS);
+			fail("The wait should have been cancelled");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof CancellationException);
+		}
+		assertEquals(1, limiter.getInFlight());
+		assertEquals(0, limiter.getQueueDepth());
+	}
+
+	@Test
+	public void successesThatUsedTheLimitRaiseIt() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 4);
+		CancellationToken cancellation = new CancellationToken();
+
+		limiter.release(limiter.acquire(cancellation), Outcome.SUCCESS);
+
+		assertEquals(2, limiter.getLimit());
+
+		Permit unused = limiter.acquire(cancellation); // 1 of 2, the limit was not used
+		limiter.release(unused, Outcome.SUCCESS);
+
+		assertEquals(2, limiter.getLimit());
+	}
+
+	@Test
+	public void requestsDroppedTogetherHalveTheLimitOnce() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8);
+		CancellationToken cancellation = new CancellationToken();
+
+		List<Permit> permits = new ArrayList<Permit>();
+		for (int i = 0; i < 4; i++) {
+			permits.add(limiter.acquire(cancellation));
+		}
+		for (Permit permit : permits) {
+			limiter.release(permit, Outcome.DROPPED);
+		}
+
+		assertEquals(4, limiter.getLimit());
+		assertEquals(1, limiter.getDecreasesCount());
+
+		limiter.release(limiter.acquire(cancellation), Outcome.DROPPED);
+
+		assertEquals(2, limiter.getLimit());
+		assertEquals(2, limiter.getDecreasesCount());
+	}
+
+	@Test
+	public void limitStaysWithinItsBounds() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, 2);
+		CancellationToken cancellation = new CancellationToken();
+
+		limiter.release(limiter.acquire(cancellation), Outcome.DROPPED);
+		assertEquals(2, limiter.getLimit());
+
+		limiter.acquire(cancellation);
+		limiter.release(limiter.acquire(cancellation), Outcome.SUCCESS);
+		assertEquals(2, limiter.getLimit());
+	}
+
+	@Test
+	public void permitIsReleasedOnlyOnce() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2);
+		CancellationToken cancellation = new CancellationToken();
+		Permit permit = limiter.acquire(cancellation);
+		limiter.acquire(cancellation);
+
+		limiter.release(permit, Outcome.IGNORED);
+		limiter.release(permit, Outcome.IGNORED);
+
+		assertEquals(1, limiter.getInFlight());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidLimitsAreRejected() {
+		new AdaptiveConcurrencyLimiter(1, 2, 4);
+	}
+
+	private static void assertNotDone(Future<?> future) throws Exception {
+		try {
+			future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			fail("The request should be waiting for a permit");
+		} catch (TimeoutException e) {
+			assertFalse(future.isDone());
+		}
+	}
+}
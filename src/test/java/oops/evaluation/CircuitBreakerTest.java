@@ -0,0 +1,104 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the circuit breaker of an OOPS! WS endpoint: it opens after the consecutive failures, fails the
+ * requests right away while it is open, and lets a single trial request through once its open time has passed
+ */
+public class CircuitBreakerTest {
+
+	private static final int FAILURE_THRESHOLD = 3;
+
+	private static final long OPEN_TIME = 60 * 1000;
+
+	private final CircuitBreaker breaker = new CircuitBreaker("test");
+
+	@Before
+	public void configureBreaker() {
+		breaker.setFailureThreshold(FAILURE_THRESHOLD);
+		breaker.setOpenTime(OPEN_TIME);
+	}
+
+	@Test
+	public void breakerOpensAfterTheConsecutiveFailures() throws Exception {
+		recordFailures(FAILURE_THRESHOLD - 1);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+		recordFailures(1);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertRejected();
+	}
+
+	@Test
+	public void successResetsTheConsecutiveFailures() throws Exception {
+		recordFailures(FAILURE_THRESHOLD - 1);
+		breaker.acquirePermission();
+		breaker.recordSuccess();
+		recordFailures(FAILURE_THRESHOLD - 1);
+
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(FAILURE_THRESHOLD - 1, breaker.getConsecutiveFailures());
+	}
+
+	@Test
+	public void successfulTrialClosesTheBreaker() throws Exception {
+		recordFailures(FAILURE_THRESHOLD);
+		breaker.setOpenTime(0); // the open time has passed
+
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		breaker.acquirePermission();
+		assertRejected(); // a single trial request at a time
+
+		breaker.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		breaker.acquirePermission();
+	}
+
+	@Test
+	public void failedTrialOpensTheBreakerAgain() throws Exception {
+		recordFailures(FAILURE_THRESHOLD);
+		breaker.setOpenTime(0);
+
+		breaker.acquirePermission();
+		breaker.setOpenTime(OPEN_TIME);
+		breaker.recordFailure();
+
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertRejected();
+	}
+
+	@Test
+	public void releasedTrialLetsAnotherOneThrough() throws Exception {
+		recordFailures(FAILURE_THRESHOLD);
+		breaker.setOpenTime(0);
+
+		breaker.acquirePermission();
+		breaker.releasePermission(); // e.g. cancelled before reaching the service
+		breaker.acquirePermission();
+		assertRejected();
+	}
+
+	private void recordFailures(int failures) throws Exception {
+		for (int i = 0; i < failures; i++) {
+			breaker.acquirePermission();
+			breaker.recordFailure();
+		}
+	}
+
+	private void assertRejected() {
+		try {
+			breaker.acquirePermission();
+			fail("The breaker should reject the request");
+		} catch (CircuitOpenException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import oops.model.EvaluationResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests that the evaluations are keyed with the evaluations scheduler: the fingerprint of the ontology and the
+ * lookup of the cached results never run on the calling thread, e.g. the Swing event dispatch thread
+ */
+public class EvaluationKeyTest {
+
+	private final OOPSEvaluator evaluator = OOPSEvaluator.getInstance();
+
+	private final OOPSTransport defaultTransport = evaluator.getTransport();
+
+	private final List<Thread> notifiedThreads = new CopyOnWriteArrayList<Thread>();
+
+	private final EvaluationListener listener = new EvaluationListener() {
+		@Override
+		public void onEvaluationStarted() {
+		}
+
+		@Override
+		public void onEvaluationDone(EvaluationResult result) {
+			notifiedThreads.add(Thread.currentThread());
+		}
+
+		@Override
+		public void OnEvaluationException(Throwable exception) {
+		}
+	};
+
+	private LocalOOPSEndpoint endpoint;
+
+	@Before
+	public void startEndpoint() throws Exception {
+		endpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML));
+		evaluator.setEndpoint(endpoint.getURL());
+		evaluator.addListener(listener);
+	}
+
+	@After
+	public void stopEndpoint() throws Exception {
+		evaluator.removeListener(listener);
+		evaluator.setEndpoint(defaultTransport.getEndpoint());
+		endpoint.close();
+	}
+
+	@Test
+	public void cachedResultsAreDeliveredOffTheCallingThread() throws Exception {
+		OWLOntology ontology = UploadSyntaxFallbackTest.createOntology();
+
+		EvaluationResult evaluatedResult = evaluator.evaluate(ontology, Collections.<String> emptyList()).get();
+		EvaluationResult cachedResult = evaluator.evaluate(ontology, Collections.<String> emptyList()).get();
+
+		assertSame(evaluatedResult, cachedResult);
+		assertEquals(1, endpoint.getRequestCount());
+		assertEquals(2, notifiedThreads.size());
+		assertNotEquals(Thread.currentThread(), notifiedThreads.get(1));
+	}
+
+	@Test
+	public void importsClosureIsFingerprintedOffTheCallingThread() throws Exception {
+		OWLOntology ontology = UploadSyntaxFallbackTest.createOntology();
+		OWLOntology importedOntology = UploadSyntaxFallbackTest.createOntology(ontology.getOWLOntologyManager());
+		OWLDataFactory dataFactory = ontology.getOWLOntologyManager().getOWLDataFactory();
+		ontology.getOWLOntologyManager().applyChange(new AddImport(ontology,
+				dataFactory.getOWLImportsDeclaration(importedOntology.getOntologyID().getOntologyIRI().get())));
+
+		evaluator.setImportsClosureEvaluation(true);
+		try {
+			evaluator.evaluate(ontology, Collections.<String> emptyList()).get();
+			int requestCount = endpoint.getRequestCount();
+			evaluator.evaluate(ontology, Collections.<String> emptyList()).get();
+
+			assertEquals(2, requestCount);
+			assertEquals(requestCount, endpoint.getRequestCount());
+			assertNotEquals(Thread.currentThread(), notifiedThreads.get(notifiedThreads.size() - 1));
+		} finally {
+			evaluator.setImportsClosureEvaluation(false);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import oops.model.ElementPair;
+import oops.model.EvaluationResult;
+import oops.model.InfoElementWithAffectedElems;
+import oops.model.Pitfall;
+import oops.model.PitfallImportanceLevel;
+
+import org.junit.Test;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the merge of the partial results of overlapping parts of an ontology: every pitfall, pair and
+ * suggestion is kept once, and the affected elements of a pitfall detected in several parts are counted again
+ */
+public class EvaluationResultMergerTest {
+
+	private static final String NAMESPACE = "http://oops.linkeddata.es/test/merge#";
+
+	@Test
+	public void pitfallOfASinglePartKeepsItsCount() {
+		Pitfall pitfall = createPitfall("P08", 7);
+
+		EvaluationResult merged = EvaluationResultMerger.merge(Arrays.asList(
+				createResult(pitfall, "A"), createResult(createPitfall("P04", 1), "B")));
+
+		assertSame(pitfall, merged.getDetectedPitfalls().get(NAMESPACE + "A").get(0));
+		assertEquals(7, merged.getDetectedPitfalls().get(NAMESPACE + "A").get(0).getNumAffectedElements());
+	}
+
+	@Test
+	public void pitfallOfSeveralPartsIsCountedOnTheMergedElements() {
+		EvaluationResult merged = EvaluationResultMerger.merge(Arrays.asList(
+				createResult(createPitfall("P08", 2), "A", "B"), createResult(createPitfall("P08", 2), "B", "C")));
+
+		assertEquals(3, merged.getDetectedPitfalls().size());
+		for (String element : Arrays.asList("A", "B", "C")) {
+			List<Pitfall> pitfalls = merged.getDetectedPitfalls().get(NAMESPACE + element);
+			assertEquals(1, pitfalls.size());
+			assertEquals(3, pitfalls.get(0).getNumAffectedElements());
+		}
+	}
+
+	@Test
+	public void pitfallsOfDifferentSourceOntologiesAreKeptApart() {
+		EvaluationResultMerger merger = new EvaluationResultMerger();
+		merger.add(createResult(createPitfall("P08", 1), "A"), "http://oops.linkeddata.es/test/imported");
+		merger.add(createResult(createPitfall("P08", 1), "A"));
+
+		List<Pitfall> pitfalls = merger.getResult().getDetectedPitfalls().get(NAMESPACE + "A");
+
+		assertEquals(2, pitfalls.size());
+		assertEquals("http://oops.linkeddata.es/test/imported", pitfalls.get(0).getSourceOntology());
+		assertNull(pitfalls.get(1).getSourceOntology());
+		assertEquals(2, merger.getResultsCount());
+	}
+
+	@Test
+	public void pairsAreKeptOnce() {
+		EvaluationResult first = createResult(createPitfall("P30", 2), "A", "B");
+		first.setEquivalentClasses(new ArrayList<ElementPair>(Collections.singletonList(
+				new ElementPair(NAMESPACE + "A", NAMESPACE + "B"))));
+		EvaluationResult second = createResult(createPitfall("P30", 2), "A", "B");
+		second.setEquivalentClasses(new ArrayList<ElementPair>(Collections.singletonList(
+				new ElementPair(NAMESPACE + "A", NAMESPACE + "B"))));
+
+		EvaluationResult merged = EvaluationResultMerger.merge(Arrays.asList(first, second));
+
+		assertEquals(1, merged.getEquivalentClasses().size());
+		assertNull(merged.getEquivalentRelations());
+	}
+
+	@Test
+	public void suggestionsAreMergedByName() {
+		EvaluationResult first = createResult(createPitfall("P08", 1), "A");
+		first.setSuggestions(Collections.singletonList(new InfoElementWithAffectedElems("symmetric", "d", 2,
+				new ArrayList<String>(Arrays.asList(NAMESPACE + "p", NAMESPACE + "q")))));
+		EvaluationResult second = createResult(createPitfall("P08", 1), "B");
+		second.setSuggestions(Collections.singletonList(new InfoElementWithAffectedElems("symmetric", "d", 2,
+				new ArrayList<String>(Arrays.asList(NAMESPACE + "q", NAMESPACE + "r")))));
+
+		List<InfoElementWithAffectedElems> suggestions = EvaluationResultMerger.merge(
+				Arrays.asList(first, second)).getSuggestions();
+
+		assertEquals(1, suggestions.size());
+		assertEquals(Arrays.asList(NAMESPACE + "p", NAMESPACE + "q", NAMESPACE + "r"),
+				suggestions.get(0).getAffectedElements());
+		assertEquals(3, suggestions.get(0).getNumAffectedElements());
+	}
+
+	private static Pitfall createPitfall(String pitfallID, int numAffectedElements) {
+		return new Pitfall(PitfallImportanceLevel.MINOR, pitfallID, "Name of " + pitfallID,
+				"Description of " + pitfallID, numAffectedElements);
+	}
+
+	private static EvaluationResult createResult(Pitfall pitfall, String... elements) {
+		HashMap<String, ArrayList<Pitfall>> detectedPitfalls = new HashMap<String, ArrayList<Pitfall>>();
+		for (String element : elements) {
+			detectedPitfalls.put(NAMESPACE + element, new ArrayList<Pitfall>(Collections.singletonList(pitfall)));
+		}
+		return new EvaluationResult(detectedPitfalls);
+	}
+}
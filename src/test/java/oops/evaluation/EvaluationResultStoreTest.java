@@ -0,0 +1,204 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import oops.model.ElementPair;
+import oops.model.EvaluationResult;
+import oops.model.Pitfall;
+import oops.model.PitfallImportanceLevel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the evaluation results store: the results are read back after reopening it, and the compaction keeps
+ * only the newest records
+ */
+public class EvaluationResultStoreTest {
+
+	private static final String ENTITY_URI = "http://oops.linkeddata.es/test#A";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+
+	private EvaluationResultStore store;
+
+	@Before
+	public void openStore() throws Exception {
+		directory = folder.getRoot().toPath();
+		store = EvaluationResultStore.open(directory);
+	}
+
+	@After
+	public void closeStore() throws Exception {
+		store.close();
+	}
+
+	@Test
+	public void storedResultsAreReadBackAfterReopening() throws Exception {
+		EvaluationKey key = createKey(1, Arrays.asList("P04", "P08"));
+		store.put(key, createResult("P08"));
+
+		assertResult("P08", store.get(key));
+
+		store.close();
+		store = EvaluationResultStore.open(directory);
+
+		assertEquals(2, store.size()); // the result and the "latest" entry of its fingerprint
+		assertResult("P08", store.get(key));
+		assertEquals(key, store.getLatestKey(key.getFingerprint()));
+	}
+
+	@Test
+	public void unknownKeysAreNotFound() throws Exception {
+		store.put(createKey(1, Collections.<String> emptyList()), createResult("P08"));
+
+		assertNull(store.get(createKey(2, Collections.<String> emptyList())));
+		assertNull(store.get(createKey(1, Collections.singletonList("P04"))));
+		assertNull(store.getLatestKey(new OntologyFingerprint(2, 2)));
+	}
+
+	@Test
+	public void latestKeyIsTheLastStoredForTheFingerprint() throws Exception {
+		EvaluationKey allPitfalls = createKey(1, Collections.<String> emptyList());
+		EvaluationKey somePitfalls = createKey(1, Collections.singletonList("P04"));
+
+		store.put(allPitfalls, createResult("P08"));
+		store.put(somePitfalls, createResult("P04"));
+
+		assertEquals(somePitfalls, store.getLatestKey(allPitfalls.getFingerprint()));
+		assertResult("P08", store.get(allPitfalls));
+		assertResult("P04", store.get(somePitfalls));
+	}
+
+	@Test
+	public void compactionKeepsTheNewestResults() throws Exception {
+		store.setMaxSize(16 * 1024);
+
+		int stored = 200;
+		for (int i = 1; i <= stored; i++) {
+			store.put(createKey(i, Collections.<String> emptyList()), createResult("P" + i));
+		}
+
+		assertTrue(Files.size(directory.resolve("results.dat")) <= store.getMaxSize());
+		assertResult("P" + stored, store.get(createKey(stored, Collections.<String> emptyList())));
+		assertNull(store.get(createKey(1, Collections.<String> emptyList())));
+		assertTrue(store.size() < stored);
+
+		store.close();
+		store = EvaluationResultStore.open(directory);
+
+		assertResult("P" + stored, store.get(createKey(stored, Collections.<String> emptyList())));
+		assertNull(store.get(createKey(1, Collections.<String> emptyList())));
+	}
+
+	@Test
+	public void storeIsOpenedOnlyOnce() throws Exception {
+		try {
+			EvaluationResultStore.open(directory).close();
+			fail("The store should be locked while it is open");
+		} catch (IOException e) {
+			// expected
+		}
+
+		store.close();
+		store = EvaluationResultStore.open(directory);
+		assertNotNull(store);
+	}
+
+	@Test
+	public void interruptedCallerDoesNotCloseTheStore() throws Exception {
+		EvaluationKey key = createKey(1, Collections.<String> emptyList());
+		store.put(key, createResult("P08"));
+
+		Thread.currentThread().interrupt();
+		try {
+			assertResult("P08", store.get(key));
+			store.put(createKey(2, Collections.<String> emptyList()), createResult("P04"));
+			assertTrue("The interrupt should be kept for the caller", Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+
+		assertResult("P08", store.get(key));
+		assertResult("P04", store.get(createKey(2, Collections.<String> emptyList())));
+	}
+
+	@Test
+	public void storeStillWorksAfterInterruptsDuringReads() throws Exception {
+		EvaluationKey key = createKey(1, Collections.<String> emptyList());
+		store.put(key, createResult("P08"));
+
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread reader = new Thread(() -> {
+			try {
+				for (int i = 0; i < 500; i++) {
+					assertResult("P08", store.get(key));
+					Thread.interrupted();
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		}, "OOPS-store-test");
+		reader.start();
+		while (reader.isAlive()) {
+			reader.interrupt();
+			Thread.yield();
+		}
+		reader.join();
+
+		if (failure.get() != null) {
+			throw new AssertionError("The interrupted reads failed", failure.get());
+		}
+		assertResult("P08", store.get(key));
+		store.put(createKey(2, Collections.<String> emptyList()), createResult("P04"));
+		assertResult("P04", store.get(createKey(2, Collections.<String> emptyList())));
+	}
+
+	private static EvaluationKey createKey(long fingerprint, List<String> pitfallsSubset) {
+		return new EvaluationKey(new OntologyFingerprint(fingerprint, fingerprint), pitfallsSubset);
+	}
+
+	private static EvaluationResult createResult(String pitfallID) {
+		Pitfall pitfall = new Pitfall(PitfallImportanceLevel.IMPORTANT, pitfallID, "Name of " + pitfallID,
+				"Description of " + pitfallID, 1);
+
+		HashMap<String, ArrayList<Pitfall>> detectedPitfalls = new HashMap<String, ArrayList<Pitfall>>();
+		detectedPitfalls.put(ENTITY_URI, new ArrayList<Pitfall>(Collections.singletonList(pitfall)));
+
+		EvaluationResult result = new EvaluationResult(detectedPitfalls);
+		result.setElementsWithSameLabel(Collections.singletonList(new ElementPair(ENTITY_URI, ENTITY_URI + "2")));
+		return result;
+	}
+
+	private static void assertResult(String pitfallID, EvaluationResult result) {
+		assertNotNull(result);
+		assertEquals(Collections.singleton(ENTITY_URI), result.getDetectedPitfalls().keySet());
+		assertEquals(createResult(pitfallID).getDetectedPitfalls().get(ENTITY_URI),
+				result.getDetectedPitfalls().get(ENTITY_URI));
+		assertEquals(1, result.getElementsWithSameLabel().size());
+		assertEquals(ENTITY_URI + "2", result.getElementsWithSameLabel().get(0).getElementB());
+	}
+}
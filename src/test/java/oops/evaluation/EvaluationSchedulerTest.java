@@ -0,0 +1,173 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import oops.evaluation.EvaluationScheduler.Job;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the order the evaluations scheduler starts its jobs in: by priority and then by submission, with a
+ * thread kept for the interactive jobs, and with the background parts of a child scheduler paused while the
+ * parent runs an interactive job
+ */
+public class EvaluationSchedulerTest {
+
+	private static final long TIMEOUT_SECONDS = 5;
+
+	private final List<String> started = new CopyOnWriteArrayList<String>();
+
+	private final CountDownLatch blocked = new CountDownLatch(1);
+
+	@After
+	public void unblock() {
+		blocked.countDown();
+	}
+
+	@Test
+	public void interactiveJobsStartBeforeTheBackgroundOnes() throws Exception {
+		EvaluationScheduler scheduler = new EvaluationScheduler("test-order", 1, 10);
+		Job blocker = scheduler.submit(this::block, EvaluationPriority.BACKGROUND);
+
+		scheduler.submit(record("background-1"), EvaluationPriority.BACKGROUND);
+		scheduler.submit(record("background-2"), EvaluationPriority.BACKGROUND);
+		scheduler.submit(record("interactive-1"), EvaluationPriority.INTERACTIVE);
+		Job last = scheduler.submit(record("interactive-2"), EvaluationPriority.INTERACTIVE);
+		assertEquals(4, scheduler.getQueueDepth());
+
+		blocked.countDown();
+		blocker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		awaitIdle(scheduler);
+
+		assertEquals(Arrays.asList("interactive-1", "interactive-2", "background-1", "background-2"), started);
+		assertTrue(last.isDone());
+	}
+
+	@Test
+	public void promotedJobStartsFirst() throws Exception {
+		EvaluationScheduler scheduler = new EvaluationScheduler("test-promote", 1, 10);
+		scheduler.submit(this::block, EvaluationPriority.BACKGROUND);
+
+		scheduler.submit(record("background-1"), EvaluationPriority.BACKGROUND);
+		Job promoted = scheduler.submit(record("background-2"), EvaluationPriority.BACKGROUND);
+		scheduler.promote(promoted);
+
+		assertEquals(EvaluationPriority.INTERACTIVE, promoted.getPriority());
+
+		blocked.countDown();
+		awaitIdle(scheduler);
+
+		assertEquals(Arrays.asList("background-2", "background-1"), started);
+	}
+
+	@Test
+	public void threadIsKeptForTheInteractiveJobs() throws Exception {
+		EvaluationScheduler scheduler = new EvaluationScheduler("test-reserved", 2, 10);
+		scheduler.submit(this::block, EvaluationPriority.BACKGROUND);
+		Job background = scheduler.submit(record("background"), EvaluationPriority.BACKGROUND);
+		Job interactive = scheduler.submit(record("interactive"), EvaluationPriority.INTERACTIVE);
+
+		interactive.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+		assertFalse(background.isDone());
+		assertEquals(1, scheduler.getQueueDepth());
+
+		blocked.countDown();
+		background.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+		assertEquals(Arrays.asList("interactive", "background"), started);
+		assertEquals(2, scheduler.getBackgroundJobsCount());
+		assertEquals(1, scheduler.getInteractiveJobsCount());
+	}
+
+	@Test
+	public void backgroundPartsWaitForTheInteractiveJobsOfTheParent() throws Exception {
+		EvaluationScheduler parent = new EvaluationScheduler("test-parent", 2, 10);
+		EvaluationScheduler child = new EvaluationScheduler("test-child", 2, 10, parent);
+
+		CountDownLatch backgroundJobRunning = new CountDownLatch(1);
+		CountDownLatch backgroundJobDone = new CountDownLatch(1);
+		Job backgroundJob = parent.submit(() -> {
+			backgroundJobRunning.countDown();
+			await(backgroundJobDone);
+		}, EvaluationPriority.BACKGROUND);
+		assertTrue(backgroundJobRunning.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		Job interactiveJob = parent.submit(this::block, EvaluationPriority.INTERACTIVE);
+		Job interactivePart = child.submit(record("interactive part"), interactiveJob);
+		Job backgroundPart = child.submit(record("background part"), backgroundJob);
+
+		interactivePart.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+		assertFalse(backgroundPart.isDone());
+		assertEquals(1, child.getQueueDepth());
+
+		blocked.countDown();
+		backgroundPart.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		backgroundJobDone.countDown();
+
+		assertEquals(Arrays.asList("interactive part", "background part"), started);
+	}
+
+	@Test
+	public void cancelledJobLeavesTheQueue() throws Exception {
+		EvaluationScheduler scheduler = new EvaluationScheduler("test-cancel", 1, 10);
+		scheduler.submit(this::block, EvaluationPriority.BACKGROUND);
+		Job cancelled = scheduler.submit(record("cancelled"), EvaluationPriority.INTERACTIVE);
+
+		cancelled.cancel(false);
+
+		assertEquals(0, scheduler.getQueueDepth());
+
+		blocked.countDown();
+		awaitIdle(scheduler);
+
+		assertTrue(started.isEmpty());
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void jobsOverTheQueueCapacityAreRejected() {
+		EvaluationScheduler scheduler = new EvaluationScheduler("test-capacity", 1, 1);
+		scheduler.submit(this::block, EvaluationPriority.BACKGROUND);
+		scheduler.submit(record("queued"), EvaluationPriority.BACKGROUND);
+
+		scheduler.submit(record("rejected"), EvaluationPriority.INTERACTIVE);
+	}
+
+	private Runnable record(String job) {
+		return () -> started.add(job);
+	}
+
+	private void block() {
+		await(blocked);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void awaitIdle(EvaluationScheduler scheduler) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while ((scheduler.getRunningCount() > 0 || scheduler.getQueueDepth() > 0) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, scheduler.getRunningCount());
+	}
+}
@@ -0,0 +1,432 @@
+package oops.evaluation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * A local stand-in for the OOPS! WS, to try the upload syntaxes and the transport without the real service. It
+ * accepts the requests of the plugin, with any content coding and transfer, parses their ontology with the OWL API
+ * and answers with no pitfalls. The ontologies in a syntax it does not support are rejected with a 400 status, as
+ * an endpoint that only understands RDF/XML would do, and it can also reject the compressed requests or answer the
+ * next requests with scripted failures. Its receiving can be throttled, to time the uploads as on a slow link. It
+ * counts the requests and the bytes it receives, to check the round trips and the payload sizes of the plugin.
+ */
+public class LocalOOPSEndpoint implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(LocalOOPSEndpoint.class);
+
+	private static final String EMPTY_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<oops:OOPSResponse xmlns:oops=\"http://oops.linkeddata.es/def#\"></oops:OOPSResponse>";
+
+	// only the uploaded content is checked, its imports are not loaded
+	private static final OWLOntologyLoaderConfiguration LOADER_CONFIGURATION = new OWLOntologyLoaderConfiguration()
+			.setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT);
+
+	private static final int HTTP_OK = 200;
+
+	private static final int HTTP_BAD_REQUEST = 400;
+
+	private final Set<UploadSyntax> supportedSyntaxes;
+
+	private final Map<UploadSyntax, AtomicInteger> receivedCounts = new EnumMap<UploadSyntax, AtomicInteger>(
+			UploadSyntax.class);
+
+	private final AtomicInteger requestCount = new AtomicInteger();
+
+	private final AtomicLong receivedBytes = new AtomicLong();
+
+	private volatile int compressedRequestStatus = HTTP_OK; // status of the compressed requests, OK to accept them
+
+	private volatile long receiveRate; // max bytes per second received of a request body, 0 for no limit
+
+	private final Queue<Integer> scriptedStatuses = new ConcurrentLinkedQueue<Integer>(); // of the next requests
+
+	private final ServerSocket serverSocket;
+
+	private final Thread acceptThread;
+
+	/**
+	 * Starts a local endpoint on a free port of the loopback interface
+	 *
+	 * @param supportedSyntaxes
+	 *            the syntaxes of the accepted ontologies
+	 * @throws IOException
+	 */
+	public LocalOOPSEndpoint(Collection<UploadSyntax> supportedSyntaxes) throws IOException {
+		this.supportedSyntaxes = EnumSet.copyOf(supportedSyntaxes);
+		for (UploadSyntax syntax : UploadSyntax.values()) {
+			receivedCounts.put(syntax, new AtomicInteger());
+		}
+
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		acceptThread = new Thread(this::acceptConnections, "OOPS-local-endpoint");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	/**
+	 * @return the URL of this endpoint, to be set as the OOPS! WS endpoint
+	 */
+	public String getURL() {
+		return "http://" + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/";
+	}
+
+	/**
+	 * @return the number of ontologies received in the given syntax, accepted or not
+	 */
+	public int getReceivedCount(UploadSyntax syntax) {
+		return receivedCounts.get(syntax).get();
+	}
+
+	/**
+	 * @return the number of requests received
+	 */
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return the number of request body bytes received, as sent on the wire
+	 */
+	public long getReceivedBytes() {
+		return receivedBytes.get();
+	}
+
+	/**
+	 * Sets the status the compressed requests are answered with, e.g. 415 or 400 to reject them
+	 *
+	 * @param status
+	 *            the status of the compressed requests, 200 to accept them
+	 */
+	public void setCompressedRequestStatus(int status) {
+		this.compressedRequestStatus = status;
+	}
+
+	/**
+	 * Answers the next requests with the given statuses, one per request in order, before handling the requests
+	 * as usual again. A 200 status handles its request as usual.
+	 *
+	 * @param statuses
+	 *            the statuses of the next requests, e.g. 503 or 400 to fail them
+	 */
+	public void scriptStatuses(int... statuses) {
+		for (int status : statuses) {
+			scriptedStatuses.add(status);
+		}
+	}
+
+	/**
+	 * Throttles the receiving of the request bodies to the given rate
+	 *
+	 * @param bytesPerSecond
+	 *            the max number of bytes per second received of each request body, 0 for no limit
+	 */
+	public void setReceiveRate(long bytesPerSecond) {
+		this.receiveRate = bytesPerSecond;
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	private void acceptConnections() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				Thread handler = new Thread(() -> handle(socket), "OOPS-local-endpoint-request");
+				handler.setDaemon(true);
+				handler.start();
+			} catch (SocketException e) {
+				return; // closed
+			} catch (IOException e) {
+				logger.warn("acceptConnections[LocalOOPSEndpoint] could not accept a connection", e);
+			}
+		}
+	}
+
+	private void handle(Socket socket) {
+		try (Socket s = socket; InputStream in = s.getInputStream(); OutputStream out = s.getOutputStream()) {
+			Map<String, String> headers = readHeaders(in);
+			InputStream bodyIn = receiveRate > 0 ? new ThrottledInputStream(in, receiveRate) : in;
+			byte[] body = readAll("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))
+					? new ChunkedInputStream(bodyIn)
+					: new LimitedInputStream(bodyIn, Long.parseLong(headers.getOrDefault("content-length", "0"))));
+			requestCount.incrementAndGet();
+			receivedBytes.addAndGet(body.length);
+
+			ContentCoding coding = ContentCoding.fromHeader(headers.get("content-encoding"));
+			Integer scriptedStatus = scriptedStatuses.poll();
+			int status;
+			String response;
+			if (scriptedStatus != null && scriptedStatus != HTTP_OK) {
+				status = scriptedStatus;
+				response = "Scripted failure";
+			} else if (coding != ContentCoding.IDENTITY && compressedRequestStatus != HTTP_OK) {
+				status = compressedRequestStatus;
+				response = "Unsupported content coding: " + coding.getHeaderValue();
+			} else {
+				try (InputStream decoded = coding.decode(new ByteArrayInputStream(body))) {
+					String ontologyContent = getOntologyContent(decoded);
+					UploadSyntax syntax = detectSyntax(ontologyContent);
+					receivedCounts.get(syntax).incrementAndGet();
+
+					if (supportedSyntaxes.contains(syntax)) {
+						OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(
+								new StringDocumentSource(ontologyContent), LOADER_CONFIGURATION);
+						status = HTTP_OK;
+						response = EMPTY_RESPONSE;
+					} else {
+						status = HTTP_BAD_REQUEST;
+						response = "Unsupported ontology syntax: " + syntax;
+					}
+				} catch (Exception e) {
+					status = HTTP_BAD_REQUEST;
+					response = "Invalid request: " + e.getMessage();
+				}
+			}
+
+			byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+			String head = "HTTP/1.1 " + status + (status == HTTP_OK ? " OK" : " Rejected") + "\r\n"
+					+ "Content-Type: " + (status == HTTP_OK ? "application/xml" : "text/plain") + "; charset=UTF-8\r\n"
+					+ "Content-Length: " + responseBytes.length + "\r\n"
+					+ "Connection: close\r\n\r\n";
+			out.write(head.getBytes(StandardCharsets.US_ASCII));
+			out.write(responseBytes);
+			out.flush();
+		} catch (IOException e) {
+			logger.warn("handle[LocalOOPSEndpoint] could not answer a request", e);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the request line and the headers of a request
+	 *
+	 * @return the headers by their lower case name
+	 */
+	private static Map<String, String> readHeaders(InputStream in) throws IOException {
+		Map<String, String> headers = new HashMap<String, String>();
+
+		String line = readLine(in); // request line
+		while (!(line = readLine(in)).isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+			}
+		}
+		return headers;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1) {
+				throw new IOException("The connection was closed before the end of the line");
+			}
+			if (b != '\r') {
+				line.write(b);
+			}
+		}
+		return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return the ontology of the given request, joining the CDATA sections it was split into
+	 */
+	private static String getOntologyContent(InputStream request) throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(request);
+		return doc.getElementsByTagName("OntologyContent").item(0).getTextContent().trim();
+	}
+
+	/**
+	 * @return the syntax of the given ontology document, told apart by its first chars
+	 */
+	static UploadSyntax detectSyntax(String ontologyContent) {
+		if (ontologyContent.startsWith("<?xml") || ontologyContent.startsWith("<rdf:RDF")) {
+			return UploadSyntax.RDF_XML;
+		} else if (ontologyContent.startsWith("<") || ontologyContent.startsWith("_:")) {
+			return UploadSyntax.NTRIPLES;
+		}
+		return UploadSyntax.TURTLE;
+	}
+
+	/**
+	 * A stream of the first bytes of another one, which is not closed
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		LimitedInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * A stream read no faster than a given rate, which is not closed
+	 */
+	private static class ThrottledInputStream extends FilterInputStream {
+
+		private final long bytesPerSecond;
+
+		private final long start = System.nanoTime();
+
+		private long readBytes;
+
+		ThrottledInputStream(InputStream in, long bytesPerSecond) {
+			super(in);
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = in.read(b, off, len);
+			if (read > 0) {
+				readBytes += read;
+				long aheadMillis = readBytes * 1000 / bytesPerSecond - (System.nanoTime() - start) / 1000000;
+				if (aheadMillis > 0) {
+					try {
+						Thread.sleep(aheadMillis);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while throttling the request");
+					}
+				}
+			}
+			return read;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * A stream of the data of a chunked transfer, which does not close the connection stream
+	 */
+	private static class ChunkedInputStream extends FilterInputStream {
+
+		private long chunkRemaining;
+
+		private boolean finished;
+
+		ChunkedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (finished) {
+				return -1;
+			}
+			if (chunkRemaining == 0) {
+				String sizeLine = readLine(in);
+				int extension = sizeLine.indexOf(';');
+				String size = extension < 0 ? sizeLine : sizeLine.substring(0, extension);
+				chunkRemaining = Long.parseLong(size.trim(), 16);
+				if (chunkRemaining == 0) {
+					while (!readLine(in).isEmpty()) {
+						// trailers
+					}
+					finished = true;
+					return -1;
+				}
+			}
+
+			int read = in.read(b, off, (int) Math.min(len, chunkRemaining));
+			if (read == -1) {
+				throw new IOException("The connection was closed in the middle of a chunk");
+			}
+			chunkRemaining -= read;
+			if (chunkRemaining == 0) {
+				readLine(in); // end of the chunk
+			}
+			return read;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
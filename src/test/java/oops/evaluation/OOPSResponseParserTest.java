@@ -0,0 +1,158 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import oops.model.ElementPair;
+import oops.model.EvaluationResult;
+import oops.model.InfoElementWithAffectedElems;
+import oops.model.Pitfall;
+
+import org.junit.Test;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Golden test of the parser of the OOPS! responses: a recorded response is parsed into the same results the DOM
+ * parser that preceded it produced, which are kept as text next to the response
+ */
+public class OOPSResponseParserTest {
+
+	private static final String RESPONSE = "oops-response.xml";
+
+	private static final String EXPECTED_RESULTS = "oops-response.expected.txt";
+
+	@Test
+	public void recordedResponseIsParsedAsTheDomParserDid() throws Exception {
+		EvaluationResult result;
+		try (InputStream response = OOPSResponseParserTest.class.getResourceAsStream(RESPONSE)) {
+			result = OOPSResponseParser.parse(response, TransferProgress.untracked());
+		}
+
+		assertEquals(readResource(EXPECTED_RESULTS), describe(result));
+	}
+
+	@Test
+	public void parsedElementsAreCounted() throws Exception {
+		TransferProgress progress = new TransferProgress();
+		try (InputStream response = OOPSResponseParserTest.class.getResourceAsStream(RESPONSE)) {
+			OOPSResponseParser.parse(response, progress.startRequest(0));
+		}
+
+		// 9 pitfalls, a suggestion and a warning, and their 21 affected elements
+		assertEquals(32, progress.snapshot().getParsedElements());
+	}
+
+	@Test
+	public void responseWithoutPitfallsIsEmpty() throws Exception {
+		EvaluationResult result = parse("<oops:OOPSResponse></oops:OOPSResponse>");
+
+		assertEquals(0, result.getDetectedPitfalls().size());
+	}
+
+	@Test
+	public void malformedResponseIsRejected() throws Exception {
+		assertRejected("<oops:OOPSResponse><oops:Pitfall>");
+	}
+
+	@Test
+	public void pitfallWithoutNameIsRejected() throws Exception {
+		assertRejected("<oops:OOPSResponse><oops:Pitfall><oops:Code>P08</oops:Code>"
+				+ "<oops:Description>d</oops:Description><oops:Importance>Minor</oops:Importance>"
+				+ "</oops:Pitfall></oops:OOPSResponse>");
+	}
+
+	@Test
+	public void pitfallWithoutDescriptionIsRejected() throws Exception {
+		assertRejected("<oops:OOPSResponse><oops:Pitfall><oops:Code>P08</oops:Code>"
+				+ "<oops:Name>Missing annotations</oops:Name><oops:Importance>Minor</oops:Importance>"
+				+ "</oops:Pitfall></oops:OOPSResponse>");
+	}
+
+	private static void assertRejected(String response) throws Exception {
+		try {
+			parse(response);
+			fail("The response should have been rejected");
+		} catch (XMLStreamException e) {
+			// expected
+		}
+	}
+
+	private static EvaluationResult parse(String response) throws Exception {
+		String document = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" "
+				+ "xmlns:oops=\"http://www.oeg-upm.net/oops#\">" + response + "</rdf:RDF>";
+		return OOPSResponseParser.parse(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)),
+				TransferProgress.untracked());
+	}
+
+	/**
+	 * @return a text description of all the given results, with the entities sorted by IRI
+	 */
+	static String describe(EvaluationResult result) {
+		StringBuilder description = new StringBuilder();
+
+		for (Map.Entry<String, ? extends List<Pitfall>> entity : new TreeMap<String, List<Pitfall>>(
+				result.getDetectedPitfalls()).entrySet()) {
+			description.append(entity.getKey()).append('\n');
+			for (Pitfall pitfall : entity.getValue()) {
+				description.append("\tpitfall ").append(pitfall.getPitfallID()).append(" | ")
+						.append(pitfall.getImportanceLevel()).append(" | ").append(pitfall.getName()).append(" | ")
+						.append(pitfall.getNumAffectedElements()).append(" | ").append(pitfall.getDescription())
+						.append('\n');
+			}
+		}
+
+		describePairs(description, "equivalent classes", result.getEquivalentClasses());
+		describePairs(description, "equivalent relations", result.getEquivalentRelations());
+		describePairs(description, "equivalent attributes", result.getEquivalentAttributes());
+		describePairs(description, "might be inverse relations", result.getMightBeInverseRelations());
+		describePairs(description, "wrong inverse relations", result.getWrongInverseRelations());
+		describePairs(description, "elements with same label", result.getElementsWithSameLabel());
+		description.append("relations without inverse ").append(result.getRelationsWithoutInverse()).append('\n');
+		describeInfo(description, "suggestion", result.getSuggestions());
+		describeInfo(description, "warning", result.getWarnings());
+
+		return description.toString();
+	}
+
+	private static void describePairs(StringBuilder description, String kind, List<ElementPair> pairs) {
+		description.append(kind).append('\n');
+		if (pairs != null) {
+			for (ElementPair pair : pairs) {
+				description.append('\t').append(pair.getElementA()).append(" = ").append(pair.getElementB())
+						.append('\n');
+			}
+		}
+	}
+
+	private static void describeInfo(StringBuilder description, String kind,
+			List<InfoElementWithAffectedElems> elements) {
+		if (elements != null) {
+			for (InfoElementWithAffectedElems element : elements) {
+				description.append(kind).append(' ').append(element.getName()).append(" | ")
+						.append(element.getNumAffectedElements()).append(" | ").append(element.getDescription())
+						.append(" | ").append(element.getAffectedElements()).append('\n');
+			}
+		}
+	}
+
+	private static String readResource(String name) throws IOException {
+		try (InputStream in = OOPSResponseParserTest.class.getResourceAsStream(name);
+				Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+			return scanner.useDelimiter("\\A").next();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the partition of an ontology into locality-based modules: the modules cover all of its logical axioms
+ * and keep its ID
+ */
+public class OntologyModularizerTest {
+
+	private static final int AXIOMS = 2000;
+
+	private static OWLOntology ontology;
+
+	@BeforeClass
+	public static void generateOntology() throws Exception {
+		ontology = SyntaxMeasurements.generateOntology(AXIOMS, new Random(AXIOMS));
+	}
+
+	@Test
+	public void smallOntologyIsNotPartitioned() throws Exception {
+		List<OWLOntology> modules = OntologyModularizer.partition(ontology, ontology.getAxiomCount());
+
+		assertEquals(1, modules.size());
+		assertSame(ontology, modules.get(0));
+	}
+
+	@Test
+	public void modulesCoverTheLogicalAxioms() throws Exception {
+		List<OWLOntology> modules = OntologyModularizer.partition(ontology, ontology.getAxiomCount() / 8);
+
+		assertTrue(modules.size() > 1);
+
+		Set<OWLAxiom> modulesAxioms = new HashSet<OWLAxiom>();
+		for (OWLOntology module : modules) {
+			assertEquals(ontology.getOntologyID(), module.getOntologyID());
+			assertTrue(module.getAxiomCount() < ontology.getAxiomCount());
+			modulesAxioms.addAll(module.getLogicalAxioms());
+		}
+		assertEquals(ontology.getLogicalAxioms(), modulesAxioms);
+	}
+}
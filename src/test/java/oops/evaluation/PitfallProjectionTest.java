@@ -0,0 +1,164 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+
+import oops.evaluation.PitfallProjection.Content;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the content kept by the projection of an ontology for a subset of pitfalls
+ */
+public class PitfallProjectionTest {
+
+	private static final String NAMESPACE = "http://oops.linkeddata.es/test/projection#";
+
+	private OWLOntology ontology;
+
+	private OWLAxiom classDeclaration;
+
+	private OWLAxiom subClassOf;
+
+	private OWLAxiom objectPropertyDeclaration;
+
+	private OWLAxiom objectPropertyDomain;
+
+	private OWLAxiom dataPropertyDeclaration;
+
+	private OWLAxiom dataPropertyRange;
+
+	private OWLAxiom label;
+
+	private OWLAxiom classAssertion;
+
+	@Before
+	public void createOntology() throws Exception {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory dataFactory = manager.getOWLDataFactory();
+		ontology = manager.createOntology(IRI.create(NAMESPACE));
+
+		OWLClass subClass = dataFactory.getOWLClass(IRI.create(NAMESPACE + "A"));
+		OWLClass superClass = dataFactory.getOWLClass(IRI.create(NAMESPACE + "B"));
+		OWLObjectProperty objectProperty = dataFactory.getOWLObjectProperty(IRI.create(NAMESPACE + "p"));
+		OWLDataProperty dataProperty = dataFactory.getOWLDataProperty(IRI.create(NAMESPACE + "d"));
+		OWLIndividual individual = dataFactory.getOWLNamedIndividual(IRI.create(NAMESPACE + "i"));
+
+		classDeclaration = dataFactory.getOWLDeclarationAxiom(subClass);
+		subClassOf = dataFactory.getOWLSubClassOfAxiom(subClass, superClass);
+		objectPropertyDeclaration = dataFactory.getOWLDeclarationAxiom(objectProperty);
+		objectPropertyDomain = dataFactory.getOWLObjectPropertyDomainAxiom(objectProperty, subClass);
+		dataPropertyDeclaration = dataFactory.getOWLDeclarationAxiom(dataProperty);
+		dataPropertyRange = dataFactory.getOWLDataPropertyRangeAxiom(dataProperty, dataFactory.getOWLDatatype(
+				OWL2Datatype.XSD_STRING.getIRI()));
+		label = dataFactory.getOWLAnnotationAssertionAxiom(subClass.getIRI(),
+				dataFactory.getOWLAnnotation(dataFactory.getRDFSLabel(), dataFactory.getOWLLiteral("A")));
+		classAssertion = dataFactory.getOWLClassAssertionAxiom(subClass, individual);
+
+		manager.addAxioms(ontology, new HashSet<OWLAxiom>(Arrays.asList(classDeclaration, subClassOf,
+				objectPropertyDeclaration, objectPropertyDomain, dataPropertyDeclaration, dataPropertyRange, label,
+				classAssertion)));
+		manager.applyChange(new AddImport(ontology,
+				dataFactory.getOWLImportsDeclaration(IRI.create("http://oops.linkeddata.es/test/imported"))));
+		manager.applyChange(new AddOntologyAnnotation(ontology,
+				dataFactory.getOWLAnnotation(dataFactory.getRDFSComment(), dataFactory.getOWLLiteral("header"))));
+	}
+
+	@Test
+	public void allPitfallsNeedTheWholeOntology() throws Exception {
+		assertSame(ontology, PitfallProjection.project(ontology, Collections.<String> emptyList()));
+		assertSame(ontology, PitfallProjection.project(ontology, Arrays.asList("P06", "P04")));
+		assertSame(ontology, PitfallProjection.project(ontology, Collections.singletonList("P99")));
+	}
+
+	@Test
+	public void classPitfallsKeepTheClassAxiomsAndTheirDeclarations() throws Exception {
+		OWLOntology projection = PitfallProjection.project(ontology, Collections.singletonList("P06"));
+
+		assertNotSame(ontology, projection);
+		assertEquals(ontology.getOntologyID(), projection.getOntologyID());
+		assertTrue(projection.containsAxiom(subClassOf));
+		assertTrue(projection.containsAxiom(classDeclaration));
+		assertFalse(projection.containsAxiom(objectPropertyDomain));
+		assertFalse(projection.containsAxiom(objectPropertyDeclaration));
+		assertFalse(projection.containsAxiom(dataPropertyRange));
+		assertFalse(projection.containsAxiom(label));
+		assertFalse(projection.containsAxiom(classAssertion));
+	}
+
+	@Test
+	public void propertyPitfallsKeepThePropertyAxiomsAndTheirDeclarations() throws Exception {
+		OWLOntology projection = PitfallProjection.project(ontology, Collections.singletonList("P11"));
+
+		assertTrue(projection.containsAxiom(objectPropertyDomain));
+		assertTrue(projection.containsAxiom(objectPropertyDeclaration));
+		assertTrue(projection.containsAxiom(dataPropertyRange));
+		assertTrue(projection.containsAxiom(dataPropertyDeclaration));
+		assertFalse(projection.containsAxiom(subClassOf));
+		assertFalse(projection.containsAxiom(classDeclaration));
+	}
+
+	@Test
+	public void declarationPitfallsKeepEveryDeclaration() throws Exception {
+		OWLOntology projection = PitfallProjection.project(ontology, Collections.singletonList("P08"));
+
+		assertTrue(projection.containsAxiom(classDeclaration));
+		assertTrue(projection.containsAxiom(objectPropertyDeclaration));
+		assertTrue(projection.containsAxiom(dataPropertyDeclaration));
+		assertTrue(projection.containsAxiom(label));
+		assertFalse(projection.containsAxiom(subClassOf));
+		assertFalse(projection.containsAxiom(classAssertion));
+	}
+
+	@Test
+	public void headerIsAlwaysKept() throws Exception {
+		OWLOntology projection = PitfallProjection.project(ontology, Collections.singletonList("P36"));
+
+		assertEquals(ontology.getImportsDeclarations(), projection.getImportsDeclarations());
+		assertEquals(ontology.getAnnotations(), projection.getAnnotations());
+		assertEquals(0, projection.getAxiomCount());
+	}
+
+	@Test
+	public void contentsOfThePitfallsAreMerged() {
+		assertEquals(EnumSet.of(Content.HEADER, Content.CLASS_AXIOMS, Content.OBJECT_PROPERTY_AXIOMS,
+				Content.DATA_PROPERTY_AXIOMS), PitfallProjection.getContents(Arrays.asList("P06", "P11")));
+		assertEquals(EnumSet.of(Content.HEADER, Content.ALL),
+				PitfallProjection.getContents(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void axiomsAreClassifiedByContent() {
+		assertEquals(Content.DECLARATIONS, PitfallProjection.getContent(classDeclaration));
+		assertEquals(Content.CLASS_AXIOMS, PitfallProjection.getContent(subClassOf));
+		assertEquals(Content.OBJECT_PROPERTY_AXIOMS, PitfallProjection.getContent(objectPropertyDomain));
+		assertEquals(Content.DATA_PROPERTY_AXIOMS, PitfallProjection.getContent(dataPropertyRange));
+		assertEquals(Content.ANNOTATIONS, PitfallProjection.getContent(label));
+		assertEquals(Content.ALL, PitfallProjection.getContent(classAssertion));
+	}
+}
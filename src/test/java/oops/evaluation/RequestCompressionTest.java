@@ -0,0 +1,159 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the compression of the request bodies against a {@link LocalOOPSEndpoint}: the bytes sent, the round
+ * trips, and when the compression is turned off for an endpoint that rejects it. The upload times of a large
+ * ontology with each coding over a throttled link are only reported, as they depend on the machine.
+ */
+public class RequestCompressionTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(RequestCompressionTest.class);
+
+	private static final int HTTP_BAD_REQUEST = 400;
+
+	private static final int HTTP_UNSUPPORTED_TYPE = 415;
+
+	private static final int LARGE_ONTOLOGY_AXIOMS = 10000;
+
+	private static final long THROTTLED_RATE = 2 * 1024 * 1024; // 2 MB/s, as on a slow VPN link
+
+	private static OWLOntology ontology;
+
+	@BeforeClass
+	public static void generateOntology() throws Exception {
+		ontology = SyntaxMeasurements.generateOntology(2000, new Random(2000));
+	}
+
+	@Test
+	public void gzipShrinksTheRequestWithoutExtraRoundTrips() throws Exception {
+		try (LocalOOPSEndpoint plainEndpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML));
+				LocalOOPSEndpoint gzipEndpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML))) {
+			send(OOPSTransport.forEndpoint(plainEndpoint.getURL()), UploadSyntax.RDF_XML);
+
+			OOPSTransport gzipTransport = OOPSTransport.forEndpoint(gzipEndpoint.getURL());
+			gzipTransport.setRequestCompression(ContentCoding.GZIP);
+			send(gzipTransport, UploadSyntax.RDF_XML);
+
+			assertEquals(1, plainEndpoint.getRequestCount());
+			assertEquals(1, gzipEndpoint.getRequestCount());
+			assertTrue(gzipEndpoint.getReceivedBytes() * 5 < plainEndpoint.getReceivedBytes());
+		}
+	}
+
+	@Test
+	public void unsupportedMediaTypeTurnsTheCompressionOff() throws Exception {
+		try (LocalOOPSEndpoint endpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML))) {
+			endpoint.setCompressedRequestStatus(HTTP_UNSUPPORTED_TYPE);
+			OOPSTransport transport = OOPSTransport.forEndpoint(endpoint.getURL());
+			transport.setRequestCompression(ContentCoding.GZIP);
+
+			send(transport, UploadSyntax.RDF_XML);
+
+			assertEquals(2, endpoint.getRequestCount());
+			assertEquals(ContentCoding.IDENTITY, transport.getEffectiveRequestCompression());
+
+			send(transport, UploadSyntax.RDF_XML);
+
+			assertEquals(3, endpoint.getRequestCount());
+		}
+	}
+
+	@Test
+	public void badRequestAcceptedUncompressedTurnsTheCompressionOff() throws Exception {
+		try (LocalOOPSEndpoint endpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML))) {
+			endpoint.setCompressedRequestStatus(HTTP_BAD_REQUEST);
+			OOPSTransport transport = OOPSTransport.forEndpoint(endpoint.getURL());
+			transport.setRequestCompression(ContentCoding.GZIP);
+
+			send(transport, UploadSyntax.RDF_XML);
+
+			assertEquals(2, endpoint.getRequestCount());
+			assertEquals(ContentCoding.IDENTITY, transport.getEffectiveRequestCompression());
+
+			send(transport, UploadSyntax.RDF_XML);
+
+			assertEquals(3, endpoint.getRequestCount());
+		}
+	}
+
+	@Test
+	public void badRequestRejectedUncompressedKeepsTheCompression() throws Exception {
+		try (LocalOOPSEndpoint endpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML))) {
+			OOPSTransport transport = OOPSTransport.forEndpoint(endpoint.getURL());
+			transport.setRequestCompression(ContentCoding.GZIP);
+
+			try {
+				send(transport, UploadSyntax.TURTLE);
+				fail("The Turtle request should have been rejected");
+			} catch (OOPSServiceException e) {
+				assertEquals(HTTP_BAD_REQUEST, e.getStatusCode());
+			}
+
+			assertEquals(2, endpoint.getRequestCount());
+			assertEquals(ContentCoding.GZIP, transport.getEffectiveRequestCompression());
+
+			long rejectedBytes = endpoint.getReceivedBytes();
+			send(transport, UploadSyntax.RDF_XML);
+
+			assertEquals(3, endpoint.getRequestCount());
+			assertTrue(endpoint.getReceivedBytes() - rejectedBytes < rejectedBytes / 2);
+		}
+	}
+
+	@Test
+	public void uploadTimesOfALargeOntologyAreReportedForEachCoding() throws Exception {
+		OWLOntology largeOntology = SyntaxMeasurements.generateOntology(LARGE_ONTOLOGY_AXIOMS,
+				new Random(LARGE_ONTOLOGY_AXIOMS));
+		Map<ContentCoding, Long> sentBytes = new EnumMap<ContentCoding, Long>(ContentCoding.class);
+
+		for (ContentCoding coding : ContentCoding.values()) {
+			try (LocalOOPSEndpoint endpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML))) {
+				OOPSTransport transport = OOPSTransport.forEndpoint(endpoint.getURL());
+				transport.setRequestCompression(coding);
+				send(transport, largeOntology, UploadSyntax.RDF_XML); // warm up the rendering and the coding
+
+				endpoint.setReceiveRate(THROTTLED_RATE);
+				long start = System.nanoTime();
+				send(transport, largeOntology, UploadSyntax.RDF_XML);
+				long millis = (System.nanoTime() - start) / 1000000;
+
+				assertEquals(2, endpoint.getRequestCount());
+				sentBytes.put(coding, endpoint.getReceivedBytes() / 2);
+				logger.info(String.format("%s upload of %d axioms: %d bytes in %d ms at %d KB/s", coding
+						.getHeaderValue(), largeOntology.getAxiomCount(), sentBytes.get(coding), millis,
+						THROTTLED_RATE / 1024));
+			}
+		}
+
+		assertTrue(sentBytes.get(ContentCoding.GZIP) * 5 < sentBytes.get(ContentCoding.IDENTITY));
+		assertTrue(sentBytes.get(ContentCoding.DEFLATE) * 5 < sentBytes.get(ContentCoding.IDENTITY));
+	}
+
+	private static String send(OOPSTransport transport, UploadSyntax syntax) throws Exception {
+		return send(transport, ontology, syntax);
+	}
+
+	private static String send(OOPSTransport transport, OWLOntology ontology, UploadSyntax syntax) throws Exception {
+		CancellationToken cancellation = new CancellationToken();
+		return transport.send(new OOPSRequestWriter(ontology, Collections.<String> emptyList(), syntax, cancellation),
+				cancellation);
+	}
+}
@@ -0,0 +1,83 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the retry policy of the requests to the OOPS! WS: which failures are retried, and the jittered delays
+ * before the retries stay within their exponential bounds
+ */
+public class RetryPolicyTest {
+
+	private static final int SAMPLES = 1000;
+
+	@Test
+	public void transientStatusCodesAreRetryable() {
+		for (int statusCode : new int[] { 408, 429, 502, 503, 504 }) {
+			assertTrue("Status " + statusCode, OOPSServiceException.forStatusCode(statusCode, 0).isRetryable());
+		}
+		for (int statusCode : new int[] { 400, 404, 413, 415, 500 }) {
+			assertFalse("Status " + statusCode, OOPSServiceException.forStatusCode(statusCode, 0).isRetryable());
+		}
+	}
+
+	@Test
+	public void openCircuitIsNotRetryable() {
+		CircuitOpenException e = new CircuitOpenException(1500);
+
+		assertFalse(e.isRetryable());
+		assertEquals(1500, e.getRetryAfter());
+	}
+
+	@Test
+	public void delaysStayWithinTheirExponentialBounds() {
+		RetryPolicy policy = new RetryPolicy(6, 100, 1000);
+		long[] bounds = { 100, 200, 400, 800, 1000, 1000 };
+
+		for (int retry = 1; retry <= bounds.length; retry++) {
+			Set<Long> delays = new HashSet<Long>();
+			for (int i = 0; i < SAMPLES; i++) {
+				long delay = policy.getDelay(retry, 0);
+				assertTrue("Delay " + delay + " of retry " + retry, delay >= 0 && delay <= bounds[retry - 1]);
+				delays.add(delay);
+			}
+			assertTrue("The delays of retry " + retry + " should be jittered", delays.size() > 1);
+		}
+	}
+
+	@Test
+	public void retryAfterIsTheMinDelayUpToTheMaxDelay() {
+		RetryPolicy policy = new RetryPolicy(3, 100, 1000);
+
+		for (int i = 0; i < SAMPLES; i++) {
+			assertTrue(policy.getDelay(1, 500) >= 500);
+			assertEquals(1000, policy.getDelay(1, 60 * 1000));
+		}
+	}
+
+	@Test
+	public void singleAttemptHasNoDelay() {
+		assertEquals(1, RetryPolicy.NO_RETRIES.getMaxAttempts());
+		assertEquals(0, RetryPolicy.NO_RETRIES.getDelay(1, 0));
+	}
+
+	@Test
+	public void invalidPolicyIsRejected() {
+		try {
+			new RetryPolicy(0, 100, 1000);
+			fail("A policy without attempts should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the retries of the requests against a {@link LocalOOPSEndpoint} answering scripted failures: the
+ * retryable failures are sent again from the body rendered once, the fatal ones are not, and the circuit breaker
+ * of the endpoint fails the requests right away once it is open
+ */
+public class TransportRetryTest {
+
+	private static final int HTTP_BAD_REQUEST = 400;
+
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+	private static final int HTTP_BAD_GATEWAY = 502;
+
+	private static final int HTTP_UNAVAILABLE = 503;
+
+	private static final int FAILURE_THRESHOLD = 4; // more than the failures of a request retried until it succeeds
+
+	private static final long OPEN_TIME = 60 * 1000;
+
+	private LocalOOPSEndpoint endpoint;
+
+	private OOPSTransport transport;
+
+	private OWLOntology ontology;
+
+	@Before
+	public void startEndpoint() throws Exception {
+		endpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML));
+		transport = OOPSTransport.forEndpoint(endpoint.getURL());
+		transport.setRetryPolicy(new RetryPolicy(4, 10, 50));
+
+		CircuitBreaker breaker = transport.getCircuitBreaker();
+		breaker.setFailureThreshold(FAILURE_THRESHOLD);
+		breaker.setOpenTime(OPEN_TIME);
+		breaker.recordSuccess(); // closed, even if the transport of a previous endpoint on the same port is reused
+
+		ontology = UploadSyntaxFallbackTest.createOntology();
+	}
+
+	@After
+	public void stopEndpoint() throws Exception {
+		endpoint.close();
+	}
+
+	@Test
+	public void retryableFailuresAreSentAgainFromTheRenderedBody() throws Exception {
+		endpoint.scriptStatuses(HTTP_BAD_GATEWAY, HTTP_UNAVAILABLE, HTTP_TOO_MANY_REQUESTS);
+		CountingRequestWriter requestWriter = createRequestWriter();
+
+		transport.send(requestWriter, new CancellationToken());
+
+		assertEquals(4, endpoint.getRequestCount());
+		assertEquals(1, requestWriter.getRenderCount());
+		assertEquals(CircuitBreaker.State.CLOSED, transport.getCircuitBreaker().getState());
+	}
+
+	@Test
+	public void fatalFailureIsNotRetried() throws Exception {
+		endpoint.scriptStatuses(HTTP_BAD_REQUEST);
+		CountingRequestWriter requestWriter = createRequestWriter();
+
+		try {
+			transport.send(requestWriter, new CancellationToken());
+			fail("The request should have failed");
+		} catch (OOPSServiceException e) {
+			assertEquals(HTTP_BAD_REQUEST, e.getStatusCode());
+			assertFalse(e.isRetryable());
+		}
+
+		assertEquals(1, endpoint.getRequestCount());
+		assertEquals(1, requestWriter.getRenderCount());
+	}
+
+	@Test
+	public void lastRetryableFailureIsThrownAfterAllTheAttempts() throws Exception {
+		transport.setRetryPolicy(new RetryPolicy(2, 10, 50));
+		endpoint.scriptStatuses(HTTP_UNAVAILABLE, HTTP_UNAVAILABLE);
+		CountingRequestWriter requestWriter = createRequestWriter();
+
+		try {
+			transport.send(requestWriter, new CancellationToken());
+			fail("The request should have failed");
+		} catch (OOPSServiceException e) {
+			assertEquals(HTTP_UNAVAILABLE, e.getStatusCode());
+			assertTrue(e.isRetryable());
+		}
+
+		assertEquals(2, endpoint.getRequestCount());
+		assertEquals(1, requestWriter.getRenderCount());
+	}
+
+	@Test
+	public void openBreakerFailsTheRequestsRightAway() throws Exception {
+		openBreaker();
+		assertEquals(CircuitBreaker.State.OPEN, transport.getCircuitBreaker().getState());
+
+		CountingRequestWriter requestWriter = createRequestWriter();
+		try {
+			transport.send(requestWriter, new CancellationToken());
+			fail("The request should have failed right away");
+		} catch (CircuitOpenException e) {
+			// expected
+		}
+
+		assertEquals(FAILURE_THRESHOLD, endpoint.getRequestCount());
+		assertEquals(0, requestWriter.getRenderCount());
+	}
+
+	@Test
+	public void halfOpenBreakerClosesAfterASuccessfulTrial() throws Exception {
+		openBreaker();
+		transport.getCircuitBreaker().setOpenTime(0); // the open time has passed
+		assertEquals(CircuitBreaker.State.HALF_OPEN, transport.getCircuitBreaker().getState());
+
+		transport.send(createRequestWriter(), new CancellationToken());
+
+		assertEquals(FAILURE_THRESHOLD + 1, endpoint.getRequestCount());
+		assertEquals(CircuitBreaker.State.CLOSED, transport.getCircuitBreaker().getState());
+	}
+
+	/**
+	 * Opens the circuit breaker with a request per failure of its threshold, each one failed with a 503
+	 */
+	private void openBreaker() throws Exception {
+		transport.setRetryPolicy(RetryPolicy.NO_RETRIES);
+		for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+			endpoint.scriptStatuses(HTTP_UNAVAILABLE);
+			try {
+				transport.send(createRequestWriter(), new CancellationToken());
+				fail("The request should have failed");
+			} catch (OOPSServiceException e) {
+				assertEquals(HTTP_UNAVAILABLE, e.getStatusCode());
+			}
+		}
+	}
+
+	private CountingRequestWriter createRequestWriter() {
+		return new CountingRequestWriter(ontology);
+	}
+
+	/**
+	 * A request writer that counts the times the request is rendered
+	 */
+	private static class CountingRequestWriter extends OOPSRequestWriter {
+
+		private final AtomicInteger renderCount = new AtomicInteger();
+
+		CountingRequestWriter(OWLOntology ontology) {
+			super(ontology, Collections.<String> emptyList());
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			renderCount.incrementAndGet();
+			super.writeTo(out);
+		}
+
+		int getRenderCount() {
+			return renderCount.get();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import oops.model.EvaluationResult;
+
+import org.junit.After;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the upload syntaxes against a {@link LocalOOPSEndpoint}: a syntax the endpoint rejects is sent again in
+ * RDF/XML, and it is not tried again on that endpoint
+ */
+public class UploadSyntaxFallbackTest {
+
+	private final OOPSEvaluator evaluator = OOPSEvaluator.getInstance();
+
+	private final OOPSTransport defaultTransport = evaluator.getTransport();
+
+	private final UploadSyntax defaultSyntax = evaluator.getUploadSyntax();
+
+	@After
+	public void restoreEvaluator() {
+		evaluator.setEndpoint(defaultTransport.getEndpoint());
+		evaluator.setUploadSyntax(defaultSyntax);
+	}
+
+	@Test
+	public void rejectedSyntaxFallsBackToRdfXml() throws Exception {
+		try (LocalOOPSEndpoint endpoint = new LocalOOPSEndpoint(Collections.singleton(UploadSyntax.RDF_XML))) {
+			evaluator.setEndpoint(endpoint.getURL());
+			evaluator.setUploadSyntax(UploadSyntax.TURTLE);
+
+			EvaluationResult result = evaluator.evaluate(createOntology(), Collections.<String> emptyList()).get();
+
+			assertTrue(result.getDetectedPitfalls().isEmpty());
+			assertEquals(1, endpoint.getReceivedCount(UploadSyntax.TURTLE));
+			assertEquals(1, endpoint.getReceivedCount(UploadSyntax.RDF_XML));
+
+			evaluator.evaluate(createOntology(), Collections.<String> emptyList()).get();
+
+			assertEquals(1, endpoint.getReceivedCount(UploadSyntax.TURTLE));
+			assertEquals(2, endpoint.getReceivedCount(UploadSyntax.RDF_XML));
+		}
+	}
+
+	@Test
+	public void supportedSyntaxIsUploadedOnce() throws Exception {
+		try (LocalOOPSEndpoint endpoint = new LocalOOPSEndpoint(
+				Arrays.asList(UploadSyntax.RDF_XML, UploadSyntax.NTRIPLES))) {
+			evaluator.setEndpoint(endpoint.getURL());
+			evaluator.setUploadSyntax(UploadSyntax.NTRIPLES);
+
+			evaluator.evaluate(createOntology(), Collections.<String> emptyList()).get();
+
+			assertEquals(1, endpoint.getReceivedCount(UploadSyntax.NTRIPLES));
+			assertEquals(0, endpoint.getReceivedCount(UploadSyntax.RDF_XML));
+		}
+	}
+
+	/**
+	 * @return a small ontology that has never been evaluated, so that it is not answered from the results store
+	 */
+	static OWLOntology createOntology() throws Exception {
+		return createOntology(OWLManager.createOWLOntologyManager());
+	}
+
+	/**
+	 * @return a small ontology that has never been evaluated, created with the given manager
+	 */
+	static OWLOntology createOntology(OWLOntologyManager manager) throws Exception {
+		OWLDataFactory dataFactory = manager.getOWLDataFactory();
+		String namespace = "http://oops.linkeddata.es/test/" + UUID.randomUUID();
+
+		OWLOntology ontology = manager.createOntology(IRI.create(namespace));
+		OWLClass subClass = dataFactory.getOWLClass(IRI.create(namespace + "#A"));
+		OWLClass superClass = dataFactory.getOWLClass(IRI.create(namespace + "#B"));
+		manager.addAxiom(ontology, dataFactory.getOWLSubClassOfAxiom(subClass, superClass));
+		return ontology;
+	}
+}
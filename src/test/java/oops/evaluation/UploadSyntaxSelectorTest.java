@@ -0,0 +1,86 @@
+package oops.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Author: Lukas Gedvilas<br>
+ * Universidad Politécnica de Madrid<br><br>
+ *
+ * Tests of the measures of the upload syntaxes and of the syntax picked from the costs fitted to them
+ */
+public class UploadSyntaxSelectorTest {
+
+	private static final int SMALL_AXIOMS = 500;
+
+	private static final int LARGE_AXIOMS = 5000;
+
+	private static OWLOntology small;
+
+	private static OWLOntology large;
+
+	private static Map<UploadSyntax, SyntaxMeasurements.Measure> smallMeasures;
+
+	private static Map<UploadSyntax, SyntaxMeasurements.Measure> largeMeasures;
+
+	@BeforeClass
+	public static void measure() throws Exception {
+		small = SyntaxMeasurements.generateOntology(SMALL_AXIOMS, new Random(SMALL_AXIOMS));
+		large = SyntaxMeasurements.generateOntology(LARGE_AXIOMS, new Random(LARGE_AXIOMS));
+		smallMeasures = SyntaxMeasurements.measure(small);
+		largeMeasures = SyntaxMeasurements.measure(large);
+	}
+
+	@Test
+	public void generatesOntologiesOfAboutTheGivenSize() {
+		assertTrue(small.getAxiomCount() > SMALL_AXIOMS / 2 && small.getAxiomCount() < SMALL_AXIOMS * 2);
+		assertTrue(large.getAxiomCount() > LARGE_AXIOMS / 2 && large.getAxiomCount() < LARGE_AXIOMS * 2);
+	}
+
+	@Test
+	public void measuresEveryConcreteSyntax() {
+		assertEquals(UploadSyntax.values().length - 1, largeMeasures.size());
+
+		for (Map.Entry<UploadSyntax, SyntaxMeasurements.Measure> measure : largeMeasures.entrySet()) {
+			SyntaxMeasurements.Measure m = measure.getValue();
+			assertTrue(measure.getKey() + " render time", m.getRenderNanos() > 0);
+			assertTrue(measure.getKey() + " is gzip coded smaller", m.getCodedBytes() < m.getBytes());
+			assertTrue(measure.getKey() + " grows with the ontology",
+					m.getBytes() > smallMeasures.get(measure.getKey()).getBytes());
+		}
+	}
+
+	@Test
+	public void turtleIsSmallerThanTheOtherSyntaxes() {
+		long turtleBytes = largeMeasures.get(UploadSyntax.TURTLE).getBytes();
+
+		assertTrue(turtleBytes < largeMeasures.get(UploadSyntax.RDF_XML).getBytes());
+		assertTrue(turtleBytes < largeMeasures.get(UploadSyntax.NTRIPLES).getBytes());
+	}
+
+	@Test
+	public void picksTheSmallestPayloadOnASlowUpload() {
+		UploadSyntaxSelector selector = new UploadSyntaxSelector();
+		selector.calibrate(small.getAxiomCount(), smallMeasures, large.getAxiomCount(), largeMeasures);
+		selector.setUploadBytesPerSecond(1);
+
+		assertEquals(UploadSyntax.TURTLE, selector.select(large.getAxiomCount(), ContentCoding.IDENTITY, s -> true));
+		assertEquals(largeMeasures.get(UploadSyntax.TURTLE).getBytes(),
+				selector.getEstimatedBytes(UploadSyntax.TURTLE, large.getAxiomCount()), 1);
+	}
+
+	@Test
+	public void picksRdfXmlWhenNoOtherSyntaxIsSupported() {
+		UploadSyntaxSelector selector = new UploadSyntaxSelector();
+		selector.setUploadBytesPerSecond(1);
+
+		assertEquals(UploadSyntax.RDF_XML, selector.select(LARGE_AXIOMS, ContentCoding.GZIP, s -> false));
+	}
+}